@@ -28,13 +28,28 @@ import ch.ethz.globis.distindex.api.IndexEntry;
 import ch.ethz.globis.distindex.api.IndexEntryList;
 import ch.ethz.globis.distindex.api.IndexIterator;
 import ch.ethz.globis.distindex.mapping.KeyMapping;
+import ch.ethz.globis.distindex.operation.OpStatus;
+import ch.ethz.globis.distindex.operation.request.GetStreamRequest;
 import ch.ethz.globis.distindex.operation.response.ResultResponse;
 
 import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * Implements an iterator for entries over a distributed index.
  *
+ * If the index proxy supports streaming, each host pushes its entries in chunks without waiting for a request
+ * for each of them, so the next chunks are transferred while the current one is consumed. Otherwise, the
+ * iterator requests the next batch as soon as it receives the current one.
+ *
+ * In both cases, the scan on the next host is opened while the entries of the current host are still consumed,
+ * and the size of the batches doubles whenever the consumer has to wait for a full batch.
+ *
+ * The hosts are visited in the order of their key intervals and each host returns its entries in z-order, so
+ * the iterator returns the entries in z-order. Range iterators only visit the hosts intersecting the range.
+ *
  * @param <K>                                   The class of the keys.
  * @param <V>                                   The class of the values.
  */
@@ -44,16 +59,22 @@ public class DistIndexIterator<K, V> implements IndexIterator<K, V> {
     IndexProxy<K, V> indexProxy;
 
     /** The entries that are currently buffered*/
-    IndexEntryList<K, V> entryBuffer;
+    IndexEntryList<K, V> entryBuffer = new IndexEntryList<>();
 
-    /** The number of entries to bring in a batch request */
+    /** The number of entries to bring in a batch request. Grows if the consumer waits for the batches. */
     private int batchSize = 2;
 
+    /** The next batch, requested while the current one is consumed. Null if no batch was requested. */
+    private CompletableFuture<ResultResponse<K, V>> prefetched;
+
+    /** The number of entries requested in the prefetched batch. */
+    private int prefetchedSize;
+
     /** The id of the host from which batches are currently brought. */
     private String currentHostId;
 
-    /** The mapping between the keys and the hosts */
-    private KeyMapping<K> keyMapping;
+    /** The hosts to visit, in the order of their key intervals */
+    private List<String> hostIds;
 
     /** The id of the iterator */
     private String iteratorId = "";
@@ -70,6 +91,18 @@ public class DistIndexIterator<K, V> implements IndexIterator<K, V> {
     /** the position within the entry buffer */
     private int position = -1;
 
+    /** Whether the entries are streamed from the hosts. */
+    private final boolean streaming;
+
+    /** The stream from the current host, null if no stream is open. */
+    private ResultStream<K, V> stream;
+
+    /** The stream from the next host, opened once the current host pushed its last chunk. */
+    private ResultStream<K, V> nextStream;
+
+    /** The number of entries in the chunks of the streams. */
+    private int chunkSize;
+
     /**
      * Constructor for a non-ranged iterator.
      *
@@ -78,9 +111,11 @@ public class DistIndexIterator<K, V> implements IndexIterator<K, V> {
      */
     public DistIndexIterator(IndexProxy<K, V> indexProxy, KeyMapping<K> keyMapping) {
         this.indexProxy = indexProxy;
-        this.keyMapping = keyMapping;
-        this.currentHostId = keyMapping.getFirst();
+        this.hostIds = keyMapping.get();
+        this.currentHostId = hostIds.isEmpty() ? null : hostIds.get(0);
         this.isRanged = false;
+        this.streaming = indexProxy.isStreaming();
+        this.chunkSize = indexProxy.getStreamChunkSize();
         getRemoteEntries();
     }
 
@@ -94,11 +129,13 @@ public class DistIndexIterator<K, V> implements IndexIterator<K, V> {
      */
     public DistIndexIterator(IndexProxy<K, V> indexProxy, KeyMapping<K> keyMapping, K start, K end) {
         this.indexProxy = indexProxy;
-        this.keyMapping = keyMapping;
-        this.currentHostId = keyMapping.getFirst();
+        this.hostIds = keyMapping.get(start, end);
+        this.currentHostId = hostIds.isEmpty() ? null : hostIds.get(0);
         this.start = start;
         this.end = end;
         this.isRanged = true;
+        this.streaming = indexProxy.isStreaming();
+        this.chunkSize = indexProxy.getStreamChunkSize();
         getRemoteEntries();
     }
 
@@ -143,20 +180,18 @@ public class DistIndexIterator<K, V> implements IndexIterator<K, V> {
             return;
         }
 
-        ResultResponse<K, V> response;
-        if (isRanged) {
-            response = indexProxy.getNextBatch(currentHostId, iteratorId, batchSize, start, end);
-        } else {
-            response = indexProxy.getNextBatch(currentHostId, iteratorId, batchSize);
-        }
+        ResultResponse<K, V> response = streaming ? getNextChunk() : getNextBatch();
         if (response != null) {
             //if the remote index set the iteratorId to "", it has just sent us the last batch and
             //we can change to the next host.
             if (response.getIteratorId().equals("")) {
-                currentHostId = keyMapping.getNext(currentHostId);
+                currentHostId = getNextHost(currentHostId);
             }
             iteratorId = response.getIteratorId();
             entryBuffer = response.getEntries();
+            if (!streaming) {
+                prefetch();
+            }
             if (entryBuffer == null || entryBuffer.size() == 0) {
                 getRemoteEntries();
             }
@@ -166,14 +201,137 @@ public class DistIndexIterator<K, V> implements IndexIterator<K, V> {
         position = 0;
     }
 
+    /**
+     * Get the next batch from the current host, either the prefetched one or a new one.
+     */
+    private ResultResponse<K, V> getNextBatch() {
+        if (prefetched == null) {
+            if (isRanged) {
+                return indexProxy.getNextBatch(currentHostId, iteratorId, batchSize, start, end);
+            }
+            return indexProxy.getNextBatch(currentHostId, iteratorId, batchSize);
+        }
+        CompletableFuture<ResultResponse<K, V>> future = prefetched;
+        prefetched = null;
+        boolean waited = !future.isDone();
+        ResultResponse<K, V> response = join(future);
+        if (waited && response.getNrEntries() >= prefetchedSize) {
+            batchSize = Math.max(batchSize, Math.min(2 * prefetchedSize, indexProxy.getMaxBatchSize()));
+        }
+        return response;
+    }
+
+    /**
+     * Request the batch following the current one, or the first batch of the next host.
+     */
+    private void prefetch() {
+        if (currentHostId != null) {
+            prefetchedSize = batchSize;
+            prefetched = indexProxy.getNextBatchAsync(currentHostId, iteratorId, batchSize,
+                    isRanged ? start : null, isRanged ? end : null);
+        }
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Take the next chunk from the stream of the current host, opening the stream if needed.
+     *
+     * If the host reports that the mapping version is outdated, the stream ends and a new one is opened,
+     * continuing from the last iterator received from the host.
+     */
+    private ResultResponse<K, V> getNextChunk() {
+        ResultResponse<K, V> response;
+        do {
+            if (stream == null) {
+                if (nextStream != null && nextStream.getHostId().equals(currentHostId)) {
+                    stream = nextStream;
+                    nextStream = null;
+                } else {
+                    stream = openStream(currentHostId, iteratorId);
+                }
+            }
+            response = stream.take();
+            chunkSize = stream.getChunkSize();
+            if (stream.isDone() && nextStream == null) {
+                String nextHostId = getNextHost(currentHostId);
+                if (nextHostId != null) {
+                    nextStream = openStream(nextHostId, "");
+                }
+            }
+            if (response.getStatus() != OpStatus.SUCCESS || "".equals(response.getIteratorId())) {
+                //the host will not push further chunks on this stream
+                ResultResponse<K, V> last = response;
+                GetStreamRequest<K> request = stream.getRequest();
+                stream = null;
+                if (indexProxy.check(request, last)) {
+                    response = null;
+                }
+            }
+        } while (response == null);
+        return response;
+    }
+
+    private String getNextHost(String hostId) {
+        int index = hostIds.indexOf(hostId) + 1;
+        return (index < hostIds.size()) ? hostIds.get(index) : null;
+    }
+
+    private ResultStream<K, V> openStream(String hostId, String iteratorId) {
+        return indexProxy.openStream(hostId, iteratorId, chunkSize, isRanged ? start : null, isRanged ? end : null);
+    }
+
     @Override
     public void close() {
-        if (currentHostId != null) {
-            indexProxy.closeIterator(currentHostId, iteratorId, this);
+        if (streaming) {
+            if (nextStream != null) {
+                nextStream.cancel();
+                nextStream = null;
+            }
+            indexProxy.closeStream(stream, this);
+            stream = null;
+        } else {
+            closePrefetched();
+            if (currentHostId != null) {
+                indexProxy.closeIterator(currentHostId, iteratorId, this);
+            }
         }
         entryBuffer = null;
     }
 
+    /**
+     * Wait for the prefetched batch, so that the iterator it opened on the host can be closed.
+     */
+    private void closePrefetched() {
+        if (prefetched == null) {
+            return;
+        }
+        try {
+            ResultResponse<K, V> response = join(prefetched);
+            if ("".equals(response.getIteratorId())) {
+                currentHostId = getNextHost(currentHostId);
+            }
+            iteratorId = response.getIteratorId();
+        } catch (RuntimeException e) {
+            //the host did not open an iterator
+        } finally {
+            prefetched = null;
+        }
+    }
+
+    /**
+     * Set the number of entries requested in the next batch. Streamed entries are pushed in chunks of the size
+     * configured on the index proxy.
+     */
     public void setBatchSize(int batchSize) {
         this.batchSize = batchSize;
     }
@@ -34,6 +34,7 @@ import ch.ethz.globis.disindex.codec.io.RequestDispatcher;
 import ch.ethz.globis.distindex.mapping.KeyMapping;
 import ch.ethz.globis.distindex.operation.OpCode;
 import ch.ethz.globis.distindex.operation.OpStatus;
+import ch.ethz.globis.distindex.operation.predicate.BuiltinPredicate;
 import ch.ethz.globis.distindex.operation.request.*;
 import ch.ethz.globis.distindex.operation.response.*;
 import ch.ethz.globis.distindex.orchestration.ClusterService;
@@ -46,6 +47,15 @@ import org.slf4j.LoggerFactory;
 import java.io.Closeable;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Proxy class for working with a distributed, remote index.
@@ -60,25 +70,41 @@ public class IndexProxy<K, V> implements Index<K, V>, Closeable, AutoCloseable {
 
     private static final Logger LOG = LoggerFactory.getLogger(IndexProxy.class);
 
+    /** The maximum number of attempts of an asynchronous request answered with an outdated mapping version. */
+    private static final int MAX_ASYNC_ATTEMPTS = 8;
+
+    /** The delay before the first retry of an asynchronous request, doubled for each following retry. */
+    private static final long ASYNC_RETRY_DELAY_MILLIS = 10;
+
     /** The request dispatcher for the messages to the index servers */
     protected RequestDispatcher<K, V> requestDispatcher;
 
     /** The cluster service. Handles information regarding the hosts. */
     protected ClusterService<K> clusterService;
 
-    /** A set of the current open iterators. The keys are the iterator ids*/
+    /** A set of the current open iterators. Parallel scans open and close iterators concurrently. */
     private Set<IndexIterator<K, V>> openIterators;
 
     protected Requests<K, V> requests;
+
+    /** The maximum number of keys sent to a host in a single request by the batch operations. */
+    private int maxBatchSize = 16 * 1024;
+
+    /** The number of chunks a host can push ahead of an iterator. If 0, iterators poll the hosts for batches. */
+    private int streamWindow = 4;
+
+    /** The number of entries in the first chunk pushed to an iterator. Iterators grow their chunks if needed. */
+    private int streamChunkSize = 1024;
+
     protected IndexProxy() {
-        this.openIterators = new HashSet<>();
+        this.openIterators = Collections.newSetFromMap(new ConcurrentHashMap<>());
     }
 
     public IndexProxy(RequestDispatcher<K, V> requestDispatcher,
                       ClusterService<K> clusterService) {
         this.requestDispatcher = requestDispatcher;
         this.clusterService = clusterService;
-        this.openIterators = new HashSet<>();
+        this.openIterators = Collections.newSetFromMap(new ConcurrentHashMap<>());
         this.requests = new Requests<>(clusterService);
     }
 
@@ -197,6 +223,318 @@ public class IndexProxy<K, V> implements Index<K, V>, Closeable, AutoCloseable {
         return combine(responses);
     }
 
+    /**
+     * Remove all the keys in a range. Each host holding a part of the range removes its keys locally.
+     *
+     * @return                          The number of removed keys.
+     */
+    public int deleteRange(K start, K end) {
+        return deleteRange(start, end, null);
+    }
+
+    /**
+     * Remove the keys in a range that match a built-in predicate. Only the hosts holding a part of the
+     * range receive the request and they only reply with the number of keys they removed.
+     *
+     * @param filter                    The predicate the removed keys should match, or null to remove all
+     *                                  the keys in the range.
+     * @return                          The number of removed keys.
+     */
+    public int deleteRange(K start, K end, BuiltinPredicate filter) {
+        int deleted = 0;
+        boolean versionOutdated;
+        do {
+            KeyMapping<K> keyMapping = clusterService.getMapping();
+            List<String> hostIds = keyMapping.get(start, end);
+            DeleteRangeRequest<K> request = requests.newDeleteRange(start, end, filter);
+            List<IntegerResponse> responses = requestDispatcher.send(hostIds, request, IntegerResponse.class);
+            versionOutdated = check(request, responses);
+            //the hosts that were up to date removed their keys, the others get the request again
+            for (IntegerResponse response : responses) {
+                if (response.getStatus() == OpStatus.SUCCESS) {
+                    deleted += response.getContent();
+                }
+            }
+        } while (versionOutdated);
+        return deleted;
+    }
+
+    /**
+     * Insert several entries. The keys are grouped by the host holding them and each host receives a single
+     * request for all of its keys. The requests to different hosts are sent in parallel.
+     *
+     * @param keys                      The keys to insert.
+     * @param values                    The values, the value at each position belongs to the key at the same position.
+     * @return                          The previous values associated with the keys, in the order of the keys.
+     */
+    public List<V> putMany(final List<K> keys, final List<V> values) {
+        if (keys.size() != values.size()) {
+            throw new IllegalArgumentException("The number of keys and values should be equal.");
+        }
+        final List<V> results = nullList(keys.size());
+        sendMany(keys,
+                indices -> requests.newPutMany(select(keys, indices), select(values, indices)),
+                ResultResponse.class,
+                (indices, response) -> collectValues(indices, response, results));
+        return results;
+    }
+
+    /**
+     * Retrieve the values associated with several keys, sending a single request to each host.
+     *
+     * @return                          The values associated with the keys, in the order of the keys.
+     */
+    public List<V> getMany(final List<K> keys) {
+        final List<V> results = nullList(keys.size());
+        sendMany(keys,
+                indices -> requests.newGetMany(select(keys, indices)),
+                ResultResponse.class,
+                (indices, response) -> collectValues(indices, response, results));
+        return results;
+    }
+
+    /**
+     * Remove several keys, sending a single request to each host.
+     *
+     * @return                          The removed values, in the order of the keys.
+     */
+    public List<V> removeMany(final List<K> keys) {
+        final List<V> results = nullList(keys.size());
+        sendMany(keys,
+                indices -> requests.newDeleteMany(select(keys, indices)),
+                ResultResponse.class,
+                (indices, response) -> collectValues(indices, response, results));
+        return results;
+    }
+
+    /**
+     * Check which of the keys are in the index, sending a single request to each host.
+     *
+     * @return                          A bitmap where the bit at the position of each key is set if the key
+     *                                  is present in the index.
+     */
+    public BitSet containsMany(final List<K> keys) {
+        final BitSet results = new BitSet(keys.size());
+        sendMany(keys,
+                indices -> requests.newContainsMany(select(keys, indices)),
+                MapResponse.class,
+                (indices, response) -> {
+                    BitSet contained = BitSet.valueOf((byte[]) response.getParameter("contains"));
+                    for (int i = contained.nextSetBit(0); i >= 0; i = contained.nextSetBit(i + 1)) {
+                        results.set(indices.get(i));
+                    }
+                });
+        return results;
+    }
+
+    /**
+     * Send a batch operation on a list of keys. The positions of the keys are grouped by the host holding
+     * the keys, ordered with {@link #sortBatch(List, List)} and split in chunks of at most maxBatchSize keys. A request is created for each chunk and
+     * all requests are sent in parallel.
+     *
+     * The hosts reject the whole request if the mapping version is outdated, in which case the keys of the
+     * request are grouped again using the current mapping and sent in another round.
+     *
+     * @param keys                      The keys of the operation.
+     * @param requestFactory            Creates the request for the keys at the positions received as argument.
+     * @param clazz                     The class of the expected responses.
+     * @param consumer                  Processes each response, together with the positions of its keys.
+     */
+    private <R extends Response> void sendMany(List<K> keys, Function<List<Integer>, Request> requestFactory,
+                                               Class<R> clazz, BiConsumer<List<Integer>, R> consumer) {
+        List<Integer> pending = new ArrayList<>(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            pending.add(i);
+        }
+        while (!pending.isEmpty()) {
+            KeyMapping<K> keyMapping = clusterService.getMapping();
+            Map<String, List<Integer>> byHost = new LinkedHashMap<>();
+            for (int position : pending) {
+                String hostId = keyMapping.get(keys.get(position));
+                List<Integer> positions = byHost.get(hostId);
+                if (positions == null) {
+                    positions = new ArrayList<>();
+                    byHost.put(hostId, positions);
+                }
+                positions.add(position);
+            }
+
+            List<List<Integer>> chunks = new ArrayList<>();
+            List<Request> sent = new ArrayList<>();
+            List<CompletableFuture<R>> futures = new ArrayList<>();
+            for (Map.Entry<String, List<Integer>> entry : byHost.entrySet()) {
+                List<Integer> positions = entry.getValue();
+                sortBatch(keys, positions);
+                for (int from = 0; from < positions.size(); from += maxBatchSize) {
+                    List<Integer> chunk = positions.subList(from, Math.min(positions.size(), from + maxBatchSize));
+                    Request request = requestFactory.apply(chunk);
+                    chunks.add(chunk);
+                    sent.add(request);
+                    futures.add(requestDispatcher.sendAsync(entry.getKey(), request, clazz));
+                }
+            }
+
+            List<Integer> outdated = new ArrayList<>();
+            for (int i = 0; i < futures.size(); i++) {
+                R response = futures.get(i).join();
+                if (check(sent.get(i), response)) {
+                    outdated.addAll(chunks.get(i));
+                } else {
+                    consumer.accept(chunks.get(i), response);
+                }
+            }
+            pending = outdated;
+        }
+    }
+
+    /**
+     * Order the positions of the keys sent to a host in a batch. The keys of a batch are encoded as the
+     * difference to the previous key when the key codec supports it, so an order placing close keys next
+     * to each other makes the requests smaller. The default keeps the order of the keys.
+     *
+     * @param keys                      The keys of the operation.
+     * @param positions                 The positions of the keys sent to the host.
+     */
+    protected void sortBatch(List<K> keys, List<Integer> positions) {
+    }
+
+    protected static <T> List<T> select(List<T> list, List<Integer> positions) {
+        List<T> selected = new ArrayList<>(positions.size());
+        for (int position : positions) {
+            selected.add(list.get(position));
+        }
+        return selected;
+    }
+
+    private static <T> List<T> nullList(int size) {
+        return new ArrayList<>(Collections.<T>nCopies(size, null));
+    }
+
+    private void collectValues(List<Integer> positions, ResultResponse<K, V> response, List<V> results) {
+        List<IndexEntry<K, V>> entries = response.getEntries();
+        for (int i = 0; i < positions.size(); i++) {
+            results.set(positions.get(i), entries.get(i).getValue());
+        }
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    /**
+     * Set the maximum number of keys sent to a host in a single request by the batch operations. Larger
+     * batches for the same host are split over several requests.
+     */
+    public void setMaxBatchSize(int maxBatchSize) {
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("The batch size should be positive.");
+        }
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    public int getStreamWindow() {
+        return streamWindow;
+    }
+
+    /**
+     * Set the number of chunks a host can push to an iterator before waiting for the iterator to consume them.
+     * Setting the window to 0 makes the iterators request each batch from the hosts instead.
+     */
+    public void setStreamWindow(int streamWindow) {
+        if (streamWindow < 0) {
+            throw new IllegalArgumentException("The stream window should not be negative.");
+        }
+        this.streamWindow = streamWindow;
+    }
+
+    public int getStreamChunkSize() {
+        return streamChunkSize;
+    }
+
+    public void setStreamChunkSize(int streamChunkSize) {
+        if (streamChunkSize <= 0) {
+            throw new IllegalArgumentException("The chunk size should be positive.");
+        }
+        this.streamChunkSize = streamChunkSize;
+    }
+
+    /**
+     * Asynchronous version of {@link #put(Object, Object)}.
+     *
+     * @return                          A future completed with the previous value associated with the key.
+     */
+    public CompletableFuture<V> putAsync(final K key, final V value) {
+        return sendResultAsync(
+                () -> clusterService.getMapping().get(key),
+                () -> requests.newPut(key, value)).thenApply(response -> getSingleEntryValue(response));
+    }
+
+    /**
+     * Asynchronous version of {@link #get(Object)}.
+     *
+     * @return                          A future completed with the value associated with the key.
+     */
+    public CompletableFuture<V> getAsync(final K key) {
+        return sendResultAsync(
+                () -> clusterService.getMapping().get(key),
+                () -> requests.newGet(key)).thenApply(response -> getSingleEntryValue(response));
+    }
+
+    /**
+     * Asynchronous version of {@link #remove(Object)}.
+     *
+     * @return                          A future completed with the removed value.
+     */
+    public CompletableFuture<V> removeAsync(final K key) {
+        return sendResultAsync(
+                () -> clusterService.getMapping().get(key),
+                () -> requests.newDelete(key)).thenApply(response -> getSingleEntryValue(response));
+    }
+
+    /**
+     * Asynchronous version of {@link #contains(Object)}.
+     *
+     * @return                          A future completed with true if the key is present in the index.
+     */
+    public CompletableFuture<Boolean> containsAsync(final K key) {
+        return sendAsync(
+                () -> clusterService.getMapping().get(key),
+                () -> requests.newContains(key),
+                IntegerResponse.class).thenApply(response -> response.getContent() == 1);
+    }
+
+    /**
+     * Asynchronous version of {@link #getRange(Object, Object)}.
+     *
+     * The range sees the writes sent to its hosts before it, even if their futures are not completed yet.
+     *
+     * @return                          A future completed with the entries in the range.
+     */
+    public CompletableFuture<IndexEntryList<K, V>> getRangeAsync(final K start, final K end) {
+        return sendAllAsync(
+                () -> clusterService.getMapping().get(start, end),
+                () -> requests.newGetRange(start, end),
+                ResultResponse.class).thenApply(responses -> combine(responses));
+    }
+
+    /**
+     * Asynchronous version of {@link #size()}.
+     *
+     * @return                          A future completed with the number of entries in the index.
+     */
+    public CompletableFuture<Integer> sizeAsync() {
+        return sendAllAsync(
+                () -> clusterService.getMapping().get(),
+                () -> requests.newGetSize(),
+                IntegerResponse.class).thenApply(responses -> {
+                    int size = 0;
+                    for (IntegerResponse response : responses) {
+                        size += response.getContent();
+                    }
+                    return size;
+                });
+    }
+
     public ResultResponse<K, V> getNextBatch(String hostId, String iteratorId, int size, K start, K end) {
         boolean versionOutdated;
         ResultResponse<K, V> response;
@@ -208,6 +546,22 @@ public class IndexProxy<K, V> implements Index<K, V>, Closeable, AutoCloseable {
         return response;
     }
 
+    /**
+     * Asynchronous version of {@link #getNextBatch(String, String, int, Object, Object)}.
+     *
+     * @param start                     The start of the range, null if the iterator is not ranged.
+     * @param end                       The end of the range, null if the iterator is not ranged.
+     * @return                          A future completed with the next batch.
+     */
+    public CompletableFuture<ResultResponse<K, V>> getNextBatchAsync(final String hostId, final String iteratorId,
+                                                                     final int size, final K start, final K end) {
+        return sendResultAsync(
+                () -> hostId,
+                () -> (start == null)
+                        ? requests.newGetBatch(iteratorId, size)
+                        : requests.newGetBatch(iteratorId, size, start, end));
+    }
+
     public ResultResponse<K, V> getNextBatch(String hostId, String iteratorId, int size) {
         boolean versionOutdated;
         ResultResponse<K, V> response;
@@ -220,6 +574,52 @@ public class IndexProxy<K, V> implements Index<K, V>, Closeable, AutoCloseable {
         return response;
     }
 
+    /**
+     * @return                          True if the iterators should stream the entries from the hosts.
+     */
+    boolean isStreaming() {
+        return streamWindow > 0 && requestDispatcher.supportsStreams();
+    }
+
+    /**
+     * Open a streaming scan on a host.
+     *
+     * @param hostId                    The host.
+     * @param iteratorId                The iterator continued by the stream, or "" to start a new scan.
+     * @param start                     The start of the range, null if the scan is not ranged.
+     * @param end                       The end of the range, null if the scan is not ranged.
+     * @return                          The stream.
+     */
+    ResultStream<K, V> openStream(String hostId, String iteratorId, int chunkSize, K start, K end) {
+        return openStream(hostId, iteratorId, chunkSize, start, end, null);
+    }
+
+    /**
+     * Open a streaming scan on a host, running the callback each time a chunk arrives.
+     */
+    ResultStream<K, V> openStream(String hostId, String iteratorId, int chunkSize, K start, K end, Runnable onArrival) {
+        GetStreamRequest<K> request = (start == null)
+                ? requests.newGetStream(iteratorId, chunkSize, streamWindow)
+                : requests.newGetStream(iteratorId, chunkSize, start, end, streamWindow);
+        ResultStream<K, V> stream = new ResultStream<>(this, hostId, request, maxBatchSize, onArrival);
+        requestDispatcher.sendAndStream(hostId, request, ResultResponse.class, stream);
+        return stream;
+    }
+
+    void grantCredit(String hostId, int streamId, int credit, int chunkSize) {
+        requestDispatcher.sendOneWay(hostId, requests.newStreamCredit(streamId, credit, chunkSize));
+    }
+
+    void closeStream(ResultStream<K, V> stream, IndexIterator<K, V> it) {
+        try {
+            if (stream != null) {
+                stream.cancel();
+            }
+        } finally {
+            openIterators.remove(it);
+        }
+    }
+
     public void closeIterator(String hostId, String iteratorId, IndexIterator<K, V> it) {
         try {
             MapRequest request = requests.newMap(OpCode.CLOSE_ITERATOR);
@@ -247,6 +647,76 @@ public class IndexProxy<K, V> implements Index<K, V>, Closeable, AutoCloseable {
         return it;
     }
 
+    /**
+     * Iterate over all of the entries, scanning all of the hosts at once. The entries of different hosts
+     * are returned in no particular order.
+     */
+    public IndexIterator<K, V> unorderedIterator() {
+        return unorderedScan(clusterService.getMapping().get(), null, null);
+    }
+
+    /**
+     * Iterate over the entries in a range, scanning all of the hosts holding parts of the range at once.
+     * The entries of different hosts are returned in no particular order.
+     */
+    public IndexIterator<K, V> unorderedQuery(K start, K end) {
+        return unorderedScan(clusterService.getMapping().get(start, end), start, end);
+    }
+
+    /**
+     * The iterators of the hosts are only closed once they are drained, so prefer {@link #stream()} if
+     * the traversal can stop early.
+     *
+     * @return                          A spliterator over all of the entries, split by host.
+     */
+    public IndexSpliterator<K, V> spliterator() {
+        return new IndexSpliterator<>(this, clusterService.getMapping().get(), null, null);
+    }
+
+    /**
+     * The iterators of the hosts are only closed once they are drained, so prefer {@link #stream(Object, Object)}
+     * if the traversal can stop early.
+     *
+     * @return                          A spliterator over the entries in a range, split by host.
+     */
+    public IndexSpliterator<K, V> spliterator(K start, K end) {
+        return new IndexSpliterator<>(this, clusterService.getMapping().get(start, end), start, end);
+    }
+
+    /**
+     * Stream all of the entries, scanning the hosts in parallel. The returned stream should be closed, for
+     * example with try-with-resources, to close the scans of the hosts which were not drained.
+     *
+     * @return                          A parallel stream over all of the entries.
+     */
+    public Stream<IndexEntry<K, V>> stream() {
+        return stream(spliterator());
+    }
+
+    /**
+     * Stream the entries in a range, scanning the hosts in parallel. The returned stream should be closed, for
+     * example with try-with-resources, to close the scans of the hosts which were not drained.
+     *
+     * @return                          A parallel stream over the entries in the range.
+     */
+    public Stream<IndexEntry<K, V>> stream(K start, K end) {
+        return stream(spliterator(start, end));
+    }
+
+    private Stream<IndexEntry<K, V>> stream(IndexSpliterator<K, V> spliterator) {
+        return StreamSupport.stream(spliterator, true).onClose(spliterator::close);
+    }
+
+    UnorderedIndexIterator<K, V> unorderedScan(List<String> hostIds, K start, K end) {
+        UnorderedIndexIterator<K, V> it = new UnorderedIndexIterator<>(this, hostIds, start, end);
+        openIterators.add(it);
+        return it;
+    }
+
+    void iteratorClosed(IndexIterator<K, V> it) {
+        openIterators.remove(it);
+    }
+
     public int size() {
         boolean versionOutdated;
         List<IntegerResponse> responses;
@@ -377,6 +847,104 @@ public class IndexProxy<K, V> implements Index<K, V>, Closeable, AutoCloseable {
         return false;
     }
 
+    /**
+     * Send a request to a single host without blocking.
+     *
+     * The host and the request are obtained from the suppliers for each attempt. If the host replies that
+     * the mapping version is outdated, the request is sent again using the current mapping, after a delay
+     * that doubles with each attempt. The retries run on the executor of the transport, as the response
+     * future may be completed on a thread that should not block. After {@link #MAX_ASYNC_ATTEMPTS} attempts
+     * the future is completed exceptionally.
+     *
+     * @param hostSupplier              Provides the host to which the request is sent.
+     * @param requestSupplier           Provides a new request for each attempt.
+     * @param clazz                     The class of the expected response.
+     * @return                          A future completed with the first response that is not outdated.
+     */
+    protected <R extends Response> CompletableFuture<R> sendAsync(final Supplier<String> hostSupplier,
+                                                                  final Supplier<? extends Request> requestSupplier,
+                                                                  final Class<R> clazz) {
+        return sendAsync(hostSupplier, requestSupplier, clazz, 1);
+    }
+
+    private <R extends Response> CompletableFuture<R> sendAsync(final Supplier<String> hostSupplier,
+                                                                final Supplier<? extends Request> requestSupplier,
+                                                                final Class<R> clazz, final int attempt) {
+        String hostId = hostSupplier.get();
+        final Request request = requestSupplier.get();
+        return requestDispatcher.sendAsync(hostId, request, clazz).thenCompose(response -> {
+            if (check(request, response)) {
+                return retryLater(attempt, () -> sendAsync(hostSupplier, requestSupplier, clazz, attempt + 1));
+            }
+            return CompletableFuture.completedFuture(response);
+        });
+    }
+
+    /**
+     * Send a request to multiple hosts without blocking. Outdated versions are handled as in
+     * {@link #sendAsync(Supplier, Supplier, Class)}.
+     */
+    protected <R extends Response> CompletableFuture<List<R>> sendAllAsync(final Supplier<List<String>> hostsSupplier,
+                                                                           final Supplier<? extends Request> requestSupplier,
+                                                                           final Class<R> clazz) {
+        return sendAllAsync(hostsSupplier, requestSupplier, clazz, 1);
+    }
+
+    private <R extends Response> CompletableFuture<List<R>> sendAllAsync(final Supplier<List<String>> hostsSupplier,
+                                                                         final Supplier<? extends Request> requestSupplier,
+                                                                         final Class<R> clazz, final int attempt) {
+        List<String> hostIds = hostsSupplier.get();
+        final Request request = requestSupplier.get();
+        return requestDispatcher.sendAsync(hostIds, request, clazz).thenCompose(responses -> {
+            if (check(request, responses)) {
+                return retryLater(attempt, () -> sendAllAsync(hostsSupplier, requestSupplier, clazz, attempt + 1));
+            }
+            return CompletableFuture.completedFuture(responses);
+        });
+    }
+
+    /**
+     * Run the retry of an asynchronous request once its delay elapsed. Without an executor, the asynchronous
+     * sends are completed on the calling thread, so the retry waits on it as well.
+     *
+     * @param attempt                   The number of attempts made so far.
+     * @param retry                     Sends the request again.
+     * @return                          The future of the retry.
+     */
+    private <T> CompletableFuture<T> retryLater(int attempt, final Supplier<CompletableFuture<T>> retry) {
+        final CompletableFuture<Void> delay = new CompletableFuture<>();
+        long delayMillis = ASYNC_RETRY_DELAY_MILLIS << (attempt - 1);
+        ScheduledExecutorService executor = requestDispatcher.getExecutor();
+        try {
+            if (attempt >= MAX_ASYNC_ATTEMPTS) {
+                throw new IllegalStateException("The mapping version was still outdated after " + attempt + " attempts.");
+            }
+            if (executor == null) {
+                Thread.sleep(delayMillis);
+                delay.complete(null);
+            } else {
+                executor.schedule(() -> delay.complete(null), delayMillis, TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            delay.completeExceptionally(e);
+        } catch (RuntimeException e) {
+            delay.completeExceptionally(e);
+        }
+        return delay.thenCompose(ignored -> retry.get());
+    }
+
+    /**
+     * Send a request answered with entries of this index without blocking, as in
+     * {@link #sendAsync(Supplier, Supplier, Class)}.
+     */
+    @SuppressWarnings("unchecked")
+    private CompletableFuture<ResultResponse<K, V>> sendResultAsync(final Supplier<String> hostSupplier,
+                                                                   final Supplier<? extends Request> requestSupplier) {
+        return (CompletableFuture<ResultResponse<K, V>>) (CompletableFuture<?>)
+                sendAsync(hostSupplier, requestSupplier, ResultResponse.class);
+    }
+
     private V getSingleEntryValue(ResultResponse<K, V> response) {
         return (response.getNrEntries() == 0) ? null :  response.singleEntry().getValue();
     }
@@ -394,7 +962,8 @@ public class IndexProxy<K, V> implements Index<K, V>, Closeable, AutoCloseable {
     }
 
     private void closeOpenIterators() throws IOException {
-        for (IndexIterator<K, V> it : openIterators) {
+        //closing an iterator removes it from the open iterators
+        for (IndexIterator<K, V> it : new ArrayList<>(openIterators)) {
             it.close();
         }
     }
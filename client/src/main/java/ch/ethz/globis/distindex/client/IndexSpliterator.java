@@ -0,0 +1,135 @@
+/*
+This file is part of PH-Tree:
+A multi-dimensional indexing and storage structure.
+
+Copyright (C) 2011-2015
+Eidgenössische Technische Hochschule Zürich (ETH Zurich)
+Institute for Information Systems
+GlobIS Group
+Bogdan Vancea, Tilmann Zaeschke
+zaeschke@inf.ethz.ch or zoodb@gmx.de
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package ch.ethz.globis.distindex.client;
+
+import ch.ethz.globis.distindex.api.IndexEntry;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+/**
+ * Splits a scan over a distributed index by host, so that the hosts can be scanned in parallel, for example
+ * with {@code StreamSupport.stream(spliterator, true)}.
+ *
+ * The hosts covered by a spliterator are scanned with an {@link UnorderedIndexIterator}, opened when the first
+ * entry is requested and closed once all of the entries were returned. A traversal stopping early, like
+ * findFirst() or limit() on a stream, leaves the iterators open until {@link #close()} is called on the
+ * spliterator it was split from, which {@link IndexProxy#stream()} does when the stream is closed.
+ *
+ * @param <K>                                   The class of the keys.
+ * @param <V>                                   The class of the values.
+ */
+public class IndexSpliterator<K, V> implements Spliterator<IndexEntry<K, V>> {
+
+    private final IndexProxy<K, V> indexProxy;
+
+    /** The hosts to scan. Only the hosts between low and high are covered by this spliterator. */
+    private final List<String> hostIds;
+
+    private int low;
+
+    private final int high;
+
+    /** The start of the range, null if all entries are scanned. */
+    private final K start;
+
+    /** The end of the range, null if all entries are scanned. */
+    private final K end;
+
+    /** The iterator over the covered hosts, null until the first entry is requested. */
+    private UnorderedIndexIterator<K, V> it;
+
+    /** The iterators opened by this spliterator and by the ones split from it. */
+    private final Queue<UnorderedIndexIterator<K, V>> opened;
+
+    IndexSpliterator(IndexProxy<K, V> indexProxy, List<String> hostIds, K start, K end) {
+        this(indexProxy, hostIds, 0, hostIds.size(), start, end, new ConcurrentLinkedQueue<>());
+    }
+
+    private IndexSpliterator(IndexProxy<K, V> indexProxy, List<String> hostIds, int low, int high, K start, K end,
+                             Queue<UnorderedIndexIterator<K, V>> opened) {
+        this.indexProxy = indexProxy;
+        this.opened = opened;
+        this.hostIds = hostIds;
+        this.low = low;
+        this.high = high;
+        this.start = start;
+        this.end = end;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super IndexEntry<K, V>> action) {
+        if (it == null) {
+            if (low == high) {
+                return false;
+            }
+            it = indexProxy.unorderedScan(hostIds.subList(low, high), start, end);
+            opened.add(it);
+            low = high;
+        }
+        if (it.hasNext()) {
+            action.accept(it.next());
+            return true;
+        }
+        it.close();
+        opened.remove(it);
+        return false;
+    }
+
+    /**
+     * Close the iterators still open, whether they were opened by this spliterator or by the ones split from it.
+     */
+    public void close() {
+        UnorderedIndexIterator<K, V> open;
+        while ((open = opened.poll()) != null) {
+            open.close();
+        }
+    }
+
+    @Override
+    public Spliterator<IndexEntry<K, V>> trySplit() {
+        if (it != null || high - low < 2) {
+            return null;
+        }
+        int middle = (low + high) >>> 1;
+        IndexSpliterator<K, V> prefix = new IndexSpliterator<>(indexProxy, hostIds, low, middle, start, end, opened);
+        low = middle;
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+        return (it == null && low == high) ? 0 : Long.MAX_VALUE;
+    }
+
+    @Override
+    public int characteristics() {
+        //the hosts hold disjoint parts of the key space
+        return DISTINCT | NONNULL;
+    }
+}
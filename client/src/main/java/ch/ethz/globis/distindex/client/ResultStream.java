@@ -0,0 +1,177 @@
+/*
+This file is part of PH-Tree:
+A multi-dimensional indexing and storage structure.
+
+Copyright (C) 2011-2015
+Eidgenössische Technische Hochschule Zürich (ETH Zurich)
+Institute for Information Systems
+GlobIS Group
+Bogdan Vancea, Tilmann Zaeschke
+zaeschke@inf.ethz.ch or zoodb@gmx.de
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package ch.ethz.globis.distindex.client;
+
+import ch.ethz.globis.disindex.codec.io.StreamListener;
+import ch.ethz.globis.distindex.client.exception.ServerErrorException;
+import ch.ethz.globis.distindex.operation.OpStatus;
+import ch.ethz.globis.distindex.operation.request.GetStreamRequest;
+import ch.ethz.globis.distindex.operation.response.ResultResponse;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Buffers the chunks pushed by a host for a streaming scan.
+ *
+ * The host can push up to window chunks ahead of the consumer. Credit is granted back in bulk, once half of the
+ * window was consumed, so the host keeps pushing while the consumer works through the buffered chunks.
+ *
+ * If the consumer had to wait for full chunks since the last grant, the host does not keep up with one chunk at
+ * a time and the grant doubles the size of the next chunks, up to a maximum.
+ *
+ * @param <K>                               The class of the keys.
+ * @param <V>                               The class of the values.
+ */
+class ResultStream<K, V> implements StreamListener<ResultResponse> {
+
+    private final IndexProxy<K, V> indexProxy;
+
+    private final String hostId;
+
+    /** The request that opened the stream. */
+    private final GetStreamRequest<K> request;
+
+    /** The chunks received and not yet consumed, or the error that ended the stream. */
+    private final BlockingQueue<Object> chunks = new LinkedBlockingQueue<>();
+
+    /** The number of chunks consumed since credit was last granted. */
+    private int consumed = 0;
+
+    /** The number of entries in the chunks requested from the host. */
+    private int chunkSize;
+
+    private final int maxChunkSize;
+
+    /** Whether the consumer waited for a full chunk since credit was last granted. */
+    private boolean starved = false;
+
+    /** Whether a chunk was consumed. Waiting for the first chunk only reflects the latency of the host. */
+    private boolean started = false;
+
+    /** Notified on the transport thread after each chunk or error is buffered. Null if nobody is notified. */
+    private final Runnable onArrival;
+
+    /** Set once the last chunk was received. */
+    private volatile boolean done = false;
+
+    ResultStream(IndexProxy<K, V> indexProxy, String hostId, GetStreamRequest<K> request, int maxChunkSize,
+                 Runnable onArrival) {
+        this.indexProxy = indexProxy;
+        this.hostId = hostId;
+        this.request = request;
+        this.onArrival = onArrival;
+        this.chunkSize = request.getBatchSize();
+        this.maxChunkSize = Math.max(maxChunkSize, chunkSize);
+    }
+
+    @Override
+    public boolean onReply(ResultResponse chunk) {
+        boolean last = chunk.getStatus() != OpStatus.SUCCESS || "".equals(chunk.getIteratorId());
+        if (last) {
+            done = true;
+        }
+        chunks.add(chunk);
+        notifyArrival();
+        return last;
+    }
+
+    @Override
+    public void onError(Throwable cause) {
+        done = true;
+        chunks.add(cause);
+        notifyArrival();
+    }
+
+    private void notifyArrival() {
+        if (onArrival != null) {
+            onArrival.run();
+        }
+    }
+
+    /**
+     * Wait for the next chunk of the stream.
+     *
+     * @return                              The next chunk.
+     */
+    @SuppressWarnings("unchecked")
+    ResultResponse<K, V> take() {
+        Object next;
+        boolean waited = chunks.isEmpty();
+        try {
+            next = chunks.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServerErrorException("Interrupted while waiting for a chunk from host " + hostId, e);
+        }
+        if (next instanceof Throwable) {
+            throw new ServerErrorException("The stream from host " + hostId + " failed.", (Throwable) next);
+        }
+        ResultResponse<K, V> chunk = (ResultResponse<K, V>) next;
+        starved |= started && waited && chunk.getNrEntries() >= chunkSize;
+        started = true;
+        if (!done && ++consumed >= (request.getCredit() + 1) / 2) {
+            if (starved) {
+                chunkSize = Math.min(2 * chunkSize, maxChunkSize);
+                starved = false;
+            }
+            indexProxy.grantCredit(hostId, request.getId(), consumed, chunkSize);
+            consumed = 0;
+        }
+        return chunk;
+    }
+
+    /**
+     * Cancel the stream, if the host might still push chunks.
+     */
+    void cancel() {
+        if (!done) {
+            done = true;
+            indexProxy.grantCredit(hostId, request.getId(), 0, chunkSize);
+        }
+    }
+
+    /**
+     * @return                              True if the host pushed the last chunk of the stream.
+     */
+    boolean isDone() {
+        return done;
+    }
+
+    /**
+     * @return                              The size of the chunks last requested from the host.
+     */
+    int getChunkSize() {
+        return chunkSize;
+    }
+
+    GetStreamRequest<K> getRequest() {
+        return request;
+    }
+
+    String getHostId() {
+        return hostId;
+    }
+}
@@ -0,0 +1,267 @@
+/*
+This file is part of PH-Tree:
+A multi-dimensional indexing and storage structure.
+
+Copyright (C) 2011-2015
+Eidgenössische Technische Hochschule Zürich (ETH Zurich)
+Institute for Information Systems
+GlobIS Group
+Bogdan Vancea, Tilmann Zaeschke
+zaeschke@inf.ethz.ch or zoodb@gmx.de
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package ch.ethz.globis.distindex.client;
+
+import ch.ethz.globis.distindex.api.IndexEntry;
+import ch.ethz.globis.distindex.api.IndexEntryList;
+import ch.ethz.globis.distindex.api.IndexIterator;
+import ch.ethz.globis.distindex.client.exception.ServerErrorException;
+import ch.ethz.globis.distindex.operation.OpStatus;
+import ch.ethz.globis.distindex.operation.request.GetStreamRequest;
+import ch.ethz.globis.distindex.operation.response.ResultResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Iterates over the entries of several hosts, without any ordering between the entries of different hosts.
+ *
+ * The scans are opened on all of the hosts at once and the batches are returned in the order in which they
+ * arrive, so the iteration takes about as long as the scan of the slowest host.
+ *
+ * @param <K>                                   The class of the keys.
+ * @param <V>                                   The class of the values.
+ */
+public class UnorderedIndexIterator<K, V> implements IndexIterator<K, V> {
+
+    /** The index over which the iterator is running. */
+    private final IndexProxy<K, V> indexProxy;
+
+    /** The start of the iterator range, null if the iterator is not ranged. */
+    private final K start;
+
+    /** The end of the iterator range, null if the iterator is not ranged. */
+    private final K end;
+
+    /** Whether the entries are streamed from the hosts. */
+    private final boolean streaming;
+
+    /** The scans of the hosts. */
+    private final List<HostScan> scans = new ArrayList<>();
+
+    /** The scans with a batch ready to be taken, once for each batch. */
+    private final BlockingQueue<HostScan> ready = new LinkedBlockingQueue<>();
+
+    /** The number of scans that did not return their last batch. */
+    private int active;
+
+    /** The entries that are currently buffered. */
+    private IndexEntryList<K, V> entryBuffer = new IndexEntryList<>();
+
+    /** The position within the entry buffer. */
+    private int position = 0;
+
+    /**
+     * @param indexProxy                            The index proxy instance which created the iterator.
+     * @param hostIds                               The hosts to scan.
+     * @param start                                 The start key of the range, null to scan all entries.
+     * @param end                                   The end key of the range, null to scan all entries.
+     */
+    UnorderedIndexIterator(IndexProxy<K, V> indexProxy, List<String> hostIds, K start, K end) {
+        this.indexProxy = indexProxy;
+        this.start = start;
+        this.end = end;
+        this.streaming = indexProxy.isStreaming();
+        for (String hostId : hostIds) {
+            HostScan scan = new HostScan(hostId);
+            scans.add(scan);
+            scan.open();
+        }
+        this.active = scans.size();
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (position >= entryBuffer.size()) {
+            if (active == 0) {
+                return false;
+            }
+            getRemoteEntries();
+        }
+        return true;
+    }
+
+    @Override
+    public IndexEntry<K, V> next() {
+        if (!hasNext()) {
+            return null;
+        }
+        return entryBuffer.get(position++);
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("Remove operation not currently supported.");
+    }
+
+    /**
+     * Wait for the next batch of any of the hosts and keep it in the entry buffer.
+     */
+    private void getRemoteEntries() {
+        HostScan scan;
+        try {
+            scan = ready.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServerErrorException("Interrupted while waiting for the hosts.", e);
+        }
+        ResultResponse<K, V> response = scan.next();
+        if (scan.finished) {
+            active--;
+        }
+        if (response != null && response.getEntries() != null) {
+            entryBuffer = response.getEntries();
+            position = 0;
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            for (HostScan scan : scans) {
+                if (!scan.finished) {
+                    scan.finished = true;
+                    scan.close();
+                }
+            }
+        } finally {
+            indexProxy.iteratorClosed(this);
+            entryBuffer = new IndexEntryList<>();
+            active = 0;
+        }
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * The scan of a single host.
+     */
+    private class HostScan implements Runnable {
+
+        private final String hostId;
+
+        /** The iterator on the host, "" until the first batch is received. */
+        private String iteratorId = "";
+
+        /** The stream from the host, if streaming. */
+        private ResultStream<K, V> stream;
+
+        /** The batch requested from the host, if polling. */
+        private CompletableFuture<ResultResponse<K, V>> pending;
+
+        private boolean finished = false;
+
+        private HostScan(String hostId) {
+            this.hostId = hostId;
+        }
+
+        /**
+         * Open a stream from the last iterator received, or request the next batch.
+         */
+        private void open() {
+            int size = indexProxy.getStreamChunkSize();
+            if (streaming) {
+                stream = indexProxy.openStream(hostId, iteratorId, size, start, end, this);
+            } else {
+                pending = indexProxy.getNextBatchAsync(hostId, iteratorId, size, start, end);
+                pending.whenComplete((response, error) -> run());
+            }
+        }
+
+        /**
+         * Called once a batch is ready.
+         */
+        @Override
+        public void run() {
+            ready.add(this);
+        }
+
+        /**
+         * Take the batch that is ready.
+         *
+         * @return                                  The batch, or null if the host asked to reopen the stream.
+         */
+        private ResultResponse<K, V> next() {
+            ResultResponse<K, V> response;
+            if (streaming) {
+                response = stream.take();
+                if (response.getStatus() != OpStatus.SUCCESS || "".equals(response.getIteratorId())) {
+                    GetStreamRequest<K> request = stream.getRequest();
+                    stream = null;
+                    if (indexProxy.check(request, response)) {
+                        open();
+                        return null;
+                    }
+                    finished = true;
+                }
+                iteratorId = response.getIteratorId();
+            } else {
+                CompletableFuture<ResultResponse<K, V>> future = pending;
+                pending = null;
+                response = join(future);
+                iteratorId = response.getIteratorId();
+                if ("".equals(iteratorId)) {
+                    finished = true;
+                } else {
+                    open();
+                }
+            }
+            return response;
+        }
+
+        private void close() {
+            if (streaming) {
+                if (stream != null) {
+                    stream.cancel();
+                }
+                return;
+            }
+            if (pending != null) {
+                try {
+                    iteratorId = join(pending).getIteratorId();
+                } catch (RuntimeException e) {
+                    //the host did not open an iterator
+                    return;
+                }
+            }
+            if (!"".equals(iteratorId)) {
+                indexProxy.closeIterator(hostId, iteratorId, UnorderedIndexIterator.this);
+            }
+        }
+    }
+}
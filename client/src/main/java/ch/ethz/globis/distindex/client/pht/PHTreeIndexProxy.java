@@ -27,9 +27,16 @@ package ch.ethz.globis.distindex.client.pht;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -41,19 +48,28 @@ import ch.ethz.globis.disindex.codec.api.RequestEncoder;
 import ch.ethz.globis.disindex.codec.api.ResponseDecoder;
 import ch.ethz.globis.disindex.codec.field.MultiLongEncoderDecoder;
 import ch.ethz.globis.disindex.codec.field.SerializingEncoderDecoder;
-import ch.ethz.globis.disindex.codec.io.AsyncTCPClient;
+import ch.ethz.globis.disindex.codec.compression.FrameCompression;
+import ch.ethz.globis.disindex.codec.io.NettyTCPClient;
 import ch.ethz.globis.disindex.codec.io.ClientRequestDispatcher;
 import ch.ethz.globis.disindex.codec.io.RequestDispatcher;
-import ch.ethz.globis.disindex.codec.io.Transport;
 import ch.ethz.globis.distindex.api.IndexEntry;
+import ch.ethz.globis.distindex.api.IndexEntryList;
 import ch.ethz.globis.distindex.api.PointIndex;
+import ch.ethz.globis.distindex.api.RangeAggregate;
 import ch.ethz.globis.distindex.client.IndexProxy;
 import ch.ethz.globis.distindex.mapping.KeyMapping;
+import ch.ethz.globis.distindex.mapping.zorder.ZMapping;
+import ch.ethz.globis.distindex.operation.OpStatus;
+import ch.ethz.globis.distindex.operation.predicate.BuiltinPredicate;
+import ch.ethz.globis.distindex.operation.request.AggregateRangeRequest;
 import ch.ethz.globis.distindex.operation.request.BaseRequest;
 import ch.ethz.globis.distindex.operation.request.GetKNNRequest;
 import ch.ethz.globis.distindex.operation.request.GetRangeFilterMapperRequest;
 import ch.ethz.globis.distindex.operation.request.GetRangeRequest;
+import ch.ethz.globis.distindex.operation.request.PutManyRequest;
 import ch.ethz.globis.distindex.operation.request.Requests;
+import ch.ethz.globis.distindex.operation.request.SampleRangeRequest;
+import ch.ethz.globis.distindex.operation.response.IntegerResponse;
 import ch.ethz.globis.distindex.operation.response.MapResponse;
 import ch.ethz.globis.distindex.operation.response.ResultResponse;
 import ch.ethz.globis.distindex.orchestration.ClusterService;
@@ -82,26 +98,75 @@ public class PHTreeIndexProxy<V> extends IndexProxy<long[], V> implements PointI
 
     private KNNStrategy<V> knnStrategy = new ZMappingKNNStrategy<>();
 
+    /** The number of entries sent to a host in a single request during a bulk load. */
+    private int bulkChunkSize = 64 * 1024;
+
+    /** The transport used to reach the hosts. */
+    private NettyTCPClient transport;
+
+    /** The maximum number of hosts queried at once by a range query with a limit. */
+    private int maxLimitFanout = 8;
+
     public PHTreeIndexProxy(ClusterService<long[]> clusterService) {
+        this(clusterService, new SerializingEncoderDecoder<V>());
+    }
+
+    /**
+     * Create a proxy encoding the values with the codec received as argument. The codec should match the
+     * type of the values, for example a ByteArrayEncoderDecoder for byte[] values, to avoid the cost of the
+     * generic serialization.
+     *
+     * @param clusterService                The cluster service.
+     * @param valueCodec                    The codec used for the values of this index.
+     */
+    public PHTreeIndexProxy(ClusterService<long[]> clusterService, FieldEncoderDecoder<V> valueCodec) {
+        this(clusterService, valueCodec, null);
+    }
+
+    /**
+     * Create a proxy whose channels to the hosts are compressed. Compression pays off for large results
+     * over slow networks, at the cost of CPU time on both sides.
+     *
+     * @param clusterService                The cluster service.
+     * @param valueCodec                    The codec used for the values of this index.
+     * @param compression                   The compression requested from the hosts, null to disable it.
+     */
+    public PHTreeIndexProxy(ClusterService<long[]> clusterService, FieldEncoderDecoder<V> valueCodec,
+                            FrameCompression compression) {
         this.clusterService = clusterService;
-        this.requestDispatcher = setupDispatcher();
+        this.requestDispatcher = setupDispatcher(valueCodec, compression);
         this.clusterService.connect();
         this.requests = new Requests<>(this.clusterService);
+        //the key decoder supports the compact encoding of result keys
+        this.requests.setCompactKeys(true);
     }
 
     public PHTreeIndexProxy(String host, int port) {
-        requestDispatcher = setupDispatcher();
+        this(host, port, new SerializingEncoderDecoder<V>());
+    }
+
+    public PHTreeIndexProxy(String host, int port, FieldEncoderDecoder<V> valueCodec) {
+        this(host, port, valueCodec, null);
+    }
+
+    /**
+     * Create a proxy whose channels to the hosts are compressed, as in
+     * {@link #PHTreeIndexProxy(ClusterService, FieldEncoderDecoder, FrameCompression)}.
+     */
+    public PHTreeIndexProxy(String host, int port, FieldEncoderDecoder<V> valueCodec, FrameCompression compression) {
+        requestDispatcher = setupDispatcher(valueCodec, compression);
         clusterService = setupClusterService(host, port);
         clusterService.connect();
         this.requests = new Requests<>(clusterService);
+        this.requests.setCompactKeys(true);
     }
 
-    private RequestDispatcher<long[], V> setupDispatcher() {
+    private RequestDispatcher<long[], V> setupDispatcher(FieldEncoderDecoder<V> valueEncoder,
+                                                         FrameCompression compression) {
         FieldEncoderDecoder<long[]> keyEncoder = new MultiLongEncoderDecoder();
-        FieldEncoderDecoder<V> valueEncoder = new SerializingEncoderDecoder<>();
         RequestEncoder encoder = new ByteRequestEncoder<>(keyEncoder, valueEncoder);
         ResponseDecoder<long[], V> decoder = new ByteResponseDecoder<>(keyEncoder, valueEncoder);
-        Transport transport = new AsyncTCPClient();
+        transport = new NettyTCPClient(0, NettyTCPClient.DEFAULT_MAX_FRAME_SIZE, compression);
 
         return new ClientRequestDispatcher<>(transport, encoder, decoder);
     }
@@ -116,6 +181,292 @@ public class PHTreeIndexProxy<V> extends IndexProxy<long[], V> implements PointI
     }
 
 
+    @Override
+    public int deleteRange(long[] start, long[] end, BuiltinPredicate filter) {
+        if (filter != null) {
+            //only the hosts holding keys that might match the predicate are sent the request
+            start = start.clone();
+            end = end.clone();
+            if (!filter.restrict(start, end)) {
+                return 0;
+            }
+        }
+        return super.deleteRange(start, end, filter);
+    }
+
+    /**
+     * Count the keys in a range. The hosts holding a part of the range only reply with their count.
+     *
+     * @return                          The number of keys in the range.
+     */
+    public long countRange(long[] start, long[] end) {
+        return aggregate(start, end, RangeAggregate.COUNT, 0, null).getCount();
+    }
+
+    /**
+     * Compute aggregates over the keys in a range, without transferring the keys.
+     *
+     * @param aggregates                The aggregates to compute, a combination of the flags of RangeAggregate.
+     * @param cells                     The number of histogram cells in each dimension, ignored if no
+     *                                  histogram is requested.
+     * @return                          The aggregates over all the keys in the range.
+     */
+    public RangeAggregate aggregate(long[] start, long[] end, int aggregates, int cells) {
+        return aggregate(start, end, aggregates, cells, null);
+    }
+
+    /**
+     * Compute aggregates over the keys in a range that match a built-in predicate. Each host holding a part
+     * of the range computes the aggregates over its keys and the results are merged by the proxy.
+     *
+     * @param aggregates                The aggregates to compute, a combination of the flags of RangeAggregate.
+     * @param cells                     The number of histogram cells in each dimension, ignored if no
+     *                                  histogram is requested. The histogram grid is laid over the range,
+     *                                  not over the part of it restricted by the predicate.
+     * @param filter                    The predicate the aggregated keys should match, or null to aggregate
+     *                                  all the keys in the range.
+     * @return                          The aggregates over the matching keys in the range.
+     */
+    public RangeAggregate aggregate(long[] start, long[] end, int aggregates, int cells, BuiltinPredicate filter) {
+        if ((aggregates & RangeAggregate.HISTOGRAM) != 0) {
+            //fail before sending anything if the grid is too large
+            RangeAggregate.histogramSize(start.length, cells);
+        }
+        RangeAggregate global = new RangeAggregate(aggregates, start, end, cells);
+        long[] hostStart = start;
+        long[] hostEnd = end;
+        if (filter != null) {
+            hostStart = start.clone();
+            hostEnd = end.clone();
+            if (!filter.restrict(hostStart, hostEnd)) {
+                return global;
+            }
+        }
+
+        boolean versionOutdated;
+        List<MapResponse> responses;
+        do {
+            List<String> hostIds = clusterService.getMapping().get(hostStart, hostEnd);
+            AggregateRangeRequest<long[]> request = requests.newAggregateRange(start, end, filter, aggregates, cells);
+            responses = requestDispatcher.send(hostIds, request, MapResponse.class);
+            versionOutdated = check(request, responses);
+        } while (versionOutdated);
+
+        for (MapResponse response : responses) {
+            global.merge((RangeAggregate) response.getParameter("aggregate"));
+        }
+        return global;
+    }
+
+    /**
+     * Draw a uniform random sample of the entries in a range.
+     *
+     * @param size                      The number of entries of the sample.
+     * @return                          The sampled entries, in random order. If the range holds fewer
+     *                                  entries than requested, all of them are returned.
+     */
+    public List<PhEntry<V>> sample(long[] start, long[] end, int size) {
+        return sample(start, end, size, null);
+    }
+
+    /**
+     * Draw a uniform random sample of the entries in a range that match a built-in predicate. Each host
+     * holding a part of the range draws a sample of up to size entries out of its matching entries and
+     * replies with it and with the number of its matching entries. The proxy then draws the global sample
+     * out of the host samples, weighting each host by its number of remaining matching entries.
+     *
+     * @param size                      The number of entries of the sample.
+     * @param filter                    The predicate the sampled keys should match, or null to sample all
+     *                                  the entries in the range.
+     * @return                          The sampled entries, in random order. If fewer entries match than
+     *                                  requested, all of them are returned.
+     */
+    public List<PhEntry<V>> sample(long[] start, long[] end, int size, BuiltinPredicate filter) {
+        long[] hostStart = start;
+        long[] hostEnd = end;
+        if (filter != null) {
+            hostStart = start.clone();
+            hostEnd = end.clone();
+            if (!filter.restrict(hostStart, hostEnd)) {
+                return new ArrayList<>();
+            }
+        }
+
+        boolean versionOutdated;
+        List<ResultResponse> responses;
+        do {
+            List<String> hostIds = clusterService.getMapping().get(hostStart, hostEnd);
+            SampleRangeRequest<long[]> request = requests.newSampleRange(start, end, filter, size);
+            responses = requestDispatcher.send(hostIds, request, ResultResponse.class);
+            versionOutdated = check(request, responses);
+        } while (versionOutdated);
+
+        return combineSamples(responses, size);
+    }
+
+    /**
+     * Draw the global sample out of the host samples. Each entry of the global sample is taken from a host
+     * with a probability proportional to the number of the matching entries of the host not sampled yet,
+     * which makes the number of entries taken from each host follow the hypergeometric distribution of a
+     * sample drawn from all the matching entries. A host never has to provide more entries than its sample
+     * holds, since its sample has size entries or all of its matching entries.
+     */
+    @SuppressWarnings("unchecked")
+    private List<PhEntry<V>> combineSamples(List<ResultResponse> responses, int size) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int nrHosts = responses.size();
+        List<IndexEntry<long[], V>>[] samples = new List[nrHosts];
+        long[] remaining = new long[nrHosts];
+        long total = 0;
+        for (int i = 0; i < nrHosts; i++) {
+            ResultResponse<long[], V> response = responses.get(i);
+            IndexEntryList<long[], V> entries = response.getEntries();
+            //the hosts do not return their samples in random order
+            Collections.shuffle(entries, random);
+            samples[i] = entries;
+            remaining[i] = response.getTotalCount();
+            total += remaining[i];
+        }
+
+        int[] taken = new int[nrHosts];
+        List<PhEntry<V>> results = new ArrayList<>();
+        while (results.size() < size && total > 0) {
+            long position = random.nextLong(total);
+            int host = 0;
+            while (position >= remaining[host]) {
+                position -= remaining[host];
+                host++;
+            }
+            IndexEntry<long[], V> entry = samples[host].get(taken[host]++);
+            results.add(new PhEntry<>(entry.getKey(), entry.getValue()));
+            remaining[host]--;
+            total--;
+        }
+        return results;
+    }
+
+    /**
+     * Load a large number of entries, for example when building a new index.
+     *
+     * The entries are sorted in z-order and partitioned against the z-order intervals of the hosts. Each host
+     * receives its entries in sorted chunks of bulkChunkSize entries and inserts them without the per-entry
+     * bookkeeping of put. The chunks of a host are sent one after the other, while all hosts are loaded
+     * in parallel. Existing keys are overwritten.
+     *
+     * If the mapping changes during the load, the entries that were rejected are partitioned again against
+     * the current mapping.
+     *
+     * @param keys                      The keys to insert.
+     * @param values                    The values, the value at each position belongs to the key at the same position.
+     * @return                          The number of keys that were not already in the index.
+     */
+    public long bulkLoad(final List<long[]> keys, final List<V> values) {
+        if (keys.size() != values.size()) {
+            throw new IllegalArgumentException("The number of keys and values should be equal.");
+        }
+        List<Integer> pending = new ArrayList<>(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            pending.add(i);
+        }
+        long inserted = 0;
+        while (!pending.isEmpty()) {
+            sortZOrder(keys, pending);
+            KeyMapping<long[]> keyMapping = clusterService.getMapping();
+            List<CompletableFuture<BulkLoad>> loads = new ArrayList<>();
+            for (Map.Entry<String, List<Integer>> entry : partition(keyMapping, keys, pending).entrySet()) {
+                BulkLoad load = new BulkLoad(entry.getKey(), entry.getValue(), keys, values);
+                loads.add(load.next());
+            }
+            pending = new ArrayList<>();
+            for (CompletableFuture<BulkLoad> future : loads) {
+                BulkLoad load = future.join();
+                inserted += load.inserted;
+                pending.addAll(load.rejected);
+            }
+        }
+        return inserted;
+    }
+
+    @Override
+    protected void sortBatch(List<long[]> keys, List<Integer> positions) {
+        sortZOrder(keys, positions);
+    }
+
+    private static void sortZOrder(final List<long[]> keys, List<Integer> positions) {
+        Collections.sort(positions, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return MultidimUtil.compareZOrder(keys.get(a), keys.get(b));
+            }
+        });
+    }
+
+    /**
+     * Split the positions of the keys, sorted in z-order, by the host holding each key. As the intervals of the
+     * hosts follow each other in z-order, the mapping only needs to be queried when a key is past the end of
+     * the interval of the current host.
+     */
+    private static Map<String, List<Integer>> partition(KeyMapping<long[]> keyMapping, List<long[]> keys,
+                                                        List<Integer> sorted) {
+        ZMapping zMapping = (keyMapping instanceof ZMapping) ? (ZMapping) keyMapping : null;
+        Map<String, List<Integer>> byHost = new LinkedHashMap<>();
+        List<Integer> positions = null;
+        long[] end = null;
+        for (int position : sorted) {
+            long[] key = keys.get(position);
+            if (positions == null || end == null || MultidimUtil.compareZOrder(key, end) > 0) {
+                String hostId = keyMapping.get(key);
+                end = (zMapping == null) ? null : zMapping.getEnd(hostId);
+                positions = byHost.get(hostId);
+                if (positions == null) {
+                    positions = new ArrayList<>();
+                    byHost.put(hostId, positions);
+                }
+            }
+            positions.add(position);
+        }
+        return byHost;
+    }
+
+    public int getBulkChunkSize() {
+        return bulkChunkSize;
+    }
+
+    public void setBulkChunkSize(int bulkChunkSize) {
+        if (bulkChunkSize <= 0) {
+            throw new IllegalArgumentException("The chunk size should be positive.");
+        }
+
+        this.bulkChunkSize = bulkChunkSize;
+    }
+
+    public int getMaxInFlight() {
+        return transport.getMaxInFlight();
+    }
+
+    /**
+     * Set the maximum number of requests waiting for their reply from a single host. The requests sent
+     * beyond this bound are queued until earlier replies arrive.
+     */
+    public void setMaxInFlight(int maxInFlight) {
+        transport.setMaxInFlight(maxInFlight);
+    }
+
+    public int getMaxLimitFanout() {
+        return maxLimitFanout;
+    }
+
+    /**
+     * Set the maximum number of hosts queried at once by a range query with a limit. A larger fanout lowers
+     * the latency of selective queries, at the cost of more work on the hosts that end up being cancelled.
+     */
+    public void setMaxLimitFanout(int maxLimitFanout) {
+        if (maxLimitFanout <= 0) {
+            throw new IllegalArgumentException("The fanout should be positive.");
+        }
+        this.maxLimitFanout = maxLimitFanout;
+    }
+
     /**
      * Perform a range query and then filter using a distance.
      *
@@ -342,22 +693,102 @@ public class PHTreeIndexProxy<V> extends IndexProxy<long[], V> implements PointI
         return queryAll(min, max, Integer.MAX_VALUE, PhPredicate.ACCEPT_ALL, PhMapper.<V>PVENTRY());
     }
 
+    /**
+     * Query the entries in a range. The results are in z-order, as the hosts are returned by the mapping in the
+     * order of their intervals and each host returns its entries in z-order.
+     *
+     * The filter and the mapper are serialized on their first use and only referenced by the following queries,
+     * so they should not be modified once passed to a query. The hosts reuse their instances across queries.
+     */
     public <R> List<R> queryAll(long[] min, long[] max, int maxResults, PhPredicate filter, PhMapper<V, R> mapper) {
+        if (filter instanceof BuiltinPredicate) {
+            //only the hosts holding keys that might match the predicate are queried
+            min = min.clone();
+            max = max.clone();
+            if (!((BuiltinPredicate) filter).restrict(min, max)) {
+                return new ArrayList<>();
+            }
+        }
+        if (maxResults < Integer.MAX_VALUE) {
+            return queryAllLimited(min, max, maxResults, filter, mapper);
+        }
         boolean versionOutdated;
+        boolean inlineFunctions = false;
         List<ResultResponse> responses;
         do {
             GetRangeFilterMapperRequest<long[]> request =
                     requests.newGetRangeFilterMaper(min, max, maxResults, filter, mapper);
+            //the filter and mapper are only referenced by hash, unless a host did not know them
+            request.setInlineFunctions(inlineFunctions);
             KeyMapping<long[]> mapping = clusterService.getMapping();
             List<String> hostIds = mapping.get(min, max);
             //System.out.println("Range query hit " + hostIds.size() + " hosts.");
             responses = requestDispatcher.send(hostIds, request, ResultResponse.class);
             versionOutdated = check(request, responses);
-        } while (versionOutdated);
+            inlineFunctions = hasStatus(responses, OpStatus.UNKNOWN_FUNCTION);
+        } while (versionOutdated || inlineFunctions);
 
         return combine(responses, mapper);
     }
 
+    /**
+     * Query a range for at most maxResults entries. The hosts are visited in z-order, in waves that double in size
+     * up to maxLimitFanout hosts, and no host is queried once the limit is met. The hosts of the last wave that
+     * are no longer needed are asked to cancel their query.
+     */
+    private <R> List<R> queryAllLimited(long[] min, long[] max, int maxResults, PhPredicate filter,
+                                        PhMapper<V, R> mapper) {
+        List<R> results = new ArrayList<>();
+        boolean retry;
+        boolean inlineFunctions = false;
+        do {
+            retry = false;
+            results.clear();
+            List<String> hostIds = clusterService.getMapping().get(min, max);
+            int from = 0;
+            int fanout = 1;
+            while (from < hostIds.size() && results.size() < maxResults && !retry) {
+                List<String> wave = hostIds.subList(from, Math.min(hostIds.size(), from + fanout));
+                GetRangeFilterMapperRequest<long[]> request =
+                        requests.newGetRangeFilterMaper(min, max, maxResults - results.size(), filter, mapper);
+                request.setInlineFunctions(inlineFunctions);
+                List<CompletableFuture<ResultResponse>> futures = new ArrayList<>();
+                for (String hostId : wave) {
+                    futures.add(requestDispatcher.sendAsync(hostId, request, ResultResponse.class));
+                }
+                for (int i = 0; i < futures.size(); i++) {
+                    if (results.size() >= maxResults) {
+                        cancel(wave.get(i), request, futures.get(i));
+                        continue;
+                    }
+                    ResultResponse response = futures.get(i).join();
+                    if (check(request, response)) {
+                        retry = true;
+                    } else if (response.getStatus() == OpStatus.UNKNOWN_FUNCTION) {
+                        inlineFunctions = true;
+                        retry = true;
+                    } else if (!retry) {
+                        results.addAll(combine(Collections.singletonList(response), mapper));
+                    }
+                }
+                from += wave.size();
+                fanout = Math.min(2 * fanout, maxLimitFanout);
+            }
+        } while (retry);
+
+        return (results.size() > maxResults) ? new ArrayList<>(results.subList(0, maxResults)) : results;
+    }
+
+    /**
+     * Ask a host to stop working on a request whose results are no longer needed. The host still replies, but
+     * skips the rest of its query.
+     */
+    private void cancel(String hostId, BaseRequest request, CompletableFuture<?> response) {
+        if (!response.isDone() && requestDispatcher.supportsStreams()) {
+            requestDispatcher.sendOneWay(hostId, requests.newCancel(request.getId()));
+        }
+    }
+
     public String toStringTree() {
         return toStringPlain();
     }
@@ -392,6 +823,15 @@ public class PHTreeIndexProxy<V> extends IndexProxy<long[], V> implements PointI
         }
     }
 
+    private static boolean hasStatus(List<ResultResponse> responses, byte status) {
+        for (ResultResponse response : responses) {
+            if (response.getStatus() == status) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     protected <R> List<R> combine(List<ResultResponse> responses, PhMapper<V, R> mapper) {
         List<R> results = new ArrayList<>();
         for (ResultResponse<long[],V> response : responses) {
@@ -401,4 +841,57 @@ public class PHTreeIndexProxy<V> extends IndexProxy<long[], V> implements PointI
         }
         return results;
     }
-}
\ No newline at end of file
+
+    /**
+     * The load of the entries of a single host, sent chunk by chunk.
+     */
+    private class BulkLoad {
+
+        private final String hostId;
+        private final List<Integer> positions;
+        private final List<long[]> keys;
+        private final List<V> values;
+
+        /** The position of the first entry that was not sent yet. */
+        private int from = 0;
+
+        private long inserted = 0;
+
+        /** The entries rejected by the host because the mapping changed. */
+        private List<Integer> rejected = Collections.emptyList();
+
+        BulkLoad(String hostId, List<Integer> positions, List<long[]> keys, List<V> values) {
+            this.hostId = hostId;
+            this.positions = positions;
+            this.keys = keys;
+            this.values = values;
+        }
+
+        /**
+         * Send the next chunk. The following chunk is sent from the executor of the transport once the host
+         * replied, to keep the encoding off the threads completing the replies.
+         *
+         * @return                      A future completed once all chunks were sent or one was rejected.
+         */
+        CompletableFuture<BulkLoad> next() {
+            if (from >= positions.size()) {
+                return CompletableFuture.completedFuture(this);
+            }
+            final List<Integer> chunk = positions.subList(from, Math.min(positions.size(), from + bulkChunkSize));
+            final PutManyRequest<long[], V> request = requests.newPutBulk(select(keys, chunk), select(values, chunk));
+            Function<IntegerResponse, CompletableFuture<BulkLoad>> sendNext = response -> {
+                if (check(request, response)) {
+                    rejected = positions.subList(from, positions.size());
+                    return CompletableFuture.completedFuture(this);
+                }
+                inserted += response.getContent();
+                from += chunk.size();
+                return next();
+            };
+            CompletableFuture<IntegerResponse> reply = requestDispatcher.sendAsync(hostId, request, IntegerResponse.class);
+            Executor executor = requestDispatcher.getExecutor();
+            //without an executor, the reply was received on the calling thread
+            return (executor == null) ? reply.thenCompose(sendNext) : reply.thenComposeAsync(sendNext, executor);
+        }
+    }
+}
@@ -24,6 +24,8 @@ along with this program.  If not, see <http://www.gnu.org/licenses/>.
 */
 package ch.ethz.globis.distindex.client.pht;
 
+import ch.ethz.globis.disindex.codec.api.FieldEncoderDecoder;
+import ch.ethz.globis.disindex.codec.field.SerializingEncoderDecoder;
 import ch.ethz.globis.pht.*;
 import ch.ethz.globis.pht.nv.PhTreeNV;
 import ch.ethz.globis.pht.nv.PhTreeNVSolidF;
@@ -47,7 +49,14 @@ public class ZKPHFactory implements PHFactory {
 
     @Override
     public <V> PHTreeIndexProxy<V> createProxy(int dim, int depth) {
-        PHTreeIndexProxy<V> tree =  new PHTreeIndexProxy<>(zkHost, zkPort);
+        return createProxy(dim, depth, new SerializingEncoderDecoder<V>());
+    }
+
+    /**
+     * Create a proxy for a new index, encoding the values with the codec received as argument.
+     */
+    public <V> PHTreeIndexProxy<V> createProxy(int dim, int depth, FieldEncoderDecoder<V> valueCodec) {
+        PHTreeIndexProxy<V> tree =  new PHTreeIndexProxy<>(zkHost, zkPort, valueCodec);
         proxies.add(tree);
         tree.create(dim, depth);
         return tree;
@@ -55,10 +64,14 @@ public class ZKPHFactory implements PHFactory {
 
     @Override
     public <V> PhTree<V> createPHTreeMap(int dim, int depth) {
-        PHTreeIndexProxy<V> proxy = new PHTreeIndexProxy<>(zkHost, zkPort);
-        proxies.add(proxy);
-        proxy.create(dim, depth);
-        return new DistributedPhTreeV<>(proxy);
+        return createPHTreeMap(dim, depth, new SerializingEncoderDecoder<V>());
+    }
+
+    /**
+     * Create a new distributed PH-tree, encoding the values with the codec received as argument.
+     */
+    public <V> PhTree<V> createPHTreeMap(int dim, int depth, FieldEncoderDecoder<V> valueCodec) {
+        return new DistributedPhTreeV<>(createProxy(dim, depth, valueCodec));
     }
 
     @Override
@@ -42,12 +42,18 @@ import org.mockito.stubbing.Answer;
 import java.math.BigInteger;
 import java.util.Iterator;
 import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 
 import static org.junit.Assert.*;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -250,6 +256,71 @@ public class IndexProxyTest {
         indexProxy.remove(key);
     }
 
+    @Test
+    public void testGetAsync_OK() throws Exception {
+        RequestDispatcher<long[], String> dispatcher = mockDispatcher();
+        IndexProxy<long[], String> indexProxy = mockIndexProxy(dispatcher);
+
+        long[] key = {1, 2 , 3};
+        String value = new BigInteger(30, new Random()).toString();
+        IndexEntryList<long[], String> singleEntry = new IndexEntryList<>(key, value);
+        when(dispatcher.sendAsync(anyString(), any(GetRequest.class), eq(ResultResponse.class)))
+                .thenAnswer(async(entryResponse(singleEntry)));
+
+        assertEquals(value, indexProxy.getAsync(key).get());
+    }
+
+    @Test
+    public void testGetAsync_OutdatedVersion() throws Exception {
+        RequestDispatcher<long[], String> dispatcher = mockDispatcher();
+        IndexProxy<long[], String> indexProxy = mockIndexProxy(dispatcher);
+
+        long[] key = {1, 2 , 3};
+        String value = new BigInteger(30, new Random()).toString();
+        IndexEntryList<long[], String> singleEntry = new IndexEntryList<>(key, value);
+        when(dispatcher.sendAsync(anyString(), any(GetRequest.class), eq(ResultResponse.class)))
+                .thenAnswer(async(outdatedVersionResponse()))
+                .thenAnswer(async(entryResponse(singleEntry)));
+
+        assertEquals(value, indexProxy.getAsync(key).get());
+    }
+
+    @Test
+    public void testGetAsync_OutdatedVersionRetriesAreBounded() throws Exception {
+        RequestDispatcher<long[], String> dispatcher = mockDispatcher();
+        IndexProxy<long[], String> indexProxy = mockIndexProxy(dispatcher);
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        when(dispatcher.getExecutor()).thenReturn(executor);
+        when(dispatcher.sendAsync(anyString(), any(GetRequest.class), eq(ResultResponse.class)))
+                .thenAnswer(async(outdatedVersionResponse()));
+
+        long[] key = { 1, 2, 3 };
+        try {
+            indexProxy.getAsync(key).get();
+            fail("The request should fail once the retries are exhausted.");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        } finally {
+            executor.shutdownNow();
+        }
+        verify(dispatcher, times(8)).sendAsync(anyString(), any(GetRequest.class), eq(ResultResponse.class));
+    }
+
+    @Test(expected = ServerErrorException.class)
+    public void testGetAsync_Failure() throws Throwable {
+        RequestDispatcher<long[], String> dispatcher = mockDispatcher();
+        IndexProxy<long[], String> indexProxy = mockIndexProxy(dispatcher);
+        when(dispatcher.sendAsync(anyString(), any(GetRequest.class), eq(ResultResponse.class)))
+                .thenAnswer(async(failureResponse()));
+
+        long[] key = { 1, 2, 3 };
+        try {
+            indexProxy.getAsync(key).get();
+        } catch (ExecutionException e) {
+            throw e.getCause();
+        }
+    }
+
     /**
      * NOTE: This answer is only valid for the RequestDispatcher.send() methods.
      *
@@ -309,6 +380,35 @@ public class IndexProxyTest {
         };
     }
 
+    /**
+     * NOTE: This answer is only valid for the RequestDispatcher.send() methods.
+     *
+     * Return a mock response with the same opCode and request id but an outdated version status.
+     * @return                          Mockito answer containing the response.
+     */
+    private <K, V> Answer<ResultResponse<K, V>> outdatedVersionResponse() {
+        return new Answer<ResultResponse<K, V>>() {
+            @Override
+            public ResultResponse<K, V> answer(InvocationOnMock invocation) throws Throwable {
+                BaseRequest request = (BaseRequest) invocation.getArguments()[1];
+                return new ResultResponse<K, V>(
+                        request.getOpCode(), request.getId(), OpStatus.OUTDATED_VERSION);
+            }
+        };
+    }
+
+    /**
+     * Wrap an answer for RequestDispatcher.send() into an answer for RequestDispatcher.sendAsync().
+     */
+    private <T> Answer<CompletableFuture<T>> async(final Answer<T> answer) {
+        return new Answer<CompletableFuture<T>>() {
+            @Override
+            public CompletableFuture<T> answer(InvocationOnMock invocation) throws Throwable {
+                return CompletableFuture.completedFuture(answer.answer(invocation));
+            }
+        };
+    }
+
     private <K, V> RequestDispatcher<K, V> mockDispatcher() {
         return mock(ClientRequestDispatcher.class);
     }
@@ -24,18 +24,25 @@ along with this program.  If not, see <http://www.gnu.org/licenses/>.
 */
 package ch.ethz.globis.disindex.codec;
 
+import ch.ethz.globis.disindex.codec.api.DeltaFieldDecoder;
 import ch.ethz.globis.disindex.codec.api.FieldDecoder;
 import ch.ethz.globis.disindex.codec.api.RequestDecoder;
+import ch.ethz.globis.disindex.codec.field.BuiltinPredicateEncoderDecoder;
+import ch.ethz.globis.disindex.codec.util.FunctionRegistry;
+import ch.ethz.globis.disindex.codec.util.SerializedFunction;
+import ch.ethz.globis.distindex.operation.predicate.BuiltinPredicate;
 import ch.ethz.globis.distindex.operation.request.*;
-import ch.ethz.globis.distindex.util.SerializerUtil;
 import ch.ethz.globis.pht.PhPredicate;
 import ch.ethz.globis.pht.util.PhMapper;
 
 import com.google.common.base.Splitter;
 import com.google.common.base.Strings;
+import com.google.common.hash.HashCode;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -49,9 +56,17 @@ public class ByteRequestDecoder<K> implements RequestDecoder<K, byte[]> {
 
     private static final Splitter.MapSplitter splitter = Splitter.on(",").withKeyValueSeparator("=>");
 
+    /** Marks a filter or mapper that was referenced by its hash but is not registered. */
+    private static final Object UNKNOWN_FUNCTION = new Object();
+
     /** The decoder used for the key.*/
     private FieldDecoder<K> keyDecoder;
 
+    private final FieldDecoder<BuiltinPredicate> predicateDecoder = new BuiltinPredicateEncoderDecoder();
+
+    /** The filters and mappers received from the clients, shared by all connections. */
+    private final FunctionRegistry functions = new FunctionRegistry();
+
     public ByteRequestDecoder(FieldDecoder<K> keyDecoder) {
         this.keyDecoder = keyDecoder;
     }
@@ -111,6 +126,50 @@ public class ByteRequestDecoder<K> implements RequestDecoder<K, byte[]> {
         return new PutRequest<>(requestId, opCode, indexName, mappingVersion, key, value);
     }
 
+    /**
+     * Decode a request inserting several entries.
+     * @param buffer                    The ByteBuffer containing bytes sent by the client.
+     *                                  The request type has already been read.
+     * @return                          The keys and values that have to be added to the index.
+     */
+    @Override
+    public PutManyRequest<K, byte[]> decodePutMany(ByteBuffer buffer) {
+        byte opCode = buffer.get();
+        int requestId = buffer.getInt();
+        String indexName = new String(readValue(buffer));
+        int mappingVersion = buffer.getInt();
+
+        int size = buffer.getInt();
+        List<K> keys = decodeKeys(buffer, size);
+        List<byte[]> values = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            values.add(readValue(buffer));
+        }
+        PutManyRequest<K, byte[]> request = new PutManyRequest<>(requestId, opCode, indexName, mappingVersion, keys, values);
+        readResultOptions(buffer, request);
+        return request;
+    }
+
+    /**
+     * Decode a request operating on several keys.
+     * @param buffer                    The ByteBuffer containing bytes sent by the client.
+     *                                  The request type has already been read.
+     * @return                          The keys on which the operation has to be executed.
+     */
+    @Override
+    public MultiKeyRequest<K> decodeMultiKey(ByteBuffer buffer) {
+        byte opCode = buffer.get();
+        int requestId = buffer.getInt();
+        String indexName = new String(readValue(buffer));
+        int mappingVersion = buffer.getInt();
+
+        int size = buffer.getInt();
+        List<K> keys = decodeKeys(buffer, size);
+        MultiKeyRequest<K> request = new MultiKeyRequest<>(requestId, opCode, indexName, mappingVersion, keys);
+        readResultOptions(buffer, request);
+        return request;
+    }
+
     /**
      * Decode a get values in range request from the client.
      * @param buffer                    The ByteBuffer containing bytes sent by the client.
@@ -127,7 +186,9 @@ public class ByteRequestDecoder<K> implements RequestDecoder<K, byte[]> {
         K start = decodeKey(buffer);
         K end = decodeKey(buffer);
         double distance = buffer.getDouble();
-        return new GetRangeRequest<>(requestId, opCode, indexName, mappingVersion, start, end, distance);
+        GetRangeRequest<K> request = new GetRangeRequest<>(requestId, opCode, indexName, mappingVersion, start, end, distance);
+        readResultOptions(buffer, request);
+        return request;
     }
 
     @Override
@@ -142,17 +203,17 @@ public class ByteRequestDecoder<K> implements RequestDecoder<K, byte[]> {
             K end = decodeKey(buffer);
 
             int maxResults = buffer.getInt();
-            int mapperLength = buffer.getInt();
-            byte[] mapperBytes = new byte[mapperLength];
-            buffer.get(mapperBytes);
-            PhMapper<?, ?> mapper;
-            mapper = SerializerUtil.getInstance().deserializeDefault(mapperBytes);
-
-            int filterLength = buffer.getInt();
-            byte[] filterBytes = new byte[filterLength];
-            buffer.get(filterBytes);
-            PhPredicate filter = SerializerUtil.getInstance().deserializeDefault(filterBytes);
-            return new GetRangeFilterMapperRequest<>(requestId, opCode, indexName, mappingVersion, start, end, maxResults, filter, mapper);
+            Object mapper = readFunction(buffer);
+            Object filter = (buffer.get() == ByteRequestEncoder.FILTER_BUILTIN)
+                    ? decodeField(buffer, predicateDecoder)
+                    : readFunction(buffer);
+            boolean resolved = (mapper != UNKNOWN_FUNCTION) && (filter != UNKNOWN_FUNCTION);
+            GetRangeFilterMapperRequest<K> request = new GetRangeFilterMapperRequest<>(requestId, opCode, indexName,
+                    mappingVersion, start, end, maxResults,
+                    resolved ? (PhPredicate) filter : null, resolved ? (PhMapper<?, ?>) mapper : null);
+            request.setResolved(resolved);
+            readResultOptions(buffer, request);
+            return request;
         } catch (IOException | ClassNotFoundException e) {
             throw new UnsupportedOperationException("Failed to perform decoding.", e);
         }
@@ -186,7 +247,9 @@ public class ByteRequestDecoder<K> implements RequestDecoder<K, byte[]> {
 
         K key = decodeKey(buffer);
         int k = buffer.getInt();
-        return new GetKNNRequest<>(requestId, opCode, indexName, mappingVersion, key, k);
+        GetKNNRequest<K> request = new GetKNNRequest<>(requestId, opCode, indexName, mappingVersion, key, k);
+        readResultOptions(buffer, request);
+        return request;
     }
 
     @Override
@@ -199,14 +262,34 @@ public class ByteRequestDecoder<K> implements RequestDecoder<K, byte[]> {
         int size = buffer.getInt();
 
         boolean isRanged = (buffer.getInt() != 0);
+        GetIteratorBatchRequest<K> request;
         if (isRanged) {
             K start = decodeKey(buffer);
             K end = decodeKey(buffer);
-            return new GetIteratorBatchRequest<>(requestId, opCode, indexName, mappingVersion, iteratorId, size, start, end);
+            request = new GetIteratorBatchRequest<>(requestId, opCode, indexName, mappingVersion, iteratorId, size, start, end);
+        } else {
+            request = new GetIteratorBatchRequest<>(requestId, opCode, indexName, mappingVersion, iteratorId, size);
         }
-        return new GetIteratorBatchRequest<>(requestId, opCode, indexName, mappingVersion, iteratorId, size);
+        readResultOptions(buffer, request);
+        return request;
     }
 
+    @Override
+    public GetStreamRequest<K> decodeGetStream(ByteBuffer buffer) {
+        GetIteratorBatchRequest<K> batch = decodeGetBatch(buffer);
+        int credit = buffer.getInt();
+        GetStreamRequest<K> request;
+        if (batch.isRanged()) {
+            request = new GetStreamRequest<>(batch.getId(), batch.getOpCode(), batch.getIndexId(),
+                    batch.getMappingVersion(), batch.getIteratorId(), batch.getBatchSize(),
+                    batch.getStart(), batch.getEnd(), credit);
+        } else {
+            request = new GetStreamRequest<>(batch.getId(), batch.getOpCode(), batch.getIndexId(),
+                    batch.getMappingVersion(), batch.getIteratorId(), batch.getBatchSize(), credit);
+        }
+        request.setCompactKeys(batch.isCompactKeys());
+        return request;
+    }
 
     @Override
     public CreateRequest decodeCreate(ByteBuffer buffer) {
@@ -233,6 +316,58 @@ public class ByteRequestDecoder<K> implements RequestDecoder<K, byte[]> {
         return new DeleteRequest<>(requestId, opCode, indexName, mappingVersion, key);
     }
 
+    @Override
+    public DeleteRangeRequest<K> decodeDeleteRange(ByteBuffer buffer) {
+        byte opCode = buffer.get();
+        int requestId = buffer.getInt();
+        String indexName = new String(readValue(buffer));
+        int mappingVersion = buffer.getInt();
+
+        K start = decodeKey(buffer);
+        K end = decodeKey(buffer);
+        BuiltinPredicate filter = (buffer.get() == ByteRequestEncoder.FILTER_BUILTIN)
+                ? decodeField(buffer, predicateDecoder)
+                : null;
+        return new DeleteRangeRequest<>(requestId, opCode, indexName, mappingVersion, start, end, filter);
+    }
+
+    @Override
+    public AggregateRangeRequest<K> decodeAggregateRange(ByteBuffer buffer) {
+        byte opCode = buffer.get();
+        int requestId = buffer.getInt();
+        String indexName = new String(readValue(buffer));
+        int mappingVersion = buffer.getInt();
+
+        K start = decodeKey(buffer);
+        K end = decodeKey(buffer);
+        BuiltinPredicate filter = (buffer.get() == ByteRequestEncoder.FILTER_BUILTIN)
+                ? decodeField(buffer, predicateDecoder)
+                : null;
+        int aggregates = buffer.getInt();
+        int cells = buffer.getInt();
+        return new AggregateRangeRequest<>(requestId, opCode, indexName, mappingVersion, start, end, filter,
+                aggregates, cells);
+    }
+
+    @Override
+    public SampleRangeRequest<K> decodeSampleRange(ByteBuffer buffer) {
+        byte opCode = buffer.get();
+        int requestId = buffer.getInt();
+        String indexName = new String(readValue(buffer));
+        int mappingVersion = buffer.getInt();
+
+        K start = decodeKey(buffer);
+        K end = decodeKey(buffer);
+        BuiltinPredicate filter = (buffer.get() == ByteRequestEncoder.FILTER_BUILTIN)
+                ? decodeField(buffer, predicateDecoder)
+                : null;
+        int size = buffer.getInt();
+        SampleRangeRequest<K> request = new SampleRangeRequest<>(requestId, opCode, indexName, mappingVersion,
+                start, end, filter, size);
+        readResultOptions(buffer, request);
+        return request;
+    }
+
     @Override
     public BaseRequest decodeBase(ByteBuffer buffer) {
         byte opCode = buffer.get();
@@ -299,16 +434,86 @@ public class ByteRequestDecoder<K> implements RequestDecoder<K, byte[]> {
      *
      * The decoding is performed in the following steps:
      *  - the integer size of the key byte array is read from the buffer.
-     *  - the byte array containing the key is then read.
-     *  - the key is decoded using the keyDecoder.
+     *  - the limit of the buffer is set to the end of the key.
+     *  - the key is decoded in place using the keyDecoder.
      * @param buffer                        The ByteBuffer containing the key.
      * @return                              The decoded key.
      */
     private K decodeKey(ByteBuffer buffer) {
-        int keyBytesSize = buffer.getInt();
-        byte[] keyBytes = new byte[keyBytesSize];
-        buffer.get(keyBytes);
-        return keyDecoder.decode(keyBytes);
+        return decodeField(buffer, keyDecoder);
+    }
+
+    /**
+     * Decode the keys of a batch request, written by ByteRequestEncoder.encodeKeys.
+     * @param buffer                        The ByteBuffer containing the format and the keys.
+     * @param size                          The number of keys.
+     * @return                              The decoded keys.
+     */
+    @SuppressWarnings("unchecked")
+    private List<K> decodeKeys(ByteBuffer buffer, int size) {
+        byte format = buffer.get();
+        //each key takes at least one byte, so the size sent by the client does not need to be trusted
+        List<K> keys = new ArrayList<>(Math.min(size, buffer.remaining()));
+        if (format == ByteResponseEncoder.FORMAT_COMPACT_KEYS) {
+            if (!(keyDecoder instanceof DeltaFieldDecoder)) {
+                throw new IllegalStateException("The key decoder cannot decode compact keys.");
+            }
+            DeltaFieldDecoder<K> deltaKeyDecoder = (DeltaFieldDecoder<K>) keyDecoder;
+            K key = null;
+            for (int i = 0; i < size; i++) {
+                key = deltaKeyDecoder.decodeDelta(key, buffer);
+                keys.add(key);
+            }
+        } else {
+            for (int i = 0; i < size; i++) {
+                keys.add(decodeKey(buffer));
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Decode a field preceded by its size, without copying its bytes.
+     */
+    private static <T> T decodeField(ByteBuffer buffer, FieldDecoder<T> decoder) {
+        int size = buffer.getInt();
+        int limit = buffer.limit();
+        int end = buffer.position() + size;
+        buffer.limit(end);
+        T field = decoder.decode(buffer);
+        buffer.limit(limit);
+        buffer.position(end);
+        return field;
+    }
+
+    /**
+     * Read the options of requests returning lists of entries.
+     *
+     * @param buffer                        The ByteBuffer containing the options.
+     * @param request                       The request to which the options apply.
+     */
+    private void readResultOptions(ByteBuffer buffer, BaseRequest request) {
+        request.setCompactKeys(buffer.get() != 0);
+    }
+
+    /**
+     * Read a filter or mapper function. Functions sent inline are registered, the ones sent as a hash
+     * are looked up in the registry.
+     *
+     * @param buffer                        The ByteBuffer containing the function.
+     * @return                              The function, or UNKNOWN_FUNCTION if it was not registered.
+     */
+    private Object readFunction(ByteBuffer buffer) throws IOException, ClassNotFoundException {
+        byte[] hash = new byte[SerializedFunction.HASH_SIZE];
+        buffer.get(hash);
+        int length = buffer.getInt();
+        if (length < 0) {
+            Object function = functions.get(HashCode.fromBytes(hash));
+            return (function == null) ? UNKNOWN_FUNCTION : function;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return functions.register(bytes);
     }
 
     /**
@@ -26,39 +26,82 @@ package ch.ethz.globis.disindex.codec;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
 
+import ch.ethz.globis.disindex.codec.api.DeltaFieldEncoder;
 import ch.ethz.globis.disindex.codec.api.FieldEncoder;
 import ch.ethz.globis.disindex.codec.api.RequestEncoder;
+import ch.ethz.globis.disindex.codec.field.BuiltinPredicateEncoderDecoder;
+import ch.ethz.globis.disindex.codec.util.FunctionRegistry;
+import ch.ethz.globis.disindex.codec.util.SerializedFunction;
 import ch.ethz.globis.distindex.operation.OpCode;
+import ch.ethz.globis.distindex.operation.predicate.BuiltinPredicate;
+import ch.ethz.globis.distindex.operation.request.AggregateRangeRequest;
 import ch.ethz.globis.distindex.operation.request.BaseRequest;
 import ch.ethz.globis.distindex.operation.request.ContainsRequest;
+import ch.ethz.globis.distindex.operation.request.DeleteRangeRequest;
 import ch.ethz.globis.distindex.operation.request.DeleteRequest;
 import ch.ethz.globis.distindex.operation.request.GetIteratorBatchRequest;
 import ch.ethz.globis.distindex.operation.request.GetKNNRequest;
 import ch.ethz.globis.distindex.operation.request.GetRangeFilterMapperRequest;
 import ch.ethz.globis.distindex.operation.request.GetRangeRequest;
 import ch.ethz.globis.distindex.operation.request.GetRequest;
+import ch.ethz.globis.distindex.operation.request.GetStreamRequest;
 import ch.ethz.globis.distindex.operation.request.InitBalancingRequest;
 import ch.ethz.globis.distindex.operation.request.MapRequest;
+import ch.ethz.globis.distindex.operation.request.MultiKeyRequest;
 import ch.ethz.globis.distindex.operation.request.PutBalancingRequest;
+import ch.ethz.globis.distindex.operation.request.PutManyRequest;
 import ch.ethz.globis.distindex.operation.request.PutRequest;
+import ch.ethz.globis.distindex.operation.request.SampleRangeRequest;
 import ch.ethz.globis.distindex.operation.request.Request;
 import ch.ethz.globis.distindex.operation.request.UpdateKeyRequest;
-import ch.ethz.globis.distindex.util.SerializerUtil;
 
 import com.google.common.base.Joiner;
 
 /**
  * Encodes request messages from the client.
  *
+ * The requests are encoded in a buffer that is reused by each thread, and fields whose size is
+ * known up front are encoded directly into it. Only the final byte[] is allocated for each request.
+ *
  * @param <K>                   The type of the key.
  * @param <V>                   The type of the value.
  */
 public class ByteRequestEncoder<K, V> implements RequestEncoder {
 
+    /** The initial size of the per-thread encoding buffers. */
+    private static final int INITIAL_BUFFER_SIZE = 4096;
+
+    /** Larger buffers are only used for the current request, to avoid holding on to them. */
+    private static final int MAX_RETAINED_BUFFER_SIZE = 1024 * 1024;
+
+    /** The buffers in which the requests are encoded, one for each thread. */
+    private static final ThreadLocal<ByteBuffer> buffers = new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+            return ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+        }
+    };
+
+    /** The filter of a GET_RANGE_FILTER request is a serialized predicate. */
+    public static final byte FILTER_SERIALIZED = 0;
+
+    /** The filter of a GET_RANGE_FILTER request is a built-in predicate. */
+    public static final byte FILTER_BUILTIN = 1;
+
+    /** A DELETE_RANGE, AGGREGATE_RANGE or SAMPLE_RANGE request has no filter. */
+    public static final byte NO_FILTER = -1;
+
     private FieldEncoder<K> keyEncoder;
     private FieldEncoder<V> valueEncoder;
 
+    private final FieldEncoder<BuiltinPredicate> predicateEncoder = new BuiltinPredicateEncoderDecoder();
+
+    /** Caches the serialized filters and mappers and tracks the ones already sent. */
+    private final FunctionRegistry functions = new FunctionRegistry();
+
     private final Joiner.MapJoiner joiner = Joiner.on(",").withKeyValueSeparator("=>");
 
     public ByteRequestEncoder(FieldEncoder<K> keyEncoder, FieldEncoder<V> valueEncoder) {
@@ -69,6 +112,17 @@ public class ByteRequestEncoder<K, V> implements RequestEncoder {
     @Override
     @SuppressWarnings("unchecked")
     public byte[] encode(Request request) {
+        return encode(request, null);
+    }
+
+    @Override
+    public boolean dependsOnHost(Request request) {
+        //the functions are only shipped to the hosts that did not receive them yet
+        return request.getOpCode() == OpCode.GET_RANGE_FILTER;
+    }
+
+    @Override
+    public byte[] encode(Request request, String hostId) {
         byte[] encodedRequest;
         switch (request.getOpCode()) {
             case OpCode.GET:
@@ -87,6 +141,10 @@ public class ByteRequestEncoder<K, V> implements RequestEncoder {
                 GetIteratorBatchRequest<K> gb = (GetIteratorBatchRequest<K>) request;
                 encodedRequest = encodeGetBatch(gb);
                 break;
+            case OpCode.GET_STREAM:
+                GetStreamRequest<K> gs = (GetStreamRequest<K>) request;
+                encodedRequest = encodeGetStream(gs);
+                break;
             case OpCode.PUT:
                 PutRequest<K, V> p = (PutRequest<K, V>) request;
                 encodedRequest = encodePut(p);
@@ -95,6 +153,29 @@ public class ByteRequestEncoder<K, V> implements RequestEncoder {
                 DeleteRequest<K> dr = (DeleteRequest<K>) request;
                 encodedRequest = encodeDelete(dr);
                 break;
+            case OpCode.PUT_MANY:
+            case OpCode.PUT_BULK:
+                PutManyRequest<K, V> pm = (PutManyRequest<K, V>) request;
+                encodedRequest = encodePutMany(pm);
+                break;
+            case OpCode.GET_MANY:
+            case OpCode.DELETE_MANY:
+            case OpCode.CONTAINS_MANY:
+                MultiKeyRequest<K> mk = (MultiKeyRequest<K>) request;
+                encodedRequest = encodeMultiKey(mk);
+                break;
+            case OpCode.DELETE_RANGE:
+                DeleteRangeRequest<K> drr = (DeleteRangeRequest<K>) request;
+                encodedRequest = encodeDeleteRange(drr);
+                break;
+            case OpCode.AGGREGATE_RANGE:
+                AggregateRangeRequest<K> arr = (AggregateRangeRequest<K>) request;
+                encodedRequest = encodeAggregateRange(arr);
+                break;
+            case OpCode.SAMPLE_RANGE:
+                SampleRangeRequest<K> srr = (SampleRangeRequest<K>) request;
+                encodedRequest = encodeSampleRange(srr);
+                break;
             case OpCode.GET_DEPTH:
             case OpCode.GET_DIM:
             case OpCode.GET_SIZE:
@@ -116,6 +197,8 @@ public class ByteRequestEncoder<K, V> implements RequestEncoder {
                 break;
             case OpCode.CREATE_INDEX:
             case OpCode.CLOSE_ITERATOR:
+            case OpCode.STREAM_CREDIT:
+            case OpCode.CANCEL:
             case OpCode.BALANCE_COMMIT:
             case OpCode.BALANCE_ROLLBACK:
                 MapRequest mr = (MapRequest) request;
@@ -131,7 +214,7 @@ public class ByteRequestEncoder<K, V> implements RequestEncoder {
                 break;
             case OpCode.GET_RANGE_FILTER:
                 GetRangeFilterMapperRequest<K> getRangeFilterRequest = (GetRangeFilterMapperRequest<K>) request;
-                encodedRequest = encodeGetRangeFilterMapper(getRangeFilterRequest);
+                encodedRequest = encodeGetRangeFilterMapper(getRangeFilterRequest, hostId);
                 break;
             default:
                 throw new IllegalArgumentException("Unknown command type");
@@ -142,17 +225,17 @@ public class ByteRequestEncoder<K, V> implements RequestEncoder {
     public byte[] encodePutBalancingRequest(PutBalancingRequest<K> request) {
         K key = request.getKey();
         byte[] value = request.getValue();
-        byte[] keyBytes = keyEncoder.encode(key);
+        byte[] keyBytes = preEncode(keyEncoder, key);
 
-        int outputSize = keyBytes.length + 4        // key bytes + number of key bytes
+        int outputSize = fieldSize(keyEncoder, key, keyBytes)   // key bytes + number of key bytes
                 + value.length + 4     // value bytes + number of value bytes
                 + request.metadataSize();   // metadata
 
-        ByteBuffer buffer = ByteBuffer.allocate(outputSize);
+        ByteBuffer buffer = buffer(outputSize);
         writeMeta(buffer, request);
-        writeByteArray(buffer, keyBytes);
+        writeField(buffer, keyEncoder, key, keyBytes);
         writeByteArray(buffer, value);
-        return buffer.array();
+        return toByteArray(buffer);
     }
 
     public byte[] encodeInitBalancingRequest(InitBalancingRequest request) {
@@ -161,103 +244,208 @@ public class ByteRequestEncoder<K, V> implements RequestEncoder {
         int depth = request.getDepth();
         int outputSize = request.metadataSize()
                 + 12;
-        ByteBuffer buffer = ByteBuffer.allocate(outputSize);
+        ByteBuffer buffer = buffer(outputSize);
         writeMeta(buffer, request);
         buffer.putInt(size);
         buffer.putInt(dim);
         buffer.putInt(depth);
-        return buffer.array();
+        return toByteArray(buffer);
     }
 
     public byte[] encodeContains(ContainsRequest<K> request) {
         K key = request.getKey();
-        byte[] keyBytes = keyEncoder.encode(key);
+        byte[] keyBytes = preEncode(keyEncoder, key);
 
-        int outputSize = keyBytes.length + 4        // key bytes + number of key bytes
+        int outputSize = fieldSize(keyEncoder, key, keyBytes)   // key bytes + number of key bytes
                 + request.metadataSize();   // metadata
 
-        ByteBuffer buffer = ByteBuffer.allocate(outputSize);
+        ByteBuffer buffer = buffer(outputSize);
         writeMeta(buffer, request);
-        writeByteArray(buffer, keyBytes);
-        return buffer.array();
+        writeField(buffer, keyEncoder, key, keyBytes);
+        return toByteArray(buffer);
     }
 
     public byte[] encodePut(PutRequest<K, V> request) {
         K key = request.getKey();
         V value = request.getValue();
-        byte[] keyBytes = keyEncoder.encode(key);
-        byte[] valueBytes = valueEncoder.encode(value);
+        byte[] keyBytes = preEncode(keyEncoder, key);
+        byte[] valueBytes = preEncode(valueEncoder, value);
 
-        int outputSize = keyBytes.length + 4        // key bytes + number of key bytes
-                        + valueBytes.length + 4     // value bytes + number of value bytes
+        int outputSize = fieldSize(keyEncoder, key, keyBytes)           // key bytes + number of key bytes
+                        + fieldSize(valueEncoder, value, valueBytes)    // value bytes + number of value bytes
                         + request.metadataSize();   // metadata
 
-        ByteBuffer buffer = ByteBuffer.allocate(outputSize);
+        ByteBuffer buffer = buffer(outputSize);
+        writeMeta(buffer, request);
+        writeField(buffer, keyEncoder, key, keyBytes);
+        writeField(buffer, valueEncoder, value, valueBytes);
+        return toByteArray(buffer);
+    }
+
+    /**
+     * Encode a request inserting several entries. All of the keys are written first, as described in
+     * {@link #encodeKeys(List)}, followed by the values.
+     */
+    public byte[] encodePutMany(PutManyRequest<K, V> request) {
+        List<K> keys = request.getKeys();
+        List<V> values = request.getValues();
+        byte[] keyBytes = encodeKeys(keys);
+        byte[][] valueBytes = preEncode(valueEncoder, values);
+
+        int outputSize = 4                                          // number of entries
+                + keyBytes.length                                   // key format + keys
+                + fieldsSize(valueEncoder, values, valueBytes)      // value bytes + number of value bytes, for each value
+                + 1                                                 // result options
+                + request.metadataSize();   // metadata
+
+        ByteBuffer buffer = buffer(outputSize);
         writeMeta(buffer, request);
-        writeByteArray(buffer, keyBytes);
-        writeByteArray(buffer, valueBytes);
+        buffer.putInt(keys.size());
+        buffer.put(keyBytes);
+        for (int i = 0; i < values.size(); i++) {
+            writeField(buffer, valueEncoder, values.get(i), valueBytes[i]);
+        }
+        writeResultOptions(buffer, request);
+        return toByteArray(buffer);
+    }
+
+    public byte[] encodeMultiKey(MultiKeyRequest<K> request) {
+        List<K> keys = request.getKeys();
+        byte[] keyBytes = encodeKeys(keys);
+
+        int outputSize = 4                                          // number of keys
+                + keyBytes.length                                   // key format + keys
+                + 1                                                 // result options
+                + request.metadataSize();   // metadata
+
+        ByteBuffer buffer = buffer(outputSize);
+        writeMeta(buffer, request);
+        buffer.putInt(keys.size());
+        buffer.put(keyBytes);
+        writeResultOptions(buffer, request);
+        return toByteArray(buffer);
+    }
+
+    /**
+     * Encode the keys of a batch request, preceded by their format. If the key encoder supports it, each key
+     * is written as the difference to the previous one, which only takes a few bytes when the keys are sorted
+     * so that consecutive keys are close to each other. Otherwise, each key is written with its size.
+     *
+     * @param keys                  The keys of the request.
+     * @return                      The encoded keys.
+     */
+    @SuppressWarnings("unchecked")
+    private byte[] encodeKeys(List<K> keys) {
+        if (keyEncoder instanceof DeltaFieldEncoder) {
+            DeltaFieldEncoder<K> deltaKeyEncoder = (DeltaFieldEncoder<K>) keyEncoder;
+            int size = 1;
+            K previous = null;
+            for (K key : keys) {
+                size += deltaKeyEncoder.encodedDeltaSize(previous, key);
+                previous = key;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(size);
+            buffer.put(ByteResponseEncoder.FORMAT_COMPACT_KEYS);
+            previous = null;
+            for (K key : keys) {
+                deltaKeyEncoder.encodeDelta(previous, key, buffer);
+                previous = key;
+            }
+            return buffer.array();
+        }
+        byte[][] keyBytes = preEncode(keyEncoder, keys);
+        ByteBuffer buffer = ByteBuffer.allocate(1 + fieldsSize(keyEncoder, keys, keyBytes));
+        buffer.put(ByteResponseEncoder.FORMAT_PLAIN);
+        for (int i = 0; i < keys.size(); i++) {
+            writeField(buffer, keyEncoder, keys.get(i), keyBytes[i]);
+        }
         return buffer.array();
     }
 
     public byte[] encodeGet(GetRequest<K> request) {
         K key = request.getKey();
-        byte[] keyBytes = keyEncoder.encode(key);
+        byte[] keyBytes = preEncode(keyEncoder, key);
 
-        int outputSize = keyBytes.length + 4        // key bytes + number of key bytes
+        int outputSize = fieldSize(keyEncoder, key, keyBytes)   // key bytes + number of key bytes
                         + request.metadataSize();   // metadata
 
-        ByteBuffer buffer = ByteBuffer.allocate(outputSize);
+        ByteBuffer buffer = buffer(outputSize);
         writeMeta(buffer, request);
-        writeByteArray(buffer, keyBytes);
-        return buffer.array();
+        writeField(buffer, keyEncoder, key, keyBytes);
+        return toByteArray(buffer);
     }
 
     public byte[] encodeGetRange(GetRangeRequest<K> request) {
         K start = request.getStart();
         K end = request.getEnd();
 
-        byte[] startKeyBytes = keyEncoder.encode(start);
-        byte[] endKeyBytes = keyEncoder.encode(end);
+        byte[] startKeyBytes = preEncode(keyEncoder, start);
+        byte[] endKeyBytes = preEncode(keyEncoder, end);
 
-        int outputSize = startKeyBytes.length + 4   // start key bytes + number of start key bytes
-                        + endKeyBytes.length + 4    // end key bytes + number of end key bytes
+        int outputSize = fieldSize(keyEncoder, start, startKeyBytes)    // start key bytes + number of start key bytes
+                        + fieldSize(keyEncoder, end, endKeyBytes)       // end key bytes + number of end key bytes
                         + 8                         // distance
+                        + 1                         // result options
                         + request.metadataSize();   // metadata size
 
-        ByteBuffer buffer = ByteBuffer.allocate(outputSize);
+        ByteBuffer buffer = buffer(outputSize);
         writeMeta(buffer, request);
-        writeByteArray(buffer, startKeyBytes);
-        writeByteArray(buffer, endKeyBytes);
+        writeField(buffer, keyEncoder, start, startKeyBytes);
+        writeField(buffer, keyEncoder, end, endKeyBytes);
         buffer.putDouble(request.getDistance());
-        return buffer.array();
+        writeResultOptions(buffer, request);
+        return toByteArray(buffer);
     }
 
     public byte[] encodeGetRangeFilterMapper(GetRangeFilterMapperRequest<K> request) {
+        return encodeGetRangeFilterMapper(request, null);
+    }
+
+    /**
+     * Encode a range query with a filter and a mapper. The functions are only referenced by their hash if they
+     * were already shipped to the host receiving the request.
+     */
+    public byte[] encodeGetRangeFilterMapper(GetRangeFilterMapperRequest<K> request, String hostId) {
         try {
-            byte[] encodedMapper = SerializerUtil.getInstance().serializeDefault(request.getMapper());
-            byte[] encodedFilter = SerializerUtil.getInstance().serializeDefault(request.getFilter());
+            SerializedFunction mapper = functions.serialize(request.getMapper());
+            boolean inlineMapper = functions.ship(hostId, mapper) || request.isInlineFunctions();
+            //built-in predicates are encoded directly, the other filters are serialized
+            BuiltinPredicate builtinFilter = (request.getFilter() instanceof BuiltinPredicate)
+                    ? (BuiltinPredicate) request.getFilter() : null;
+            SerializedFunction filter = (builtinFilter == null) ? functions.serialize(request.getFilter()) : null;
+            boolean inlineFilter = (filter != null) && (functions.ship(hostId, filter) || request.isInlineFunctions());
 
             K start = request.getStart();
             K end = request.getEnd();
 
-            byte[] startKeyBytes = keyEncoder.encode(start);
-            byte[] endKeyBytes = keyEncoder.encode(end);
-            int outputSize = startKeyBytes.length + 4   // start key bytes + number of start key bytes
-                    + endKeyBytes.length + 4    // end key bytes + number of end key bytes
-                    + 8                         // sizes of encoded mapper and filter
+            byte[] startKeyBytes = preEncode(keyEncoder, start);
+            byte[] endKeyBytes = preEncode(keyEncoder, end);
+            int outputSize = fieldSize(keyEncoder, start, startKeyBytes)    // start key bytes + number of start key bytes
+                    + fieldSize(keyEncoder, end, endKeyBytes)               // end key bytes + number of end key bytes
                     + 4                         // max entries
-                    + encodedMapper.length
-                    + encodedFilter.length
+                    + functionSize(mapper, inlineMapper)
+                    + 1                         // filter kind
+                    + ((filter != null)
+                        ? functionSize(filter, inlineFilter)
+                        : fieldSize(predicateEncoder, builtinFilter, null))
+                    + 1                         // result options
                     + request.metadataSize();   // metadata size
 
-            ByteBuffer buffer = ByteBuffer.allocate(outputSize);
+            ByteBuffer buffer = buffer(outputSize);
             writeMeta(buffer, request);
-            writeByteArray(buffer, startKeyBytes);
-            writeByteArray(buffer, endKeyBytes);
+            writeField(buffer, keyEncoder, start, startKeyBytes);
+            writeField(buffer, keyEncoder, end, endKeyBytes);
             buffer.putInt(request.getMaxResults());
-            writeByteArray(buffer, encodedMapper);
-            writeByteArray(buffer, encodedFilter);
-            return buffer.array();
+            writeFunction(buffer, mapper, inlineMapper);
+            if (filter != null) {
+                buffer.put(FILTER_SERIALIZED);
+                writeFunction(buffer, filter, inlineFilter);
+            } else {
+                buffer.put(FILTER_BUILTIN);
+                writeField(buffer, predicateEncoder, builtinFilter, null);
+            }
+            writeResultOptions(buffer, request);
+            return toByteArray(buffer);
         } catch (IOException e) {
             throw new RuntimeException("An error occurred during the serialization process.");
         }
@@ -266,17 +454,19 @@ public class ByteRequestEncoder<K, V> implements RequestEncoder {
     public byte[] encodeGetKNN(GetKNNRequest<K> request) {
         K key = request.getKey();
         int k = request.getK();
-        byte[] keyBytes = keyEncoder.encode(key);
+        byte[] keyBytes = preEncode(keyEncoder, key);
 
-        int outputSize = keyBytes.length + 4 // key bytes + number of key bytes
+        int outputSize = fieldSize(keyEncoder, key, keyBytes)   // key bytes + number of key bytes
                 + 4                          // k
+                + 1                          // result options
                 + request.metadataSize();    // metadata size
 
-        ByteBuffer buffer = ByteBuffer.allocate(outputSize);
+        ByteBuffer buffer = buffer(outputSize);
         writeMeta(buffer, request);
-        writeByteArray(buffer, keyBytes);
+        writeField(buffer, keyEncoder, key, keyBytes);
         buffer.putInt(k);
-        return buffer.array();
+        writeResultOptions(buffer, request);
+        return toByteArray(buffer);
     }
 
     public byte[] encodeGetBatch(GetIteratorBatchRequest<K> request) {
@@ -286,49 +476,152 @@ public class ByteRequestEncoder<K, V> implements RequestEncoder {
 
         int outputSize = iteratorId.getBytes().length + 4
                         + 4                         // batch size
+                        + 1                         // result options
                         + request.metadataSize();   // metadata
 
+        K start = request.getStart(), end = request.getEnd();
         byte[] startBytes = null, endBytes = null;
         if (request.isRanged()) {
-            startBytes = keyEncoder.encode(request.getStart());
-            endBytes = keyEncoder.encode(request.getEnd());
-            outputSize += 4 + startBytes.length + 4 + endBytes.length + 4;
+            startBytes = preEncode(keyEncoder, start);
+            endBytes = preEncode(keyEncoder, end);
+            outputSize += fieldSize(keyEncoder, start, startBytes) + fieldSize(keyEncoder, end, endBytes) + 4;
         } else {
             outputSize += 4;
         }
 
-        ByteBuffer buffer = ByteBuffer.allocate(outputSize);
+        ByteBuffer buffer = buffer(outputSize);
         writeMeta(buffer, request);
         writeString(buffer, iteratorId);
         buffer.putInt(size);
         if (request.isRanged()) {
             buffer.putInt(1);
-            writeByteArray(buffer, startBytes);
-            writeByteArray(buffer, endBytes);
+            writeField(buffer, keyEncoder, start, startBytes);
+            writeField(buffer, keyEncoder, end, endBytes);
         } else {
             buffer.putInt(0);
         }
-        return buffer.array();
+        writeResultOptions(buffer, request);
+        return toByteArray(buffer);
+    }
+
+    /**
+     * A GET_STREAM request is encoded as a GET_BATCH request followed by the initial credit.
+     */
+    public byte[] encodeGetStream(GetStreamRequest<K> request) {
+        byte[] batch = encodeGetBatch(request);
+        ByteBuffer buffer = buffer(batch.length + 4);
+        buffer.put(batch);
+        buffer.putInt(request.getCredit());
+        return toByteArray(buffer);
     }
 
     public byte[] encodeDelete(DeleteRequest<K> request) {
         K key = request.getKey();
-        byte[] keyBytes = keyEncoder.encode(key);
+        byte[] keyBytes = preEncode(keyEncoder, key);
 
-        int outputSize = keyBytes.length + 4        // key bytes + number of key bytes
+        int outputSize = fieldSize(keyEncoder, key, keyBytes)   // key bytes + number of key bytes
                 + request.metadataSize();   // metadata
 
-        ByteBuffer buffer = ByteBuffer.allocate(outputSize);
+        ByteBuffer buffer = buffer(outputSize);
         writeMeta(buffer, request);
-        writeByteArray(buffer, keyBytes);
-        return buffer.array();
+        writeField(buffer, keyEncoder, key, keyBytes);
+        return toByteArray(buffer);
+    }
+
+    public byte[] encodeDeleteRange(DeleteRangeRequest<K> request) {
+        K start = request.getStart();
+        K end = request.getEnd();
+        BuiltinPredicate filter = request.getFilter();
+
+        byte[] startKeyBytes = preEncode(keyEncoder, start);
+        byte[] endKeyBytes = preEncode(keyEncoder, end);
+
+        int outputSize = fieldSize(keyEncoder, start, startKeyBytes)    // start key bytes + number of start key bytes
+                + fieldSize(keyEncoder, end, endKeyBytes)               // end key bytes + number of end key bytes
+                + 1                                                     // whether there is a filter
+                + ((filter != null) ? fieldSize(predicateEncoder, filter, null) : 0)
+                + request.metadataSize();   // metadata size
+
+        ByteBuffer buffer = buffer(outputSize);
+        writeMeta(buffer, request);
+        writeField(buffer, keyEncoder, start, startKeyBytes);
+        writeField(buffer, keyEncoder, end, endKeyBytes);
+        if (filter != null) {
+            buffer.put(FILTER_BUILTIN);
+            writeField(buffer, predicateEncoder, filter, null);
+        } else {
+            buffer.put(NO_FILTER);
+        }
+        return toByteArray(buffer);
+    }
+
+    public byte[] encodeAggregateRange(AggregateRangeRequest<K> request) {
+        K start = request.getStart();
+        K end = request.getEnd();
+        BuiltinPredicate filter = request.getFilter();
+
+        byte[] startKeyBytes = preEncode(keyEncoder, start);
+        byte[] endKeyBytes = preEncode(keyEncoder, end);
+
+        int outputSize = fieldSize(keyEncoder, start, startKeyBytes)    // start key bytes + number of start key bytes
+                + fieldSize(keyEncoder, end, endKeyBytes)               // end key bytes + number of end key bytes
+                + 1                                                     // whether there is a filter
+                + ((filter != null) ? fieldSize(predicateEncoder, filter, null) : 0)
+                + 4                                                     // the requested aggregates
+                + 4                                                     // the number of histogram cells
+                + request.metadataSize();   // metadata size
+
+        ByteBuffer buffer = buffer(outputSize);
+        writeMeta(buffer, request);
+        writeField(buffer, keyEncoder, start, startKeyBytes);
+        writeField(buffer, keyEncoder, end, endKeyBytes);
+        if (filter != null) {
+            buffer.put(FILTER_BUILTIN);
+            writeField(buffer, predicateEncoder, filter, null);
+        } else {
+            buffer.put(NO_FILTER);
+        }
+        buffer.putInt(request.getAggregates());
+        buffer.putInt(request.getCells());
+        return toByteArray(buffer);
+    }
+
+    public byte[] encodeSampleRange(SampleRangeRequest<K> request) {
+        K start = request.getStart();
+        K end = request.getEnd();
+        BuiltinPredicate filter = request.getFilter();
+
+        byte[] startKeyBytes = preEncode(keyEncoder, start);
+        byte[] endKeyBytes = preEncode(keyEncoder, end);
+
+        int outputSize = fieldSize(keyEncoder, start, startKeyBytes)    // start key bytes + number of start key bytes
+                + fieldSize(keyEncoder, end, endKeyBytes)               // end key bytes + number of end key bytes
+                + 1                                                     // whether there is a filter
+                + ((filter != null) ? fieldSize(predicateEncoder, filter, null) : 0)
+                + 4                                                     // the size of the sample
+                + 1                                                     // result options
+                + request.metadataSize();   // metadata size
+
+        ByteBuffer buffer = buffer(outputSize);
+        writeMeta(buffer, request);
+        writeField(buffer, keyEncoder, start, startKeyBytes);
+        writeField(buffer, keyEncoder, end, endKeyBytes);
+        if (filter != null) {
+            buffer.put(FILTER_BUILTIN);
+            writeField(buffer, predicateEncoder, filter, null);
+        } else {
+            buffer.put(NO_FILTER);
+        }
+        buffer.putInt(request.getSize());
+        writeResultOptions(buffer, request);
+        return toByteArray(buffer);
     }
 
     public byte[] encodeBase(BaseRequest request) {
         int outputSize = request.metadataSize();
-        ByteBuffer buffer = ByteBuffer.allocate(outputSize);
+        ByteBuffer buffer = buffer(outputSize);
         writeMeta(buffer, request);
-        return buffer.array();
+        return toByteArray(buffer);
     }
 
     public byte[] encodeMap(MapRequest request) {
@@ -336,28 +629,129 @@ public class ByteRequestEncoder<K, V> implements RequestEncoder {
         int outputSize = 4
                 + mapString.getBytes().length
                 + request.metadataSize();
-        ByteBuffer buffer = ByteBuffer.allocate(outputSize);
+        ByteBuffer buffer = buffer(outputSize);
         writeMeta(buffer, request);
         writeString(buffer, mapString);
-        return buffer.array();
+        return toByteArray(buffer);
     }
 
     public byte[] encodeUpdateKey(UpdateKeyRequest<K> request) {
         K start = request.getOldKey();
         K end = request.getNewKey();
 
-        byte[] oldKeyBytes = keyEncoder.encode(start);
-        byte[] newKeyBytes = keyEncoder.encode(end);
+        byte[] oldKeyBytes = preEncode(keyEncoder, start);
+        byte[] newKeyBytes = preEncode(keyEncoder, end);
 
-        int outputSize = oldKeyBytes.length + 4   // start key bytes + number of start key bytes
-                + newKeyBytes.length + 4    // end key bytes + number of end key bytes
+        int outputSize = fieldSize(keyEncoder, start, oldKeyBytes)  // start key bytes + number of start key bytes
+                + fieldSize(keyEncoder, end, newKeyBytes)           // end key bytes + number of end key bytes
                 + request.metadataSize();   // metadata size
 
-        ByteBuffer buffer = ByteBuffer.allocate(outputSize);
+        ByteBuffer buffer = buffer(outputSize);
         writeMeta(buffer, request);
-        writeByteArray(buffer, oldKeyBytes);
-        writeByteArray(buffer, newKeyBytes);
-        return buffer.array();
+        writeField(buffer, keyEncoder, start, oldKeyBytes);
+        writeField(buffer, keyEncoder, end, newKeyBytes);
+        return toByteArray(buffer);
+    }
+
+    /**
+     * Obtain the encoding buffer of the current thread, cleared and with at least the required capacity.
+     *
+     * @param size                  The number of bytes that will be written.
+     * @return                      The buffer.
+     */
+    private static ByteBuffer buffer(int size) {
+        ByteBuffer buffer = buffers.get();
+        if (buffer.capacity() < size) {
+            buffer = ByteBuffer.allocate(Math.max(size, 2 * buffer.capacity()));
+            if (buffer.capacity() <= MAX_RETAINED_BUFFER_SIZE) {
+                buffers.set(buffer);
+            }
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Copy the bytes written to the buffer into an array of exactly their size.
+     */
+    private static byte[] toByteArray(ByteBuffer buffer) {
+        return Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+    /**
+     * Encode the field up front if its encoder cannot report the encoded size without encoding it.
+     *
+     * @return                      The encoded field, or null if it can be encoded directly into the buffer.
+     */
+    private static <T> byte[] preEncode(FieldEncoder<T> encoder, T value) {
+        return (encoder.encodedSize(value) < 0) ? encoder.encode(value) : null;
+    }
+
+    /**
+     * Apply {@link #preEncode(FieldEncoder, Object)} to each value of the list.
+     */
+    private static <T> byte[][] preEncode(FieldEncoder<T> encoder, List<T> values) {
+        byte[][] preEncoded = new byte[values.size()][];
+        for (int i = 0; i < preEncoded.length; i++) {
+            preEncoded[i] = preEncode(encoder, values.get(i));
+        }
+        return preEncoded;
+    }
+
+    /**
+     * @return                      The number of bytes needed for all the fields of the list, including their sizes.
+     */
+    private static <T> int fieldsSize(FieldEncoder<T> encoder, List<T> values, byte[][] preEncoded) {
+        int size = 0;
+        for (int i = 0; i < preEncoded.length; i++) {
+            size += fieldSize(encoder, values.get(i), preEncoded[i]);
+        }
+        return size;
+    }
+
+    /**
+     * @return                      The number of bytes needed for the field, including its size.
+     */
+    private static <T> int fieldSize(FieldEncoder<T> encoder, T value, byte[] preEncoded) {
+        return 4 + ((preEncoded != null) ? preEncoded.length : encoder.encodedSize(value));
+    }
+
+    /**
+     * Write a field to the buffer, preceded by its size. Fields that were not encoded up front
+     * are encoded directly into the buffer.
+     */
+    private static <T> void writeField(ByteBuffer buffer, FieldEncoder<T> encoder, T value, byte[] preEncoded) {
+        if (preEncoded != null) {
+            writeByteArray(buffer, preEncoded);
+        } else {
+            buffer.putInt(encoder.encodedSize(value));
+            encoder.encode(value, buffer);
+        }
+    }
+
+    /**
+     * Write the options of requests returning lists of entries. Currently, only whether the client
+     * accepts compactly encoded keys.
+     */
+    private static void writeResultOptions(ByteBuffer buffer, BaseRequest request) {
+        buffer.put((byte) (request.isCompactKeys() ? 1 : 0));
+    }
+
+    /**
+     * The size of a filter or mapper function, which is always identified by its hash. The serialized
+     * function follows the hash only if it is sent inline, otherwise its length is -1.
+     */
+    private static int functionSize(SerializedFunction function, boolean inline) {
+        return SerializedFunction.HASH_SIZE + 4 + (inline ? function.getBytes().length : 0);
+    }
+
+    private static void writeFunction(ByteBuffer buffer, SerializedFunction function, boolean inline) {
+        buffer.put(function.getHash().asBytes());
+        if (inline) {
+            writeByteArray(buffer, function.getBytes());
+        } else {
+            buffer.putInt(-1);
+        }
     }
 
     /**
@@ -396,7 +790,7 @@ public class ByteRequestEncoder<K, V> implements RequestEncoder {
      * @param data                  The byte array to be written.
      * @return                      The buffer after the write operation was completed.
      */
-    private ByteBuffer writeByteArray(ByteBuffer buffer, byte[] data) {
+    private static ByteBuffer writeByteArray(ByteBuffer buffer, byte[] data) {
         buffer.putInt(data.length);
         buffer.put(data);
         return buffer;
@@ -26,8 +26,10 @@ package ch.ethz.globis.disindex.codec;
 
 import java.nio.ByteBuffer;
 
+import ch.ethz.globis.disindex.codec.api.DeltaFieldDecoder;
 import ch.ethz.globis.disindex.codec.api.FieldDecoder;
 import ch.ethz.globis.disindex.codec.api.ResponseDecoder;
+import ch.ethz.globis.disindex.codec.util.BitUtils;
 import ch.ethz.globis.distindex.api.IndexEntry;
 import ch.ethz.globis.distindex.api.IndexEntryList;
 import ch.ethz.globis.distindex.operation.response.BaseResponse;
@@ -36,7 +38,6 @@ import ch.ethz.globis.distindex.operation.response.MapResponse;
 import ch.ethz.globis.distindex.operation.response.Response;
 import ch.ethz.globis.distindex.operation.response.ResponseCode;
 import ch.ethz.globis.distindex.operation.response.ResultResponse;
-import ch.ethz.globis.distindex.util.SerializerUtil;
 
 /**
  * Decodes response messages sent by the server to the client.
@@ -101,7 +102,13 @@ public class ByteResponseDecoder<K, V> implements ResponseDecoder<K, V> {
 
     @Override
     public MapResponse decodeMap(byte[] payload) {
-       return SerializerUtil.getInstance().deserialize(payload);
+        ByteBuffer buffer = ByteBuffer.wrap(payload);
+        byte opCode = buffer.get();
+        int requestId = buffer.getInt();
+        byte status = buffer.get();
+        MapResponse response = new MapResponse(opCode, requestId, status);
+        MapResponseCodec.decode(buffer, response);
+        return response;
     }
 
     @Override
@@ -114,33 +121,52 @@ public class ByteResponseDecoder<K, V> implements ResponseDecoder<K, V> {
         return valueDecoder.decode(payload);
     }
 
+    @SuppressWarnings("unchecked")
     public ResultResponse<K, V> decodeResult(ByteBuffer buffer) {
         byte opCode = buffer.get();
         int requestId = buffer.getInt();
         byte status = buffer.get();
+        byte format = buffer.get();
         int nrEntries = buffer.getInt();
 
-        int keysBytesSize, valueBytesSize;
-        byte[] keyBytes, valueBytes;
-        K key;
+        K key = null;
         V value;
         IndexEntryList<K, V> entries = new IndexEntryList<>();
-        for (int i = 0; i < nrEntries; i++) {
-            keysBytesSize = buffer.getInt();
-            keyBytes = new byte[keysBytesSize];
-            buffer.get(keyBytes);
-            key = keyDecoder.decode(keyBytes);
-
-            valueBytesSize = buffer.getInt();
-            valueBytes = new byte[valueBytesSize];
-            buffer.get(valueBytes);
-            value = valueDecoder.decode(valueBytes);
-
-            entries.add(new IndexEntry<>(key, value));
+        if (format == ByteResponseEncoder.FORMAT_COMPACT_KEYS) {
+            if (!(keyDecoder instanceof DeltaFieldDecoder)) {
+                throw new IllegalStateException("The key decoder cannot decode compact keys.");
+            }
+            DeltaFieldDecoder<K> deltaKeyDecoder = (DeltaFieldDecoder<K>) keyDecoder;
+            for (int i = 0; i < nrEntries; i++) {
+                key = deltaKeyDecoder.decodeDelta(key, buffer);
+                value = decodeField(buffer, (int) BitUtils.readVarLong(buffer), valueDecoder);
+                entries.add(new IndexEntry<>(key, value));
+            }
+        } else {
+            for (int i = 0; i < nrEntries; i++) {
+                key = decodeField(buffer, buffer.getInt(), keyDecoder);
+                value = decodeField(buffer, buffer.getInt(), valueDecoder);
+                entries.add(new IndexEntry<>(key, value));
+            }
         }
 
         String iteratorId = readString(buffer);
-        return new ResultResponse<>(opCode, requestId, status, entries, iteratorId);
+        ResultResponse<K, V> response = new ResultResponse<>(opCode, requestId, status, entries, iteratorId);
+        response.setTotalCount(BitUtils.zigZagDecode(BitUtils.readVarLong(buffer)));
+        return response;
+    }
+
+    /**
+     * Decode a field of the given size in place, by restricting the limit of the buffer to the field.
+     */
+    private <T> T decodeField(ByteBuffer buffer, int size, FieldDecoder<T> decoder) {
+        int limit = buffer.limit();
+        int end = buffer.position() + size;
+        buffer.limit(end);
+        T field = decoder.decode(buffer);
+        buffer.limit(limit);
+        buffer.position(end);
+        return field;
     }
 
     private String readString(ByteBuffer buffer) {
@@ -24,10 +24,7 @@ along with this program.  If not, see <http://www.gnu.org/licenses/>.
 */
 package ch.ethz.globis.disindex.codec;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.nio.ByteBuffer;
-
+import ch.ethz.globis.disindex.codec.api.DeltaFieldEncoder;
 import ch.ethz.globis.disindex.codec.api.FieldEncoder;
 import ch.ethz.globis.disindex.codec.api.ResponseEncoder;
 import ch.ethz.globis.disindex.codec.util.BitUtils;
@@ -36,32 +33,70 @@ import ch.ethz.globis.distindex.api.IndexEntryList;
 import ch.ethz.globis.distindex.operation.response.IntegerResponse;
 import ch.ethz.globis.distindex.operation.response.MapResponse;
 import ch.ethz.globis.distindex.operation.response.Response;
+import ch.ethz.globis.distindex.operation.response.ResultCursor;
 import ch.ethz.globis.distindex.operation.response.ResultResponse;
-import ch.ethz.globis.distindex.util.SerializerUtil;
+import ch.ethz.globis.distindex.operation.response.StreamingResultResponse;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import java.nio.ByteBuffer;
 
 /**
  * Encodes response messages sent by the server to the client.
  *
+ * The responses are written directly into a Netty buffer. The methods returning byte arrays copy the
+ * content of a temporary heap buffer.
+ *
+ * The entries of result responses are written in one of two formats, announced by a byte in front of them.
+ * By default, keys and values are preceded by their length. If the client asked for compact keys and the key
+ * encoder supports it, the keys are written relative to the previous key and the value lengths as variable
+ * length integers.
+ *
+ * The entries are followed by the iterator id and by the number of entries the result was selected from,
+ * which is only known to differ from the number of entries for samples.
+ *
  * @param <K>                       The type of key.
  */
 public class ByteResponseEncoder<K> implements ResponseEncoder {
 
+    /** Keys and values preceded by their length. */
+    public static final byte FORMAT_PLAIN = 0;
+
+    /** Keys relative to the previous key, values preceded by their variable length integer length. */
+    public static final byte FORMAT_COMPACT_KEYS = 1;
+
+    /** The buffer compact keys are encoded into before being copied to the response, which may be composite. */
+    private static final ThreadLocal<ByteBuffer> DELTA_BUFFER = new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+            return ByteBuffer.allocate(256);
+        }
+    };
+
     private FieldEncoder<K> keyEncoder;
 
     public ByteResponseEncoder(FieldEncoder<K> keyEncoder) {
         this.keyEncoder = keyEncoder;
     }
 
-    @SuppressWarnings("unchecked")
     public byte[] encode(Response response) {
+        ByteBuf buffer = Unpooled.buffer();
+        encode(response, buffer);
+        return toByteArray(buffer);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public void encode(Response response, ByteBuf buffer) {
         if (response instanceof IntegerResponse) {
-            return encode((IntegerResponse) response);
+            encode((IntegerResponse) response, buffer);
         } else if (response instanceof ResultResponse) {
-            return encode((ResultResponse<K, byte[]>) response);
+            encode((ResultResponse<K, byte[]>) response, buffer);
         } else if (response instanceof MapResponse) {
-            return encodeMap((MapResponse) response);
+            encodeMap((MapResponse) response, buffer);
+        } else {
+            encodeBase(response, buffer);
         }
-        return encodeBase(response);
     }
 
     /**
@@ -71,14 +106,24 @@ public class ByteResponseEncoder<K> implements ResponseEncoder {
      * @return
      */
     public byte[] encode(ResultResponse<K, byte[]> response) {
-        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-        buffer.write(response.getOpCode());
-        writeInt(response.getRequestId(), buffer);
-        buffer.write(response.getStatus());
-        writeInt(response.getNrEntries(), buffer);
-        encode(buffer, response.getEntries());
+        ByteBuf buffer = Unpooled.buffer();
+        encode(response, buffer);
+        return toByteArray(buffer);
+    }
+
+    @SuppressWarnings("unchecked")
+    public void encode(ResultResponse<K, byte[]> response, ByteBuf buffer) {
+        writeHeader(response, buffer);
+        boolean compact = response.isCompactKeys() && (keyEncoder instanceof DeltaFieldEncoder);
+        buffer.writeByte(compact ? FORMAT_COMPACT_KEYS : FORMAT_PLAIN);
+        if (response instanceof StreamingResultResponse) {
+            encode(buffer, ((StreamingResultResponse<K, byte[]>) response).getCursor(), compact);
+        } else {
+            buffer.writeInt(response.getNrEntries());
+            encode(buffer, response.getEntries(), compact);
+        }
         writeString(response.getIteratorId(), buffer);
-        return buffer.toByteArray();
+        BitUtils.writeVarLong(buffer, BitUtils.zigZagEncode(response.getTotalCount()));
     }
 
     /**
@@ -88,16 +133,14 @@ public class ByteResponseEncoder<K> implements ResponseEncoder {
      * @return
      */
     public byte[] encode(IntegerResponse response) {
-        int outputSize = 4      // request id
-                        + 1     // opcode
-                        + 1     // status
-                        + 4;    // int value
-        ByteBuffer buffer = ByteBuffer.allocate(outputSize);
-        buffer.put(response.getOpCode());
-        buffer.putInt(response.getRequestId());
-        buffer.put(response.getStatus());
-        buffer.putInt(response.getContent());
-        return buffer.array();
+        ByteBuf buffer = Unpooled.buffer(10);
+        encode(response, buffer);
+        return toByteArray(buffer);
+    }
+
+    public void encode(IntegerResponse response, ByteBuf buffer) {
+        writeHeader(response, buffer);
+        buffer.writeInt(response.getContent());
     }
 
     /**
@@ -107,40 +150,96 @@ public class ByteResponseEncoder<K> implements ResponseEncoder {
      * @return
      */
     public byte[] encodeBase(Response response) {
-        int outputSize = 4      // request id
-                + 1             // opcode
-                + 1;            // status
-        ByteBuffer buffer = ByteBuffer.allocate(outputSize);
-        buffer.put(response.getOpCode());
-        buffer.putInt(response.getRequestId());
-        buffer.put(response.getStatus());
-        return buffer.array();
+        ByteBuf buffer = Unpooled.buffer(6);
+        encodeBase(response, buffer);
+        return toByteArray(buffer);
+    }
+
+    public void encodeBase(Response response, ByteBuf buffer) {
+        writeHeader(response, buffer);
     }
 
     /**
      * Encode a map response.
+     *
+     * The usual response header is written in front of the serialized response, so that the client
+     * can match the response to its request without deserializing it.
+     *
      * @param response                          The map response.
      * @return
      */
     public byte[] encodeMap(MapResponse response) {
-        return SerializerUtil.getInstance().serialize(response);
+        ByteBuf buffer = Unpooled.buffer();
+        encodeMap(response, buffer);
+        return toByteArray(buffer);
     }
 
-    public void encode(ByteArrayOutputStream buffer, IndexEntryList<K, byte[]> entries) {
+    public void encodeMap(MapResponse response, ByteBuf buffer) {
+        writeHeader(response, buffer);
+        MapResponseCodec.encode(response.getParameters(), buffer);
+    }
+
+    public void encode(ByteBuf buffer, IndexEntryList<K, byte[]> entries, boolean compact) {
+        K previous = null;
         for (IndexEntry<K, byte[]> entry : entries) {
-            write(keyEncoder.encode(entry.getKey()), buffer);
-            write(entry.getValue(), buffer);
+            writeEntry(previous, entry.getKey(), entry.getValue(), compact, buffer);
+            previous = entry.getKey();
         }
     }
 
-    private void writeInt(int value, ByteArrayOutputStream dest) {
-        byte[] bytes = BitUtils.toByteArray(value);
-        for (byte b : bytes) {
-            dest.write(b);
+    /**
+     * Encode the entries as they are read from the cursor. The number of entries is only known
+     * at the end, so it is written in front of the entries once all of them were encoded.
+     * The cursor is closed afterwards, also if the encoding failed.
+     */
+    public void encode(ByteBuf buffer, ResultCursor<K, byte[]> cursor, boolean compact) {
+        try {
+            int nrEntriesIndex = buffer.writerIndex();
+            buffer.writeInt(0);
+            int nrEntries = 0;
+            K previous = null;
+            while (cursor.advance()) {
+                K key = cursor.key();
+                writeEntry(previous, key, cursor.value(), compact, buffer);
+                previous = key;
+                nrEntries++;
+            }
+            buffer.setInt(nrEntriesIndex, nrEntries);
+        } finally {
+            cursor.close();
         }
     }
 
-    private void writeString(String str, ByteArrayOutputStream dest) {
+    @SuppressWarnings("unchecked")
+    private void writeEntry(K previous, K key, byte[] value, boolean compact, ByteBuf buffer) {
+        if (compact) {
+            DeltaFieldEncoder<K> deltaKeyEncoder = (DeltaFieldEncoder<K>) keyEncoder;
+            int size = deltaKeyEncoder.encodedDeltaSize(previous, key);
+            ByteBuffer deltaBuffer = DELTA_BUFFER.get();
+            if (deltaBuffer.capacity() < size) {
+                deltaBuffer = ByteBuffer.allocate(size);
+                DELTA_BUFFER.set(deltaBuffer);
+            }
+            deltaBuffer.clear();
+            deltaKeyEncoder.encodeDelta(previous, key, deltaBuffer);
+            buffer.writeBytes(deltaBuffer.array(), 0, size);
+            BitUtils.writeVarLong(buffer, (value == null) ? 0 : value.length);
+            if (value != null) {
+                buffer.writeBytes(value);
+            }
+        } else {
+            write(keyEncoder.encode(key), buffer);
+            write(value, buffer);
+        }
+    }
+
+    private void writeHeader(Response response, ByteBuf buffer) {
+        buffer.writeByte(response.getOpCode());
+        buffer.writeInt(response.getRequestId());
+        buffer.writeByte(response.getStatus());
+    }
+
+    private void writeString(String str, ByteBuf dest) {
         if (str == null) {
             return;
         }
@@ -148,17 +247,18 @@ public class ByteResponseEncoder<K> implements ResponseEncoder {
         write(bytes, dest);
     }
 
-    private void write(byte[] source, ByteArrayOutputStream dest) {
+    private void write(byte[] source, ByteBuf dest) {
         if (source == null) {
-            writeInt(0, dest);
+            dest.writeInt(0);
             return;
         }
-        writeInt(source.length, dest);
-        try {
-            dest.write(source);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        dest.writeInt(source.length);
+        dest.writeBytes(source);
     }
 
-}
\ No newline at end of file
+    private static byte[] toByteArray(ByteBuf buffer) {
+        byte[] bytes = new byte[buffer.readableBytes()];
+        buffer.readBytes(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,350 @@
+/*
+This file is part of PH-Tree:
+A multi-dimensional indexing and storage structure.
+
+Copyright (C) 2011-2015
+Eidgenössische Technische Hochschule Zürich (ETH Zurich)
+Institute for Information Systems
+GlobIS Group
+Bogdan Vancea, Tilmann Zaeschke
+zaeschke@inf.ethz.ch or zoodb@gmx.de
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package ch.ethz.globis.disindex.codec;
+
+import ch.ethz.globis.disindex.codec.util.BitUtils;
+import ch.ethz.globis.distindex.api.RangeAggregate;
+import ch.ethz.globis.distindex.operation.response.MapResponse;
+import ch.ethz.globis.pht.PhTreeHelper;
+import ch.ethz.globis.pht.util.PhTreeQStats;
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.ByteBufferInput;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import io.netty.buffer.ByteBuf;
+import org.objenesis.strategy.StdInstantiatorStrategy;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Encodes the parameters of map responses with a compact binary schema.
+ *
+ * The parameters follow the response header:
+ *
+ *      schema version (1 byte) | nr parameters (varint) | for each parameter: key | type (1 byte) | value
+ *
+ * Strings and byte arrays are written as their varint length followed by their bytes, strings in UTF-8,
+ * and integers as zig-zag varints. The tree statistics and the range aggregates are written field by field,
+ * in the order of the schema version. A later version may only append fields, so the order of the existing fields never
+ * changes. Values of other types are serialized with Kryo, preceded by their varint length. These use a Kryo
+ * instance of their own, with the common classes registered, so the format of the values stored in the index
+ * and of the mapping kept by the cluster service does not depend on this schema.
+ */
+final class MapResponseCodec {
+
+    /** The version of the schema written by this class. */
+    static final byte SCHEMA_VERSION = 1;
+
+    private static final byte TYPE_NULL = 0;
+    private static final byte TYPE_INT = 1;
+    private static final byte TYPE_LONG = 2;
+    private static final byte TYPE_STRING = 3;
+    private static final byte TYPE_STATS = 4;
+    private static final byte TYPE_QUALITY = 5;
+    private static final byte TYPE_OBJECT = 6;
+    private static final byte TYPE_BYTES = 7;
+    private static final byte TYPE_AGGREGATE = 8;
+
+    /** The Kryo instances serializing the other values. Registered classes are written as a small id. */
+    private static final ThreadLocal<Kryo> KRYOS = new ThreadLocal<Kryo>() {
+        @Override
+        protected Kryo initialValue() {
+            Kryo kryo = new Kryo();
+            ((Kryo.DefaultInstantiatorStrategy) kryo.getInstantiatorStrategy()).
+                    setFallbackInstantiatorStrategy(new StdInstantiatorStrategy());
+            //the order of the registrations is part of the schema and must not change
+            kryo.register(byte[].class);
+            kryo.register(int[].class);
+            kryo.register(long[].class);
+            kryo.register(HashMap.class);
+            kryo.register(PhTreeHelper.Stats.class);
+            kryo.register(PhTreeQStats.class);
+            return kryo;
+        }
+    };
+
+    private MapResponseCodec() {
+    }
+
+    static void encode(Map<String, Object> parameters, ByteBuf buffer) {
+        buffer.writeByte(SCHEMA_VERSION);
+        writeVarInt(buffer, parameters.size());
+        for (Map.Entry<String, Object> parameter : parameters.entrySet()) {
+            writeString(buffer, parameter.getKey());
+            writeValue(buffer, parameter.getValue());
+        }
+    }
+
+    static void decode(ByteBuffer buffer, MapResponse response) {
+        byte version = buffer.get();
+        if (version != SCHEMA_VERSION) {
+            throw new IllegalStateException("Unsupported map response schema version " + version);
+        }
+        int nrParameters = readVarInt(buffer);
+        for (int i = 0; i < nrParameters; i++) {
+            String key = readString(buffer);
+            response.addParameter(key, readValue(buffer));
+        }
+    }
+
+    private static void writeValue(ByteBuf buffer, Object value) {
+        if (value == null) {
+            buffer.writeByte(TYPE_NULL);
+        } else if (value instanceof Integer) {
+            buffer.writeByte(TYPE_INT);
+            writeVarInt(buffer, (Integer) value);
+        } else if (value instanceof Long) {
+            buffer.writeByte(TYPE_LONG);
+            BitUtils.writeVarLong(buffer, BitUtils.zigZagEncode((Long) value));
+        } else if (value instanceof String) {
+            buffer.writeByte(TYPE_STRING);
+            writeString(buffer, (String) value);
+        } else if (value instanceof byte[]) {
+            buffer.writeByte(TYPE_BYTES);
+            writeVarInt(buffer, ((byte[]) value).length);
+            buffer.writeBytes((byte[]) value);
+        } else if (value instanceof PhTreeHelper.Stats) {
+            buffer.writeByte(TYPE_STATS);
+            writeStats(buffer, (PhTreeHelper.Stats) value);
+        } else if (value instanceof PhTreeQStats) {
+            buffer.writeByte(TYPE_QUALITY);
+            writeQuality(buffer, (PhTreeQStats) value);
+        } else if (value instanceof RangeAggregate) {
+            buffer.writeByte(TYPE_AGGREGATE);
+            writeAggregate(buffer, (RangeAggregate) value);
+        } else {
+            buffer.writeByte(TYPE_OBJECT);
+            Output output = new Output(256, -1);
+            KRYOS.get().writeClassAndObject(output, value);
+            writeVarInt(buffer, output.position());
+            buffer.writeBytes(output.getBuffer(), 0, output.position());
+        }
+    }
+
+    private static Object readValue(ByteBuffer buffer) {
+        byte type = buffer.get();
+        switch (type) {
+            case TYPE_NULL:
+                return null;
+            case TYPE_INT:
+                return readVarInt(buffer);
+            case TYPE_LONG:
+                return BitUtils.zigZagDecode(BitUtils.readVarLong(buffer));
+            case TYPE_STRING:
+                return readString(buffer);
+            case TYPE_BYTES:
+                byte[] bytes = new byte[readVarInt(buffer)];
+                buffer.get(bytes);
+                return bytes;
+            case TYPE_STATS:
+                return readStats(buffer);
+            case TYPE_QUALITY:
+                return readQuality(buffer);
+            case TYPE_AGGREGATE:
+                return readAggregate(buffer);
+            case TYPE_OBJECT:
+                int length = readVarInt(buffer);
+                ByteBuffer object = buffer.slice();
+                object.limit(length);
+                buffer.position(buffer.position() + length);
+                return readObject(object);
+            default:
+                throw new IllegalStateException("Unknown map response parameter type " + type);
+        }
+    }
+
+    private static Object readObject(ByteBuffer object) {
+        Input input = object.hasArray()
+                ? new Input(object.array(), object.arrayOffset() + object.position(), object.remaining())
+                : new ByteBufferInput(object);
+        Object value = KRYOS.get().readClassAndObject(input);
+        input.close();
+        return value;
+    }
+
+    private static void writeStats(ByteBuf buffer, PhTreeHelper.Stats stats) {
+        writeVarInt(buffer, stats.nChildren);
+        writeVarInt(buffer, stats.nHCP);
+        writeVarInt(buffer, stats.nHCS);
+        writeVarInt(buffer, stats.nInnerNodes);
+        writeVarInt(buffer, stats.nLeafNodes);
+        writeVarInt(buffer, stats.nLeafSingle);
+        writeVarInt(buffer, stats.nLeafSingleNoPrefix);
+        writeVarInt(buffer, stats.nLonely);
+        writeVarInt(buffer, stats.nNI);
+        writeVarInt(buffer, stats.nNodes);
+        writeVarInt(buffer, stats.nSubOnly);
+        writeVarInt(buffer, stats.nTooLarge);
+        writeVarInt(buffer, stats.nTooLarge2);
+        writeVarInt(buffer, stats.nTooLarge4);
+        writeVarInt(buffer, stats.size);
+    }
+
+    private static PhTreeHelper.Stats readStats(ByteBuffer buffer) {
+        PhTreeHelper.Stats stats = new PhTreeHelper.Stats();
+        stats.nChildren = readVarInt(buffer);
+        stats.nHCP = readVarInt(buffer);
+        stats.nHCS = readVarInt(buffer);
+        stats.nInnerNodes = readVarInt(buffer);
+        stats.nLeafNodes = readVarInt(buffer);
+        stats.nLeafSingle = readVarInt(buffer);
+        stats.nLeafSingleNoPrefix = readVarInt(buffer);
+        stats.nLonely = readVarInt(buffer);
+        stats.nNI = readVarInt(buffer);
+        stats.nNodes = readVarInt(buffer);
+        stats.nSubOnly = readVarInt(buffer);
+        stats.nTooLarge = readVarInt(buffer);
+        stats.nTooLarge2 = readVarInt(buffer);
+        stats.nTooLarge4 = readVarInt(buffer);
+        stats.size = readVarInt(buffer);
+        return stats;
+    }
+
+    private static void writeQuality(ByteBuf buffer, PhTreeQStats quality) {
+        writeVarInt(buffer, quality.q_nPostFixN.length);
+        for (int count : quality.q_nPostFixN) {
+            writeVarInt(buffer, count);
+        }
+        BitUtils.writeVarLong(buffer, BitUtils.zigZagEncode(quality.q_totalDepth));
+        writeVarInt(buffer, quality.nHCP);
+        writeVarInt(buffer, quality.nHCS);
+        writeVarInt(buffer, quality.nNI);
+        writeVarInt(buffer, quality.nNodes);
+    }
+
+    private static PhTreeQStats readQuality(ByteBuffer buffer) {
+        PhTreeQStats quality = new PhTreeQStats(readVarInt(buffer));
+        for (int i = 0; i < quality.q_nPostFixN.length; i++) {
+            quality.q_nPostFixN[i] = readVarInt(buffer);
+        }
+        quality.q_totalDepth = BitUtils.zigZagDecode(BitUtils.readVarLong(buffer));
+        quality.nHCP = readVarInt(buffer);
+        quality.nHCS = readVarInt(buffer);
+        quality.nNI = readVarInt(buffer);
+        quality.nNodes = readVarInt(buffer);
+        return quality;
+    }
+
+    private static void writeAggregate(ByteBuf buffer, RangeAggregate aggregate) {
+        writeVarInt(buffer, aggregate.getAggregates());
+        BitUtils.writeVarLong(buffer, aggregate.getCount());
+        if (aggregate.has(RangeAggregate.BOUNDS)) {
+            //an empty aggregate has no bounds, they are sent as empty arrays
+            writeLongs(buffer, aggregate.getCount() == 0 ? null : aggregate.getMin());
+            writeLongs(buffer, aggregate.getCount() == 0 ? null : aggregate.getMax());
+        }
+        if (aggregate.has(RangeAggregate.SUM)) {
+            double[] sum = aggregate.getSum();
+            writeVarInt(buffer, sum.length);
+            for (double value : sum) {
+                buffer.writeDouble(value);
+            }
+        }
+        if (aggregate.has(RangeAggregate.HISTOGRAM)) {
+            writeVarInt(buffer, aggregate.getCells());
+            long[] histogram = aggregate.getHistogram();
+            writeVarInt(buffer, histogram.length);
+            for (long count : histogram) {
+                BitUtils.writeVarLong(buffer, count);
+            }
+        }
+    }
+
+    private static RangeAggregate readAggregate(ByteBuffer buffer) {
+        int aggregates = readVarInt(buffer);
+        long count = BitUtils.readVarLong(buffer);
+        long[] min = null, max = null, histogram = null;
+        double[] sum = null;
+        int cells = 0;
+        if ((aggregates & RangeAggregate.BOUNDS) != 0) {
+            min = readLongs(buffer);
+            max = readLongs(buffer);
+        }
+        if ((aggregates & RangeAggregate.SUM) != 0) {
+            sum = new double[readVarInt(buffer)];
+            for (int i = 0; i < sum.length; i++) {
+                sum[i] = buffer.getDouble();
+            }
+        }
+        if ((aggregates & RangeAggregate.HISTOGRAM) != 0) {
+            cells = readVarInt(buffer);
+            histogram = new long[readVarInt(buffer)];
+            for (int i = 0; i < histogram.length; i++) {
+                histogram[i] = BitUtils.readVarLong(buffer);
+            }
+        }
+        return new RangeAggregate(aggregates, count, min, max, sum, cells, histogram);
+    }
+
+    private static void writeLongs(ByteBuf buffer, long[] values) {
+        if (values == null) {
+            writeVarInt(buffer, 0);
+            return;
+        }
+        writeVarInt(buffer, values.length);
+        for (long value : values) {
+            BitUtils.writeVarLong(buffer, BitUtils.zigZagEncode(value));
+        }
+    }
+
+    private static long[] readLongs(ByteBuffer buffer) {
+        long[] values = new long[readVarInt(buffer)];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = BitUtils.zigZagDecode(BitUtils.readVarLong(buffer));
+        }
+        return values;
+    }
+
+    private static void writeString(ByteBuf buffer, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(buffer, bytes.length);
+        buffer.writeBytes(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = readVarInt(buffer);
+        String value;
+        if (buffer.hasArray()) {
+            value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + length);
+        } else {
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return value;
+    }
+
+    private static void writeVarInt(ByteBuf buffer, int value) {
+        BitUtils.writeVarLong(buffer, BitUtils.zigZagEncode(value));
+    }
+
+    private static int readVarInt(ByteBuffer buffer) {
+        return (int) BitUtils.zigZagDecode(BitUtils.readVarLong(buffer));
+    }
+}
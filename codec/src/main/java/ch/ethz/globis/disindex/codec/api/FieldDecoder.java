@@ -30,5 +30,13 @@ public interface FieldDecoder<V> {
 
     public V decode(byte[] payload);
 
+    /**
+     * Decode the field from the remaining bytes of the buffer, without copying them. The buffer
+     * can be direct or a slice of a larger buffer. After the call, the position of the buffer is
+     * at its limit.
+     *
+     * @param payload                       The buffer containing the encoded field.
+     * @return                              The decoded field.
+     */
     public V decode(ByteBuffer payload);
 }
@@ -24,7 +24,31 @@ along with this program.  If not, see <http://www.gnu.org/licenses/>.
 */
 package ch.ethz.globis.disindex.codec.api;
 
+import java.nio.ByteBuffer;
+
 public interface FieldEncoder<V> {
 
     public byte[] encode(V value);
+
+    /**
+     * Return the number of bytes written by encode(value, buffer), without encoding the value.
+     *
+     * @param value                         The value to be encoded.
+     * @return                              The size of the encoded value, or -1 if the size is only
+     *                                      known after encoding. In this case, callers should use encode(value).
+     */
+    public default int encodedSize(V value) {
+        return -1;
+    }
+
+    /**
+     * Encode the value directly into the buffer, starting at its current position.
+     *
+     * @param value                         The value to be encoded.
+     * @param buffer                        The output buffer. It should have at least encodedSize(value)
+     *                                      bytes remaining.
+     */
+    public default void encode(V value, ByteBuffer buffer) {
+        buffer.put(encode(value));
+    }
 }
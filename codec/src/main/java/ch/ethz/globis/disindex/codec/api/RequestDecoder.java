@@ -44,6 +44,10 @@ public interface RequestDecoder<K, V> {
 
     public PutRequest<K, V> decodePut(ByteBuffer buffer);
 
+    public PutManyRequest<K, V> decodePutMany(ByteBuffer buffer);
+
+    public MultiKeyRequest<K> decodeMultiKey(ByteBuffer buffer);
+
     public GetRangeRequest<K> decodeGetRange(ByteBuffer buffer);
 
     GetRangeFilterMapperRequest<K> decodeGetRangeFilterMapper(ByteBuffer buffer);
@@ -54,10 +58,18 @@ public interface RequestDecoder<K, V> {
 
     public GetIteratorBatchRequest<K> decodeGetBatch(ByteBuffer buffer);
 
+    public GetStreamRequest<K> decodeGetStream(ByteBuffer buffer);
+
     public CreateRequest decodeCreate(ByteBuffer buffer);
 
     public DeleteRequest<K> decodeDelete(ByteBuffer buffer);
 
+    public DeleteRangeRequest<K> decodeDeleteRange(ByteBuffer buffer);
+
+    public AggregateRangeRequest<K> decodeAggregateRange(ByteBuffer buffer);
+
+    public SampleRangeRequest<K> decodeSampleRange(ByteBuffer buffer);
+
     public BaseRequest decodeBase(ByteBuffer buffer);
 
     public MapRequest decodeMap(ByteBuffer buffer);
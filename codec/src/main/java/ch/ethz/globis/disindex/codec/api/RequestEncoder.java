@@ -36,4 +36,19 @@ import ch.ethz.globis.distindex.operation.request.*;
 public interface RequestEncoder {
 
     public byte[] encode(Request request);
+
+    /**
+     * Encode a request sent to a given host. Only the requests for which {@link #dependsOnHost(Request)}
+     * is true can be encoded differently for each host.
+     */
+    public default byte[] encode(Request request, String hostId) {
+        return encode(request);
+    }
+
+    /**
+     * @return                              True if the encoding of the request depends on the host receiving it.
+     */
+    public default boolean dependsOnHost(Request request) {
+        return false;
+    }
 }
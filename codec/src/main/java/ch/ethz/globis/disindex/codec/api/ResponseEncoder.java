@@ -25,6 +25,7 @@ along with this program.  If not, see <http://www.gnu.org/licenses/>.
 package ch.ethz.globis.disindex.codec.api;
 
 import ch.ethz.globis.distindex.operation.response.Response;
+import io.netty.buffer.ByteBuf;
 
 /**
  * Contains operations corresponding to encoding responses send by the middleware node to the client library.
@@ -35,4 +36,12 @@ import ch.ethz.globis.distindex.operation.response.Response;
 public interface ResponseEncoder {
 
     public byte[] encode(Response response);
+
+    /**
+     * Encode the response at the writer index of the buffer received as an argument.
+     *
+     * @param response                      The response to encode.
+     * @param buffer                        The buffer in which the response is written.
+     */
+    public void encode(Response response, ByteBuf buffer);
 }
@@ -0,0 +1,59 @@
+/*
+This file is part of PH-Tree:
+A multi-dimensional indexing and storage structure.
+
+Copyright (C) 2011-2015
+Eidgenössische Technische Hochschule Zürich (ETH Zurich)
+Institute for Information Systems
+GlobIS Group
+Bogdan Vancea, Tilmann Zaeschke
+zaeschke@inf.ethz.ch or zoodb@gmx.de
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package ch.ethz.globis.disindex.codec.compression;
+
+/**
+ * Compresses blocks of bytes whose decompressed size is transmitted separately.
+ *
+ * Implementations are stateless and thread-safe.
+ */
+public interface BlockCodec {
+
+    /**
+     * @return                              The id identifying this codec on the wire.
+     */
+    public byte getId();
+
+    /**
+     * @param length                        The size of the input.
+     * @return                              The maximum size of the compressed input.
+     */
+    public int maxCompressedLength(int length);
+
+    /**
+     * Compress the input into the destination array, which should have space for at least
+     * maxCompressedLength(srcLength) bytes after the destination offset.
+     *
+     * @return                              The number of bytes written to the destination.
+     */
+    public int compress(byte[] src, int srcOffset, int srcLength, byte[] dest, int destOffset);
+
+    /**
+     * Decompress the input into exactly destLength bytes of the destination array.
+     *
+     * @throws IllegalArgumentException     If the input is malformed or does not decompress to destLength bytes.
+     */
+    public void decompress(byte[] src, int srcOffset, int srcLength, byte[] dest, int destOffset, int destLength);
+}
@@ -0,0 +1,98 @@
+/*
+This file is part of PH-Tree:
+A multi-dimensional indexing and storage structure.
+
+Copyright (C) 2011-2015
+Eidgenössische Technische Hochschule Zürich (ETH Zurich)
+Institute for Information Systems
+GlobIS Group
+Bogdan Vancea, Tilmann Zaeschke
+zaeschke@inf.ethz.ch or zoodb@gmx.de
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package ch.ethz.globis.disindex.codec.compression;
+
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A codec producing raw deflate blocks. Slower than LZ4 but with a better ratio, for slow links.
+ */
+public class DeflateBlockCodec implements BlockCodec {
+
+    public static final byte ID = 2;
+
+    private final int level;
+
+    public DeflateBlockCodec() {
+        this(Deflater.BEST_SPEED);
+    }
+
+    public DeflateBlockCodec(int level) {
+        this.level = level;
+    }
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public int maxCompressedLength(int length) {
+        return length + (length >>> 12) + (length >>> 14) + 64;
+    }
+
+    @Override
+    public int compress(byte[] src, int srcOffset, int srcLength, byte[] dest, int destOffset) {
+        Deflater deflater = new Deflater(level, true);
+        try {
+            deflater.setInput(src, srcOffset, srcLength);
+            deflater.finish();
+            int length = 0;
+            int capacity = maxCompressedLength(srcLength);
+            while (!deflater.finished() && length < capacity) {
+                length += deflater.deflate(dest, destOffset + length, capacity - length);
+            }
+            return length;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    @Override
+    public void decompress(byte[] src, int srcOffset, int srcLength, byte[] dest, int destOffset, int destLength) {
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(src, srcOffset, srcLength);
+            int length = 0;
+            while (length < destLength && !inflater.finished()) {
+                int n = inflater.inflate(dest, destOffset + length, destLength - length);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += n;
+            }
+            if (length != destLength) {
+                throw new IllegalArgumentException("Malformed deflate block: decompressed " + length
+                        + " bytes instead of " + destLength);
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Malformed deflate block.", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*
+This file is part of PH-Tree:
+A multi-dimensional indexing and storage structure.
+
+Copyright (C) 2011-2015
+Eidgenössische Technische Hochschule Zürich (ETH Zurich)
+Institute for Information Systems
+GlobIS Group
+Bogdan Vancea, Tilmann Zaeschke
+zaeschke@inf.ethz.ch or zoodb@gmx.de
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package ch.ethz.globis.disindex.codec.compression;
+
+/**
+ * The compression settings of a connection: the codec used and the minimum size of the frames that get compressed.
+ *
+ * A compressed frame body has the following layout:
+ *
+ *      COMPRESSED_FRAME (1 byte) | codec id (1 byte) | uncompressed length (4 bytes) | compressed bytes
+ *
+ * The marker bytes are negative, so they cannot be confused with the op codes starting the uncompressed messages.
+ *
+ * Compression is negotiated per connection: a client that wants compressed replies starts the connection by
+ * sending a HELLO frame carrying the id of its codec. The server compresses its replies only if it accepts
+ * compression itself, using the codec of the client and its own threshold. Either side may compress its
+ * requests or replies independently, the receiver decompresses any frame carrying the marker.
+ */
+public class FrameCompression {
+
+    /** Marks a compressed frame. */
+    public static final byte COMPRESSED_FRAME = (byte) 0x80;
+
+    /** Marks the frame announcing the codec of a client. */
+    public static final byte HELLO = (byte) 0x81;
+
+    /** The size of the header of a compressed frame. */
+    public static final int HEADER_SIZE = 6;
+
+    /** The default size above which frames are compressed. */
+    public static final int DEFAULT_THRESHOLD = 64 * 1024;
+
+    public static final BlockCodec LZ4 = new Lz4BlockCodec();
+
+    public static final BlockCodec DEFLATE = new DeflateBlockCodec();
+
+    private final BlockCodec codec;
+
+    private final int threshold;
+
+    public FrameCompression(BlockCodec codec) {
+        this(codec, DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * @param codec                         The codec used to compress the frames.
+     * @param threshold                     The minimum size of a frame body for it to be compressed.
+     */
+    public FrameCompression(BlockCodec codec, int threshold) {
+        if (codec == null) {
+            throw new IllegalArgumentException("The codec should not be null.");
+        }
+        if (threshold < 0) {
+            throw new IllegalArgumentException("The compression threshold should not be negative.");
+        }
+        this.codec = codec;
+        this.threshold = threshold;
+    }
+
+    /**
+     * @param id                            The id of a codec.
+     * @return                              The codec with the id received as argument, or null if it is unknown.
+     */
+    public static BlockCodec codec(byte id) {
+        switch (id) {
+            case Lz4BlockCodec.ID:
+                return LZ4;
+            case DeflateBlockCodec.ID:
+                return DEFLATE;
+            default:
+                return null;
+        }
+    }
+
+    public BlockCodec getCodec() {
+        return codec;
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+}
@@ -0,0 +1,220 @@
+/*
+This file is part of PH-Tree:
+A multi-dimensional indexing and storage structure.
+
+Copyright (C) 2011-2015
+Eidgenössische Technische Hochschule Zürich (ETH Zurich)
+Institute for Information Systems
+GlobIS Group
+Bogdan Vancea, Tilmann Zaeschke
+zaeschke@inf.ethz.ch or zoodb@gmx.de
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package ch.ethz.globis.disindex.codec.compression;
+
+/**
+ * A codec producing the LZ4 block format.
+ *
+ * The compressor is a greedy single-pass matcher using a hash table of the last position of each 4 byte
+ * sequence. It trades compression ratio for speed, which suits the mostly numeric entries of the responses.
+ */
+public class Lz4BlockCodec implements BlockCodec {
+
+    public static final byte ID = 1;
+
+    private static final int MIN_MATCH = 4;
+
+    /** The last match has to start at least this many bytes before the end of the block. */
+    private static final int MF_LIMIT = 12;
+
+    /** The last bytes of the block are always literals. */
+    private static final int LAST_LITERALS = 5;
+
+    private static final int MAX_DISTANCE = 65535;
+
+    private static final int HASH_LOG = 12;
+
+    /** After this many consecutive misses, the scan starts skipping bytes. */
+    private static final int SKIP_TRIGGER = 6;
+
+    private static final int RUN_MASK = 15;
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public int maxCompressedLength(int length) {
+        return length + length / 255 + 16;
+    }
+
+    @Override
+    public int compress(byte[] src, int srcOffset, int srcLength, byte[] dest, int destOffset) {
+        int srcEnd = srcOffset + srcLength;
+        int matchLimit = srcEnd - LAST_LITERALS;
+        int mfLimit = srcEnd - MF_LIMIT;
+
+        int anchor = srcOffset;
+        int ip = srcOffset;
+        int op = destOffset;
+        if (srcLength > MF_LIMIT) {
+            //positions are stored shifted by one, 0 marks an empty slot
+            int[] table = new int[1 << HASH_LOG];
+            int misses = 0;
+            while (ip < mfLimit) {
+                int sequence = readInt(src, ip);
+                int h = hash(sequence);
+                int ref = table[h] - 1 + srcOffset;
+                table[h] = ip - srcOffset + 1;
+                if (ref < srcOffset || ip - ref > MAX_DISTANCE || readInt(src, ref) != sequence) {
+                    ip += 1 + (misses++ >>> SKIP_TRIGGER);
+                    continue;
+                }
+                misses = 0;
+                while (ip > anchor && ref > srcOffset && src[ip - 1] == src[ref - 1]) {
+                    ip--;
+                    ref--;
+                }
+                int matchLength = MIN_MATCH;
+                while (ip + matchLength < matchLimit && src[ip + matchLength] == src[ref + matchLength]) {
+                    matchLength++;
+                }
+                op = writeSequence(src, anchor, ip - anchor, ip - ref, matchLength, dest, op);
+                ip += matchLength;
+                anchor = ip;
+            }
+        }
+        op = writeLastLiterals(src, anchor, srcEnd - anchor, dest, op);
+        return op - destOffset;
+    }
+
+    @Override
+    public void decompress(byte[] src, int srcOffset, int srcLength, byte[] dest, int destOffset, int destLength) {
+        int ip = srcOffset;
+        int srcEnd = srcOffset + srcLength;
+        int op = destOffset;
+        int destEnd = destOffset + destLength;
+        try {
+            while (true) {
+                int token = src[ip++] & 0xFF;
+                int literals = token >>> 4;
+                if (literals == RUN_MASK) {
+                    int b;
+                    do {
+                        b = src[ip++] & 0xFF;
+                        literals += b;
+                    } while (b == 255);
+                }
+                if (ip + literals > srcEnd || op + literals > destEnd) {
+                    throw new IllegalArgumentException("Malformed LZ4 block: literals exceed the block.");
+                }
+                System.arraycopy(src, ip, dest, op, literals);
+                ip += literals;
+                op += literals;
+                if (ip == srcEnd) {
+                    break;
+                }
+
+                int offset = (src[ip++] & 0xFF) | ((src[ip++] & 0xFF) << 8);
+                int ref = op - offset;
+                if (offset == 0 || ref < destOffset) {
+                    throw new IllegalArgumentException("Malformed LZ4 block: invalid match offset " + offset);
+                }
+                int matchLength = token & RUN_MASK;
+                if (matchLength == RUN_MASK) {
+                    int b;
+                    do {
+                        b = src[ip++] & 0xFF;
+                        matchLength += b;
+                    } while (b == 255);
+                }
+                matchLength += MIN_MATCH;
+                if (op + matchLength > destEnd) {
+                    throw new IllegalArgumentException("Malformed LZ4 block: match exceeds the block.");
+                }
+                if (offset >= matchLength) {
+                    System.arraycopy(dest, ref, dest, op, matchLength);
+                } else {
+                    //overlapping match, repeats the last offset bytes
+                    for (int i = 0; i < matchLength; i++) {
+                        dest[op + i] = dest[ref + i];
+                    }
+                }
+                op += matchLength;
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Malformed LZ4 block: truncated input.", e);
+        }
+        if (op != destEnd) {
+            throw new IllegalArgumentException("Malformed LZ4 block: decompressed " + (op - destOffset)
+                    + " bytes instead of " + destLength);
+        }
+    }
+
+    private static int writeSequence(byte[] src, int literalOffset, int literalLength, int offset, int matchLength,
+                                     byte[] dest, int op) {
+        int token = op++;
+        if (literalLength >= RUN_MASK) {
+            dest[token] = (byte) (RUN_MASK << 4);
+            op = writeLength(literalLength - RUN_MASK, dest, op);
+        } else {
+            dest[token] = (byte) (literalLength << 4);
+        }
+        System.arraycopy(src, literalOffset, dest, op, literalLength);
+        op += literalLength;
+
+        dest[op++] = (byte) offset;
+        dest[op++] = (byte) (offset >>> 8);
+
+        int length = matchLength - MIN_MATCH;
+        if (length >= RUN_MASK) {
+            dest[token] |= RUN_MASK;
+            op = writeLength(length - RUN_MASK, dest, op);
+        } else {
+            dest[token] |= length;
+        }
+        return op;
+    }
+
+    private static int writeLastLiterals(byte[] src, int literalOffset, int literalLength, byte[] dest, int op) {
+        if (literalLength >= RUN_MASK) {
+            dest[op++] = (byte) (RUN_MASK << 4);
+            op = writeLength(literalLength - RUN_MASK, dest, op);
+        } else {
+            dest[op++] = (byte) (literalLength << 4);
+        }
+        System.arraycopy(src, literalOffset, dest, op, literalLength);
+        return op + literalLength;
+    }
+
+    private static int writeLength(int length, byte[] dest, int op) {
+        while (length >= 255) {
+            dest[op++] = (byte) 255;
+            length -= 255;
+        }
+        dest[op++] = (byte) length;
+        return op;
+    }
+
+    private static int readInt(byte[] src, int offset) {
+        return (src[offset] & 0xFF) | ((src[offset + 1] & 0xFF) << 8)
+                | ((src[offset + 2] & 0xFF) << 16) | ((src[offset + 3] & 0xFF) << 24);
+    }
+
+    private static int hash(int sequence) {
+        return (sequence * -1640531535) >>> (32 - HASH_LOG);
+    }
+}
@@ -0,0 +1,192 @@
+/*
+This file is part of PH-Tree:
+A multi-dimensional indexing and storage structure.
+
+Copyright (C) 2011-2015
+Eidgenössische Technische Hochschule Zürich (ETH Zurich)
+Institute for Information Systems
+GlobIS Group
+Bogdan Vancea, Tilmann Zaeschke
+zaeschke@inf.ethz.ch or zoodb@gmx.de
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package ch.ethz.globis.disindex.codec.field;
+
+import ch.ethz.globis.disindex.codec.api.FieldEncoderDecoder;
+import ch.ethz.globis.distindex.operation.predicate.BoxUnionPredicate;
+import ch.ethz.globis.distindex.operation.predicate.BuiltinPredicate;
+import ch.ethz.globis.distindex.operation.predicate.IntervalPredicate;
+import ch.ethz.globis.distindex.operation.predicate.PolygonPredicate;
+import ch.ethz.globis.distindex.operation.predicate.WithinDistancePredicate;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Encoder - Decoder for the built-in predicates.
+ *
+ * Each predicate starts with its type, followed by its parameters:
+ *
+ *      WITHIN_DISTANCE:    distance (double) | dim (int) | center (dim longs)
+ *      BOX_UNION:          nr boxes (int) | dim (int) | for each box: min (dim longs) | max (dim longs)
+ *      POLYGON:            x dimension (int) | y dimension (int) | nr vertices (int) | for each vertex: x | y
+ *      INTERVAL:           dimension (int) | min (long) | max (long)
+ */
+public class BuiltinPredicateEncoderDecoder implements FieldEncoderDecoder<BuiltinPredicate> {
+
+    @Override
+    public byte[] encode(BuiltinPredicate value) {
+        ByteBuffer buffer = ByteBuffer.allocate(encodedSize(value));
+        encode(value, buffer);
+        return buffer.array();
+    }
+
+    @Override
+    public int encodedSize(BuiltinPredicate value) {
+        switch (value.getType()) {
+            case BuiltinPredicate.WITHIN_DISTANCE:
+                WithinDistancePredicate distance = (WithinDistancePredicate) value;
+                return 1 + 8 + 4 + 8 * distance.getCenter().length;
+            case BuiltinPredicate.BOX_UNION:
+                BoxUnionPredicate boxes = (BoxUnionPredicate) value;
+                return 1 + 4 + 4 + 16 * boxes.getMins().length * dim(boxes);
+            case BuiltinPredicate.POLYGON:
+                PolygonPredicate polygon = (PolygonPredicate) value;
+                return 1 + 4 + 4 + 4 + 16 * polygon.getXs().length;
+            case BuiltinPredicate.INTERVAL:
+                return 1 + 4 + 8 + 8;
+            default:
+                throw new IllegalArgumentException("Unknown predicate type " + value.getType());
+        }
+    }
+
+    @Override
+    public void encode(BuiltinPredicate value, ByteBuffer buffer) {
+        buffer.put(value.getType());
+        switch (value.getType()) {
+            case BuiltinPredicate.WITHIN_DISTANCE:
+                WithinDistancePredicate distance = (WithinDistancePredicate) value;
+                buffer.putDouble(distance.getDistance());
+                writeLongs(buffer, distance.getCenter());
+                break;
+            case BuiltinPredicate.BOX_UNION:
+                BoxUnionPredicate boxes = (BoxUnionPredicate) value;
+                int dim = dim(boxes);
+                buffer.putInt(boxes.getMins().length);
+                buffer.putInt(dim);
+                for (int i = 0; i < boxes.getMins().length; i++) {
+                    for (int d = 0; d < dim; d++) {
+                        buffer.putLong(boxes.getMins()[i][d]);
+                    }
+                    for (int d = 0; d < dim; d++) {
+                        buffer.putLong(boxes.getMaxs()[i][d]);
+                    }
+                }
+                break;
+            case BuiltinPredicate.POLYGON:
+                PolygonPredicate polygon = (PolygonPredicate) value;
+                buffer.putInt(polygon.getDimX());
+                buffer.putInt(polygon.getDimY());
+                buffer.putInt(polygon.getXs().length);
+                for (int i = 0; i < polygon.getXs().length; i++) {
+                    buffer.putLong(polygon.getXs()[i]);
+                    buffer.putLong(polygon.getYs()[i]);
+                }
+                break;
+            case BuiltinPredicate.INTERVAL:
+                IntervalPredicate interval = (IntervalPredicate) value;
+                buffer.putInt(interval.getDim());
+                buffer.putLong(interval.getMin());
+                buffer.putLong(interval.getMax());
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown predicate type " + value.getType());
+        }
+    }
+
+    @Override
+    public BuiltinPredicate decode(byte[] payload) {
+        return decode(ByteBuffer.wrap(payload));
+    }
+
+    @Override
+    public BuiltinPredicate decode(ByteBuffer payload) {
+        byte type = payload.get();
+        switch (type) {
+            case BuiltinPredicate.WITHIN_DISTANCE:
+                double distance = payload.getDouble();
+                return new WithinDistancePredicate(readLongs(payload, payload.getInt()), distance);
+            case BuiltinPredicate.BOX_UNION:
+                int nrBoxes = payload.getInt();
+                int dim = payload.getInt();
+                if (nrBoxes < 0 || dim < 0 || (nrBoxes > 0 && dim == 0)) {
+                    throw new IllegalArgumentException("Invalid box union with " + nrBoxes + " boxes of dimension " + dim);
+                }
+                checkRemaining(payload, 2L * nrBoxes * dim);
+                long[][] mins = new long[nrBoxes][];
+                long[][] maxs = new long[nrBoxes][];
+                for (int i = 0; i < nrBoxes; i++) {
+                    mins[i] = readLongs(payload, dim);
+                    maxs[i] = readLongs(payload, dim);
+                }
+                return new BoxUnionPredicate(mins, maxs);
+            case BuiltinPredicate.POLYGON:
+                int dimX = payload.getInt();
+                int dimY = payload.getInt();
+                int nrVertices = payload.getInt();
+                checkRemaining(payload, 2L * nrVertices);
+                long[] xs = new long[nrVertices];
+                long[] ys = new long[nrVertices];
+                for (int i = 0; i < nrVertices; i++) {
+                    xs[i] = payload.getLong();
+                    ys[i] = payload.getLong();
+                }
+                return new PolygonPredicate(dimX, dimY, xs, ys);
+            case BuiltinPredicate.INTERVAL:
+                return new IntervalPredicate(payload.getInt(), payload.getLong(), payload.getLong());
+            default:
+                throw new IllegalArgumentException("Unknown predicate type " + type);
+        }
+    }
+
+    private static int dim(BoxUnionPredicate boxes) {
+        return (boxes.getMins().length == 0) ? 0 : boxes.getMins()[0].length;
+    }
+
+    private static void writeLongs(ByteBuffer buffer, long[] values) {
+        buffer.putInt(values.length);
+        for (long value : values) {
+            buffer.putLong(value);
+        }
+    }
+
+    /**
+     * Check that the buffer still holds the given number of longs, before allocating the arrays for them.
+     */
+    private static void checkRemaining(ByteBuffer buffer, long nrLongs) {
+        if (nrLongs < 0 || nrLongs > buffer.remaining() / 8) {
+            throw new IllegalArgumentException("Invalid predicate: expected " + nrLongs + " longs, but only "
+                    + buffer.remaining() + " bytes are left");
+        }
+    }
+
+    private static long[] readLongs(ByteBuffer buffer, int length) {
+        checkRemaining(buffer, length);
+        long[] values = new long[length];
+        for (int i = 0; i < length; i++) {
+            values[i] = buffer.getLong();
+        }
+        return values;
+    }
+}
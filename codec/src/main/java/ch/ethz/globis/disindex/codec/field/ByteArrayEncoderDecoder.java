@@ -0,0 +1,82 @@
+/*
+This file is part of PH-Tree:
+A multi-dimensional indexing and storage structure.
+
+Copyright (C) 2011-2015
+Eidgenössische Technische Hochschule Zürich (ETH Zurich)
+Institute for Information Systems
+GlobIS Group
+Bogdan Vancea, Tilmann Zaeschke
+zaeschke@inf.ethz.ch or zoodb@gmx.de
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package ch.ethz.globis.disindex.codec.field;
+
+import ch.ethz.globis.disindex.codec.api.FieldEncoderDecoder;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Encoder - Decoder for byte[] fields. The bytes are written as they are, without going through Kryo.
+ *
+ * The empty encoding is used for null values. Other values, including the empty array, are preceded by
+ * a marker byte so they are never decoded as null.
+ */
+public class ByteArrayEncoderDecoder implements FieldEncoderDecoder<byte[]> {
+
+    /** The byte preceding the encoding of a value that is not null. */
+    private static final byte PRESENT = 1;
+
+    @Override
+    public byte[] decode(byte[] payload) {
+        return (payload.length == 0) ? null : Arrays.copyOfRange(payload, 1, payload.length);
+    }
+
+    @Override
+    public byte[] decode(ByteBuffer payload) {
+        if (!payload.hasRemaining()) {
+            return null;
+        }
+        payload.get();
+        byte[] value = new byte[payload.remaining()];
+        payload.get(value);
+        return value;
+    }
+
+    @Override
+    public byte[] encode(byte[] value) {
+        if (value == null) {
+            return new byte[0];
+        }
+        byte[] encoded = new byte[value.length + 1];
+        encoded[0] = PRESENT;
+        System.arraycopy(value, 0, encoded, 1, value.length);
+        return encoded;
+    }
+
+    @Override
+    public int encodedSize(byte[] value) {
+        return (value == null) ? 0 : value.length + 1;
+    }
+
+    @Override
+    public void encode(byte[] value, ByteBuffer buffer) {
+        if (value != null) {
+            buffer.put(PRESENT);
+            buffer.put(value);
+        }
+    }
+}
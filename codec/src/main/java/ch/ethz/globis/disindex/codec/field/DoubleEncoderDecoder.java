@@ -0,0 +1,71 @@
+/*
+This file is part of PH-Tree:
+A multi-dimensional indexing and storage structure.
+
+Copyright (C) 2011-2015
+Eidgenössische Technische Hochschule Zürich (ETH Zurich)
+Institute for Information Systems
+GlobIS Group
+Bogdan Vancea, Tilmann Zaeschke
+zaeschke@inf.ethz.ch or zoodb@gmx.de
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package ch.ethz.globis.disindex.codec.field;
+
+import ch.ethz.globis.disindex.codec.api.FieldEncoderDecoder;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Encoder - Decoder for Double fields, written as 8 big-endian bytes. Null values are encoded as
+ * an empty field.
+ */
+public class DoubleEncoderDecoder implements FieldEncoderDecoder<Double> {
+
+    @Override
+    public Double decode(byte[] payload) {
+        return decode(ByteBuffer.wrap(payload));
+    }
+
+    @Override
+    public Double decode(ByteBuffer payload) {
+        if (!payload.hasRemaining()) {
+            return null;
+        }
+        Double value = payload.getDouble();
+        payload.position(payload.limit());
+        return value;
+    }
+
+    @Override
+    public byte[] encode(Double value) {
+        if (value == null) {
+            return new byte[0];
+        }
+        return ByteBuffer.allocate(8).putDouble(value).array();
+    }
+
+    @Override
+    public int encodedSize(Double value) {
+        return (value == null) ? 0 : 8;
+    }
+
+    @Override
+    public void encode(Double value, ByteBuffer buffer) {
+        if (value != null) {
+            buffer.putDouble(value);
+        }
+    }
+}
@@ -24,15 +24,22 @@ along with this program.  If not, see <http://www.gnu.org/licenses/>.
 */
 package ch.ethz.globis.disindex.codec.field;
 
+import ch.ethz.globis.disindex.codec.api.DeltaFieldDecoder;
+import ch.ethz.globis.disindex.codec.api.DeltaFieldEncoder;
 import ch.ethz.globis.disindex.codec.api.FieldEncoderDecoder;
 import ch.ethz.globis.disindex.codec.util.BitUtils;
-
 import java.nio.ByteBuffer;
 
 /**
  * Encoder - Decoder for long[] fields.
+ *
+ * In lists, the keys can also be encoded as the per-dimension difference to the previous key, written as
+ * zig-zag variable length integers. The keys of range results come in z-order, so consecutive keys are
+ * close to each other and most differences fit in a few bytes. Leading zero bits are not written, so
+ * indexes with a smaller bit depth also need fewer bytes for each coordinate.
  */
-public class MultiLongEncoderDecoder implements FieldEncoderDecoder<long[]>{
+public class MultiLongEncoderDecoder implements FieldEncoderDecoder<long[]>,
+        DeltaFieldEncoder<long[]>, DeltaFieldDecoder<long[]> {
 
     @Override
     public long[] decode(byte[] payload) {
@@ -41,8 +48,12 @@ public class MultiLongEncoderDecoder implements FieldEncoderDecoder<long[]>{
 
     @Override
     public long[] decode(ByteBuffer payload) {
-        //FIXME this might not work properly
-        return decode(payload.array());
+        long[] value = new long[payload.remaining() / 8];
+        for (int i = 0; i < value.length; i++) {
+            value[i] = payload.getLong();
+        }
+        payload.position(payload.limit());
+        return value;
     }
 
     @Override
@@ -52,4 +63,81 @@ public class MultiLongEncoderDecoder implements FieldEncoderDecoder<long[]>{
         }
         return BitUtils.toByteArray(value);
     }
+
+    @Override
+    public int encodedSize(long[] value) {
+        return (value == null) ? 0 : value.length * 8;
+    }
+
+    @Override
+    public void encode(long[] value, ByteBuffer buffer) {
+        if (value == null) {
+            return;
+        }
+        for (long dimension : value) {
+            buffer.putLong(dimension);
+        }
+    }
+
+    @Override
+    public int encodedDeltaSize(long[] previous, long[] value) {
+        if (value == null) {
+            return 1;
+        }
+        int size = BitUtils.varLongSize(value.length + 1);
+        boolean relative = isRelative(previous, value.length);
+        for (int i = 0; i < value.length; i++) {
+            long delta = relative ? value[i] - previous[i] : value[i];
+            size += BitUtils.varLongSize(BitUtils.zigZagEncode(delta));
+        }
+        return size;
+    }
+
+    /**
+     * Write the number of dimensions plus one, or 0 for a null key, followed by the difference to the
+     * previous key in each dimension. The first key and keys with a different dimensionality than the
+     * previous one are written relative to the origin.
+     */
+    @Override
+    public void encodeDelta(long[] previous, long[] value, ByteBuffer buffer) {
+        if (value == null) {
+            BitUtils.writeVarLong(buffer, 0);
+            return;
+        }
+        BitUtils.writeVarLong(buffer, value.length + 1);
+        boolean relative = isRelative(previous, value.length);
+        for (int i = 0; i < value.length; i++) {
+            long delta = relative ? value[i] - previous[i] : value[i];
+            BitUtils.writeVarLong(buffer, BitUtils.zigZagEncode(delta));
+        }
+    }
+
+    /**
+     * Read a key written by encodeDelta. The number of dimensions is checked before allocating the key,
+     * as each coordinate takes at least one byte. The key is only read relative to the previous key if
+     * both have the same number of dimensions.
+     */
+    @Override
+    public long[] decodeDelta(long[] previous, ByteBuffer buffer) {
+        long header = BitUtils.readVarLong(buffer);
+        if (header == 0) {
+            return null;
+        }
+        long dim = header - 1;
+        if (dim < 0 || dim > buffer.remaining()) {
+            throw new IllegalArgumentException("Invalid compact key with " + dim + " dimensions, but only "
+                    + buffer.remaining() + " bytes left.");
+        }
+        long[] value = new long[(int) dim];
+        boolean relative = isRelative(previous, value.length);
+        for (int i = 0; i < value.length; i++) {
+            long delta = BitUtils.zigZagDecode(BitUtils.readVarLong(buffer));
+            value[i] = relative ? previous[i] + delta : delta;
+        }
+        return value;
+    }
+
+    private static boolean isRelative(long[] previous, int dim) {
+        return previous != null && previous.length == dim;
+    }
 }
@@ -52,7 +52,10 @@ public class SerializingEncoderDecoder<V> implements FieldEncoderDecoder<V> {
 
     @Override
     public V decode(ByteBuffer payload) {
-        return decode(payload.array());
+        if (!payload.hasRemaining()) {
+            return null;
+        }
+        return SerializerUtil.getInstance().deserialize(payload);
     }
 
     @Override
@@ -0,0 +1,74 @@
+/*
+This file is part of PH-Tree:
+A multi-dimensional indexing and storage structure.
+
+Copyright (C) 2011-2015
+Eidgenössische Technische Hochschule Zürich (ETH Zurich)
+Institute for Information Systems
+GlobIS Group
+Bogdan Vancea, Tilmann Zaeschke
+zaeschke@inf.ethz.ch or zoodb@gmx.de
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package ch.ethz.globis.disindex.codec.field;
+
+import ch.ethz.globis.disindex.codec.api.FieldEncoderDecoder;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Encoder - Decoder for String fields, encoded as UTF-8.
+ *
+ * The empty encoding is used for null values. Other values, including the empty string, are preceded by
+ * a marker byte so they are never decoded as null.
+ */
+public class StringEncoderDecoder implements FieldEncoderDecoder<String> {
+
+    /** The byte preceding the encoding of a value that is not null. */
+    private static final byte PRESENT = 1;
+
+    @Override
+    public String decode(byte[] payload) {
+        return (payload.length == 0) ? null : new String(payload, 1, payload.length - 1, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String decode(ByteBuffer payload) {
+        if (!payload.hasRemaining()) {
+            return null;
+        }
+        payload.get();
+        if (payload.hasArray()) {
+            String value = new String(payload.array(), payload.arrayOffset() + payload.position(),
+                    payload.remaining(), StandardCharsets.UTF_8);
+            payload.position(payload.limit());
+            return value;
+        }
+        return StandardCharsets.UTF_8.decode(payload).toString();
+    }
+
+    @Override
+    public byte[] encode(String value) {
+        if (value == null) {
+            return new byte[0];
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        byte[] encoded = new byte[bytes.length + 1];
+        encoded[0] = PRESENT;
+        System.arraycopy(bytes, 0, encoded, 1, bytes.length);
+        return encoded;
+    }
+}
@@ -43,7 +43,7 @@ public class AsyncTCPClient implements Transport{
     private final ExecutorService pool = Executors.newFixedThreadPool(nrThreads);
 
     /** The logger used by this class*/
-    private static final Logger LOG = LoggerFactory.getLogger(TCPClient.class);
+    private static final Logger LOG = LoggerFactory.getLogger(AsyncTCPClient.class);
 
     /** A map of host id's and open sockets*/
     private Map<String, Socket> connections = new HashMap<>();
@@ -155,7 +155,6 @@ public class AsyncTCPClient implements Transport{
      * Send the byte array received as an argument to all of the remote hosts identified by the hostId's received
      * as arguments and return a list of all of the replies.
      *
-     * //ToDO send the requests in parallel
      * @param hosts                         A list of the host identifies.
      * @param payload                       The message to be sent to ALL hosts.
      * @return                              A list of the replies.
@@ -180,7 +179,6 @@ public class AsyncTCPClient implements Transport{
     private <T> List<T> waitForTermination(List<Future<T>> futures) throws ExecutionException, InterruptedException {
         List<T> results = new ArrayList<>();
         for (Future<T> future : futures) {
-            while (!future.isDone());
             results.add(future.get());
         }
         return results;
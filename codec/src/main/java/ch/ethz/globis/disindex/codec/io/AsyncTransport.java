@@ -0,0 +1,50 @@
+/*
+This file is part of PH-Tree:
+A multi-dimensional indexing and storage structure.
+
+Copyright (C) 2011-2015
+Eidgenössische Technische Hochschule Zürich (ETH Zurich)
+Institute for Information Systems
+GlobIS Group
+Bogdan Vancea, Tilmann Zaeschke
+zaeschke@inf.ethz.ch or zoodb@gmx.de
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package ch.ethz.globis.disindex.codec.io;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * A transport that can have several requests in flight without blocking the caller.
+ */
+public interface AsyncTransport extends Transport {
+
+    /**
+     * Send the payload to the remote host without waiting for the reply.
+     *
+     * @param host                          The id of the remote host.
+     * @param payload                       The message to be sent.
+     * @return                              A future completed with the reply of the server.
+     */
+    public CompletableFuture<byte[]> sendAndReceiveAsync(String host, byte[] payload);
+
+    /**
+     * @return                              The executor running the work that follows a reply, such as sending
+     *                                      a request again. Unlike the threads completing the futures, its tasks
+     *                                      may block on this transport. It is shut down when the transport is closed.
+     */
+    public ScheduledExecutorService getExecutor();
+}
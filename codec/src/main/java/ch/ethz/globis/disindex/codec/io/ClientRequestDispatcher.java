@@ -28,6 +28,9 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ScheduledExecutorService;
 
 import ch.ethz.globis.disindex.codec.api.RequestEncoder;
 import ch.ethz.globis.disindex.codec.api.ResponseDecoder;
@@ -60,13 +63,16 @@ public class ClientRequestDispatcher<K, V> implements RequestDispatcher<K, V> {
 
     @Override
     public <R extends Response> R send(String hostId, Request request, Class<R> clazz) {
-        byte[] requestBytes = encoder.encode(request);
+        byte[] requestBytes = encoder.encode(request, hostId);
         byte[] responseBytes = transport.sendAndReceive(hostId, requestBytes);
         return decoder.decode(responseBytes, clazz);
     }
 
     @Override
     public <R extends Response> List<R> send(Collection<String> hostIds, Request request, Class<R> clazz) {
+        if (encoder.dependsOnHost(request)) {
+            return join(sendAsync(hostIds, request, clazz));
+        }
         byte[] requestBytes = encoder.encode(request);
         List<byte[]> responseList = transport.sendAndReceive(hostIds, requestBytes);
         List<R> responses = new ArrayList<>();
@@ -76,6 +82,108 @@ public class ClientRequestDispatcher<K, V> implements RequestDispatcher<K, V> {
         return responses;
     }
 
+    /**
+     * Send the request without waiting for the response.
+     *
+     * If the transport is not an {@link AsyncTransport}, the request is sent on the calling thread
+     * and the returned future is already completed.
+     */
+    @Override
+    public <R extends Response> CompletableFuture<R> sendAsync(String hostId, Request request, final Class<R> clazz) {
+        byte[] requestBytes = encoder.encode(request, hostId);
+        return sendAndReceiveAsync(hostId, requestBytes)
+                .thenApply(responseBytes -> decoder.decode(responseBytes, clazz));
+    }
+
+    @Override
+    public <R extends Response> CompletableFuture<List<R>> sendAsync(Collection<String> hostIds, Request request, final Class<R> clazz) {
+        boolean dependsOnHost = encoder.dependsOnHost(request);
+        byte[] requestBytes = dependsOnHost ? null : encoder.encode(request);
+        final List<CompletableFuture<byte[]>> futures = new ArrayList<>();
+        for (String hostId : hostIds) {
+            futures.add(sendAndReceiveAsync(hostId,
+                    dependsOnHost ? encoder.encode(request, hostId) : requestBytes));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()]))
+                .thenApply(ignored -> {
+                    List<R> responses = new ArrayList<>();
+                    for (CompletableFuture<byte[]> future : futures) {
+                        responses.add(decoder.decode(future.join(), clazz));
+                    }
+                    return responses;
+                });
+    }
+
+    private CompletableFuture<byte[]> sendAndReceiveAsync(String hostId, byte[] requestBytes) {
+        if (transport instanceof AsyncTransport) {
+            return ((AsyncTransport) transport).sendAndReceiveAsync(hostId, requestBytes);
+        }
+        CompletableFuture<byte[]> future = new CompletableFuture<>();
+        try {
+            future.complete(transport.sendAndReceive(hostId, requestBytes));
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public ScheduledExecutorService getExecutor() {
+        return (transport instanceof AsyncTransport) ? ((AsyncTransport) transport).getExecutor() : null;
+    }
+
+    @Override
+    public boolean supportsStreams() {
+        return transport instanceof StreamingTransport;
+    }
+
+    @Override
+    public <R extends Response> void sendAndStream(String hostId, Request request, final Class<R> clazz,
+                                                   final StreamListener<R> listener) {
+        byte[] requestBytes = encoder.encode(request, hostId);
+        streamingTransport().sendAndStream(hostId, requestBytes, new StreamListener<byte[]>() {
+            @Override
+            public boolean onReply(byte[] reply) {
+                R response;
+                try {
+                    response = decoder.decode(reply, clazz);
+                } catch (RuntimeException e) {
+                    listener.onError(e);
+                    return true;
+                }
+                return listener.onReply(response);
+            }
+
+            @Override
+            public void onError(Throwable cause) {
+                listener.onError(cause);
+            }
+        });
+    }
+
+    @Override
+    public void sendOneWay(String hostId, Request request) {
+        streamingTransport().send(hostId, encoder.encode(request, hostId));
+    }
+
+    private StreamingTransport streamingTransport() {
+        if (!(transport instanceof StreamingTransport)) {
+            throw new UnsupportedOperationException("The transport does not support streamed replies.");
+        }
+        return (StreamingTransport) transport;
+    }
+
     @Override
     public void close() throws IOException {
         if (transport == null) {
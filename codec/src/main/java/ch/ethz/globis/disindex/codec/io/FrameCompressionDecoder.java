@@ -0,0 +1,147 @@
+/*
+This file is part of PH-Tree:
+A multi-dimensional indexing and storage structure.
+
+Copyright (C) 2011-2015
+Eidgenössische Technische Hochschule Zürich (ETH Zurich)
+Institute for Information Systems
+GlobIS Group
+Bogdan Vancea, Tilmann Zaeschke
+zaeschke@inf.ethz.ch or zoodb@gmx.de
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package ch.ethz.globis.disindex.codec.io;
+
+import ch.ethz.globis.disindex.codec.compression.BlockCodec;
+import ch.ethz.globis.disindex.codec.compression.FrameCompression;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.MessageToMessageDecoder;
+import io.netty.handler.codec.TooLongFrameException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+
+/**
+ * Decompresses the incoming frames carrying the compression marker and passes the other frames unchanged.
+ *
+ * On the middleware side, the decoder also consumes the HELLO frame sent by the client and enables the
+ * compression of the replies on the encoder of the same channel, if the middleware accepts compression.
+ *
+ * An instance holds the state of a single channel.
+ */
+public class FrameCompressionDecoder extends MessageToMessageDecoder<ByteBuf> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FrameCompressionDecoder.class);
+
+    /** The encoder of the channel, configured when the HELLO frame is received. Null on the client side. */
+    private final FrameCompressionEncoder encoder;
+
+    /** The compression accepted for the replies, null if replies are never compressed. */
+    private final FrameCompression accepted;
+
+    /** The maximum size of a decompressed frame. */
+    private final int maxFrameSize;
+
+    public FrameCompressionDecoder(int maxFrameSize) {
+        this(null, null, maxFrameSize);
+    }
+
+    /**
+     * @param encoder                       The encoder of the same channel.
+     * @param accepted                      The compression accepted for the replies. Its codec is replaced
+     *                                      by the one requested by the client.
+     * @param maxFrameSize                  The maximum size of a decompressed frame.
+     */
+    public FrameCompressionDecoder(FrameCompressionEncoder encoder, FrameCompression accepted, int maxFrameSize) {
+        this.encoder = encoder;
+        this.accepted = accepted;
+        this.maxFrameSize = maxFrameSize;
+    }
+
+    /**
+     * Create the HELLO frame asking the remote side to compress its replies with the codec received as argument.
+     */
+    public static ByteBuf hello(BlockCodec codec) {
+        return Unpooled.wrappedBuffer(new byte[] { FrameCompression.HELLO, codec.getId() });
+    }
+
+    @Override
+    protected void decode(ChannelHandlerContext ctx, ByteBuf msg, List<Object> out) throws Exception {
+        if (!msg.isReadable()) {
+            out.add(msg.retain());
+            return;
+        }
+        byte marker = msg.getByte(msg.readerIndex());
+        if (marker == FrameCompression.HELLO) {
+            negotiate(ctx, msg);
+        } else if (marker == FrameCompression.COMPRESSED_FRAME) {
+            out.add(decompress(ctx, msg));
+        } else {
+            out.add(msg.retain());
+        }
+    }
+
+    private void negotiate(ChannelHandlerContext ctx, ByteBuf msg) {
+        msg.skipBytes(1);
+        BlockCodec codec = FrameCompression.codec(msg.readByte());
+        if (encoder == null || accepted == null) {
+            return;
+        }
+        if (codec == null) {
+            LOG.warn("Client {} requested an unknown compression codec.", ctx.channel().remoteAddress());
+            return;
+        }
+        encoder.setCompression(new FrameCompression(codec, accepted.getThreshold()));
+    }
+
+    private ByteBuf decompress(ChannelHandlerContext ctx, ByteBuf msg) {
+        msg.skipBytes(1);
+        byte codecId = msg.readByte();
+        BlockCodec codec = FrameCompression.codec(codecId);
+        if (codec == null) {
+            throw new CorruptedFrameException("Unknown compression codec " + codecId);
+        }
+        int length = msg.readInt();
+        if (length < 0 || length > maxFrameSize) {
+            throw new TooLongFrameException("Decompressed frame of size " + length
+                    + " exceeds the maximum of " + maxFrameSize);
+        }
+
+        int srcLength = msg.readableBytes();
+        byte[] src;
+        int srcOffset;
+        if (msg.hasArray()) {
+            src = msg.array();
+            srcOffset = msg.arrayOffset() + msg.readerIndex();
+        } else {
+            src = new byte[srcLength];
+            srcOffset = 0;
+            msg.getBytes(msg.readerIndex(), src);
+        }
+        ByteBuf frame = ctx.alloc().heapBuffer(length, length);
+        try {
+            codec.decompress(src, srcOffset, srcLength, frame.array(), frame.arrayOffset(), length);
+        } catch (IllegalArgumentException e) {
+            frame.release();
+            throw new CorruptedFrameException(e);
+        }
+        frame.writerIndex(length);
+        return frame;
+    }
+}
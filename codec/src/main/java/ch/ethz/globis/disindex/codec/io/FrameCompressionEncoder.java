@@ -0,0 +1,119 @@
+/*
+This file is part of PH-Tree:
+A multi-dimensional indexing and storage structure.
+
+Copyright (C) 2011-2015
+Eidgenössische Technische Hochschule Zürich (ETH Zurich)
+Institute for Information Systems
+GlobIS Group
+Bogdan Vancea, Tilmann Zaeschke
+zaeschke@inf.ethz.ch or zoodb@gmx.de
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package ch.ethz.globis.disindex.codec.io;
+
+import ch.ethz.globis.disindex.codec.compression.BlockCodec;
+import ch.ethz.globis.disindex.codec.compression.FrameCompression;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.MessageToMessageEncoder;
+
+import java.util.List;
+
+/**
+ * Compresses the outgoing frames whose body is at least as large as the compression threshold.
+ *
+ * Frames are sent unchanged while no compression is set, and whenever compressing them does not save space.
+ * The middleware writes frames that already start with their 4 byte size header, which is rewritten to
+ * the size of the compressed body, while the client compresses the bodies before the size header is prepended.
+ *
+ * An instance holds the state of a single channel.
+ */
+public class FrameCompressionEncoder extends MessageToMessageEncoder<ByteBuf> {
+
+    private static final int LENGTH_FIELD_SIZE = 4;
+
+    /** Whether the outgoing frames start with their size header. */
+    private final boolean lengthPrefixed;
+
+    /** The compression settings, null while frames are sent uncompressed. */
+    private volatile FrameCompression compression;
+
+    public FrameCompressionEncoder(boolean lengthPrefixed) {
+        this(lengthPrefixed, null);
+    }
+
+    public FrameCompressionEncoder(boolean lengthPrefixed, FrameCompression compression) {
+        this.lengthPrefixed = lengthPrefixed;
+        this.compression = compression;
+    }
+
+    @Override
+    protected void encode(ChannelHandlerContext ctx, ByteBuf msg, List<Object> out) throws Exception {
+        FrameCompression compression = this.compression;
+        int headerSize = lengthPrefixed ? LENGTH_FIELD_SIZE : 0;
+        int length = msg.readableBytes() - headerSize;
+        if (compression == null || length < compression.getThreshold() || length <= FrameCompression.HEADER_SIZE) {
+            out.add(msg.retain());
+            return;
+        }
+
+        BlockCodec codec = compression.getCodec();
+        int srcIndex = msg.readerIndex() + headerSize;
+        byte[] src;
+        int srcOffset;
+        if (msg.hasArray()) {
+            src = msg.array();
+            srcOffset = msg.arrayOffset() + srcIndex;
+        } else {
+            src = new byte[length];
+            srcOffset = 0;
+            msg.getBytes(srcIndex, src);
+        }
+
+        int capacity = headerSize + FrameCompression.HEADER_SIZE + codec.maxCompressedLength(length);
+        ByteBuf compressed = ctx.alloc().heapBuffer(capacity, capacity);
+        if (lengthPrefixed) {
+            compressed.writeInt(0);
+        }
+        compressed.writeByte(FrameCompression.COMPRESSED_FRAME);
+        compressed.writeByte(codec.getId());
+        compressed.writeInt(length);
+        int destIndex = compressed.writerIndex();
+        int compressedLength = codec.compress(src, srcOffset, length,
+                compressed.array(), compressed.arrayOffset() + destIndex);
+        if (FrameCompression.HEADER_SIZE + compressedLength >= length) {
+            compressed.release();
+            out.add(msg.retain());
+            return;
+        }
+        compressed.writerIndex(destIndex + compressedLength);
+        if (lengthPrefixed) {
+            compressed.setInt(0, compressed.readableBytes() - LENGTH_FIELD_SIZE);
+        }
+        out.add(compressed);
+    }
+
+    public FrameCompression getCompression() {
+        return compression;
+    }
+
+    /**
+     * Set the compression used for the frames written after this call, or null to stop compressing.
+     */
+    public void setCompression(FrameCompression compression) {
+        this.compression = compression;
+    }
+}
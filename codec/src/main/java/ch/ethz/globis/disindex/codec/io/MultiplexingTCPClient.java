@@ -0,0 +1,303 @@
+/*
+This file is part of PH-Tree:
+A multi-dimensional indexing and storage structure.
+
+Copyright (C) 2011-2015
+Eidgenössische Technische Hochschule Zürich (ETH Zurich)
+Institute for Information Systems
+GlobIS Group
+Bogdan Vancea, Tilmann Zaeschke
+zaeschke@inf.ethz.ch or zoodb@gmx.de
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package ch.ethz.globis.disindex.codec.io;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Transport that multiplexes concurrent requests over a single connection per remote host.
+ *
+ * Requests are written to the socket as soon as they are issued, without waiting for the replies of the
+ * previous requests. A dedicated reader thread per connection reads the replies and matches them to the
+ * pending requests using the request id, which the server echoes right after the op code in every response.
+ *
+ * The number of requests that can be in flight for a single host is bounded by a {@link RequestWindow}. The
+ * requests sent beyond that bound are queued without blocking the caller and written once earlier replies arrive.
+ *
+ * This class is thread-safe.
+ */
+public class MultiplexingTCPClient implements AsyncTransport {
+
+    /** The logger used by this class*/
+    private static final Logger LOG = LoggerFactory.getLogger(MultiplexingTCPClient.class);
+
+    /** The default number of requests that can be pending on a single connection. */
+    public static final int DEFAULT_MAX_IN_FLIGHT = 64;
+
+    /** The offset of the request id within a response: it follows the op code byte. */
+    private static final int REQUEST_ID_OFFSET = 1;
+
+    /** A map of host id's and open connections*/
+    private final ConcurrentMap<String, Connection> connections = new ConcurrentHashMap<>();
+
+    /** Runs the work that follows a reply and may block on this transport. */
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "transport-executor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /** The maximum number of requests that can be pending on a single connection. */
+    private final int maxInFlight;
+
+    private volatile boolean closed = false;
+
+    public MultiplexingTCPClient() {
+        this(DEFAULT_MAX_IN_FLIGHT);
+    }
+
+    public MultiplexingTCPClient(int maxInFlight) {
+        if (maxInFlight <= 0) {
+            throw new IllegalArgumentException("The maximum number of in-flight requests should be positive.");
+        }
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * Send the payload received as an argument to the remote host identified by the hostId received as an argument.
+     *
+     * The byte array received as a response from the server is also returned.
+     *
+     * @param host                          The id of the remote host.
+     * @param payload                       The message to be sent.
+     * @return                              The reply of the server.
+     */
+    @Override
+    public byte[] sendAndReceive(String host, byte[] payload) {
+        return await(host, sendAndReceiveAsync(host, payload));
+    }
+
+    /**
+     * Send the byte array received as an argument to all of the remote hosts identified by the hostId's received
+     * as arguments and return a list of all of the replies.
+     *
+     * The requests are all written before waiting for the first reply, so the hosts process them in parallel.
+     *
+     * @param hosts                         A list of the host identifies.
+     * @param payload                       The message to be sent to ALL hosts.
+     * @return                              A list of the replies, in the order of the hosts.
+     */
+    @Override
+    public List<byte[]> sendAndReceive(Collection<String> hosts, byte[] payload) {
+        List<CompletableFuture<byte[]>> futures = new ArrayList<>(hosts.size());
+        for (String host : hosts) {
+            futures.add(sendAndReceiveAsync(host, payload));
+        }
+        List<byte[]> responses = new ArrayList<>(hosts.size());
+        int i = 0;
+        for (String host : hosts) {
+            responses.add(await(host, futures.get(i++)));
+        }
+        return responses;
+    }
+
+    /**
+     * Send the payload to the remote host without waiting for the reply.
+     *
+     * The future is completed on the reader thread of the connection, so dependent actions should not block.
+     *
+     * @param host                          The id of the remote host.
+     * @param payload                       The message to be sent.
+     * @return                              A future that is completed with the reply of the server, or
+     *                                      completed exceptionally if the connection fails.
+     */
+    @Override
+    public CompletableFuture<byte[]> sendAndReceiveAsync(String host, byte[] payload) {
+        LOG.debug("Sending request to host {}", host);
+        try {
+            return getConnection(host).send(payload);
+        } catch (IOException | RuntimeException e) {
+            CompletableFuture<byte[]> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+    }
+
+    @Override
+    public ScheduledExecutorService getExecutor() {
+        return executor;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        for (Connection connection : connections.values()) {
+            connection.close();
+        }
+        connections.clear();
+        executor.shutdownNow();
+    }
+
+    private byte[] await(String host, CompletableFuture<byte[]> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOG.error("Interrupted while waiting for a reply from host {}", host);
+        } catch (ExecutionException e) {
+            LOG.error("Failed to send message to remote host: {}", host, e.getCause());
+        }
+        return null;
+    }
+
+    private Connection getConnection(String host) throws IOException {
+        if (closed) {
+            throw new IOException("The transport was closed.");
+        }
+        Connection connection = connections.get(host);
+        if (connection != null && connection.isOpen()) {
+            return connection;
+        }
+        synchronized (connections) {
+            connection = connections.get(host);
+            if (connection == null || !connection.isOpen()) {
+                connection = openConnection(host);
+                connections.put(host, connection);
+            }
+        }
+        return connection;
+    }
+
+    /**
+     * Open a new connection to the remote server and start its reader thread.
+     *
+     * @param host                          The hostId of the remote server to which a new connection should be opened.
+     * @return                              The newly created connection.
+     * @throws IOException
+     */
+    private Connection openConnection(String host) throws IOException {
+        LOG.debug("Opening socket to {}", host);
+        String[] tokens = host.split(":");
+        String hostAddress = tokens[0];
+        int port = Integer.parseInt(tokens[1]);
+
+        Socket socket = new Socket(hostAddress, port);
+        socket.setTcpNoDelay(true);
+        Connection connection = new Connection(host, socket, maxInFlight);
+        connection.start();
+        return connection;
+    }
+
+    /**
+     * A single connection to a remote host, shared by all the threads sending requests to that host.
+     */
+    private static class Connection implements Runnable, RequestWindow.Writer {
+
+        private final String host;
+        private final Socket socket;
+        private final DataOutputStream out;
+        private final DataInputStream in;
+
+        /** The requests written on this connection for which no reply was received yet. */
+        private final RequestWindow window;
+
+        private volatile boolean open = true;
+
+        private Connection(String host, Socket socket, int maxInFlight) throws IOException {
+            this.host = host;
+            this.socket = socket;
+            this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            this.window = new RequestWindow(maxInFlight, this);
+        }
+
+        private void start() {
+            Thread reader = new Thread(this, "transport-reader-" + host);
+            reader.setDaemon(true);
+            reader.start();
+        }
+
+        private boolean isOpen() {
+            return open;
+        }
+
+        private CompletableFuture<byte[]> send(byte[] payload) {
+            int requestId = ByteBuffer.wrap(payload).getInt(REQUEST_ID_OFFSET);
+            return window.send(requestId, payload);
+        }
+
+        /**
+         * Write a message to the server. To support large messages, a header containing the size of the
+         * payload is first sent, followed by the byte[] payload itself.
+         */
+        @Override
+        public void write(int requestId, byte[] payload) throws IOException {
+            try {
+                synchronized (out) {
+                    out.writeInt(payload.length);
+                    out.write(payload);
+                    out.flush();
+                }
+            } catch (IOException e) {
+                close();
+                throw e;
+            }
+        }
+
+        /**
+         * Read the replies from the server and hand each of them to the request it belongs to.
+         */
+        @Override
+        public void run() {
+            try {
+                while (open) {
+                    int dataSize = in.readInt();
+                    byte[] data = new byte[dataSize];
+                    in.readFully(data);
+
+                    int requestId = ByteBuffer.wrap(data).getInt(REQUEST_ID_OFFSET);
+                    if (!window.complete(requestId, data)) {
+                        LOG.warn("Received a reply for unknown request {} from host {}", requestId, host);
+                    }
+                }
+            } catch (IOException e) {
+                if (open) {
+                    LOG.error("Connection to host {} failed.", host, e);
+                }
+            } finally {
+                close();
+            }
+        }
+
+        private void close() {
+            open = false;
+            try {
+                socket.close();
+            } catch (IOException e) {
+                LOG.error("Failed to close the socket to host {}", host, e);
+            }
+            window.close(new IOException("The connection to host " + host + " was closed."));
+        }
+    }
+}
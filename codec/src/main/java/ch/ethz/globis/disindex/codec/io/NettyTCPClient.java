@@ -0,0 +1,463 @@
+/*
+This file is part of PH-Tree:
+A multi-dimensional indexing and storage structure.
+
+Copyright (C) 2011-2015
+Eidgenössische Technische Hochschule Zürich (ETH Zurich)
+Institute for Information Systems
+GlobIS Group
+Bogdan Vancea, Tilmann Zaeschke
+zaeschke@inf.ethz.ch or zoodb@gmx.de
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package ch.ethz.globis.disindex.codec.io;
+
+import ch.ethz.globis.disindex.codec.compression.FrameCompression;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.*;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import io.netty.handler.codec.LengthFieldPrepender;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+
+/**
+ * Transport implemented using Netty.io
+ *
+ * A single channel is opened to each remote host and shared by all the threads sending requests.
+ * Messages are framed with the same 4 byte length header used by the middleware. Request payloads are
+ * written into pooled direct buffers and the replies are matched to the requests using the request id
+ * that follows the op code in each response.
+ *
+ * If a compression is set, the frames larger than its threshold are compressed and every new channel starts
+ * by asking the remote host to compress its replies with the same codec.
+ *
+ * Streamed requests stay registered on their channel until their listener receives the last reply, so all
+ * of the replies carrying their request id reach the listener.
+ *
+ * The number of requests waiting for their reply on a channel is bounded. The requests sent beyond that bound
+ * are queued without blocking the caller and written once earlier replies arrive. Streamed requests are not
+ * counted, as their replies are already bounded by the credit granted by the client.
+ *
+ * This class is thread-safe.
+ */
+public class NettyTCPClient implements AsyncTransport, StreamingTransport {
+
+    /** The logger used by this class*/
+    private static final Logger LOG = LoggerFactory.getLogger(NettyTCPClient.class);
+
+    /** The maximum size of a reply frame. A larger reply closes the channel and fails its pending requests. */
+    public static final int DEFAULT_MAX_FRAME_SIZE = 256 * 1024 * 1024;
+
+    /** The default number of requests that can be waiting for their reply on a single channel. */
+    public static final int DEFAULT_MAX_IN_FLIGHT = 64;
+
+    /** The offset of the request id within a response: it follows the op code byte. */
+    private static final int REQUEST_ID_OFFSET = 1;
+
+    /** The size of the length header preceding each message. */
+    private static final int LENGTH_FIELD_SIZE = 4;
+
+    /** How long to wait for a connection to be established. */
+    private static final int CONNECT_TIMEOUT_MILLIS = 10000;
+
+    /** The event loops handling the channels to the remote hosts. */
+    private final EventLoopGroup group;
+
+    private final Bootstrap bootstrap;
+
+    /** The compression used on the channels, null if the frames are sent uncompressed. */
+    private final FrameCompression compression;
+
+    /** A map of host id's and open channels*/
+    private final ConcurrentMap<String, Channel> channels = new ConcurrentHashMap<>();
+
+    /** Runs the work that follows a reply and may block on this transport. */
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "transport-executor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /** The maximum number of requests waiting for their reply on a single channel. */
+    private volatile int maxInFlight = DEFAULT_MAX_IN_FLIGHT;
+
+    public NettyTCPClient() {
+        this(0, DEFAULT_MAX_FRAME_SIZE);
+    }
+
+    /**
+     * @param nrThreads                     The number of event loop threads, 0 for the Netty default.
+     * @param maxFrameSize                  The maximum size of a reply.
+     */
+    public NettyTCPClient(int nrThreads, final int maxFrameSize) {
+        this(nrThreads, maxFrameSize, null);
+    }
+
+    /**
+     * @param nrThreads                     The number of event loop threads, 0 for the Netty default.
+     * @param maxFrameSize                  The maximum size of a reply.
+     * @param compression                   The compression negotiated with the remote hosts, null to disable it.
+     */
+    public NettyTCPClient(int nrThreads, final int maxFrameSize, final FrameCompression compression) {
+        this.compression = compression;
+        this.group = new NioEventLoopGroup(nrThreads);
+        this.bootstrap = new Bootstrap()
+                .group(group)
+                .channel(NioSocketChannel.class)
+                .option(ChannelOption.TCP_NODELAY, true)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, CONNECT_TIMEOUT_MILLIS)
+                .option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+                .handler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel ch) throws Exception {
+                        ch.pipeline().addLast(
+                                new LengthFieldBasedFrameDecoder(maxFrameSize, 0, LENGTH_FIELD_SIZE, 0, LENGTH_FIELD_SIZE),
+                                new LengthFieldPrepender(LENGTH_FIELD_SIZE),
+                                new FrameCompressionEncoder(false, compression),
+                                new FrameCompressionDecoder(maxFrameSize),
+                                new ResponseHandler(getMaxInFlight()));
+                    }
+                });
+    }
+
+    /**
+     * Send the payload received as an argument to the remote host identified by the hostId received as an argument.
+     *
+     * The byte array received as a response from the server is also returned.
+     *
+     * @param host                          The id of the remote host.
+     * @param payload                       The message to be sent.
+     * @return                              The reply of the server.
+     */
+    @Override
+    public byte[] sendAndReceive(String host, byte[] payload) {
+        return await(host, sendAndReceiveAsync(host, payload));
+    }
+
+    /**
+     * Send the byte array received as an argument to all of the remote hosts identified by the hostId's received
+     * as arguments and return a list of all of the replies.
+     *
+     * @param hosts                         A list of the host identifies.
+     * @param payload                       The message to be sent to ALL hosts.
+     * @return                              A list of the replies, in the order of the hosts.
+     */
+    @Override
+    public List<byte[]> sendAndReceive(Collection<String> hosts, byte[] payload) {
+        List<CompletableFuture<byte[]>> futures = new ArrayList<>(hosts.size());
+        for (String host : hosts) {
+            futures.add(sendAndReceiveAsync(host, payload));
+        }
+        List<byte[]> responses = new ArrayList<>(hosts.size());
+        int i = 0;
+        for (String host : hosts) {
+            responses.add(await(host, futures.get(i++)));
+        }
+        return responses;
+    }
+
+    /**
+     * Send the payload to the remote host without waiting for the reply.
+     *
+     * The future is completed on an event loop thread, so dependent actions should not block.
+     *
+     * @param host                          The id of the remote host.
+     * @param payload                       The message to be sent.
+     * @return                              A future that is completed with the reply of the server, or
+     *                                      completed exceptionally if the channel fails.
+     */
+    @Override
+    public CompletableFuture<byte[]> sendAndReceiveAsync(String host, byte[] payload) {
+        LOG.debug("Sending request to host {}", host);
+        try {
+            Channel channel = getChannel(host);
+            int requestId = ByteBuffer.wrap(payload).getInt(REQUEST_ID_OFFSET);
+            return channel.pipeline().get(ResponseHandler.class).send(requestId, payload);
+        } catch (IOException | RuntimeException e) {
+            CompletableFuture<byte[]> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+    }
+
+    /**
+     * Send a request answered by several replies, passed to the listener on the event loop of the channel.
+     *
+     * @param host                          The id of the remote host.
+     * @param payload                       The message to be sent.
+     * @param listener                      Receives the replies, until it reports the last one.
+     */
+    @Override
+    public void sendAndStream(String host, byte[] payload, StreamListener<byte[]> listener) {
+        LOG.debug("Opening stream to host {}", host);
+        try {
+            Channel channel = getChannel(host);
+            final int requestId = ByteBuffer.wrap(payload).getInt(REQUEST_ID_OFFSET);
+            final ResponseHandler handler = channel.pipeline().get(ResponseHandler.class);
+            handler.register(requestId, listener);
+            write(channel, payload).addListener(new ChannelFutureListener() {
+                @Override
+                public void operationComplete(ChannelFuture writeFuture) throws Exception {
+                    if (!writeFuture.isSuccess()) {
+                        handler.failStream(requestId, writeFuture.cause());
+                    }
+                }
+            });
+        } catch (IOException | RuntimeException e) {
+            listener.onError(e);
+        }
+    }
+
+    /**
+     * Send a message the remote host does not reply to. Failures to send the message are only logged.
+     *
+     * @param host                          The id of the remote host.
+     * @param payload                       The message to be sent.
+     */
+    @Override
+    public void send(final String host, byte[] payload) {
+        try {
+            write(getChannel(host), payload).addListener(new ChannelFutureListener() {
+                @Override
+                public void operationComplete(ChannelFuture writeFuture) throws Exception {
+                    if (!writeFuture.isSuccess()) {
+                        LOG.error("Failed to send message to remote host: {}", host, writeFuture.cause());
+                    }
+                }
+            });
+        } catch (IOException | RuntimeException e) {
+            LOG.error("Failed to send message to remote host: {}", host, e);
+        }
+    }
+
+    private static ChannelFuture write(Channel channel, byte[] payload) {
+        ByteBuf buf = channel.alloc().directBuffer(payload.length);
+        buf.writeBytes(payload);
+        return channel.writeAndFlush(buf);
+    }
+
+    public FrameCompression getCompression() {
+        return compression;
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    /**
+     * Set the maximum number of requests waiting for their reply on a single channel. The new bound also
+     * applies to the channels already open.
+     */
+    public synchronized void setMaxInFlight(int maxInFlight) {
+        if (maxInFlight <= 0) {
+            throw new IllegalArgumentException("The number of requests in flight should be positive.");
+        }
+        for (Channel channel : channels.values()) {
+            ResponseHandler handler = channel.pipeline().get(ResponseHandler.class);
+            if (handler != null) {
+                handler.resize(maxInFlight - this.maxInFlight);
+            }
+        }
+        this.maxInFlight = maxInFlight;
+    }
+
+    @Override
+    public ScheduledExecutorService getExecutor() {
+        return executor;
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (Channel channel : channels.values()) {
+            channel.close().syncUninterruptibly();
+        }
+        channels.clear();
+        group.shutdownGracefully();
+        executor.shutdownNow();
+    }
+
+    private byte[] await(String host, CompletableFuture<byte[]> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a reply from host " + host, e);
+        } catch (ExecutionException e) {
+            LOG.error("Failed to send message to remote host: {}", host, e.getCause());
+            throw new IllegalStateException("Failed to receive a reply from host " + host, e.getCause());
+        }
+    }
+
+    private Channel getChannel(String host) throws IOException {
+        Channel channel = channels.get(host);
+        if (channel != null && channel.isActive()) {
+            return channel;
+        }
+        synchronized (channels) {
+            channel = channels.get(host);
+            if (channel == null || !channel.isActive()) {
+                channel = connect(host);
+                channels.put(host, channel);
+            }
+        }
+        return channel;
+    }
+
+    /**
+     * Open a new channel to the remote server.
+     *
+     * @param host                          The hostId of the remote server to which a new channel should be opened.
+     * @return                              The newly created channel.
+     * @throws IOException
+     */
+    private Channel connect(String host) throws IOException {
+        LOG.debug("Opening channel to {}", host);
+        String[] tokens = host.split(":");
+        String hostAddress = tokens[0];
+        int port = Integer.parseInt(tokens[1]);
+
+        if (group.isShuttingDown()) {
+            throw new IOException("The client was closed.");
+        }
+        ChannelFuture connectFuture = bootstrap.connect(hostAddress, port);
+        //the connect future is not completed if the event loop is shut down concurrently, so bound the wait
+        if (!connectFuture.awaitUninterruptibly(CONNECT_TIMEOUT_MILLIS) || !connectFuture.isSuccess()) {
+            connectFuture.channel().close();
+            throw new IOException("Failed to connect to host " + host, connectFuture.cause());
+        }
+        Channel channel = connectFuture.channel();
+        if (compression != null) {
+            //the first frame on the channel, before any request
+            channel.writeAndFlush(FrameCompressionDecoder.hello(compression.getCodec()));
+        }
+        return channel;
+    }
+
+    /**
+     * Matches the replies received on a channel to the pending requests, written through a {@link RequestWindow}.
+     */
+    private static class ResponseHandler extends SimpleChannelInboundHandler<ByteBuf> implements RequestWindow.Writer {
+
+        /** The requests sent on this channel for which no reply was received yet. */
+        private final RequestWindow window;
+
+        /** The streamed requests written on this channel for which the last reply was not received yet. */
+        private final Map<Integer, StreamListener<byte[]>> streams = new ConcurrentHashMap<>();
+
+        private volatile Channel channel;
+
+        private volatile boolean active = true;
+
+        private ResponseHandler(int maxInFlight) {
+            this.window = new RequestWindow(maxInFlight, this);
+        }
+
+        @Override
+        public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
+            channel = ctx.channel();
+            super.handlerAdded(ctx);
+        }
+
+        /**
+         * Queue a request and write it as soon as the number of requests in flight allows it.
+         */
+        private CompletableFuture<byte[]> send(int requestId, byte[] payload) {
+            if (streams.containsKey(requestId)) {
+                throw new IllegalStateException("Request " + requestId + " is already pending on this channel");
+            }
+            return window.send(requestId, payload);
+        }
+
+        @Override
+        public void write(final int requestId, byte[] payload) {
+            NettyTCPClient.write(channel, payload).addListener(new ChannelFutureListener() {
+                @Override
+                public void operationComplete(ChannelFuture writeFuture) throws Exception {
+                    if (!writeFuture.isSuccess()) {
+                        window.fail(requestId, writeFuture.cause());
+                    }
+                }
+            });
+        }
+
+        private void resize(int delta) {
+            window.resize(delta);
+        }
+
+        private void register(int requestId, StreamListener<byte[]> listener) throws IOException {
+            if (window.isPending(requestId) || streams.putIfAbsent(requestId, listener) != null) {
+                throw new IllegalStateException("Request " + requestId + " is already pending on this channel");
+            }
+            if (!active) {
+                streams.remove(requestId);
+                throw new IOException("The channel was closed.");
+            }
+        }
+
+        private void failStream(int requestId, Throwable cause) {
+            StreamListener<byte[]> listener = streams.remove(requestId);
+            if (listener != null) {
+                listener.onError(cause);
+            }
+        }
+
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, ByteBuf msg) throws Exception {
+            int requestId = msg.getInt(msg.readerIndex() + REQUEST_ID_OFFSET);
+            byte[] data = new byte[msg.readableBytes()];
+            msg.readBytes(data);
+
+            if (window.complete(requestId, data)) {
+                return;
+            }
+            StreamListener<byte[]> listener = streams.get(requestId);
+            if (listener == null) {
+                LOG.warn("Received a reply for unknown request {} from {}", requestId, ctx.channel().remoteAddress());
+            } else if (listener.onReply(data)) {
+                streams.remove(requestId);
+            }
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+            active = false;
+            IOException closed = new IOException("The channel to " + ctx.channel().remoteAddress() + " was closed.");
+            window.close(closed);
+            for (Integer requestId : streams.keySet()) {
+                failStream(requestId, closed);
+            }
+            super.channelInactive(ctx);
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+            LOG.error("Error on channel to {}", ctx.channel().remoteAddress(), cause);
+            ctx.close();
+        }
+    }
+}
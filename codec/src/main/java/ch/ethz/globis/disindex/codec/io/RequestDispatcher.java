@@ -27,6 +27,8 @@ package ch.ethz.globis.disindex.codec.io;
 import java.io.Closeable;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
 
 import ch.ethz.globis.distindex.operation.request.Request;
 import ch.ethz.globis.distindex.operation.response.Response;
@@ -36,4 +38,26 @@ public interface RequestDispatcher<K, V> extends Closeable, AutoCloseable {
     public <R extends Response> R send(String hostId, Request request, Class<R> clazz);
 
     public <R extends Response> List<R> send(Collection<String> hostIds, Request request, Class<R> clazz);
+
+    public <R extends Response> CompletableFuture<R> sendAsync(String hostId, Request request, Class<R> clazz);
+
+    public <R extends Response> CompletableFuture<List<R>> sendAsync(Collection<String> hostIds, Request request, Class<R> clazz);
+
+    /**
+     * @return      The executor for the work that follows a response and may block on the transport, or null
+     *              if the asynchronous sends are completed on the calling thread.
+     */
+    public ScheduledExecutorService getExecutor();
+
+    public boolean supportsStreams();
+
+    /**
+     * Send a request answered by several responses, passed to the listener as they arrive.
+     */
+    public <R extends Response> void sendAndStream(String hostId, Request request, Class<R> clazz, StreamListener<R> listener);
+
+    /**
+     * Send a request the host does not respond to.
+     */
+    public void sendOneWay(String hostId, Request request);
 }
\ No newline at end of file
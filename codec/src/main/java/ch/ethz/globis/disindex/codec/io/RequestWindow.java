@@ -0,0 +1,258 @@
+/*
+This file is part of PH-Tree:
+A multi-dimensional indexing and storage structure.
+
+Copyright (C) 2011-2015
+Eidgenössische Technische Hochschule Zürich (ETH Zurich)
+Institute for Information Systems
+GlobIS Group
+Bogdan Vancea, Tilmann Zaeschke
+zaeschke@inf.ethz.ch or zoodb@gmx.de
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package ch.ethz.globis.disindex.codec.io;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+
+/**
+ * The requests sent on a single connection and waiting for their reply. The replies are matched to the
+ * requests using the request id.
+ *
+ * At most maxInFlight requests are written without having been answered. The requests sent beyond that bound
+ * are queued without blocking the caller and written once earlier requests are answered or fail.
+ *
+ * This class is thread-safe.
+ */
+public class RequestWindow {
+
+    /**
+     * Writes the requests on the connection.
+     */
+    public interface Writer {
+
+        /**
+         * Write a request. Failures detected after this method returned should be reported
+         * with {@link RequestWindow#fail(int, Throwable)}.
+         *
+         * @param requestId             The id of the request.
+         * @param payload               The message to be written.
+         * @throws IOException          If the request could not be written.
+         */
+        void write(int requestId, byte[] payload) throws IOException;
+    }
+
+    private final Writer writer;
+
+    /** The requests sent for which no reply was received yet, written or still queued. */
+    private final Map<Integer, Entry> pending = new ConcurrentHashMap<>();
+
+    /** The requests waiting for a permit to be written. */
+    private final Queue<Entry> queued = new ConcurrentLinkedQueue<>();
+
+    /** A permit for each request that can still be written before the earlier ones are answered. */
+    private final ResizableSemaphore permits;
+
+    private volatile boolean closed = false;
+
+    public RequestWindow(int maxInFlight, Writer writer) {
+        if (maxInFlight <= 0) {
+            throw new IllegalArgumentException("The maximum number of in-flight requests should be positive.");
+        }
+        this.permits = new ResizableSemaphore(maxInFlight);
+        this.writer = writer;
+    }
+
+    /**
+     * Queue a request and write it as soon as the number of requests in flight allows it.
+     *
+     * @param requestId                 The id of the request, echoed in its reply.
+     * @param payload                   The message to be written.
+     * @return                          A future completed with the reply, or completed exceptionally if the
+     *                                  request could not be written or the window was closed.
+     */
+    public CompletableFuture<byte[]> send(int requestId, byte[] payload) {
+        Entry entry = new Entry(requestId, payload);
+        if (pending.putIfAbsent(requestId, entry) != null) {
+            throw new IllegalStateException("Request " + requestId + " is already pending on this connection");
+        }
+        if (closed) {
+            fail(requestId, new IOException("The connection was closed."));
+            return entry.future;
+        }
+        queued.add(entry);
+        writeQueued();
+        return entry.future;
+    }
+
+    /**
+     * Complete the request the reply belongs to.
+     *
+     * @return                          False if no request with this id is pending.
+     */
+    public boolean complete(int requestId, byte[] reply) {
+        Entry entry = pending.remove(requestId);
+        if (entry == null) {
+            return false;
+        }
+        boolean written = entry.finish();
+        entry.future.complete(reply);
+        release(written);
+        return true;
+    }
+
+    /**
+     * Fail a pending request, for example because it could not be written.
+     */
+    public void fail(int requestId, Throwable cause) {
+        Entry entry = pending.remove(requestId);
+        if (entry != null) {
+            boolean written = entry.finish();
+            entry.future.completeExceptionally(cause);
+            release(written);
+        }
+    }
+
+    /**
+     * Fail all of the pending requests and the ones sent later. Only the requests already written give their
+     * permit back, so the window ends up with all of its permits.
+     */
+    public void close(Throwable cause) {
+        closed = true;
+        for (Integer requestId : pending.keySet()) {
+            fail(requestId, cause);
+        }
+        queued.clear();
+    }
+
+    public boolean isPending(int requestId) {
+        return pending.containsKey(requestId);
+    }
+
+    /**
+     * @return                          The number of requests that can still be written before earlier ones
+     *                                  are answered. Negative if the bound was lowered below the number of
+     *                                  requests in flight.
+     */
+    public int availablePermits() {
+        return permits.availablePermits();
+    }
+
+    /**
+     * Change the maximum number of requests in flight by the given amount.
+     */
+    public void resize(int delta) {
+        if (delta > 0) {
+            permits.release(delta);
+            writeQueued();
+        } else {
+            permits.reducePermits(-delta);
+        }
+    }
+
+    /**
+     * Give back the permit of a request that was answered or failed after being written, and write the
+     * next queued request.
+     */
+    private void release(boolean written) {
+        if (written) {
+            permits.release();
+            writeQueued();
+        }
+    }
+
+    /**
+     * Write the queued requests while permits are available. The requests that failed while queued
+     * give their permit back right away.
+     */
+    private void writeQueued() {
+        while (!closed && !queued.isEmpty() && permits.tryAcquire()) {
+            Entry entry = queued.poll();
+            if (entry == null || !entry.markWritten()) {
+                permits.release();
+                continue;
+            }
+            byte[] payload = entry.payload;
+            //the payload is not needed once written
+            entry.payload = null;
+            try {
+                writer.write(entry.requestId, payload);
+            } catch (IOException | RuntimeException e) {
+                fail(entry.requestId, e);
+            }
+        }
+    }
+
+    /**
+     * A request sent on the connection. A request holds a permit from the moment it is written until it
+     * is answered or fails.
+     */
+    private static class Entry {
+
+        private final int requestId;
+        private byte[] payload;
+        private final CompletableFuture<byte[]> future = new CompletableFuture<>();
+
+        private boolean written = false;
+        private boolean finished = false;
+
+        private Entry(int requestId, byte[] payload) {
+            this.requestId = requestId;
+            this.payload = payload;
+        }
+
+        /**
+         * @return                      False if the request already finished while it was queued.
+         */
+        private synchronized boolean markWritten() {
+            if (finished) {
+                return false;
+            }
+            written = true;
+            return true;
+        }
+
+        /**
+         * @return                      True if the request was written and holds a permit.
+         */
+        private synchronized boolean finish() {
+            finished = true;
+            return written;
+        }
+    }
+
+    /**
+     * A semaphore whose number of permits can also be reduced, used when the bound on the requests in flight
+     * is lowered. The permits can become negative until enough requests are answered.
+     */
+    private static class ResizableSemaphore extends Semaphore {
+
+        private static final long serialVersionUID = 1L;
+
+        private ResizableSemaphore(int permits) {
+            super(permits);
+        }
+
+        @Override
+        protected void reducePermits(int reduction) {
+            super.reducePermits(reduction);
+        }
+    }
+}
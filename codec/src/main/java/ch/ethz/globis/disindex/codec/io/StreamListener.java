@@ -0,0 +1,49 @@
+/*
+This file is part of PH-Tree:
+A multi-dimensional indexing and storage structure.
+
+Copyright (C) 2011-2015
+Eidgenössische Technische Hochschule Zürich (ETH Zurich)
+Institute for Information Systems
+GlobIS Group
+Bogdan Vancea, Tilmann Zaeschke
+zaeschke@inf.ethz.ch or zoodb@gmx.de
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package ch.ethz.globis.disindex.codec.io;
+
+/**
+ * Receives the replies to a request answered by several replies, such as the chunks of a streaming scan.
+ *
+ * The methods are called on the transport threads, so they should not block.
+ *
+ * @param <T>                               The type of the replies.
+ */
+public interface StreamListener<T> {
+
+    /**
+     * Receive the next reply.
+     *
+     * @param reply                         The reply.
+     * @return                              True if this was the last reply to the request.
+     */
+    public boolean onReply(T reply);
+
+    /**
+     * Called if the stream fails before its last reply was received, for example when the channel is closed.
+     * No other reply is received afterwards.
+     */
+    public void onError(Throwable cause);
+}
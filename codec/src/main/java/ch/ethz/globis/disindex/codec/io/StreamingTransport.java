@@ -0,0 +1,49 @@
+/*
+This file is part of PH-Tree:
+A multi-dimensional indexing and storage structure.
+
+Copyright (C) 2011-2015
+Eidgenössische Technische Hochschule Zürich (ETH Zurich)
+Institute for Information Systems
+GlobIS Group
+Bogdan Vancea, Tilmann Zaeschke
+zaeschke@inf.ethz.ch or zoodb@gmx.de
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package ch.ethz.globis.disindex.codec.io;
+
+/**
+ * A transport that also supports requests answered by several replies and messages without replies.
+ */
+public interface StreamingTransport extends Transport {
+
+    /**
+     * Send a request answered by several replies. The replies are passed to the listener as they arrive,
+     * until the listener reports the last one.
+     *
+     * @param host                          The id of the remote host.
+     * @param payload                       The message to be sent.
+     * @param listener                      Receives the replies.
+     */
+    public void sendAndStream(String host, byte[] payload, StreamListener<byte[]> listener);
+
+    /**
+     * Send a message the remote host does not reply to.
+     *
+     * @param host                          The id of the remote host.
+     * @param payload                       The message to be sent.
+     */
+    public void send(String host, byte[] payload);
+}
@@ -24,6 +24,10 @@ along with this program.  If not, see <http://www.gnu.org/licenses/>.
 */
 package ch.ethz.globis.disindex.codec.util;
 
+import io.netty.buffer.ByteBuf;
+
+import java.nio.ByteBuffer;
+
 /**
  * Utilities for processing bits.
  */
@@ -126,6 +130,92 @@ public class BitUtils {
         return longArray;
     }
 
+    /**
+     * Map a signed long to an unsigned one, such that values with a small absolute value are mapped
+     * to small values: 0 -> 0, -1 -> 1, 1 -> 2, -2 -> 3, ...
+     *
+     * @param value                 The signed value.
+     * @return                      The zig-zag encoded value.
+     */
+    public static long zigZagEncode(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    /**
+     * Reverse the zig-zag encoding.
+     *
+     * @param value                 The zig-zag encoded value.
+     * @return                      The signed value.
+     */
+    public static long zigZagDecode(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Write a long as a variable length integer. Each byte holds 7 bits of the value, starting with the
+     * least significant ones, and the high bit of the byte is set if more bytes follow. The leading zero
+     * bits of the value are not written.
+     *
+     * @param buffer                The output buffer.
+     * @param value                 The value, interpreted as unsigned.
+     */
+    public static void writeVarLong(ByteBuf buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.writeByte((int) value);
+    }
+
+    /**
+     * Write a long as a variable length integer, as in {@link #writeVarLong(ByteBuf, long)}.
+     *
+     * @param buffer                The output buffer.
+     * @param value                 The value, interpreted as unsigned.
+     */
+    public static void writeVarLong(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    /**
+     * @param value                 The value, interpreted as unsigned.
+     * @return                      The number of bytes written by writeVarLong for the value.
+     */
+    public static int varLongSize(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    /**
+     * Read a long written by writeVarLong.
+     *
+     * @param buffer                The input buffer.
+     * @return                      The value.
+     * @throws IllegalArgumentException if the value continues beyond the 10 bytes needed for 64 bits.
+     */
+    public static long readVarLong(ByteBuffer buffer) {
+        long value = 0;
+        int shift = 0;
+        byte current;
+        do {
+            if (shift > 63) {
+                throw new IllegalArgumentException("Invalid variable length integer: more than 64 bits.");
+            }
+            current = buffer.get();
+            value |= (long) (current & 0x7F) << shift;
+            shift += 7;
+        } while (current < 0);
+        return value;
+    }
+
     /**
      * Generate the start of the range that corresponds to the prefix received as an argument.
      *
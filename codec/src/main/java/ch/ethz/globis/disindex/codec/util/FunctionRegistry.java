@@ -0,0 +1,173 @@
+/*
+This file is part of PH-Tree:
+A multi-dimensional indexing and storage structure.
+
+Copyright (C) 2011-2015
+Eidgenössische Technische Hochschule Zürich (ETH Zurich)
+Institute for Information Systems
+GlobIS Group
+Bogdan Vancea, Tilmann Zaeschke
+zaeschke@inf.ethz.ch or zoodb@gmx.de
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package ch.ethz.globis.disindex.codec.util;
+
+import ch.ethz.globis.distindex.util.SerializerUtil;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashCode;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Caches the filter and mapper functions sent with the range queries, so that the same function does not
+ * need to be shipped with every request.
+ *
+ * On the client side, the registry remembers which functions were already shipped to each host. A function is
+ * serialized the first time it is used and its serialized form is reused for as long as the instance is
+ * reachable, so functions should not be modified once they were passed to a query. On the server side, it keeps
+ * the functions by the hash of their serialized form, so a request can reference a function by its hash alone.
+ * As the functions are not required to be thread-safe, each thread deserializes its own instance of a function
+ * once and reuses it for the following requests. Functions should therefore not keep state between calls.
+ *
+ * This class is thread-safe.
+ */
+public class FunctionRegistry {
+
+    /** The default number of functions kept by the registry. */
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private static final SerializedFunction NULL_FUNCTION;
+
+    static {
+        try {
+            NULL_FUNCTION = SerializedFunction.of(null);
+        } catch (IOException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /** The serialized form of the functions used by the client, by function instance. */
+    private final Cache<Serializable, SerializedFunction> serialized;
+
+    /** The hashes of the functions already shipped, by host. */
+    private final Cache<Map.Entry<String, HashCode>, Boolean> shipped;
+
+    /** The functions received by the server. */
+    private final Cache<HashCode, RegisteredFunction> functions;
+
+    public FunctionRegistry() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public FunctionRegistry(int capacity) {
+        //weak keys are compared by identity, so two equal but distinct instances are serialized separately
+        this.serialized = CacheBuilder.newBuilder().weakKeys().maximumSize(capacity).build();
+        this.shipped = CacheBuilder.newBuilder().maximumSize(capacity).build();
+        this.functions = CacheBuilder.newBuilder().maximumSize(capacity).build();
+    }
+
+    /**
+     * @param function                      A function, possibly null.
+     * @return                              The serialized form of the function, computed on its first use.
+     */
+    public SerializedFunction serialize(final Serializable function) throws IOException {
+        if (function == null) {
+            return NULL_FUNCTION;
+        }
+        try {
+            return serialized.get(function, () -> SerializedFunction.of(function));
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Failed to serialize the function.", e.getCause());
+        }
+    }
+
+    /**
+     * Mark the function as shipped to a host. The null function is never registered by the servers,
+     * so it is always shipped.
+     *
+     * @param hostId                        The host receiving the function.
+     * @return                              True if the serialized function has to be sent along with the request.
+     */
+    public boolean ship(String hostId, SerializedFunction function) {
+        if (function == NULL_FUNCTION) {
+            return true;
+        }
+        Map.Entry<String, HashCode> key = new AbstractMap.SimpleImmutableEntry<>(hostId, function.getHash());
+        return shipped.asMap().putIfAbsent(key, Boolean.TRUE) == null;
+    }
+
+    /**
+     * @param hash                          The hash of a function.
+     * @return                              The instance of the function owned by the current thread, or null
+     *                                      if it is not registered.
+     */
+    public Object get(HashCode hash) throws IOException, ClassNotFoundException {
+        RegisteredFunction function = functions.getIfPresent(hash);
+        return (function == null) ? null : function.instance();
+    }
+
+    /**
+     * Register the function received in serialized form, unless a function with the same hash is already
+     * registered.
+     *
+     * @return                              The instance of the function owned by the current thread.
+     */
+    public Object register(byte[] bytes) throws IOException, ClassNotFoundException {
+        HashCode hash = SerializedFunction.hash(bytes);
+        if (hash.equals(NULL_FUNCTION.getHash())) {
+            return null;
+        }
+        RegisteredFunction function = functions.getIfPresent(hash);
+        if (function != null) {
+            return function.instance();
+        }
+        //only functions that could be deserialized are registered
+        function = new RegisteredFunction(bytes);
+        Object instance = function.instance();
+        RegisteredFunction previous = functions.asMap().putIfAbsent(hash, function);
+        return (previous == null) ? instance : previous.instance();
+    }
+
+    /**
+     * A function received by the server, deserialized at most once by each thread using it.
+     */
+    private static class RegisteredFunction {
+
+        private final byte[] bytes;
+
+        private final ThreadLocal<Object> instances = new ThreadLocal<>();
+
+        RegisteredFunction(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        Object instance() throws IOException, ClassNotFoundException {
+            Object function = instances.get();
+            if (function == null) {
+                function = SerializerUtil.getInstance().deserializeDefault(bytes);
+                instances.set(function);
+            }
+            return function;
+        }
+    }
+}
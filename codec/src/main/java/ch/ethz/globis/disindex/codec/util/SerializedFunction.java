@@ -0,0 +1,73 @@
+/*
+This file is part of PH-Tree:
+A multi-dimensional indexing and storage structure.
+
+Copyright (C) 2011-2015
+Eidgenössische Technische Hochschule Zürich (ETH Zurich)
+Institute for Information Systems
+GlobIS Group
+Bogdan Vancea, Tilmann Zaeschke
+zaeschke@inf.ethz.ch or zoodb@gmx.de
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package ch.ethz.globis.disindex.codec.util;
+
+import ch.ethz.globis.distindex.util.SerializerUtil;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.io.IOException;
+import java.io.Serializable;
+
+/**
+ * A filter or mapper function in serialized form, identified by the hash of its serialized bytes.
+ */
+public class SerializedFunction {
+
+    /** The size of the hash identifying a function. */
+    public static final int HASH_SIZE = 16;
+
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+    private final HashCode hash;
+
+    private final byte[] bytes;
+
+    private SerializedFunction(HashCode hash, byte[] bytes) {
+        this.hash = hash;
+        this.bytes = bytes;
+    }
+
+    public static SerializedFunction of(Serializable function) throws IOException {
+        return wrap(SerializerUtil.getInstance().serializeDefault(function));
+    }
+
+    public static SerializedFunction wrap(byte[] bytes) {
+        return new SerializedFunction(hash(bytes), bytes);
+    }
+
+    public static HashCode hash(byte[] bytes) {
+        return HASH_FUNCTION.hashBytes(bytes);
+    }
+
+    public HashCode getHash() {
+        return hash;
+    }
+
+    public byte[] getBytes() {
+        return bytes;
+    }
+}
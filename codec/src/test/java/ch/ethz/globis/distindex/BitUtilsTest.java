@@ -25,11 +25,15 @@ along with this program.  If not, see <http://www.gnu.org/licenses/>.
 package ch.ethz.globis.distindex;
 
 import ch.ethz.globis.disindex.codec.util.BitUtils;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import org.junit.Test;
 
 import java.util.Arrays;
 
 import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
 
 public class BitUtilsTest {
 
@@ -55,4 +59,40 @@ public class BitUtilsTest {
         assertArrayEquals(testLongArray, testDecodedLongArray);
         System.out.println(Arrays.toString(testDecodedLongArray));
     }
+
+    @Test
+    public void testVarLongZigZag() {
+        long[] values = new long[] {0, 1, -1, 63, -64, 64, 1L << 31, -(1L << 31), Long.MAX_VALUE, Long.MIN_VALUE};
+        ByteBuf buffer = Unpooled.buffer();
+        for (long value : values) {
+            BitUtils.writeVarLong(buffer, BitUtils.zigZagEncode(value));
+        }
+        java.nio.ByteBuffer input = buffer.nioBuffer();
+        for (long value : values) {
+            assertEquals(value, BitUtils.zigZagDecode(BitUtils.readVarLong(input)));
+        }
+        assertEquals(0, input.remaining());
+
+        buffer.clear();
+        BitUtils.writeVarLong(buffer, BitUtils.zigZagEncode(-64));
+        assertEquals(1, buffer.readableBytes());
+
+        java.nio.ByteBuffer nioBuffer = java.nio.ByteBuffer.allocate(BitUtils.varLongSize(-1L));
+        BitUtils.writeVarLong(nioBuffer, -1L);
+        assertEquals(10, nioBuffer.position());
+        nioBuffer.flip();
+        assertEquals(-1L, BitUtils.readVarLong(nioBuffer));
+    }
+
+    @Test
+    public void testVarLongTooLong() {
+        byte[] bytes = new byte[11];
+        Arrays.fill(bytes, (byte) 0x80);
+        try {
+            BitUtils.readVarLong(java.nio.ByteBuffer.wrap(bytes));
+            fail("A variable length integer of more than 64 bits should be rejected.");
+        } catch (IllegalArgumentException e) {
+            //expected
+        }
+    }
 }
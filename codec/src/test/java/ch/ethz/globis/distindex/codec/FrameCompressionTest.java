@@ -0,0 +1,188 @@
+/*
+This file is part of PH-Tree:
+A multi-dimensional indexing and storage structure.
+
+Copyright (C) 2011-2015
+Eidgenössische Technische Hochschule Zürich (ETH Zurich)
+Institute for Information Systems
+GlobIS Group
+Bogdan Vancea, Tilmann Zaeschke
+zaeschke@inf.ethz.ch or zoodb@gmx.de
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package ch.ethz.globis.distindex.codec;
+
+import ch.ethz.globis.disindex.codec.compression.BlockCodec;
+import ch.ethz.globis.disindex.codec.compression.FrameCompression;
+import ch.ethz.globis.disindex.codec.io.FrameCompressionDecoder;
+import ch.ethz.globis.disindex.codec.io.FrameCompressionEncoder;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class FrameCompressionTest {
+
+    @Test
+    public void testLz4RoundTrip() {
+        checkRoundTrip(FrameCompression.LZ4);
+    }
+
+    @Test
+    public void testDeflateRoundTrip() {
+        checkRoundTrip(FrameCompression.DEFLATE);
+    }
+
+    @Test
+    public void testEncoderDecoder() {
+        byte[] body = entries(10000);
+        FrameCompressionEncoder encoder = new FrameCompressionEncoder(false, new FrameCompression(FrameCompression.LZ4, 1024));
+        EmbeddedChannel channel = new EmbeddedChannel(encoder, new FrameCompressionDecoder(Integer.MAX_VALUE));
+
+        //frames below the threshold are sent as they are
+        byte[] small = Arrays.copyOf(body, 1000);
+        channel.writeOutbound(Unpooled.wrappedBuffer(small));
+        ByteBuf sent = (ByteBuf) channel.readOutbound();
+        assertArrayEquals(small, bytes(sent));
+
+        channel.writeOutbound(Unpooled.wrappedBuffer(body));
+        sent = (ByteBuf) channel.readOutbound();
+        assertEquals(FrameCompression.COMPRESSED_FRAME, sent.getByte(0));
+        assertTrue(sent.readableBytes() < body.length * 3 / 4);
+
+        channel.writeInbound(sent);
+        ByteBuf received = (ByteBuf) channel.readInbound();
+        assertArrayEquals(body, bytes(received));
+        channel.finish();
+    }
+
+    @Test
+    public void testLengthPrefixedEncoder() {
+        byte[] body = entries(10000);
+        FrameCompressionEncoder encoder = new FrameCompressionEncoder(true, new FrameCompression(FrameCompression.LZ4, 0));
+        EmbeddedChannel channel = new EmbeddedChannel(encoder);
+
+        ByteBuf frame = Unpooled.directBuffer();
+        frame.writeInt(body.length);
+        frame.writeBytes(body);
+        channel.writeOutbound(frame);
+        ByteBuf sent = (ByteBuf) channel.readOutbound();
+        assertEquals(sent.readableBytes() - 4, sent.readInt());
+
+        byte[] compressed = bytes(sent);
+        EmbeddedChannel receiver = new EmbeddedChannel(new FrameCompressionDecoder(Integer.MAX_VALUE));
+        receiver.writeInbound(Unpooled.wrappedBuffer(compressed));
+        assertArrayEquals(body, bytes((ByteBuf) receiver.readInbound()));
+        channel.finish();
+        receiver.finish();
+    }
+
+    @Test
+    public void testIncompressibleFrame() {
+        byte[] body = new byte[4096];
+        new Random(7).nextBytes(body);
+        EmbeddedChannel channel = new EmbeddedChannel(
+                new FrameCompressionEncoder(false, new FrameCompression(FrameCompression.LZ4, 0)));
+        channel.writeOutbound(Unpooled.wrappedBuffer(body));
+        assertArrayEquals(body, bytes((ByteBuf) channel.readOutbound()));
+        channel.finish();
+    }
+
+    @Test
+    public void testNegotiation() {
+        FrameCompressionEncoder encoder = new FrameCompressionEncoder(true);
+        FrameCompression accepted = new FrameCompression(FrameCompression.LZ4, 512);
+        EmbeddedChannel channel = new EmbeddedChannel(encoder,
+                new FrameCompressionDecoder(encoder, accepted, Integer.MAX_VALUE));
+        assertNull(encoder.getCompression());
+
+        channel.writeInbound(FrameCompressionDecoder.hello(FrameCompression.DEFLATE));
+        assertNull(channel.readInbound());
+        assertNotNull(encoder.getCompression());
+        assertEquals(FrameCompression.DEFLATE, encoder.getCompression().getCodec());
+        assertEquals(512, encoder.getCompression().getThreshold());
+
+        //other frames are passed on unchanged
+        byte[] request = { 1, 0, 0, 0, 5 };
+        channel.writeInbound(Unpooled.wrappedBuffer(request));
+        assertArrayEquals(request, bytes((ByteBuf) channel.readInbound()));
+        channel.finish();
+    }
+
+    private static void checkRoundTrip(BlockCodec codec) {
+        Random random = new Random(42);
+        byte[] noise = new byte[3000];
+        random.nextBytes(noise);
+        byte[] run = new byte[5000];
+        Arrays.fill(run, (byte) 3);
+
+        byte[][] inputs = { new byte[0], new byte[] { 1, 2, 3 }, Arrays.copyOf(noise, 13), noise, run,
+                entries(1), entries(20000), concat(noise, run, noise, entries(100)) };
+        for (byte[] input : inputs) {
+            //compress to an offset within a larger array to check the offsets are respected
+            byte[] compressed = new byte[codec.maxCompressedLength(input.length) + 10];
+            int length = codec.compress(input, 0, input.length, compressed, 10);
+            assertTrue(length <= codec.maxCompressedLength(input.length));
+
+            byte[] decompressed = new byte[input.length + 3];
+            codec.decompress(compressed, 10, length, decompressed, 3, input.length);
+            assertArrayEquals(input, Arrays.copyOfRange(decompressed, 3, decompressed.length));
+        }
+    }
+
+    /**
+     * Create the bytes of a list of entries, similar to the ones of a result response.
+     */
+    private static byte[] entries(int nrEntries) {
+        ByteBuffer buffer = ByteBuffer.allocate(nrEntries * 28);
+        Random random = new Random(nrEntries);
+        for (int i = 0; i < nrEntries; i++) {
+            buffer.putInt(2);
+            buffer.putLong(i * 31L);
+            buffer.putLong(random.nextInt(1000));
+            buffer.putInt(4).put((byte) 0).put((byte) 1).put((byte) 2).put((byte) (i % 7));
+        }
+        return buffer.array();
+    }
+
+    private static byte[] concat(byte[]... arrays) {
+        int length = 0;
+        for (byte[] array : arrays) {
+            length += array.length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        for (byte[] array : arrays) {
+            buffer.put(array);
+        }
+        return buffer.array();
+    }
+
+    private static byte[] bytes(ByteBuf buf) {
+        byte[] data = new byte[buf.readableBytes()];
+        buf.readBytes(data);
+        buf.release();
+        return data;
+    }
+}
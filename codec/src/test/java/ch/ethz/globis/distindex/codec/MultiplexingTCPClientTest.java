@@ -0,0 +1,95 @@
+/*
+This file is part of PH-Tree:
+A multi-dimensional indexing and storage structure.
+
+Copyright (C) 2011-2015
+Eidgenössische Technische Hochschule Zürich (ETH Zurich)
+Institute for Information Systems
+GlobIS Group
+Bogdan Vancea, Tilmann Zaeschke
+zaeschke@inf.ethz.ch or zoodb@gmx.de
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package ch.ethz.globis.distindex.codec;
+
+import ch.ethz.globis.disindex.codec.io.MultiplexingTCPClient;
+import org.junit.Test;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertArrayEquals;
+
+public class MultiplexingTCPClientTest {
+
+    @Test
+    public void repliesAreMatchedByRequestId() throws Exception {
+        final int nrRequests = 8;
+        try (final ServerSocket server = new ServerSocket(0)) {
+            Thread serverThread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try (Socket socket = server.accept()) {
+                        DataInputStream in = new DataInputStream(socket.getInputStream());
+                        DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+                        List<byte[]> messages = new ArrayList<>();
+                        for (int i = 0; i < nrRequests; i++) {
+                            byte[] message = new byte[in.readInt()];
+                            in.readFully(message);
+                            messages.add(message);
+                        }
+                        //reply in the reverse order of the requests
+                        for (int i = nrRequests - 1; i >= 0; i--) {
+                            out.writeInt(messages.get(i).length);
+                            out.write(messages.get(i));
+                        }
+                        out.flush();
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                }
+            });
+            serverThread.start();
+
+            String host = "localhost:" + server.getLocalPort();
+            try (MultiplexingTCPClient client = new MultiplexingTCPClient()) {
+                List<byte[]> requests = new ArrayList<>();
+                List<CompletableFuture<byte[]>> futures = new ArrayList<>();
+                for (int i = 0; i < nrRequests; i++) {
+                    byte[] request = message(i);
+                    requests.add(request);
+                    futures.add(client.sendAndReceiveAsync(host, request));
+                }
+                for (int i = 0; i < nrRequests; i++) {
+                    assertArrayEquals(requests.get(i), futures.get(i).get());
+                }
+            }
+            serverThread.join();
+        }
+    }
+
+    private static byte[] message(int requestId) {
+        byte[] payload = new byte[requestId + 1];
+        Arrays.fill(payload, (byte) requestId);
+        return ByteBuffer.allocate(5 + payload.length).put((byte) 0).putInt(requestId).put(payload).array();
+    }
+}
@@ -0,0 +1,229 @@
+/*
+This file is part of PH-Tree:
+A multi-dimensional indexing and storage structure.
+
+Copyright (C) 2011-2015
+Eidgenössische Technische Hochschule Zürich (ETH Zurich)
+Institute for Information Systems
+GlobIS Group
+Bogdan Vancea, Tilmann Zaeschke
+zaeschke@inf.ethz.ch or zoodb@gmx.de
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package ch.ethz.globis.distindex.codec;
+
+import ch.ethz.globis.disindex.codec.io.NettyTCPClient;
+import org.junit.Test;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+public class NettyTCPClientTest {
+
+    @Test
+    public void repliesAreMatchedByRequestId() throws Exception {
+        final int nrRequests = 8;
+        try (final ServerSocket server = new ServerSocket(0)) {
+            Thread serverThread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try (Socket socket = server.accept()) {
+                        DataInputStream in = new DataInputStream(socket.getInputStream());
+                        DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+                        List<byte[]> messages = new ArrayList<>();
+                        for (int i = 0; i < nrRequests; i++) {
+                            messages.add(read(in));
+                        }
+                        //reply in the reverse order of the requests
+                        for (int i = nrRequests - 1; i >= 0; i--) {
+                            write(out, messages.get(i));
+                        }
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                }
+            });
+            serverThread.start();
+
+            String host = "localhost:" + server.getLocalPort();
+            try (NettyTCPClient client = new NettyTCPClient(1, NettyTCPClient.DEFAULT_MAX_FRAME_SIZE)) {
+                List<byte[]> requests = new ArrayList<>();
+                List<CompletableFuture<byte[]>> futures = new ArrayList<>();
+                for (int i = 0; i < nrRequests; i++) {
+                    byte[] request = message(i);
+                    requests.add(request);
+                    futures.add(client.sendAndReceiveAsync(host, request));
+                }
+                for (int i = 0; i < nrRequests; i++) {
+                    assertArrayEquals(requests.get(i), futures.get(i).get());
+                }
+            }
+            serverThread.join();
+        }
+    }
+
+    @Test
+    public void requestsBeyondTheLimitAreQueued() throws Exception {
+        final AtomicBoolean writtenEarly = new AtomicBoolean();
+        try (final ServerSocket server = new ServerSocket(0)) {
+            Thread serverThread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try (Socket socket = server.accept()) {
+                        DataInputStream in = new DataInputStream(socket.getInputStream());
+                        DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+                        byte[] first = read(in);
+                        byte[] second = read(in);
+                        //the third request is only written once a reply frees a place
+                        socket.setSoTimeout(300);
+                        try {
+                            in.readInt();
+                            writtenEarly.set(true);
+                        } catch (SocketTimeoutException e) {
+                            socket.setSoTimeout(0);
+                        }
+                        write(out, first);
+                        byte[] third = read(in);
+                        write(out, second);
+                        write(out, third);
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                }
+            });
+            serverThread.start();
+
+            String host = "localhost:" + server.getLocalPort();
+            try (NettyTCPClient client = new NettyTCPClient(1, NettyTCPClient.DEFAULT_MAX_FRAME_SIZE)) {
+                client.setMaxInFlight(2);
+                List<CompletableFuture<byte[]>> futures = new ArrayList<>();
+                for (int i = 0; i < 3; i++) {
+                    futures.add(client.sendAndReceiveAsync(host, message(i)));
+                }
+                for (int i = 0; i < 3; i++) {
+                    assertArrayEquals(message(i), futures.get(i).get());
+                }
+            }
+            serverThread.join();
+            assertFalse(writtenEarly.get());
+        }
+    }
+
+    @Test
+    public void theLimitIsKeptAcrossReconnects() throws Exception {
+        final int maxInFlight = 2;
+        final AtomicBoolean writtenEarly = new AtomicBoolean();
+        try (final ServerSocket server = new ServerSocket(0)) {
+            Thread serverThread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        //the first connection is dropped with requests in flight and queued
+                        try (Socket socket = server.accept()) {
+                            DataInputStream in = new DataInputStream(socket.getInputStream());
+                            for (int i = 0; i < maxInFlight; i++) {
+                                read(in);
+                            }
+                        }
+                        try (Socket socket = server.accept()) {
+                            DataInputStream in = new DataInputStream(socket.getInputStream());
+                            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+                            List<byte[]> messages = new ArrayList<>();
+                            for (int i = 0; i < maxInFlight; i++) {
+                                messages.add(read(in));
+                            }
+                            socket.setSoTimeout(300);
+                            try {
+                                in.readInt();
+                                writtenEarly.set(true);
+                            } catch (SocketTimeoutException e) {
+                                socket.setSoTimeout(0);
+                            }
+                            for (byte[] message : messages) {
+                                write(out, message);
+                            }
+                            for (int i = 0; i < maxInFlight; i++) {
+                                write(out, read(in));
+                            }
+                        }
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                }
+            });
+            serverThread.start();
+
+            String host = "localhost:" + server.getLocalPort();
+            try (NettyTCPClient client = new NettyTCPClient(1, NettyTCPClient.DEFAULT_MAX_FRAME_SIZE)) {
+                client.setMaxInFlight(maxInFlight);
+                List<CompletableFuture<byte[]>> dropped = new ArrayList<>();
+                for (int i = 0; i < 2 * maxInFlight; i++) {
+                    dropped.add(client.sendAndReceiveAsync(host, message(i)));
+                }
+                for (CompletableFuture<byte[]> future : dropped) {
+                    try {
+                        future.get();
+                        fail("The requests of a dropped connection should fail");
+                    } catch (ExecutionException e) {
+                        //expected
+                    }
+                }
+
+                List<CompletableFuture<byte[]>> futures = new ArrayList<>();
+                for (int i = 0; i < 2 * maxInFlight; i++) {
+                    futures.add(client.sendAndReceiveAsync(host, message(i)));
+                }
+                for (int i = 0; i < 2 * maxInFlight; i++) {
+                    assertArrayEquals(message(i), futures.get(i).get());
+                }
+            }
+            serverThread.join();
+            assertFalse(writtenEarly.get());
+        }
+    }
+
+    private static byte[] read(DataInputStream in) throws IOException {
+        byte[] message = new byte[in.readInt()];
+        in.readFully(message);
+        return message;
+    }
+
+    private static void write(DataOutputStream out, byte[] message) throws IOException {
+        out.writeInt(message.length);
+        out.write(message);
+        out.flush();
+    }
+
+    private static byte[] message(int requestId) {
+        byte[] payload = new byte[requestId + 1];
+        Arrays.fill(payload, (byte) requestId);
+        return ByteBuffer.allocate(5 + payload.length).put((byte) 0).putInt(requestId).put(payload).array();
+    }
+}
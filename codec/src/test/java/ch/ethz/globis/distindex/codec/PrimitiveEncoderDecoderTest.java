@@ -0,0 +1,161 @@
+/*
+This file is part of PH-Tree:
+A multi-dimensional indexing and storage structure.
+
+Copyright (C) 2011-2015
+Eidgenössische Technische Hochschule Zürich (ETH Zurich)
+Institute for Information Systems
+GlobIS Group
+Bogdan Vancea, Tilmann Zaeschke
+zaeschke@inf.ethz.ch or zoodb@gmx.de
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package ch.ethz.globis.distindex.codec;
+
+import ch.ethz.globis.disindex.codec.api.FieldEncoderDecoder;
+import ch.ethz.globis.disindex.codec.field.ByteArrayEncoderDecoder;
+import ch.ethz.globis.disindex.codec.field.DoubleEncoderDecoder;
+import ch.ethz.globis.disindex.codec.field.IntegerEncoderDecoder;
+import ch.ethz.globis.disindex.codec.field.LongEncoderDecoder;
+import ch.ethz.globis.disindex.codec.field.MultiLongEncoderDecoder;
+import ch.ethz.globis.disindex.codec.field.StringEncoderDecoder;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class PrimitiveEncoderDecoderTest {
+
+    @Test
+    public void testEncodeDecodeByteArray() {
+        ByteArrayEncoderDecoder codec = new ByteArrayEncoderDecoder();
+        byte[] value = { 1, 2, 3, -1 };
+        assertArrayEquals(value, codec.decode(codec.encode(value)));
+        assertArrayEquals(value, decodeFromBuffer(codec, value, false));
+        assertArrayEquals(value, decodeFromBuffer(codec, value, true));
+        assertNull(codec.decode(codec.encode(null)));
+    }
+
+    @Test
+    public void testEncodeDecodeString() {
+        StringEncoderDecoder codec = new StringEncoderDecoder();
+        String value = "z-order über 世界";
+        assertEquals(value, codec.decode(codec.encode(value)));
+        assertEquals(value, decodeFromBuffer(codec, value, false));
+        assertEquals(value, decodeFromBuffer(codec, value, true));
+        assertNull(codec.decode(codec.encode(null)));
+    }
+
+    @Test
+    public void testEncodeDecodeEmptyValues() {
+        ByteArrayEncoderDecoder byteCodec = new ByteArrayEncoderDecoder();
+        assertArrayEquals(new byte[0], byteCodec.decode(byteCodec.encode(new byte[0])));
+        assertArrayEquals(new byte[0], decodeFromBuffer(byteCodec, new byte[0], false));
+        assertArrayEquals(new byte[0], decodeFromBuffer(byteCodec, new byte[0], true));
+        assertNull(decodeFromBuffer(byteCodec, null, false));
+
+        StringEncoderDecoder stringCodec = new StringEncoderDecoder();
+        assertEquals("", stringCodec.decode(stringCodec.encode("")));
+        assertEquals("", decodeFromBuffer(stringCodec, "", false));
+        assertEquals("", decodeFromBuffer(stringCodec, "", true));
+        assertNull(decodeFromBuffer(stringCodec, null, true));
+    }
+
+    @Test
+    public void testEncodeDecodePrimitives() {
+        LongEncoderDecoder longCodec = new LongEncoderDecoder();
+        assertEquals(8, longCodec.encode(Long.MIN_VALUE).length);
+        assertEquals(Long.valueOf(Long.MIN_VALUE), longCodec.decode(longCodec.encode(Long.MIN_VALUE)));
+        assertEquals(Long.valueOf(-42L), decodeFromBuffer(longCodec, -42L, true));
+
+        IntegerEncoderDecoder intCodec = new IntegerEncoderDecoder();
+        assertEquals(4, intCodec.encode(7).length);
+        assertEquals(Integer.valueOf(Integer.MAX_VALUE), intCodec.decode(intCodec.encode(Integer.MAX_VALUE)));
+        assertEquals(Integer.valueOf(-7), decodeFromBuffer(intCodec, -7, false));
+
+        DoubleEncoderDecoder doubleCodec = new DoubleEncoderDecoder();
+        assertEquals(Double.valueOf(Math.PI), doubleCodec.decode(doubleCodec.encode(Math.PI)));
+        assertEquals(Double.valueOf(-0.5), decodeFromBuffer(doubleCodec, -0.5, true));
+
+        assertNull(longCodec.decode(longCodec.encode(null)));
+        assertNull(intCodec.decode(intCodec.encode(null)));
+        assertNull(doubleCodec.decode(doubleCodec.encode(null)));
+    }
+
+    @Test
+    public void testEncodeDecodeDeltaKeys() {
+        MultiLongEncoderDecoder codec = new MultiLongEncoderDecoder();
+        long[][] keys = { {1, 2, 3}, {1, 2, 4}, null, {Long.MIN_VALUE, 0, Long.MAX_VALUE}, {-1, 5}, {-1, 5, 7} };
+        int size = 0;
+        long[] previous = null;
+        for (long[] key : keys) {
+            size += codec.encodedDeltaSize(previous, key);
+            previous = key;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        previous = null;
+        for (long[] key : keys) {
+            codec.encodeDelta(previous, key, buffer);
+            previous = key;
+        }
+        assertFalse(buffer.hasRemaining());
+
+        buffer.flip();
+        previous = null;
+        for (long[] key : keys) {
+            previous = codec.decodeDelta(previous, buffer);
+            assertArrayEquals(key, previous);
+        }
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    public void testDecodeDeltaKeysChecksTheDimensions() {
+        MultiLongEncoderDecoder codec = new MultiLongEncoderDecoder();
+        //a key claiming more dimensions than there are bytes left
+        ByteBuffer buffer = ByteBuffer.wrap(new byte[] { (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x7F, 0 });
+        try {
+            codec.decodeDelta(new long[] {1, 2, 3}, buffer);
+            fail("The key should be rejected before being allocated.");
+        } catch (IllegalArgumentException e) {
+            //expected
+        }
+    }
+
+    /**
+     * Encode the value into a buffer after a length prefix, the same way the request encoder does, and decode
+     * it from a slice of that buffer.
+     */
+    private <V> V decodeFromBuffer(FieldEncoderDecoder<V> codec, V value, boolean direct) {
+        int size = codec.encodedSize(value);
+        if (size < 0) {
+            size = codec.encode(value).length;
+        }
+        ByteBuffer buffer = direct ? ByteBuffer.allocateDirect(size + 4) : ByteBuffer.allocate(size + 4);
+        buffer.putInt(size);
+        codec.encode(value, buffer);
+        assertFalse(buffer.hasRemaining());
+        buffer.position(4);
+        ByteBuffer payload = buffer.slice();
+        V decoded = codec.decode(payload);
+        assertFalse(payload.hasRemaining());
+        return decoded;
+    }
+}
@@ -28,9 +28,13 @@ import ch.ethz.globis.disindex.codec.ByteRequestDecoder;
 import ch.ethz.globis.disindex.codec.ByteRequestEncoder;
 import ch.ethz.globis.disindex.codec.api.FieldDecoder;
 import ch.ethz.globis.disindex.codec.api.FieldEncoderDecoder;
+import ch.ethz.globis.disindex.codec.field.BuiltinPredicateEncoderDecoder;
 import ch.ethz.globis.disindex.codec.field.MultiLongEncoderDecoder;
 import ch.ethz.globis.disindex.codec.field.SerializingEncoderDecoder;
+import ch.ethz.globis.distindex.api.RangeAggregate;
 import ch.ethz.globis.distindex.operation.*;
+import ch.ethz.globis.distindex.operation.predicate.BuiltinPredicate;
+import ch.ethz.globis.distindex.operation.predicate.Predicates;
 import ch.ethz.globis.distindex.operation.request.*;
 import ch.ethz.globis.pht.PhEntry;
 import ch.ethz.globis.pht.PhPredicate;
@@ -41,11 +45,20 @@ import org.junit.Test;
 
 import java.math.BigInteger;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Random;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class RequestEncodeDecodeTest {
 
@@ -78,6 +91,71 @@ public class RequestEncodeDecodeTest {
         assertArrayEquals(request.getKey(), decodedRequest.getKey());
     }
 
+    @Test
+    public void encodeDecodePutManyRequest() {
+        List<long[]> keys = Arrays.asList(new long[] {-1000, 0, 10000}, new long[] {1, -1, 0}, new long[] {7, 7, 7});
+        List<String> values = Arrays.asList("first", null, "third");
+
+        PutManyRequest<long[], String> request = new PutManyRequest<>(1, OpCode.PUT_MANY, "", 1, keys, values);
+        request.setCompactKeys(true);
+        byte[] encodedRequest = requestEncoder.encodePutMany(request);
+
+        PutManyRequest<long[], byte[]> decodedRequest = requestDecoder.decodePutMany(ByteBuffer.wrap(encodedRequest));
+        assertRequestMetaEqual(request, decodedRequest);
+        assertEquals(keys.size(), decodedRequest.getKeys().size());
+        for (int i = 0; i < keys.size(); i++) {
+            assertArrayEquals(keys.get(i), decodedRequest.getKeys().get(i));
+            assertEquals(values.get(i), valueCodec.decode(decodedRequest.getValues().get(i)));
+        }
+        assertTrue(decodedRequest.isCompactKeys());
+    }
+
+    @Test
+    public void encodeDecodeMultiKeyRequest() {
+        List<long[]> keys = Arrays.asList(new long[] {-1000, 0, 10000}, new long[] {1, -1, 0});
+
+        for (byte opCode : new byte[] { OpCode.GET_MANY, OpCode.DELETE_MANY, OpCode.CONTAINS_MANY }) {
+            MultiKeyRequest<long[]> request = new MultiKeyRequest<>(1, opCode, "", 1, keys);
+            byte[] encodedRequest = requestEncoder.encode(request);
+
+            MultiKeyRequest<long[]> decodedRequest = requestDecoder.decodeMultiKey(ByteBuffer.wrap(encodedRequest));
+            assertRequestMetaEqual(request, decodedRequest);
+            assertEquals(keys.size(), decodedRequest.getKeys().size());
+            for (int i = 0; i < keys.size(); i++) {
+                assertArrayEquals(keys.get(i), decodedRequest.getKeys().get(i));
+            }
+        }
+    }
+
+    @Test
+    public void encodeDecodeBatchRequest_CloseKeys() {
+        int size = 1000;
+        List<long[]> keys = new ArrayList<>(size);
+        List<String> values = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            keys.add(new long[] {1L << 40, i, -i});
+            values.add(String.valueOf(i));
+        }
+        keys.set(size / 2, null);
+
+        MultiKeyRequest<long[]> request = new MultiKeyRequest<>(1, OpCode.GET_MANY, "", 1, keys);
+        byte[] encodedRequest = requestEncoder.encode(request);
+        assertTrue(encodedRequest.length < size * 3 * 8 / 2);
+        MultiKeyRequest<long[]> decodedRequest = requestDecoder.decodeMultiKey(ByteBuffer.wrap(encodedRequest));
+        assertEquals(size, decodedRequest.getKeys().size());
+        for (int i = 0; i < size; i++) {
+            assertArrayEquals(keys.get(i), decodedRequest.getKeys().get(i));
+        }
+
+        PutManyRequest<long[], String> putRequest = new PutManyRequest<>(2, OpCode.PUT_BULK, "", 1, keys, values);
+        PutManyRequest<long[], byte[]> decodedPut = requestDecoder.decodePutMany(ByteBuffer.wrap(requestEncoder.encode(putRequest)));
+        assertRequestMetaEqual(putRequest, decodedPut);
+        for (int i = 0; i < size; i++) {
+            assertArrayEquals(keys.get(i), decodedPut.getKeys().get(i));
+            assertEquals(values.get(i), valueCodec.decode(decodedPut.getValues().get(i)));
+        }
+    }
+
     @Test
     public void encodeDecodeIteratorRequest() {
         long[] start = {-1000, 0, 10000, 1, -1};
@@ -96,6 +174,30 @@ public class RequestEncodeDecodeTest {
         assertEquals(request.getIteratorId(), decodedRequest.getIteratorId());
     }
 
+    @Test
+    public void encodeDecodeStreamRequest() {
+        long[] start = {-1000, 0, 10000, 1, -1};
+        long[] end = {1000, 0, -10000, -1, 1};
+
+        GetStreamRequest<long[]> request = new GetStreamRequest<>(1, OpCode.GET_STREAM, "", 1, "", 1024, start, end, 4);
+        request.setCompactKeys(true);
+        GetStreamRequest<long[]> decoded = requestDecoder.decodeGetStream(ByteBuffer.wrap(requestEncoder.encode(request)));
+        assertRequestMetaEqual(request, decoded);
+        assertTrue(decoded.isRanged());
+        assertArrayEquals(start, decoded.getStart());
+        assertArrayEquals(end, decoded.getEnd());
+        assertEquals(1024, decoded.getBatchSize());
+        assertEquals(4, decoded.getCredit());
+        assertTrue(decoded.isCompactKeys());
+
+        request = new GetStreamRequest<>(2, OpCode.GET_STREAM, "", 1, "test-iterator", 10, 1);
+        decoded = requestDecoder.decodeGetStream(ByteBuffer.wrap(requestEncoder.encode(request)));
+        assertRequestMetaEqual(request, decoded);
+        assertFalse(decoded.isRanged());
+        assertEquals("test-iterator", decoded.getIteratorId());
+        assertEquals(1, decoded.getCredit());
+    }
+
     @Test
     public void encodeDecodeGetRangeRequest() {
         long[] start = {-1000, 0, 10000, 1, -1};
@@ -108,6 +210,11 @@ public class RequestEncodeDecodeTest {
         assertRequestMetaEqual(request, decodedRequest);
         assertArrayEquals(request.getStart(), decodedRequest.getStart());
         assertArrayEquals(request.getEnd(), decodedRequest.getEnd());
+        assertFalse(decodedRequest.isCompactKeys());
+
+        request.setCompactKeys(true);
+        decodedRequest = requestDecoder.decodeGetRange(ByteBuffer.wrap(requestEncoder.encodeGetRange(request)));
+        assertTrue(decodedRequest.isCompactKeys());
     }
 
     @Test
@@ -138,6 +245,47 @@ public class RequestEncodeDecodeTest {
         assertValueEquals(request.getValue(), decodedRequest.getValue(), valueCodec);
     }
 
+    @Test
+    public void encodeDecodePutRequest_DirectSlice() {
+        long[] key = {-1000, 0, 10000, 1, -1};
+        String value = new BigInteger(100, new Random()).toString();
+
+        PutRequest<long[], String> request = new PutRequest<>(1, OpCode.PUT, "", 1, key, value);
+        byte[] encodedRequest = requestEncoder.encodePut(request);
+
+        //place the request in the middle of a larger direct buffer, as received from the network
+        ByteBuffer frame = ByteBuffer.allocateDirect(encodedRequest.length + 16);
+        frame.position(8);
+        frame.put(encodedRequest);
+        frame.position(8);
+        frame.limit(8 + encodedRequest.length);
+
+        PutRequest<long[], byte[]> decodedRequest = requestDecoder.decodePut(frame.slice());
+        assertRequestMetaEqual(request, decodedRequest);
+        assertArrayEquals(request.getKey(), decodedRequest.getKey());
+        assertValueEquals(request.getValue(), decodedRequest.getValue(), valueCodec);
+    }
+
+    @Test
+    public void encodeDecodePutRequest_ReusedBuffer() {
+        long[] key = {-1000, 0, 10000, 1, -1};
+        String largeValue = new BigInteger(100000, new Random()).toString();
+        String smallValue = "small";
+
+        PutRequest<long[], String> largeRequest = new PutRequest<>(1, OpCode.PUT, "", 1, key, largeValue);
+        PutRequest<long[], String> smallRequest = new PutRequest<>(2, OpCode.PUT, "", 1, key, smallValue);
+        byte[] encodedLarge = requestEncoder.encodePut(largeRequest);
+        byte[] encodedSmall = requestEncoder.encodePut(smallRequest);
+
+        PutRequest<long[], byte[]> decodedLarge = requestDecoder.decodePut(ByteBuffer.wrap(encodedLarge));
+        PutRequest<long[], byte[]> decodedSmall = requestDecoder.decodePut(ByteBuffer.wrap(encodedSmall));
+        assertRequestMetaEqual(largeRequest, decodedLarge);
+        assertRequestMetaEqual(smallRequest, decodedSmall);
+        assertArrayEquals(key, decodedSmall.getKey());
+        assertValueEquals(largeValue, decodedLarge.getValue(), valueCodec);
+        assertValueEquals(smallValue, decodedSmall.getValue(), valueCodec);
+    }
+
     @Test
     public void encodeDecodeCreateRequest() {
         int dim = 5;
@@ -250,6 +398,217 @@ public class RequestEncodeDecodeTest {
         assertArrayEquals(new long[] {1, 2} , mapper.map(new PhEntry<>(new long[] {1, 2}, new long[] {2, 3})));
     }
 
+    @Test
+    public void encodeDecodeGetRangeWithFilter_Reference() {
+        long[] min = {1, 1, 1};
+        long[] max = {100, 100, 100};
+        PhPredicate filter = PhPredicate.ACCEPT_ALL;
+        PhMapper<long[], long[]> mapper = PhMapperK.LONG_ARRAY();
+        ByteRequestEncoder<long[], String> encoder = new ByteRequestEncoder<>(keyCodec, valueCodec);
+        ByteRequestDecoder<long[]> decoder = new ByteRequestDecoder<>(new MultiLongEncoderDecoder());
+
+        byte[] first = encoder.encodeGetRangeFilterMapper(
+                new GetRangeFilterMapperRequest<>(1, OpCode.GET_RANGE_FILTER, "", 1, min, max, 5, filter, mapper));
+        assertTrue(decoder.decodeGetRangeFilterMapper(ByteBuffer.wrap(first)).isResolved());
+
+        //the functions were already shipped, so they are only referenced
+        GetRangeFilterMapperRequest<long[]> request =
+                new GetRangeFilterMapperRequest<>(2, OpCode.GET_RANGE_FILTER, "", 1, min, max, 5, filter, mapper);
+        byte[] second = encoder.encodeGetRangeFilterMapper(request);
+        assertTrue(second.length < first.length);
+        GetRangeFilterMapperRequest<long[]> decoded = decoder.decodeGetRangeFilterMapper(ByteBuffer.wrap(second));
+        assertRequestMetaEqual(request, decoded);
+        assertTrue(decoded.isResolved());
+        assertTrue(decoded.getFilter().test(new long[] { 1, 2}));
+        PhMapper<long[], long[]> decodedMapper = decoded.getMapper();
+        assertArrayEquals(new long[] {1, 2}, decodedMapper.map(new PhEntry<>(new long[] {1, 2}, new long[] {2, 3})));
+
+        //a decoder that did not receive the functions cannot resolve the reference
+        ByteRequestDecoder<long[]> otherDecoder = new ByteRequestDecoder<>(new MultiLongEncoderDecoder());
+        assertFalse(otherDecoder.decodeGetRangeFilterMapper(ByteBuffer.wrap(second)).isResolved());
+
+        request.setInlineFunctions(true);
+        byte[] inline = encoder.encodeGetRangeFilterMapper(request);
+        assertEquals(first.length, inline.length);
+        assertTrue(otherDecoder.decodeGetRangeFilterMapper(ByteBuffer.wrap(inline)).isResolved());
+    }
+
+    @Test
+    public void encodeDecodeGetRangeWithFilter_PerHost() throws InterruptedException {
+        long[] min = {1, 1};
+        long[] max = {100, 100};
+        PhMapper<long[], long[]> mapper = PhMapperK.LONG_ARRAY();
+        ByteRequestEncoder<long[], String> encoder = new ByteRequestEncoder<>(keyCodec, valueCodec);
+        ByteRequestDecoder<long[]> host = new ByteRequestDecoder<>(new MultiLongEncoderDecoder());
+        ThresholdFilter filter = new ThresholdFilter(10);
+        GetRangeFilterMapperRequest<long[]> request =
+                new GetRangeFilterMapperRequest<>(1, OpCode.GET_RANGE_FILTER, "", 1, min, max, 5, filter, mapper);
+        assertTrue(encoder.dependsOnHost(request));
+
+        //the functions are shipped once to each host
+        byte[] first = encoder.encode(request, "host-1");
+        assertTrue(host.decodeGetRangeFilterMapper(ByteBuffer.wrap(first)).isResolved());
+        byte[] reference = encoder.encode(request, "host-1");
+        assertTrue(reference.length < first.length);
+        assertEquals(first.length, encoder.encode(request, "host-2").length);
+
+        //the instance of the function is deserialized once by each thread
+        final PhPredicate decodedFilter = host.decodeGetRangeFilterMapper(ByteBuffer.wrap(reference)).getFilter();
+        assertSame(decodedFilter, host.decodeGetRangeFilterMapper(ByteBuffer.wrap(reference)).getFilter());
+        final PhPredicate[] otherThreadFilter = new PhPredicate[1];
+        Thread other = new Thread(() ->
+                otherThreadFilter[0] = host.decodeGetRangeFilterMapper(ByteBuffer.wrap(reference)).getFilter());
+        other.start();
+        other.join();
+        assertNotNull(otherThreadFilter[0]);
+        assertNotSame(decodedFilter, otherThreadFilter[0]);
+
+        //the serialized form is kept per instance, so a different function has to be a new instance
+        request = new GetRangeFilterMapperRequest<>(2, OpCode.GET_RANGE_FILTER, "", 1, min, max, 5,
+                new ThresholdFilter(20), mapper);
+        byte[] modified = encoder.encode(request, "host-1");
+        assertTrue(modified.length > reference.length);
+        GetRangeFilterMapperRequest<long[]> decoded = host.decodeGetRangeFilterMapper(ByteBuffer.wrap(modified));
+        assertTrue(decoded.isResolved());
+        assertFalse(decoded.getFilter().test(new long[] {15, 15}));
+        assertTrue(decodedFilter.test(new long[] {15, 15}));
+    }
+
+    private static class ThresholdFilter implements PhPredicate {
+
+        private static final long serialVersionUID = 1L;
+
+        private final long threshold;
+
+        ThresholdFilter(long threshold) {
+            this.threshold = threshold;
+        }
+
+        @Override
+        public boolean test(long[] key) {
+            return key[0] >= threshold;
+        }
+    }
+
+    @Test
+    public void encodeDecodeGetRangeWithBuiltinFilter() {
+        long[] min = {1, 1, 1};
+        long[] max = {100, 100, 100};
+        BuiltinPredicate[] filters = {
+                Predicates.withinDistance(new long[] {5, 5, 5}, 2.5),
+                Predicates.boxUnion(new long[][] {{1, 1, 1}, {5, 5, 5}}, new long[][] {{2, 2, 2}, {6, 6, 6}}),
+                Predicates.polygon(0, 1, new long[] {0, 10, 0}, new long[] {0, 0, 10}),
+                Predicates.interval(2, 3, 4)
+        };
+        long[][] keys = {{1, 1, 1}, {5, 5, 3}, {6, 6, 6}, {2, 3, 4}, {7, 7, 7}};
+        for (BuiltinPredicate filter : filters) {
+            GetRangeFilterMapperRequest<long[]> request =
+                    new GetRangeFilterMapperRequest<>(1, OpCode.GET_RANGE_FILTER, "", 1,
+                            min, max, 5, filter, PhMapperK.<long[]>LONG_ARRAY());
+            byte[] encodedRequest = requestEncoder.encodeGetRangeFilterMapper(request);
+            GetRangeFilterMapperRequest<long[]> decoded = requestDecoder.decodeGetRangeFilterMapper(ByteBuffer.wrap(encodedRequest));
+            assertRequestMetaEqual(request, decoded);
+            assertTrue(decoded.isResolved());
+            assertEquals(filter.getClass(), decoded.getFilter().getClass());
+            for (long[] key : keys) {
+                assertEquals(filter.test(key), decoded.getFilter().test(key));
+            }
+        }
+    }
+
+    @Test
+    public void decodeBuiltinFilterWithInvalidSizes() {
+        BuiltinPredicateEncoderDecoder codec = new BuiltinPredicateEncoderDecoder();
+        ByteBuffer[] payloads = {
+                ByteBuffer.allocate(13).put(BuiltinPredicate.WITHIN_DISTANCE).putDouble(1).putInt(Integer.MAX_VALUE),
+                ByteBuffer.allocate(9).put(BuiltinPredicate.BOX_UNION).putInt(Integer.MAX_VALUE).putInt(Integer.MAX_VALUE),
+                ByteBuffer.allocate(9).put(BuiltinPredicate.BOX_UNION).putInt(Integer.MAX_VALUE).putInt(0),
+                ByteBuffer.allocate(9).put(BuiltinPredicate.BOX_UNION).putInt(-1).putInt(2),
+                ByteBuffer.allocate(29).put(BuiltinPredicate.POLYGON).putInt(0).putInt(1).putInt(2).putLong(0).putLong(0),
+                ByteBuffer.allocate(13).put(BuiltinPredicate.POLYGON).putInt(0).putInt(1).putInt(-1)
+        };
+        for (ByteBuffer payload : payloads) {
+            try {
+                codec.decode(payload.array());
+                fail("Decoding should fail for an invalid size");
+            } catch (IllegalArgumentException e) {
+                //expected
+            }
+        }
+    }
+
+    @Test
+    public void encodeDecodeDeleteRangeRequest() {
+        long[] start = {-1000, 0, 10000};
+        long[] end = {1000, 10, 20000};
+
+        DeleteRangeRequest<long[]> request = new DeleteRangeRequest<>(1, OpCode.DELETE_RANGE, "", 1, start, end, null);
+        DeleteRangeRequest<long[]> decoded = requestDecoder.decodeDeleteRange(ByteBuffer.wrap(requestEncoder.encode(request)));
+        assertRequestMetaEqual(request, decoded);
+        assertArrayEquals(start, decoded.getStart());
+        assertArrayEquals(end, decoded.getEnd());
+        assertNull(decoded.getFilter());
+
+        BuiltinPredicate filter = Predicates.withinDistance(new long[] {0, 5, 15000}, 100);
+        request = new DeleteRangeRequest<>(2, OpCode.DELETE_RANGE, "", 1, start, end, filter);
+        decoded = requestDecoder.decodeDeleteRange(ByteBuffer.wrap(requestEncoder.encode(request)));
+        assertRequestMetaEqual(request, decoded);
+        assertArrayEquals(start, decoded.getStart());
+        assertArrayEquals(end, decoded.getEnd());
+        assertEquals(filter.getClass(), decoded.getFilter().getClass());
+        assertTrue(decoded.getFilter().test(new long[] {0, 5, 15050}));
+        assertFalse(decoded.getFilter().test(new long[] {0, 5, 15101}));
+    }
+
+    @Test
+    public void encodeDecodeAggregateRangeRequest() {
+        long[] start = {-1000, 0, 10000};
+        long[] end = {1000, 10, 20000};
+        int aggregates = RangeAggregate.BOUNDS | RangeAggregate.HISTOGRAM;
+
+        AggregateRangeRequest<long[]> request = new AggregateRangeRequest<>(1, OpCode.AGGREGATE_RANGE, "", 1,
+                start, end, null, aggregates, 8);
+        AggregateRangeRequest<long[]> decoded = requestDecoder.decodeAggregateRange(ByteBuffer.wrap(requestEncoder.encode(request)));
+        assertRequestMetaEqual(request, decoded);
+        assertArrayEquals(start, decoded.getStart());
+        assertArrayEquals(end, decoded.getEnd());
+        assertNull(decoded.getFilter());
+        assertEquals(aggregates, decoded.getAggregates());
+        assertEquals(8, decoded.getCells());
+
+        BuiltinPredicate filter = Predicates.withinDistance(new long[] {0, 5, 15000}, 100);
+        request = new AggregateRangeRequest<>(2, OpCode.AGGREGATE_RANGE, "", 1, start, end, filter,
+                RangeAggregate.COUNT, 0);
+        decoded = requestDecoder.decodeAggregateRange(ByteBuffer.wrap(requestEncoder.encode(request)));
+        assertRequestMetaEqual(request, decoded);
+        assertTrue(decoded.getFilter().test(new long[] {0, 5, 15050}));
+        assertEquals(RangeAggregate.COUNT, decoded.getAggregates());
+    }
+
+    @Test
+    public void encodeDecodeSampleRangeRequest() {
+        long[] start = {-1000, 0, 10000};
+        long[] end = {1000, 10, 20000};
+
+        SampleRangeRequest<long[]> request = new SampleRangeRequest<>(1, OpCode.SAMPLE_RANGE, "", 1, start, end, null, 500);
+        request.setCompactKeys(true);
+        SampleRangeRequest<long[]> decoded = requestDecoder.decodeSampleRange(ByteBuffer.wrap(requestEncoder.encode(request)));
+        assertRequestMetaEqual(request, decoded);
+        assertArrayEquals(start, decoded.getStart());
+        assertArrayEquals(end, decoded.getEnd());
+        assertNull(decoded.getFilter());
+        assertEquals(500, decoded.getSize());
+        assertTrue(decoded.isCompactKeys());
+
+        BuiltinPredicate filter = Predicates.withinDistance(new long[] {0, 5, 15000}, 100);
+        request = new SampleRangeRequest<>(2, OpCode.SAMPLE_RANGE, "", 1, start, end, filter, 1);
+        decoded = requestDecoder.decodeSampleRange(ByteBuffer.wrap(requestEncoder.encode(request)));
+        assertRequestMetaEqual(request, decoded);
+        assertTrue(decoded.getFilter().test(new long[] {0, 5, 15050}));
+        assertEquals(1, decoded.getSize());
+        assertFalse(decoded.isCompactKeys());
+    }
+
     private void encodeDecodeBasicRequest(BaseRequest request) {
         byte[] encodedRequest = requestEncoder.encodeBase(request);
         BaseRequest decoded = requestDecoder.decodeBase(ByteBuffer.wrap(encodedRequest));
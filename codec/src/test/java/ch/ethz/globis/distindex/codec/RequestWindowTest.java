@@ -0,0 +1,107 @@
+/*
+This file is part of PH-Tree:
+A multi-dimensional indexing and storage structure.
+
+Copyright (C) 2011-2015
+Eidgenössische Technische Hochschule Zürich (ETH Zurich)
+Institute for Information Systems
+GlobIS Group
+Bogdan Vancea, Tilmann Zaeschke
+zaeschke@inf.ethz.ch or zoodb@gmx.de
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package ch.ethz.globis.distindex.codec;
+
+import ch.ethz.globis.disindex.codec.io.RequestWindow;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.*;
+
+public class RequestWindowTest {
+
+    @Test
+    public void requestsBeyondTheBoundAreQueued() throws Exception {
+        final List<Integer> written = new ArrayList<>();
+        RequestWindow window = new RequestWindow(2, (requestId, payload) -> written.add(requestId));
+        List<CompletableFuture<byte[]>> futures = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            futures.add(window.send(i, new byte[] { (byte) i }));
+        }
+        assertEquals(Arrays.asList(0, 1), written);
+        assertEquals(0, window.availablePermits());
+
+        assertTrue(window.complete(1, new byte[] { 1 }));
+        assertEquals(Arrays.asList(0, 1, 2), written);
+        assertArrayEquals(new byte[] { 1 }, futures.get(1).get());
+        assertFalse(window.complete(1, new byte[] { 1 }));
+
+        window.fail(0, new IOException());
+        assertTrue(futures.get(0).isCompletedExceptionally());
+        assertEquals(Arrays.asList(0, 1, 2, 3), written);
+    }
+
+    @Test
+    public void closingGivesBackOnlyThePermitsOfWrittenRequests() {
+        RequestWindow window = new RequestWindow(3, (requestId, payload) -> { });
+        List<CompletableFuture<byte[]>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            futures.add(window.send(i, new byte[0]));
+        }
+        window.close(new IOException("closed"));
+        for (CompletableFuture<byte[]> future : futures) {
+            assertTrue(future.isCompletedExceptionally());
+        }
+        assertEquals(3, window.availablePermits());
+        assertTrue(window.send(10, new byte[0]).isCompletedExceptionally());
+        assertEquals(3, window.availablePermits());
+    }
+
+    @Test
+    public void failedWritesGiveBackTheirPermit() {
+        final List<Integer> written = new ArrayList<>();
+        RequestWindow window = new RequestWindow(1, (requestId, payload) -> {
+            if (requestId == 0) {
+                throw new IOException("write failed");
+            }
+            written.add(requestId);
+        });
+        assertTrue(window.send(0, new byte[0]).isCompletedExceptionally());
+        assertFalse(window.send(1, new byte[0]).isDone());
+        assertEquals(Arrays.asList(1), written);
+        assertEquals(0, window.availablePermits());
+    }
+
+    @Test
+    public void loweringTheBoundDelaysTheQueuedRequests() {
+        final List<Integer> written = new ArrayList<>();
+        RequestWindow window = new RequestWindow(2, (requestId, payload) -> written.add(requestId));
+        window.send(0, new byte[0]);
+        window.send(1, new byte[0]);
+        window.send(2, new byte[0]);
+        window.resize(-1);
+        window.complete(0, new byte[0]);
+        assertEquals(Arrays.asList(0, 1), written);
+        window.complete(1, new byte[0]);
+        assertEquals(Arrays.asList(0, 1, 2), written);
+        window.resize(1);
+        assertEquals(1, window.availablePermits());
+    }
+}
@@ -33,23 +33,35 @@ import ch.ethz.globis.disindex.codec.field.MultiLongEncoderDecoder;
 import ch.ethz.globis.disindex.codec.field.SerializingEncoderDecoder;
 import ch.ethz.globis.distindex.api.IndexEntry;
 import ch.ethz.globis.distindex.api.IndexEntryList;
+import ch.ethz.globis.distindex.api.RangeAggregate;
 import ch.ethz.globis.distindex.operation.OpCode;
 import ch.ethz.globis.distindex.operation.OpStatus;
 import ch.ethz.globis.distindex.operation.response.BaseResponse;
 import ch.ethz.globis.distindex.operation.response.MapResponse;
 import ch.ethz.globis.distindex.operation.response.Response;
+import ch.ethz.globis.distindex.operation.response.ResultCursor;
 import ch.ethz.globis.distindex.operation.response.ResultResponse;
+import ch.ethz.globis.distindex.operation.response.StreamingResultResponse;
 import ch.ethz.globis.pht.PhEntry;
+import ch.ethz.globis.pht.PhTreeHelper;
+import ch.ethz.globis.pht.util.PhTreeQStats;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import org.junit.Test;
 
 import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Random;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class ResponseEncodeDecodeTest {
 
@@ -76,6 +88,140 @@ public class ResponseEncodeDecodeTest {
         ResultResponse<long[], String> decodedResponse = decoder.decodeResult(encodedResponse);
         assertEqualsMeta(response, decodedResponse);
         assertEqualsResults(response.getEntries(), decodedResponse.getEntries(), valueCodec);
+        assertEquals(-1, decodedResponse.getTotalCount());
+    }
+
+    @Test
+    public void encodeDecodeSampleResponse() {
+        IndexEntryList<long[], byte[]> generatedEntries = generateEntries(20);
+        ResultResponse<long[], byte[]> response = new ResultResponse<>(OpCode.SAMPLE_RANGE, 5, OpStatus.SUCCESS, generatedEntries);
+        response.setTotalCount(1L << 40);
+        response.setCompactKeys(true);
+
+        ResultResponse<long[], String> decodedResponse = decoder.decodeResult(encoder.encode(response));
+        assertEqualsMeta(response, decodedResponse);
+        assertEqualsResults(response.getEntries(), decodedResponse.getEntries(), valueCodec);
+        assertEquals(1L << 40, decodedResponse.getTotalCount());
+    }
+
+    @Test
+    public void encodeDecodeCompactResponseIntoCompositeBuffer() {
+        IndexEntryList<long[], byte[]> generatedEntries = generateEntries(50);
+        ResultResponse<long[], byte[]> response = new ResultResponse<>(OpCode.GET_RANGE, 7, OpStatus.SUCCESS, generatedEntries);
+        response.setCompactKeys(true);
+
+        //the server encodes the responses into composite buffers, as they may grow large
+        ByteBuf buffer = Unpooled.compositeBuffer(Integer.MAX_VALUE);
+        ((ByteResponseEncoder<long[]>) encoder).encode(response, buffer);
+        byte[] payload = new byte[buffer.readableBytes()];
+        buffer.readBytes(payload);
+
+        ResultResponse<long[], String> decodedResponse = decoder.decodeResult(payload);
+        assertEqualsMeta(response, decodedResponse);
+        assertEqualsResults(response.getEntries(), decodedResponse.getEntries(), valueCodec);
+    }
+
+    @Test
+    public void encodeDecodeStreamingResultResponse() {
+        Random random = new Random();
+        byte opCode = getRandom(opCodes, random);
+        int requestId = random.nextInt();
+        final IndexEntryList<long[], byte[]> generatedEntries = generateEntries(100);
+
+        ResultResponse<long[], byte[]> response = new ResultResponse<>(opCode, requestId, OpStatus.SUCCESS, generatedEntries);
+        ResultResponse<long[], byte[]> streamed = new StreamingResultResponse<>(opCode, requestId, OpStatus.SUCCESS,
+                new ResultCursor<long[], byte[]>() {
+                    private Iterator<IndexEntry<long[], byte[]>> it = generatedEntries.iterator();
+                    private IndexEntry<long[], byte[]> current;
+
+                    @Override
+                    public boolean advance() {
+                        current = it.hasNext() ? it.next() : null;
+                        return current != null;
+                    }
+
+                    @Override
+                    public long[] key() {
+                        return current.getKey();
+                    }
+
+                    @Override
+                    public byte[] value() {
+                        return current.getValue();
+                    }
+                });
+
+        byte[] encodedResponse = encoder.encode(streamed);
+        assertArrayEquals(encoder.encode(response), encodedResponse);
+
+        ResultResponse<long[], String> decodedResponse = decoder.decodeResult(encodedResponse);
+        assertEqualsMeta(response, decodedResponse);
+        assertEqualsResults(generatedEntries, decodedResponse.getEntries(), valueCodec);
+    }
+
+    @Test
+    public void streamingResultCursorIsClosedWhenEncodingFails() {
+        final AtomicBoolean closed = new AtomicBoolean();
+        ResultResponse<long[], byte[]> streamed = new StreamingResultResponse<>(OpCode.GET_RANGE_FILTER, 1,
+                OpStatus.SUCCESS, new ResultCursor<long[], byte[]>() {
+                    @Override
+                    public boolean advance() {
+                        return true;
+                    }
+
+                    @Override
+                    public long[] key() {
+                        throw new IllegalStateException("The query failed.");
+                    }
+
+                    @Override
+                    public byte[] value() {
+                        return null;
+                    }
+
+                    @Override
+                    public void close() {
+                        closed.set(true);
+                    }
+                });
+        try {
+            encoder.encode(streamed);
+            fail("The failure of the cursor should be propagated.");
+        } catch (IllegalStateException e) {
+            //expected
+        }
+        assertTrue(closed.get());
+    }
+
+    @Test
+    public void encodeDecodeResultResponse_CompactKeys() {
+        Random random = new Random();
+        int requestId = random.nextInt();
+        IndexEntryList<long[], byte[]> entries = new IndexEntryList<>();
+        long[] key = {random.nextInt(), random.nextInt(), random.nextInt()};
+        for (int i = 0; i < 100; i++) {
+            key = new long[] {key[0] + random.nextInt(100), key[1] - random.nextInt(100), key[2]};
+            entries.add(key, generateValue());
+        }
+        entries.add(null, generateValue());
+        entries.add(new long[] {Long.MIN_VALUE, Long.MAX_VALUE, -1}, null);
+
+        ResultResponse<long[], byte[]> plain = new ResultResponse<>(OpCode.GET_RANGE, requestId, OpStatus.SUCCESS, entries);
+        ResultResponse<long[], byte[]> compact = new ResultResponse<>(OpCode.GET_RANGE, requestId, OpStatus.SUCCESS, entries);
+        compact.setCompactKeys(true);
+
+        byte[] encodedPlain = encoder.encode(plain);
+        byte[] encodedCompact = encoder.encode(compact);
+        assertTrue(encodedCompact.length < encodedPlain.length);
+
+        ResultResponse<long[], String> decodedResponse = decoder.decodeResult(encodedCompact);
+        assertEqualsMeta(compact, decodedResponse);
+        IndexEntryList<long[], String> decoded = decodedResponse.getEntries();
+        for (int i = 0; i < entries.size(); i++) {
+            assertArrayEquals(entries.get(i).getKey(), decoded.get(i).getKey());
+            byte[] value = entries.get(i).getValue();
+            assertEquals((value == null) ? null : valueCodec.decode(value), decoded.get(i).getValue());
+        }
     }
 
     @Test
@@ -198,6 +344,76 @@ public class ResponseEncodeDecodeTest {
         System.out.print(decodedResponse.getParameter("pvEntries"));
     }
 
+    @Test
+    public void encodeDecodeMapResponseStats() {
+        MapResponse response = new MapResponse(OpCode.STATS, 7, OpStatus.SUCCESS);
+        PhTreeHelper.Stats stats = new PhTreeHelper.Stats();
+        stats.nNodes = 1000;
+        stats.nChildren = 12345;
+        stats.nTooLarge4 = 3;
+        stats.size = Integer.MAX_VALUE;
+        response.addParameter("stats", stats);
+        PhTreeQStats quality = new PhTreeQStats(64);
+        quality.q_nPostFixN[3] = 17;
+        quality.q_totalDepth = 1L << 40;
+        quality.nNI = 5;
+        response.addParameter("quality", quality);
+        response.addParameter("nodeCount", -42);
+        response.addParameter("toString", "tree \u00e9");
+        response.addParameter("missing", null);
+        response.addParameter("contains", new byte[] { 5, 0, -128 });
+
+        byte[] data = encoder.encode(response);
+        MapResponse decodedResponse = decoder.decodeMap(data);
+        assertEquals(response.getOpCode(), decodedResponse.getOpCode());
+        assertEquals(response.getRequestId(), decodedResponse.getRequestId());
+        assertEquals(response.getStatus(), decodedResponse.getStatus());
+
+        PhTreeHelper.Stats decodedStats = (PhTreeHelper.Stats) decodedResponse.getParameter("stats");
+        assertEquals(stats.nNodes, decodedStats.nNodes);
+        assertEquals(stats.nChildren, decodedStats.nChildren);
+        assertEquals(stats.nTooLarge4, decodedStats.nTooLarge4);
+        assertEquals(stats.size, decodedStats.size);
+        PhTreeQStats decodedQuality = (PhTreeQStats) decodedResponse.getParameter("quality");
+        assertArrayEquals(quality.q_nPostFixN, decodedQuality.q_nPostFixN);
+        assertEquals(quality.q_totalDepth, decodedQuality.q_totalDepth);
+        assertEquals(quality.nNI, decodedQuality.nNI);
+        assertEquals(-42, decodedResponse.getParameter("nodeCount"));
+        assertEquals("tree \u00e9", decodedResponse.getParameter("toString"));
+        assertTrue(decodedResponse.getParameters().containsKey("missing"));
+        assertArrayEquals(new byte[] { 5, 0, -128 }, (byte[]) decodedResponse.getParameter("contains"));
+
+        //the stats are written field by field, without any class names
+        assertTrue(data.length < 200);
+    }
+
+    @Test
+    public void encodeDecodeMapResponseAggregate() {
+        int aggregates = RangeAggregate.BOUNDS | RangeAggregate.SUM | RangeAggregate.HISTOGRAM;
+        RangeAggregate aggregate = new RangeAggregate(aggregates, new long[] {-10, 0}, new long[] {10, 100}, 2);
+        aggregate.add(new long[] {-10, 5});
+        aggregate.add(new long[] {7, 99});
+        MapResponse response = new MapResponse(OpCode.AGGREGATE_RANGE, 3, OpStatus.SUCCESS);
+        response.addParameter("aggregate", aggregate);
+        response.addParameter("empty", new RangeAggregate(aggregates, new long[] {0, 0}, new long[] {1, 1}, 2));
+
+        MapResponse decodedResponse = decoder.decodeMap(encoder.encode(response));
+        RangeAggregate decoded = (RangeAggregate) decodedResponse.getParameter("aggregate");
+        assertEquals(aggregates, decoded.getAggregates());
+        assertEquals(2, decoded.getCount());
+        assertArrayEquals(new long[] {-10, 5}, decoded.getMin());
+        assertArrayEquals(new long[] {7, 99}, decoded.getMax());
+        assertArrayEquals(new double[] {-3, 104}, decoded.getSum(), 0);
+        assertEquals(2, decoded.getCells());
+        assertArrayEquals(new long[] {1, 0, 0, 1}, decoded.getHistogram());
+
+        RangeAggregate empty = (RangeAggregate) decodedResponse.getParameter("empty");
+        assertEquals(0, empty.getCount());
+        assertNull(empty.getMin());
+        aggregate.merge(empty);
+        assertEquals(2, aggregate.getCount());
+        assertArrayEquals(new long[] {-10, 5}, aggregate.getMin());
+    }
 
     private void assertEqualsMeta(ResultResponse<long[], byte[]> original, ResultResponse<long[], String> decoded) {
         assertEquals("Request id's do not match.", original.getRequestId(), decoded.getRequestId());
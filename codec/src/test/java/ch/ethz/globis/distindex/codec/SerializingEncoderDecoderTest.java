@@ -28,9 +28,11 @@ import ch.ethz.globis.disindex.codec.field.SerializingEncoderDecoder;
 import org.junit.Test;
 
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.util.Random;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 
 public class SerializingEncoderDecoderTest {
 
@@ -42,4 +44,22 @@ public class SerializingEncoderDecoderTest {
         BigInteger decoded = codec.decode(bytes);
         assertEquals(bigInteger, decoded);
     }
+
+    @Test
+    public void testDecodeFromBuffer() {
+        BigInteger bigInteger = new BigInteger(1024, new Random());
+        SerializingEncoderDecoder<BigInteger> codec = new SerializingEncoderDecoder<>();
+        byte[] bytes = codec.encode(bigInteger);
+
+        ByteBuffer heap = ByteBuffer.allocate(bytes.length + 4);
+        heap.putInt(bytes.length).put(bytes);
+        heap.position(4);
+        assertEquals(bigInteger, codec.decode(heap.slice()));
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length + 4);
+        direct.putInt(bytes.length).put(bytes);
+        direct.position(4);
+        assertEquals(bigInteger, codec.decode(direct));
+        assertFalse(direct.hasRemaining());
+    }
 }
@@ -32,6 +32,9 @@ import ch.ethz.globis.distindex.operation.*;
 import ch.ethz.globis.distindex.operation.request.*;
 import ch.ethz.globis.distindex.operation.response.Response;
 import ch.ethz.globis.distindex.operation.response.ResultResponse;
+import ch.ethz.globis.distindex.operation.response.StreamingResultResponse;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -60,10 +63,102 @@ public class IOHandler<K, V> {
         requestHandler.cleanup(clientHost);
     }
 
-    public ByteBuffer handle(String clientHost, ByteBuffer buffer) {
+    /**
+     * Handle a request and encode the response in a buffer obtained from the allocator. The encoded response is
+     * preceded by a 4 byte header containing its size.
+     *
+     * @param clientHost                    The client that sent the request.
+     * @param buffer                        The request.
+     * @param allocator                     The allocator used for the response buffer.
+     * @return                              The buffer containing the size header and the response.
+     */
+    public ByteBuf handle(String clientHost, ByteBuffer buffer, ByteBufAllocator allocator) {
+        Response response = handle(clientHost, buffer);
+        try {
+            return encode(response, allocator);
+        } catch (RuntimeException e) {
+            LOG.error("Error encoding response", e);
+            return encode(handleErroneousRequest(buffer), allocator);
+        }
+    }
+
+    /**
+     * Encode a response in a buffer obtained from the allocator, preceded by a 4 byte header containing its size.
+     *
+     * @param response                      The response.
+     * @param allocator                     The allocator used for the response buffer.
+     * @return                              The buffer containing the size header and the response.
+     */
+    public ByteBuf encode(Response response, ByteBufAllocator allocator) {
+        //streamed results have an unknown size, grow them by adding components instead of copying
+        ByteBuf out = (response instanceof StreamingResultResponse)
+                ? allocator.compositeBuffer(Integer.MAX_VALUE)
+                : allocator.ioBuffer();
+        try {
+            encodeResponse(response, out);
+        } catch (RuntimeException e) {
+            out.release();
+            throw e;
+        }
+        return out;
+    }
+
+    public GetStreamRequest<K> decodeGetStream(ByteBuffer buffer) {
+        return decoder.decodeGetStream(buffer);
+    }
+
+    public MapRequest decodeMap(ByteBuffer buffer) {
+        return decoder.decodeMap(buffer);
+    }
+
+    /**
+     * Cancel a request of the client. The cancel requests are not answered.
+     */
+    public void handleCancel(String clientHost, ByteBuffer buffer) {
+        requestHandler.handleCancel(clientHost, decoder.decodeMap(buffer));
+    }
+
+    /**
+     * Read the next chunk of a streaming scan.
+     *
+     * @param clientHost                    The client that opened the stream.
+     * @param request                       The request for the chunk, referencing the iterator of the stream.
+     * @return                              The chunk.
+     */
+    public Response handleStreamChunk(String clientHost, GetStreamRequest<K> request) {
+        try {
+            return requestHandler.handleGetIteratorBatch(clientHost, request);
+        } catch (Exception e) {
+            LOG.error("Error processing stream chunk", e);
+            return new ResultResponse<>(request.getOpCode(), request.getId(), OpStatus.FAILURE);
+        }
+    }
+
+    /**
+     * Close the iterator of a cancelled streaming scan.
+     *
+     * @param clientHost                    The client that opened the stream.
+     * @param request                       The request that opened the stream.
+     * @param iteratorId                    The iterator of the stream.
+     */
+    public void closeStream(String clientHost, GetStreamRequest<K> request, String iteratorId) {
+        MapRequest close = new MapRequest(request.getId(), OpCode.CLOSE_ITERATOR, request.getIndexId(),
+                request.getMappingVersion());
+        close.addParamater("iteratorId", iteratorId);
+        requestHandler.handleCloseIterator(clientHost, close);
+    }
+
+    private void encodeResponse(Response response, ByteBuf out) {
+        int sizeIndex = out.writerIndex();
+        out.writeInt(0);
+        encoder.encode(response, out);
+        out.setInt(sizeIndex, out.writerIndex() - sizeIndex - 4);
+    }
+
+    public Response handle(String clientHost, ByteBuffer buffer) {
         byte messageCode = getMessageCode(buffer);
 
-        ByteBuffer response;
+        Response response;
         try {
             switch (messageCode) {
                 case OpCode.GET:
@@ -76,7 +171,7 @@ public class IOHandler<K, V> {
                     response = handleGetRangeRequest(buffer);
                     break;
                 case OpCode.GET_RANGE_FILTER:
-                    response = handleGetRangeFilter(buffer);
+                    response = handleGetRangeFilter(clientHost, buffer);
                     break;
                 case OpCode.GET_BATCH:
                     response = handleGetBatchRequest(clientHost, buffer);
@@ -84,6 +179,21 @@ public class IOHandler<K, V> {
                 case OpCode.PUT:
                     response = handlePutRequest(buffer);
                     break;
+                case OpCode.PUT_MANY:
+                    response = handlePutManyRequest(buffer);
+                    break;
+                case OpCode.PUT_BULK:
+                    response = handlePutBulkRequest(buffer);
+                    break;
+                case OpCode.GET_MANY:
+                    response = handleGetManyRequest(buffer);
+                    break;
+                case OpCode.DELETE_MANY:
+                    response = handleDeleteManyRequest(buffer);
+                    break;
+                case OpCode.CONTAINS_MANY:
+                    response = handleContainsManyRequest(buffer);
+                    break;
                 case OpCode.UPDATE_KEY:
                     response = handleUpdateKeyRequest(buffer);
                     break;
@@ -93,6 +203,15 @@ public class IOHandler<K, V> {
                 case OpCode.DELETE:
                     response = handleDeleteRequest(buffer);
                     break;
+                case OpCode.DELETE_RANGE:
+                    response = handleDeleteRangeRequest(buffer);
+                    break;
+                case OpCode.AGGREGATE_RANGE:
+                    response = handleAggregateRangeRequest(buffer);
+                    break;
+                case OpCode.SAMPLE_RANGE:
+                    response = handleSampleRangeRequest(buffer);
+                    break;
                 case OpCode.GET_SIZE:
                     response = handleGetSizeRequest(buffer);
                     break;
@@ -145,152 +264,170 @@ public class IOHandler<K, V> {
         return response;
     }
 
-    private ByteBuffer handleUpdateKeyRequest(ByteBuffer buffer) {
+    private Response handleUpdateKeyRequest(ByteBuffer buffer) {
         UpdateKeyRequest<K> request = decoder.decodeUpdateKeyRequest(buffer);
-        Response response = requestHandler.handleUpdateKey(request);
-        return encodeResponse(response);
+        return requestHandler.handleUpdateKey(request);
     }
 
-    private ByteBuffer handleGetRangeFilter(ByteBuffer buffer) {
+    private Response handleGetRangeFilter(String clientHost, ByteBuffer buffer) {
         GetRangeFilterMapperRequest<K> request = decoder.decodeGetRangeFilterMapper(buffer);
-        Response response = requestHandler.handleGetRangeFilter(request);
-        return encodeResponse(response);
+        return requestHandler.handleGetRangeFilter(clientHost, request);
     }
 
-    private ByteBuffer handleNodeCountRequest(ByteBuffer buffer) {
+    private Response handleNodeCountRequest(ByteBuffer buffer) {
         BaseRequest request = decoder.decodeBase(buffer);
-        Response response = requestHandler.handleNodeCount(request);
-        return encodeResponse(response);
+        return requestHandler.handleNodeCount(request);
     }
 
-    private ByteBuffer handleQualityRequest(ByteBuffer buffer) {
+    private Response handleQualityRequest(ByteBuffer buffer) {
         BaseRequest request = decoder.decodeBase(buffer);
-        Response response = requestHandler.handleQuality(request);
-        return encodeResponse(response);
+        return requestHandler.handleQuality(request);
     }
 
-    private ByteBuffer handleStatsNoNodeRequest(ByteBuffer buffer) {
+    private Response handleStatsNoNodeRequest(ByteBuffer buffer) {
         BaseRequest request = decoder.decodeBase(buffer);
-        Response response = requestHandler.handleStatsNoNode(request);
-        return encodeResponse(response);
+        return requestHandler.handleStatsNoNode(request);
     }
 
-    private ByteBuffer handleToStringRequest(ByteBuffer buffer) {
+    private Response handleToStringRequest(ByteBuffer buffer) {
         BaseRequest request = decoder.decodeBase(buffer);
-        Response response = requestHandler.handleToString(request);
-        return encodeResponse(response);
+        return requestHandler.handleToString(request);
     }
 
-    private ByteBuffer handleStatsRequest(ByteBuffer buffer) {
+    private Response handleStatsRequest(ByteBuffer buffer) {
         BaseRequest request = decoder.decodeBase(buffer);
-        Response response = requestHandler.handleStats(request);
-        return encodeResponse(response);
+        return requestHandler.handleStats(request);
     }
 
-    private ByteBuffer handleBalanceCommit(ByteBuffer buffer) {
+    private Response handleBalanceCommit(ByteBuffer buffer) {
         CommitBalancingRequest request = decoder.decodeCommitBalancing(buffer);
-        Response response = balancingRequestHandler.handleCommit(request);
-        return encodeResponse(response);
+        return balancingRequestHandler.handleCommit(request);
     }
 
-    private ByteBuffer handleBalanceRollback(ByteBuffer buffer) {
+    private Response handleBalanceRollback(ByteBuffer buffer) {
         RollbackBalancingRequest request = decoder.decodeRollbackBalancing(buffer);
-        Response response = balancingRequestHandler.handleRollback(request);
-        return encodeResponse(response);
+        return balancingRequestHandler.handleRollback(request);
     }
 
-    private ByteBuffer handleBalancePut(ByteBuffer buffer) {
+    private Response handleBalancePut(ByteBuffer buffer) {
         PutBalancingRequest<K> request = decoder.decodePutBalancing(buffer);
-        Response response = balancingRequestHandler.handlePut(request);
-        return encodeResponse(response);
+        return balancingRequestHandler.handlePut(request);
     }
 
-    private ByteBuffer handleBalanceInit(ByteBuffer buffer) {
+    private Response handleBalanceInit(ByteBuffer buffer) {
         InitBalancingRequest request = decoder.decodeInitBalancing(buffer);
-        Response response = balancingRequestHandler.handleInit(request);
-        return encodeResponse(response);
+        return balancingRequestHandler.handleInit(request);
     }
 
-    private ByteBuffer handleContains(ByteBuffer buffer) {
+    private Response handleContains(ByteBuffer buffer) {
         ContainsRequest<K> request = decoder.decodeContains(buffer);
-        Response response = requestHandler.handleContains(request);
-        return encodeResponse(response);
+        return requestHandler.handleContains(request);
     }
 
-    private ByteBuffer handleCloseIterator(String clientHost, ByteBuffer buffer) {
+    private Response handleCloseIterator(String clientHost, ByteBuffer buffer) {
         MapRequest request = decoder.decodeMap(buffer);
-        Response response = requestHandler.handleCloseIterator(clientHost, request);
-        return encodeResponse(response);
+        return requestHandler.handleCloseIterator(clientHost, request);
     }
 
-    private ByteBuffer handleGetDimRequest(ByteBuffer buffer) {
+    private Response handleGetDimRequest(ByteBuffer buffer) {
         BaseRequest request = decoder.decodeBase(buffer);
-        Response response = requestHandler.handleGetDim(request);
-        return encodeResponse(response);
+        return requestHandler.handleGetDim(request);
     }
 
-    private ByteBuffer handleGetDepthRequest(ByteBuffer buffer) {
+    private Response handleGetDepthRequest(ByteBuffer buffer) {
         BaseRequest request = decoder.decodeBase(buffer);
-        Response response = requestHandler.handleGetDepth(request);
-        return encodeResponse(response);
+        return requestHandler.handleGetDepth(request);
     }
 
-    private ByteBuffer handleGetSizeRequest(ByteBuffer buffer) {
+    private Response handleGetSizeRequest(ByteBuffer buffer) {
         BaseRequest request = decoder.decodeBase(buffer);
-        Response response = requestHandler.handleGetSize(request);
-        return encodeResponse(response);
+        return requestHandler.handleGetSize(request);
     }
 
-    private ByteBuffer handleDeleteRequest(ByteBuffer buf) {
+    private Response handleDeleteRequest(ByteBuffer buf) {
         DeleteRequest<K> request = decoder.decodeDelete(buf);
-        Response response = requestHandler.handleDelete(request);
-        return encodeResponse(response);
+        return requestHandler.handleDelete(request);
     }
 
-    private ByteBuffer handleGetBatchRequest(String clientHost, ByteBuffer buf) {
+    private Response handleDeleteRangeRequest(ByteBuffer buf) {
+        DeleteRangeRequest<K> request = decoder.decodeDeleteRange(buf);
+        return requestHandler.handleDeleteRange(request);
+    }
+
+    private Response handleAggregateRangeRequest(ByteBuffer buf) {
+        AggregateRangeRequest<K> request = decoder.decodeAggregateRange(buf);
+        return requestHandler.handleAggregateRange(request);
+    }
+
+    private Response handleSampleRangeRequest(ByteBuffer buf) {
+        SampleRangeRequest<K> request = decoder.decodeSampleRange(buf);
+        return requestHandler.handleSampleRange(request);
+    }
+
+    private Response handleGetBatchRequest(String clientHost, ByteBuffer buf) {
         GetIteratorBatchRequest<K> request = decoder.decodeGetBatch(buf);
-        Response response = requestHandler.handleGetIteratorBatch(clientHost, request);
-        return encodeResponse(response);
+        return requestHandler.handleGetIteratorBatch(clientHost, request);
     }
 
-    private ByteBuffer handleCreateRequest(ByteBuffer buf) {
+    private Response handleCreateRequest(ByteBuffer buf) {
         MapRequest request = decoder.decodeMap(buf);
-        Response response = requestHandler.handleCreate(request);
-        return encodeResponse(response);
+        return requestHandler.handleCreate(request);
     }
 
-    private ByteBuffer handlePutRequest(ByteBuffer buf) {
+    private Response handlePutRequest(ByteBuffer buf) {
         PutRequest<K, V> request = decoder.decodePut(buf);
-        Response response = requestHandler.handlePut(request);
-        return encodeResponse(response);
+        return requestHandler.handlePut(request);
     }
 
-    private ByteBuffer handleGetRequest(ByteBuffer buf) {
+    private Response handlePutManyRequest(ByteBuffer buf) {
+        PutManyRequest<K, V> request = decoder.decodePutMany(buf);
+        return requestHandler.handlePutMany(request);
+    }
+
+    private Response handlePutBulkRequest(ByteBuffer buf) {
+        PutManyRequest<K, V> request = decoder.decodePutMany(buf);
+        return requestHandler.handlePutBulk(request);
+    }
+
+    private Response handleGetManyRequest(ByteBuffer buf) {
+        MultiKeyRequest<K> request = decoder.decodeMultiKey(buf);
+        return requestHandler.handleGetMany(request);
+    }
+
+    private Response handleDeleteManyRequest(ByteBuffer buf) {
+        MultiKeyRequest<K> request = decoder.decodeMultiKey(buf);
+        return requestHandler.handleDeleteMany(request);
+    }
+
+    private Response handleContainsManyRequest(ByteBuffer buf) {
+        MultiKeyRequest<K> request = decoder.decodeMultiKey(buf);
+        return requestHandler.handleContainsMany(request);
+    }
+
+    private Response handleGetRequest(ByteBuffer buf) {
         GetRequest<K> request = decoder.decodeGet(buf);
-        Response response = requestHandler.handleGet(request);
-        return encodeResponse(response);
+        return requestHandler.handleGet(request);
     }
 
-    private ByteBuffer handleGetRangeRequest(ByteBuffer buf) {
+    private Response handleGetRangeRequest(ByteBuffer buf) {
         GetRangeRequest<K> request = decoder.decodeGetRange(buf);
-        Response response = requestHandler.handleGetRange(request);
-        return encodeResponse(response);
+        return requestHandler.handleGetRange(request);
     }
 
-    private ByteBuffer handleGetKNNRequest(ByteBuffer buf) {
+    private Response handleGetKNNRequest(ByteBuffer buf) {
         GetKNNRequest<K> request = decoder.decodeGetKNN(buf);
-        Response response = requestHandler.handleGetKNN(request);
-        return encodeResponse(response);
+        return requestHandler.handleGetKNN(request);
     }
 
-    private ByteBuffer handleErroneousRequest(ByteBuffer buf) {
-        ResultResponse<K, V> response = new ResultResponse<>((byte) 0, 0, OpStatus.FAILURE);
-        return encodeResponse(response);
-    }
-
-    private ByteBuffer encodeResponse(Response response) {
-        byte[] responseBytes = encoder.encode(response);
-        return ByteBuffer.wrap(responseBytes);
+    private Response handleErroneousRequest(ByteBuffer buf) {
+        //echo the request id, clients use it to match the response to the request
+        byte opCode = 0;
+        int requestId = 0;
+        if (buf.limit() >= 5) {
+            opCode = getMessageCode(buf);
+            requestId = buf.getInt(1);
+        }
+        return new ResultResponse<>(opCode, requestId, OpStatus.FAILURE);
     }
 
     public RequestHandler<K, V> getRequestHandler() {
@@ -25,21 +25,29 @@ along with this program.  If not, see <http://www.gnu.org/licenses/>.
 package ch.ethz.globis.distindex.middleware;
 
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import ch.ethz.globis.distindex.api.IndexEntryList;
+import ch.ethz.globis.distindex.api.RangeAggregate;
 import ch.ethz.globis.distindex.middleware.net.RequestHandler;
 import ch.ethz.globis.distindex.operation.OpStatus;
+import ch.ethz.globis.distindex.operation.predicate.BuiltinPredicate;
+import ch.ethz.globis.distindex.operation.request.AggregateRangeRequest;
 import ch.ethz.globis.distindex.operation.request.BaseRequest;
 import ch.ethz.globis.distindex.operation.request.ContainsRequest;
+import ch.ethz.globis.distindex.operation.request.DeleteRangeRequest;
 import ch.ethz.globis.distindex.operation.request.DeleteRequest;
 import ch.ethz.globis.distindex.operation.request.GetIteratorBatchRequest;
 import ch.ethz.globis.distindex.operation.request.GetKNNRequest;
@@ -47,13 +55,18 @@ import ch.ethz.globis.distindex.operation.request.GetRangeFilterMapperRequest;
 import ch.ethz.globis.distindex.operation.request.GetRangeRequest;
 import ch.ethz.globis.distindex.operation.request.GetRequest;
 import ch.ethz.globis.distindex.operation.request.MapRequest;
+import ch.ethz.globis.distindex.operation.request.MultiKeyRequest;
+import ch.ethz.globis.distindex.operation.request.PutManyRequest;
 import ch.ethz.globis.distindex.operation.request.PutRequest;
 import ch.ethz.globis.distindex.operation.request.Request;
+import ch.ethz.globis.distindex.operation.request.SampleRangeRequest;
 import ch.ethz.globis.distindex.operation.request.UpdateKeyRequest;
 import ch.ethz.globis.distindex.operation.response.IntegerResponse;
 import ch.ethz.globis.distindex.operation.response.MapResponse;
 import ch.ethz.globis.distindex.operation.response.Response;
+import ch.ethz.globis.distindex.operation.response.ResultCursor;
 import ch.ethz.globis.distindex.operation.response.ResultResponse;
+import ch.ethz.globis.distindex.operation.response.StreamingResultResponse;
 import ch.ethz.globis.distindex.orchestration.ClusterService;
 import ch.ethz.globis.distindex.util.MultidimUtil;
 import ch.ethz.globis.pht.PhDistance;
@@ -82,13 +95,18 @@ public class PhTreeRequestHandler implements RequestHandler<long[], byte[]> {
     /** The index context associated with this handler. */
     private IndexContext indexContext;
 
+    /** The open iterators. Iterators of different clients are advanced concurrently. */
     private Map<String, PhIterator<byte[]>> iterators;
     private Map<String, Set<String>> clientIteratorMapping;
 
+    /** The cancellation flags of the queries of each client. */
+    private Map<String, Cancellations> cancellations;
+
     public PhTreeRequestHandler(IndexContext indexContext) {
         this.indexContext = indexContext;
-        this.iterators = new HashMap<>();
-        this.clientIteratorMapping = new HashMap<>();
+        this.iterators = new ConcurrentHashMap<>();
+        this.clientIteratorMapping = new ConcurrentHashMap<>();
+        this.cancellations = new ConcurrentHashMap<>();
     }
 
     @Override
@@ -138,15 +156,14 @@ public class PhTreeRequestHandler implements RequestHandler<long[], byte[]> {
         long[] end = request.getEnd();
         double distance = request.getDistance();
 
-        IndexEntryList<long[], byte[]> results;
         if (tree().size() == 0) {
-            results = new IndexEntryList<>();
-        } if (distance > 0) {
-            results = createList(tree().query(start, end), MultidimUtil.transpose(start, distance), distance);
-        } else {
-            results = createList(tree().query(start, end));
+            return createResponse(request, new IndexEntryList<long[], byte[]>());
         }
-        return createResponse(request, results);
+        PhPredicate filter = null;
+        if (distance > 0) {
+            filter = distanceFilter(MultidimUtil.transpose(start, distance), distance);
+        }
+        return createStreamingResponse(request, new QueryCursor(tree().query(start, end), filter));
     }
 
     @Override
@@ -202,8 +219,8 @@ public class PhTreeRequestHandler implements RequestHandler<long[], byte[]> {
             iterators.put(iteratorId, it);
             addIteratorForClient(clientHost, iteratorId);
         } else {
-            iteratorId = "";
             removeIteratorForClient(clientHost, iteratorId);
+            iteratorId = "";
         }
 
         return createResponse(request, results, iteratorId);
@@ -212,10 +229,13 @@ public class PhTreeRequestHandler implements RequestHandler<long[], byte[]> {
     private void addIteratorForClient(String clientHost, String iteratorId) {
         Set<String> iteratorIds = clientIteratorMapping.get(clientHost);
         if (iteratorIds == null) {
-            iteratorIds = new HashSet<>();
+            Set<String> newIds = ConcurrentHashMap.newKeySet();
+            iteratorIds = clientIteratorMapping.putIfAbsent(clientHost, newIds);
+            if (iteratorIds == null) {
+                iteratorIds = newIds;
+            }
         }
         iteratorIds.add(iteratorId);
-        clientIteratorMapping.put(clientHost, iteratorIds);
     }
 
     private void removeIteratorForClient(String clientHost, String iteratorId) {
@@ -267,6 +287,256 @@ public class PhTreeRequestHandler implements RequestHandler<long[], byte[]> {
         return createResponse(request, results);
     }
 
+    /**
+     * Remove the keys in the range of the request that match its filter. The keys are collected before being
+     * removed, so that the tree is not modified while it is iterated.
+     *
+     * @return                              The number of removed keys.
+     */
+    @Override
+    public Response handleDeleteRange(DeleteRangeRequest<long[]> request) {
+        if (isVersionOutDate(request) || currentlyBalancing()) {
+            return createOutdateVersionResponse(request);
+        }
+
+        long[] start = request.getStart();
+        long[] end = request.getEnd();
+        BuiltinPredicate filter = request.getFilter();
+        if (filter != null) {
+            start = start.clone();
+            end = end.clone();
+            if (!filter.restrict(start, end)) {
+                return new IntegerResponse(request.getOpCode(), request.getId(), OpStatus.SUCCESS, 0);
+            }
+        }
+
+        PhTree<byte[]> phTree = tree();
+        List<long[]> keys = new ArrayList<>();
+        if (phTree.size() > 0) {
+            PhIterator<byte[]> it = phTree.query(start, end);
+            while (it.hasNext()) {
+                long[] key = it.nextKey();
+                if (filter == null || filter.test(key)) {
+                    keys.add(key);
+                }
+            }
+        }
+        int deleted = 0;
+        for (long[] key : keys) {
+            if (phTree.remove(key) != null) {
+                deleted++;
+            }
+        }
+        if (deleted > 0) {
+            checkNeedForSizeUpdate(deleted);
+        }
+        return new IntegerResponse(request.getOpCode(), request.getId(), OpStatus.SUCCESS, deleted);
+    }
+
+    /**
+     * Compute the aggregates of the request over the keys in its range that match its filter. Only the
+     * keys are read from the tree, the values are never decoded.
+     *
+     * @return                              A map response holding the aggregate under the key "aggregate".
+     */
+    @Override
+    public Response handleAggregateRange(AggregateRangeRequest<long[]> request) {
+        if (isVersionOutDate(request) || currentlyBalancing()) {
+            return createOutdateVersionResponse(request);
+        }
+
+        long[] start = request.getStart();
+        long[] end = request.getEnd();
+        RangeAggregate aggregate = new RangeAggregate(request.getAggregates(), start, end, request.getCells());
+        BuiltinPredicate filter = request.getFilter();
+        boolean empty = false;
+        if (filter != null) {
+            //the histogram grid stays laid over the original range
+            start = start.clone();
+            end = end.clone();
+            empty = !filter.restrict(start, end);
+        }
+
+        PhTree<byte[]> phTree = tree();
+        if (!empty && phTree.size() > 0) {
+            PhIterator<byte[]> it = phTree.query(start, end);
+            while (it.hasNext()) {
+                long[] key = it.nextKey();
+                if (filter == null || filter.test(key)) {
+                    aggregate.add(key);
+                }
+            }
+        }
+        MapResponse response = new MapResponse(request.getOpCode(), request.getId(), OpStatus.SUCCESS);
+        response.addParameter("aggregate", aggregate);
+        return response;
+    }
+
+    /**
+     * Draw a uniform random sample of the entries in the range of the request that match its filter. The
+     * sample is a reservoir filled while the tree is walked, so only the sampled entries are kept in memory.
+     *
+     * @return                              The sampled entries, in no particular order, together with the
+     *                                      number of matching entries on this host.
+     */
+    @Override
+    public Response handleSampleRange(SampleRangeRequest<long[]> request) {
+        if (isVersionOutDate(request) || currentlyBalancing()) {
+            return createOutdateVersionResponse(request);
+        }
+
+        long[] start = request.getStart();
+        long[] end = request.getEnd();
+        BuiltinPredicate filter = request.getFilter();
+        int size = request.getSize();
+        boolean empty = (size <= 0);
+        if (filter != null && !empty) {
+            start = start.clone();
+            end = end.clone();
+            empty = !filter.restrict(start, end);
+        }
+
+        List<PhEntry<byte[]>> reservoir = new ArrayList<>();
+        long matches = 0;
+        PhTree<byte[]> phTree = tree();
+        if (!empty && phTree.size() > 0) {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            PhIterator<byte[]> it = phTree.query(start, end);
+            while (it.hasNext()) {
+                PhEntry<byte[]> entry = it.nextEntry();
+                if (filter != null && !filter.test(entry.getKey())) {
+                    continue;
+                }
+                matches++;
+                if (reservoir.size() < size) {
+                    reservoir.add(entry);
+                } else {
+                    //the entry replaces a sampled one with probability size / matches
+                    long position = random.nextLong(matches);
+                    if (position < size) {
+                        reservoir.set((int) position, entry);
+                    }
+                }
+            }
+        }
+
+        IndexEntryList<long[], byte[]> results = new IndexEntryList<>();
+        for (PhEntry<byte[]> entry : reservoir) {
+            results.add(entry.getKey(), entry.getValue());
+        }
+        ResultResponse<long[], byte[]> response = new ResultResponse<>(request.getOpCode(), request.getId(),
+                OpStatus.SUCCESS, results);
+        response.setTotalCount(matches);
+        return withResultOptions(request, response);
+    }
+
+    /**
+     * Insert all the entries of the request. The result contains the previous value of each key, in the order
+     * of the keys. The keys themselves are not sent back.
+     */
+    @Override
+    public Response handlePutMany(PutManyRequest<long[], byte[]> request) {
+        if (isVersionOutDate(request) || currentlyBalancing()) {
+            return createOutdateVersionResponse(request);
+        }
+
+        List<long[]> keys = request.getKeys();
+        List<byte[]> values = request.getValues();
+        PhTree<byte[]> phTree = tree();
+        IndexEntryList<long[], byte[]> results = new IndexEntryList<>(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            byte[] previous = phTree.put(keys.get(i), values.get(i));
+            results.add(null, previous);
+            if (previous == null) {
+                checkNeedForSizeUpdate();
+            }
+        }
+        return createResponse(request, results);
+    }
+
+    /**
+     * Insert a chunk of a bulk load. The entries arrive sorted in z-order, so consecutive insertions
+     * go to the same part of the tree. The size of the host is only accounted for once for the whole
+     * chunk and the previous values are not sent back.
+     *
+     * @return                              The number of keys that were not already in the tree.
+     */
+    @Override
+    public Response handlePutBulk(PutManyRequest<long[], byte[]> request) {
+        if (isVersionOutDate(request) || currentlyBalancing()) {
+            return createOutdateVersionResponse(request);
+        }
+
+        List<long[]> keys = request.getKeys();
+        List<byte[]> values = request.getValues();
+        PhTree<byte[]> phTree = tree();
+        int inserted = 0;
+        for (int i = 0; i < keys.size(); i++) {
+            if (phTree.put(keys.get(i), values.get(i)) == null) {
+                inserted++;
+            }
+        }
+        if (inserted > 0) {
+            checkNeedForSizeUpdate(inserted);
+        }
+        return new IntegerResponse(request.getOpCode(), request.getId(), OpStatus.SUCCESS, inserted);
+    }
+
+    @Override
+    public Response handleGetMany(MultiKeyRequest<long[]> request) {
+        if (isVersionOutDate(request)) {
+            return createOutdateVersionResponse(request);
+        }
+
+        PhTree<byte[]> phTree = tree();
+        IndexEntryList<long[], byte[]> results = new IndexEntryList<>(request.getKeys().size());
+        for (long[] key : request.getKeys()) {
+            results.add(null, phTree.get(key));
+        }
+        return createResponse(request, results);
+    }
+
+    @Override
+    public Response handleDeleteMany(MultiKeyRequest<long[]> request) {
+        if (isVersionOutDate(request) || currentlyBalancing()) {
+            return createOutdateVersionResponse(request);
+        }
+
+        PhTree<byte[]> phTree = tree();
+        IndexEntryList<long[], byte[]> results = new IndexEntryList<>(request.getKeys().size());
+        for (long[] key : request.getKeys()) {
+            byte[] value = phTree.remove(key);
+            results.add(null, value);
+            if (value != null) {
+                checkNeedForSizeUpdate();
+            }
+        }
+        return createResponse(request, results);
+    }
+
+    /**
+     * Check which keys of the request are in the tree. The result is a bitmap, with the bit at the position
+     * of each key set if the key is present.
+     */
+    @Override
+    public Response handleContainsMany(MultiKeyRequest<long[]> request) {
+        if (isVersionOutDate(request)) {
+            return createOutdateVersionResponse(request);
+        }
+
+        PhTree<byte[]> phTree = tree();
+        List<long[]> keys = request.getKeys();
+        BitSet contained = new BitSet(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            if (phTree.contains(keys.get(i))) {
+                contained.set(i);
+            }
+        }
+        MapResponse response = new MapResponse(request.getOpCode(), request.getId(), OpStatus.SUCCESS);
+        response.addParameter("contains", contained.toByteArray());
+        return response;
+    }
+
     @Override
     public Response handleGetSize(BaseRequest request) {
         if (isVersionOutDate(request)) {
@@ -311,12 +581,13 @@ public class PhTreeRequestHandler implements RequestHandler<long[], byte[]> {
 
     @Override
     public void cleanup(String clientHost) {
-        Set<String> iteratorIds = clientIteratorMapping.get(clientHost);
+        Set<String> iteratorIds = clientIteratorMapping.remove(clientHost);
         if (iteratorIds != null) {
             for (String iteratorId : iteratorIds) {
-                removeIteratorForClient(clientHost, iteratorId);
+                iterators.remove(iteratorId);
             }
         }
+        cancellations.remove(clientHost);
     }
 
     @Override
@@ -337,10 +608,43 @@ public class PhTreeRequestHandler implements RequestHandler<long[], byte[]> {
     }
 
     @Override
-    public Response handleGetRangeFilter(GetRangeFilterMapperRequest<long[]> request) {
+    public Response handleGetRangeFilter(String clientHost, GetRangeFilterMapperRequest<long[]> request) {
+        final Cancellations clientCancellations = getCancellations(clientHost);
+        final int requestId = request.getId();
+        AtomicBoolean cancelled = clientCancellations.start(requestId);
+        boolean streamed = false;
+        try {
+            Response response = cancelled.get()
+                    ? createResponse(request, new IndexEntryList<long[], byte[]>())
+                    : getRangeFilter(request, cancelled, () -> clientCancellations.finish(requestId));
+            //the flag of a streamed response is removed once its cursor is closed
+            streamed = (response instanceof StreamingResultResponse);
+            return response;
+        } finally {
+            if (!streamed) {
+                clientCancellations.finish(requestId);
+            }
+        }
+    }
+
+    @Override
+    public void handleCancel(String clientHost, MapRequest request) {
+        int requestId = Integer.parseInt(request.getParameter("requestId"));
+        getCancellations(clientHost).cancel(requestId);
+    }
+
+    private Cancellations getCancellations(String clientHost) {
+        return cancellations.computeIfAbsent(clientHost, host -> new Cancellations());
+    }
+
+    private Response getRangeFilter(GetRangeFilterMapperRequest<long[]> request, AtomicBoolean cancelled,
+                                    Runnable onDone) {
         if (isVersionOutDate(request) || currentlyBalancing()) {
             return createOutdateVersionResponse(request);
         }
+        if (!request.isResolved()) {
+            return new ResultResponse<>(request.getOpCode(), request.getId(), OpStatus.UNKNOWN_FUNCTION);
+        }
 
         PhMapper<?,?> mapper = request.getMapper();
         PhPredicate predicate = request.getFilter();
@@ -348,20 +652,25 @@ public class PhTreeRequestHandler implements RequestHandler<long[], byte[]> {
         long[] end = request.getEnd();
         PhTree<byte[]> tree = tree();
         int maxResults = request.getMaxResults();
-        List<PhEntry<byte[]>> results;
 
+        if (predicate instanceof BuiltinPredicate) {
+            //built-in predicates can narrow down the part of the tree that is walked
+            start = start.clone();
+            end = end.clone();
+            if (!((BuiltinPredicate) predicate).restrict(start, end)) {
+                return createResponse(request, new IndexEntryList<long[], byte[]>());
+            }
+        }
         if (tree.size() == 0) {
-            results = new ArrayList<>();
-        } else if (mapper == null && predicate == null) {
-            results = tree.queryAll(start, end);
-        } else {
-            results = tree.queryAll(start, end, maxResults, predicate, PhMapper.<byte[]>PVENTRY());
+            return createResponse(request, new IndexEntryList<long[], byte[]>());
         }
 
         boolean includeKeys = !(mapper instanceof PhMapperV);
         boolean includeValues = !(mapper instanceof PhMapperK);
 
-        return createResponse(request, createList(results, includeKeys, includeValues));
+        QueryCursor cursor = new QueryCursor(tree.query(start, end), predicate, maxResults, includeKeys, includeValues,
+                cancelled, onDone);
+        return createStreamingResponse(request, cursor);
     }
 
     @Override
@@ -423,7 +732,11 @@ public class PhTreeRequestHandler implements RequestHandler<long[], byte[]> {
     }
 
     private void checkNeedForSizeUpdate() {
-        opCount += 1;
+        checkNeedForSizeUpdate(1);
+    }
+
+    private void checkNeedForSizeUpdate(int nrOperations) {
+        opCount += nrOperations;
         if (opCount > (THRESHOLD / 2)) {
             LOG.debug("Updating size for host {}", indexContext.getHostId());
             opCount = 0;
@@ -452,11 +765,33 @@ public class PhTreeRequestHandler implements RequestHandler<long[], byte[]> {
     }
 
     private Response createResponse(BaseRequest request, IndexEntryList<long[], byte[]> results, String iteratorId) {
-        return new ResultResponse<>(request.getOpCode(), request.getId(), OpStatus.SUCCESS, results, iteratorId);
+        return withResultOptions(request,
+                new ResultResponse<>(request.getOpCode(), request.getId(), OpStatus.SUCCESS, results, iteratorId));
     }
 
     private Response createResponse(BaseRequest request, IndexEntryList<long[], byte[]> results) {
-        return new ResultResponse<>(request.getOpCode(), request.getId(), OpStatus.SUCCESS, results);
+        return withResultOptions(request,
+                new ResultResponse<>(request.getOpCode(), request.getId(), OpStatus.SUCCESS, results));
+    }
+
+    private Response createStreamingResponse(BaseRequest request, ResultCursor<long[], byte[]> cursor) {
+        return withResultOptions(request,
+                new StreamingResultResponse<>(request.getOpCode(), request.getId(), OpStatus.SUCCESS, cursor));
+    }
+
+    private Response withResultOptions(BaseRequest request, ResultResponse<long[], byte[]> response) {
+        response.setCompactKeys(request.isCompactKeys());
+        return response;
+    }
+
+    private static PhPredicate distanceFilter(final long[] center, final double distance) {
+        final PhDistance measure = new PhDistanceD();
+        return new PhPredicate() {
+            @Override
+            public boolean test(long[] key) {
+                return distance > measure.dist(center, key);
+            }
+        };
     }
 
     private IndexEntryList<long[], byte[]> createKeyList(List<long[]> keyList) {
@@ -467,47 +802,128 @@ public class PhTreeRequestHandler implements RequestHandler<long[], byte[]> {
         return results;
     }
 
-    private IndexEntryList<long[], byte[]> createList(PhIterator<byte[]> it) {
-        IndexEntryList<long[], byte[]> results = new IndexEntryList<>();
-        while (it.hasNext()) {
-            PhEntry<byte[]> entry = it.nextEntry();
-            results.add(entry.getKey(), entry.getValue());
-        }
-        return results;
+    public PhTree<byte[]> tree() {
+        return indexContext.getTree();
     }
 
-    private IndexEntryList<long[], byte[]> createList(PhIterator<byte[]> it, long[] key, double distance) {
-        IndexEntryList<long[], byte[]> results = new IndexEntryList<>();
-        PhDistance measure = new PhDistanceD();
-        while (it.hasNext()) {
-            PhEntry<byte[]> entry = it.nextEntry();
-            if (distance > measure.dist(key, entry.getKey())) {
-                results.add(entry.getKey(), entry.getValue());
+    /**
+     * Cursor reading the entries of a range query directly from the tree iterator, so that they
+     * can be encoded as they are produced instead of being collected in a list first.
+     */
+    private static class QueryCursor implements ResultCursor<long[], byte[]> {
+
+        private final PhIterator<byte[]> it;
+        private final PhPredicate filter;
+        private final boolean includeKeys;
+        private final boolean includeValues;
+        private int remaining;
+        private PhEntry<byte[]> current;
+
+        /** Stops the query once set, null if the query cannot be cancelled. */
+        private final AtomicBoolean cancelled;
+
+        /** Run once the cursor is exhausted or closed, null if nothing should be run. */
+        private Runnable onDone;
+
+        QueryCursor(PhIterator<byte[]> it, PhPredicate filter) {
+            this(it, filter, Integer.MAX_VALUE, true, true, null, null);
+        }
+
+        QueryCursor(PhIterator<byte[]> it, PhPredicate filter, int maxResults,
+                    boolean includeKeys, boolean includeValues, AtomicBoolean cancelled, Runnable onDone) {
+            this.it = it;
+            this.filter = filter;
+            this.remaining = maxResults;
+            this.includeKeys = includeKeys;
+            this.includeValues = includeValues;
+            this.cancelled = cancelled;
+            this.onDone = onDone;
+        }
+
+        @Override
+        public boolean advance() {
+            while (remaining > 0 && (cancelled == null || !cancelled.get()) && it.hasNext()) {
+                PhEntry<byte[]> entry = it.nextEntry();
+                if (filter == null || filter.test(entry.getKey())) {
+                    current = entry;
+                    remaining--;
+                    return true;
+                }
             }
+            current = null;
+            close();
+            return false;
         }
-        return results;
-    }
 
-    private IndexEntryList<long[], byte[]> createList(List<PhEntry<byte[]>> input) {
-        IndexEntryList<long[], byte[]> results = new IndexEntryList<>();
-        for (PhEntry<byte[]> entry : input) {
-            results.add(entry.getKey(), entry.getValue());
+        @Override
+        public void close() {
+            if (onDone != null) {
+                onDone.run();
+                onDone = null;
+            }
         }
-        return results;
-    }
 
-    private IndexEntryList<long[], byte[]> createList(List<PhEntry<byte[]>> input,
-                                                      boolean includeKeys,
-                                                      boolean includeValues) {
-        IndexEntryList<long[], byte[]> results = new IndexEntryList<>();
-        for (PhEntry<byte[]> entry : input) {
-            results.add(includeKeys ? entry.getKey() : null,
-                        includeValues ? entry.getValue() : null);
+        @Override
+        public long[] key() {
+            return includeKeys ? current.getKey() : null;
+        }
+
+        @Override
+        public byte[] value() {
+            return includeValues ? current.getValue() : null;
         }
-        return results;
     }
 
-    public PhTree<byte[]> tree() {
-        return indexContext.getTree();
+    /**
+     * The cancellation flags of the running queries of a client. A cancel received before its query started is
+     * kept as a pending marker, consumed when the query starts. The cancels received after their query replied
+     * leave markers that are never consumed, so only the most recent markers are kept.
+     */
+    private static class Cancellations {
+
+        /** The maximum number of pending markers kept for a client. */
+        private static final int MAX_PENDING = 1024;
+
+        private final Map<Integer, AtomicBoolean> running = new ConcurrentHashMap<>();
+
+        private final Map<Integer, Boolean> pending = Collections.synchronizedMap(
+                new LinkedHashMap<Integer, Boolean>() {
+                    private static final long serialVersionUID = 1L;
+
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<Integer, Boolean> eldest) {
+                        return size() > MAX_PENDING;
+                    }
+                });
+
+        /**
+         * @return                      The flag of a starting query, already set if it was cancelled.
+         */
+        AtomicBoolean start(int requestId) {
+            AtomicBoolean flag = new AtomicBoolean();
+            running.put(requestId, flag);
+            if (pending.remove(requestId) != null) {
+                flag.set(true);
+            }
+            return flag;
+        }
+
+        void finish(int requestId) {
+            running.remove(requestId);
+        }
+
+        void cancel(int requestId) {
+            AtomicBoolean flag = running.get(requestId);
+            if (flag == null) {
+                pending.put(requestId, Boolean.TRUE);
+                //the query might have started in the meantime, without seeing the marker
+                flag = running.get(requestId);
+                if (flag == null) {
+                    return;
+                }
+                pending.remove(requestId);
+            }
+            flag.set(true);
+        }
     }
-}
\ No newline at end of file
+}
@@ -27,6 +27,8 @@ package ch.ethz.globis.distindex.middleware.balancing;
 import ch.ethz.globis.distindex.middleware.IndexContext;
 import ch.ethz.globis.distindex.middleware.PhTreeRequestHandler;
 import ch.ethz.globis.pht.PhTree;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
@@ -34,6 +36,11 @@ import java.util.concurrent.TimeUnit;
 
 public class BalancingDaemon implements Runnable {
 
+    private static final Logger LOG = LoggerFactory.getLogger(BalancingDaemon.class);
+
+    /** How long to wait for a running balancing operation when closing. */
+    private static final long TERMINATION_TIMEOUT = 60000;
+
     /** The index context associated with this handler. */
     private IndexContext indexContext;
     /** The balancing strategy used */
@@ -64,6 +71,17 @@ public class BalancingDaemon implements Runnable {
     public void close() {
         this.running = false;
         this.service.shutdown();
+        try {
+            //a balancing run in progress needs the strategy to finish or roll back the transfer
+            if (!service.awaitTermination(TERMINATION_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                LOG.warn("Balancing did not finish within {} ms.", TERMINATION_TIMEOUT);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (balancingStrategy != null) {
+            balancingStrategy.close();
+        }
     }
 
     public void balanceAndRemove() {
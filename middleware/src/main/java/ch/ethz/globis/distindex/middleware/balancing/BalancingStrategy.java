@@ -29,4 +29,9 @@ public interface BalancingStrategy {
     public void balance();
 
     public void balanceAndRemove();
+
+    /**
+     * Release the resources used to communicate with the other hosts.
+     */
+    public void close();
 }
@@ -27,6 +27,12 @@ package ch.ethz.globis.distindex.middleware.balancing;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
 import ch.ethz.globis.disindex.codec.ByteRequestEncoder;
 import ch.ethz.globis.disindex.codec.ByteResponseDecoder;
 import ch.ethz.globis.disindex.codec.api.RequestEncoder;
@@ -35,7 +41,7 @@ import ch.ethz.globis.disindex.codec.field.MultiLongEncoderDecoder;
 import ch.ethz.globis.disindex.codec.field.SerializingEncoderDecoder;
 import ch.ethz.globis.disindex.codec.io.ClientRequestDispatcher;
 import ch.ethz.globis.disindex.codec.io.RequestDispatcher;
-import ch.ethz.globis.disindex.codec.io.TCPClient;
+import ch.ethz.globis.disindex.codec.io.NettyTCPClient;
 import ch.ethz.globis.distindex.api.IndexEntry;
 import ch.ethz.globis.distindex.api.IndexEntryList;
 import ch.ethz.globis.distindex.mapping.KeyMapping;
@@ -61,6 +67,9 @@ public class ZMappingBalancingStrategy implements BalancingStrategy {
     /** The logger used for this class */
     private static final Logger LOG = LoggerFactory.getLogger(ZMappingBalancingStrategy.class);
 
+    /** The maximum number of entries sent to the receiving host before waiting for the oldest reply. */
+    private static final int SEND_WINDOW = 1024;
+
     /** The in-memory index context */
     private IndexContext indexContext;
 
@@ -74,7 +83,18 @@ public class ZMappingBalancingStrategy implements BalancingStrategy {
         RequestEncoder requestEncoder = new ByteRequestEncoder<>(new MultiLongEncoderDecoder(), new SerializingEncoderDecoder<>());
         ResponseDecoder<long[], byte[]> responseDecoder = new ByteResponseDecoder<>(new MultiLongEncoderDecoder(), new SerializingEncoderDecoder<byte[]>());
         this.requests = new Requests<>(indexContext.getClusterService());
-        this.requestDispatcher = new ClientRequestDispatcher<>(new TCPClient(), requestEncoder, responseDecoder);
+        //a single event loop is enough, balancing only talks to one host at a time
+        NettyTCPClient transport = new NettyTCPClient(1, NettyTCPClient.DEFAULT_MAX_FRAME_SIZE);
+        this.requestDispatcher = new ClientRequestDispatcher<>(transport, requestEncoder, responseDecoder);
+    }
+
+    @Override
+    public void close() {
+        try {
+            requestDispatcher.close();
+        } catch (IOException e) {
+            LOG.error("Failed to close the balancing request dispatcher.", e);
+        }
     }
 
     @Override
@@ -385,20 +405,39 @@ public class ZMappingBalancingStrategy implements BalancingStrategy {
 
     /**
      * Send the entries received as an argument to the host;
+     *
+     * The put requests are pipelined on the connection to the receiving host, the replies are only checked
+     * after all of the entries were sent.
      * @param entries
      * @param receiverHostId
      */
     private void sendEntries(IndexEntryList<long[], byte[]> entries, String receiverHostId) {
-        String currentHostId = indexContext.getHostId();
         PutBalancingRequest<long[]> request;
-        Response response;
+        //the requests are pipelined, but only a bounded number of replies is awaited at any time
+        Deque<CompletableFuture<BaseResponse>> window = new ArrayDeque<>(SEND_WINDOW);
         for (IndexEntry<long[], byte[]> entry : entries) {
-            request = requests.newPutBalancing(entry.getKey(), entry.getValue());
-            response = requestDispatcher.send(receiverHostId, request, BaseResponse.class);
-            if (response.getStatus() != OpStatus.SUCCESS) {
-                String message = String.format("[%s] Receiving host %s did not accept entry during balancing", currentHostId, receiverHostId);
-                throw new RuntimeException(message);
+            if (window.size() == SEND_WINDOW) {
+                checkPutBalancing(window.poll(), receiverHostId);
             }
+            request = requests.newPutBalancing(entry.getKey(), entry.getValue());
+            window.add(requestDispatcher.sendAsync(receiverHostId, request, BaseResponse.class));
+        }
+        while (!window.isEmpty()) {
+            checkPutBalancing(window.poll(), receiverHostId);
+        }
+    }
+
+    private void checkPutBalancing(CompletableFuture<BaseResponse> future, String receiverHostId) {
+        String currentHostId = indexContext.getHostId();
+        String message = String.format("[%s] Receiving host %s did not accept entry during balancing", currentHostId, receiverHostId);
+        Response response;
+        try {
+            response = future.join();
+        } catch (CompletionException e) {
+            throw new RuntimeException(message, e.getCause());
+        }
+        if (response.getStatus() != OpStatus.SUCCESS) {
+            throw new RuntimeException(message);
         }
     }
 
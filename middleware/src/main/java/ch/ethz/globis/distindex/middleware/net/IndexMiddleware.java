@@ -24,6 +24,9 @@ along with this program.  If not, see <http://www.gnu.org/licenses/>.
 */
 package ch.ethz.globis.distindex.middleware.net;
 
+import ch.ethz.globis.disindex.codec.compression.FrameCompression;
+import ch.ethz.globis.disindex.codec.io.FrameCompressionDecoder;
+import ch.ethz.globis.disindex.codec.io.FrameCompressionEncoder;
 import ch.ethz.globis.distindex.middleware.IOHandler;
 import ch.ethz.globis.distindex.middleware.IndexContext;
 import ch.ethz.globis.distindex.middleware.PhTreeIndexMiddlewareFactory;
@@ -31,8 +34,10 @@ import ch.ethz.globis.distindex.middleware.api.Middleware;
 import ch.ethz.globis.distindex.middleware.balancing.BalancingDaemon;
 import ch.ethz.globis.distindex.orchestration.ClusterService;
 import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
@@ -77,6 +82,24 @@ public class IndexMiddleware<K, V>  implements Middleware, Runnable {
 
     private BalancingDaemon balancingDaemon;
 
+    /** Executes the requests outside of the event loops, null if the requests run on the event loops */
+    private RequestExecutor requestExecutor;
+
+    /** The number of threads executing point operations. If 0, requests are executed on the event loops. */
+    private int pointThreads = Runtime.getRuntime().availableProcessors();
+
+    /** The number of threads executing scans. */
+    private int scanThreads = Runtime.getRuntime().availableProcessors();
+
+    /** The maximum size of a request accepted from a client. */
+    private int maxFrameSize = MiddlewareMessageDecoder.DEFAULT_MAX_FRAME_SIZE;
+
+    /**
+     * The compression accepted for the replies, null if replies are never compressed. Only the replies to the
+     * clients that asked for compression are compressed, the clients do not ask for it by default.
+     */
+    private FrameCompression compression = new FrameCompression(FrameCompression.LZ4);
+
     public IndexMiddleware(IndexContext indexContext, 
     		ClusterService<K> clusterService, 
     		IOHandler<K, V> handler,
@@ -94,6 +117,9 @@ public class IndexMiddleware<K, V>  implements Middleware, Runnable {
 
         bossGroup = new NioEventLoopGroup();
         workerGroup = new NioEventLoopGroup();
+        if (pointThreads > 0 && scanThreads > 0) {
+            requestExecutor = new RequestExecutor(pointThreads, scanThreads);
+        }
 
         balancingDaemon.run();
         try {
@@ -182,11 +208,16 @@ public class IndexMiddleware<K, V>  implements Middleware, Runnable {
         b.group(bossGroup, workerGroup)
                 .channel(NioServerSocketChannel.class)
                 .handler(new LoggingHandler(LogLevel.INFO))
+                .childOption(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
                 .childHandler(new ChannelInitializer<SocketChannel>() {
                     @Override
                     protected void initChannel(SocketChannel ch) throws Exception {
-                        ch.pipeline().addLast(new MiddlewareMessageDecoder(), 
-                        		new MiddlewareChannelHandler<K, V>(handler) {});
+                        //replies are only compressed once the client asked for it
+                        FrameCompressionEncoder compressionEncoder = new FrameCompressionEncoder(true);
+                        ch.pipeline().addLast(new MiddlewareMessageDecoder(maxFrameSize),
+                                compressionEncoder,
+                                new FrameCompressionDecoder(compressionEncoder, compression, maxFrameSize),
+                        		new MiddlewareChannelHandler<K, V>(handler, requestExecutor) {});
                     }
                 });
         return b;
@@ -195,6 +226,9 @@ public class IndexMiddleware<K, V>  implements Middleware, Runnable {
     private void closeEventLoops() {
         bossGroup.shutdownGracefully();
         workerGroup.shutdownGracefully();
+        if (requestExecutor != null) {
+            requestExecutor.shutdown();
+        }
     }
 
     private String getHostId() {
@@ -217,4 +251,45 @@ public class IndexMiddleware<K, V>  implements Middleware, Runnable {
         this.joinedAsFree = joinedAsFree;
     }
 
+    public int getPointThreads() {
+        return pointThreads;
+    }
+
+    /**
+     * Set the number of threads executing point operations. Setting either this or the number of scan
+     * threads to 0 makes the middleware execute the requests directly on the Netty event loops.
+     */
+    public void setPointThreads(int pointThreads) {
+        this.pointThreads = pointThreads;
+    }
+
+    public int getScanThreads() {
+        return scanThreads;
+    }
+
+    public void setScanThreads(int scanThreads) {
+        this.scanThreads = scanThreads;
+    }
+
+    public int getMaxFrameSize() {
+        return maxFrameSize;
+    }
+
+    public void setMaxFrameSize(int maxFrameSize) {
+        this.maxFrameSize = maxFrameSize;
+    }
+
+    public FrameCompression getCompression() {
+        return compression;
+    }
+
+    /**
+     * Set the compression accepted for the replies. The replies are compressed with the codec requested by
+     * each client, if the frame is larger than the threshold of the compression received as argument.
+     * Setting the compression to null disables the compression of the replies.
+     */
+    public void setCompression(FrameCompression compression) {
+        this.compression = compression;
+    }
+
 }
\ No newline at end of file
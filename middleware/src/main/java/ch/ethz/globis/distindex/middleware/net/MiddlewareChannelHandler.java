@@ -25,15 +25,13 @@ along with this program.  If not, see <http://www.gnu.org/licenses/>.
 package ch.ethz.globis.distindex.middleware.net;
 
 import ch.ethz.globis.distindex.middleware.IOHandler;
+import ch.ethz.globis.distindex.operation.OpCode;
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.nio.ByteBuffer;
-
 /**
  * Handles the incoming data on the channel opened by a client.
  *
@@ -46,34 +44,96 @@ public abstract class MiddlewareChannelHandler<K, V> extends ChannelInboundHandl
 
     private IOHandler<K, V> ioHandler;
 
+    /** Executes the requests of this connection. If null, requests are executed on the event loop. */
+    private RequestExecutor.ConnectionExecutor executor;
+
+    /** The streaming scans opened by the client. */
+    private ScanStreams<K, V> streams;
+
     protected MiddlewareChannelHandler(IOHandler<K, V> ioHandler) {
+        this(ioHandler, null);
+    }
+
+    protected MiddlewareChannelHandler(IOHandler<K, V> ioHandler, RequestExecutor requestExecutor) {
         this.ioHandler = ioHandler;
+        this.executor = (requestExecutor == null) ? null : requestExecutor.newConnection();
     }
 
     @Override
     public void channelActive(ChannelHandlerContext ctx) throws Exception {
+        streams = new ScanStreams<>(ctx, ioHandler, executor);
         super.channelActive(ctx);
     }
 
     @Override
-    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
-        ByteBuf buf = (ByteBuf) msg;
-        String clientHost = ctx.channel().remoteAddress().toString();
-        ByteBuffer response = ioHandler.handle(clientHost, buf.nioBuffer());
-        ByteBuf nettyBuf = Unpooled.wrappedBuffer(response);
-        ByteBuf sizeBuf = Unpooled.copyInt(nettyBuf.readableBytes());
-
-        ctx.write(sizeBuf);
-        ctx.write(nettyBuf);
-        ctx.flush();
-        buf.release();
+    public void channelRead(final ChannelHandlerContext ctx, Object msg) throws Exception {
+        final ByteBuf buf = (ByteBuf) msg;
+        byte opCode = buf.getByte(buf.readerIndex());
+        if (opCode == OpCode.GET_STREAM || opCode == OpCode.STREAM_CREDIT) {
+            handleStream(ctx, buf, opCode);
+        } else if (opCode == OpCode.CANCEL) {
+            //handled right away, the cancelled request might be waiting in the queue of the connection
+            handleCancel(ctx, buf);
+        } else if (executor == null) {
+            handle(ctx, buf);
+        } else {
+            executor.execute(opCode, new Runnable() {
+                @Override
+                public void run() {
+                    handle(ctx, buf);
+                }
+            });
+        }
+    }
+
+    private void handle(ChannelHandlerContext ctx, ByteBuf buf) {
+        try {
+            String clientHost = ctx.channel().remoteAddress().toString();
+            ByteBuf response = ioHandler.handle(clientHost, buf.nioBuffer(), ctx.alloc());
+
+            //a single write, responses can be written concurrently by the request executor threads
+            ctx.writeAndFlush(response);
+        } finally {
+            buf.release();
+        }
+    }
+
+    /**
+     * Open a streaming scan or grant credit to one. Both are cheap, the chunks are read by the stream tasks.
+     */
+    private void handleStream(ChannelHandlerContext ctx, ByteBuf buf, byte opCode) {
+        try {
+            if (opCode == OpCode.GET_STREAM) {
+                streams.open(ioHandler.decodeGetStream(buf.nioBuffer()));
+            } else {
+                streams.credit(ioHandler.decodeMap(buf.nioBuffer()));
+            }
+        } catch (RuntimeException e) {
+            LOG.error("Error processing stream request", e);
+            if (opCode == OpCode.GET_STREAM) {
+                ctx.writeAndFlush(ioHandler.handle(ctx.channel().remoteAddress().toString(), buf.nioBuffer(), ctx.alloc()));
+            }
+        } finally {
+            buf.release();
+        }
+    }
+
+    private void handleCancel(ChannelHandlerContext ctx, ByteBuf buf) {
+        try {
+            ioHandler.handleCancel(ctx.channel().remoteAddress().toString(), buf.nioBuffer());
+        } catch (RuntimeException e) {
+            LOG.error("Error processing cancel request", e);
+        } finally {
+            buf.release();
+        }
     }
 
     @Override
     public void channelInactive(ChannelHandlerContext ctx) throws Exception {
         String clientHost = ctx.channel().remoteAddress().toString();
         LOG.debug("Client " + clientHost + " disconnected.");
-        ioHandler.cleanup(clientHost);
+        streams.cancelAll();
+        cleanup(clientHost);
         super.channelInactive(ctx);
     }
 
@@ -81,7 +141,21 @@ public abstract class MiddlewareChannelHandler<K, V> extends ChannelInboundHandl
     public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
         String clientHost = ctx.channel().remoteAddress().toString();
         LOG.debug("Client " + clientHost + " disconnected.");
-        ioHandler.cleanup(clientHost);
+        cleanup(clientHost);
         super.exceptionCaught(ctx, cause);
     }
+
+    private void cleanup(final String clientHost) {
+        if (executor == null) {
+            ioHandler.cleanup(clientHost);
+        } else {
+            //the requests that are still queued might use the state of the client
+            executor.executeLast(new Runnable() {
+                @Override
+                public void run() {
+                    ioHandler.cleanup(clientHost);
+                }
+            });
+        }
+    }
 }
\ No newline at end of file
@@ -27,22 +27,48 @@ package ch.ethz.globis.distindex.middleware.net;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.TooLongFrameException;
 
 import java.util.List;
 
 /**
- * Buffers the byte chunks received from the client until a full message was received.
+ * Splits the byte chunks received from the client into messages.
  *
- * When this happens, the ByteBuf containing that message is send to the channel handler.
+ * Each message is preceded by a 4 byte header holding its size. A single read can contain any number of
+ * complete messages, as clients are allowed to pipeline requests, and messages can span several reads.
+ * Every complete message is sent to the channel handler as a separate ByteBuf.
+ *
+ * The messages are retained slices of the accumulated buffer rather than copies. While a slice is alive, the
+ * cumulation is not modified in place, so the messages can safely be handled on other threads.
  */
 public class MiddlewareMessageDecoder extends ByteToMessageDecoder{
 
-    private int bytesToRead = -1;
+    /** The default maximum size of a message, excluding the size header. */
+    public static final int DEFAULT_MAX_FRAME_SIZE = 64 * 1024 * 1024;
+
+    /** The size of the header containing the size of the message. */
+    private static final int LENGTH_FIELD_SIZE = 4;
+
+    /** The maximum size of a message, excluding the size header. */
+    private final int maxFrameSize;
+
+    public MiddlewareMessageDecoder() {
+        this(DEFAULT_MAX_FRAME_SIZE);
+    }
+
+    public MiddlewareMessageDecoder(int maxFrameSize) {
+        if (maxFrameSize <= 0) {
+            throw new IllegalArgumentException("The maximum frame size should be positive.");
+        }
+        this.maxFrameSize = maxFrameSize;
+    }
 
     /**
-     * Checks whether the bytes accumulated in the in Buffer constitute a full message sent
-     * from the client. If that is the case, the message is copied to the out list and the
-     * next handler is notified.
+     * Extracts all of the full messages accumulated in the in Buffer and adds them to the out list.
+     * Incomplete messages are left in the buffer until the rest of their bytes are received.
+     *
+     * A message whose header announces a size larger than the maximum frame size causes the channel to
+     * be closed, as the rest of the stream cannot be split into messages anymore.
      *
      * @param ctx                           The Netty context associated with the channel.
      * @param in                            A Netty managed buffer that holds the accumulated received chunks.
@@ -51,17 +77,19 @@ public class MiddlewareMessageDecoder extends ByteToMessageDecoder{
      */
     @Override
     protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception {
-        if (in.readableBytes() < 4) {
-            //need to know exactly how many bytes to read
-            return;
-        }
-        if (bytesToRead == -1) {
-            bytesToRead = in.readInt();
-        }
-
-        if (in.readableBytes() == bytesToRead) {
-            out.add(in.readBytes(in.readableBytes()));
-            bytesToRead = -1;
+        while (in.readableBytes() >= LENGTH_FIELD_SIZE) {
+            int frameSize = in.getInt(in.readerIndex());
+            if (frameSize < 0 || frameSize > maxFrameSize) {
+                in.skipBytes(in.readableBytes());
+                ctx.close();
+                throw new TooLongFrameException("Frame of size " + frameSize + " exceeds the maximum of " + maxFrameSize);
+            }
+            if (in.readableBytes() < LENGTH_FIELD_SIZE + frameSize) {
+                //wait for the rest of the message
+                return;
+            }
+            in.skipBytes(LENGTH_FIELD_SIZE);
+            out.add(in.readSlice(frameSize).retain());
         }
     }
 }
@@ -0,0 +1,184 @@
+/*
+This file is part of PH-Tree:
+A multi-dimensional indexing and storage structure.
+
+Copyright (C) 2011-2015
+Eidgenössische Technische Hochschule Zürich (ETH Zurich)
+Institute for Information Systems
+GlobIS Group
+Bogdan Vancea, Tilmann Zaeschke
+zaeschke@inf.ethz.ch or zoodb@gmx.de
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package ch.ethz.globis.distindex.middleware.net;
+
+import ch.ethz.globis.distindex.operation.OpCode;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Executes the requests received by the middleware outside of the Netty event loops.
+ *
+ * Requests are split in two classes, each served by its own thread pool: cheap point operations and
+ * heavy operations that scan a large part of the tree. This way, point operations do not wait behind
+ * range queries, neither on the same connection nor on other connections.
+ *
+ * The requests received on a connection are executed in the order in which they were received, within
+ * their class. A scan only starts once the point operations received before it on the same connection are
+ * done, so it sees their writes. The point operations received after a scan do not wait for it, so they can
+ * be executed while the scan runs, and a running scan may or may not see their writes.
+ */
+public class RequestExecutor {
+
+    /** The thread pool executing the point operations. */
+    private final ExecutorService pointPool;
+
+    /** The thread pool executing the scans. */
+    private final ExecutorService scanPool;
+
+    public RequestExecutor(int pointThreads, int scanThreads) {
+        this.pointPool = Executors.newFixedThreadPool(pointThreads, new DefaultThreadFactory("request-point"));
+        this.scanPool = Executors.newFixedThreadPool(scanThreads, new DefaultThreadFactory("request-scan"));
+    }
+
+    /**
+     * @return                              The executors used for a new connection.
+     */
+    public ConnectionExecutor newConnection() {
+        return new ConnectionExecutor(new SerialExecutor(pointPool), new SerialExecutor(scanPool));
+    }
+
+    public void shutdown() {
+        pointPool.shutdown();
+        scanPool.shutdown();
+    }
+
+    /**
+     * Check whether a request is potentially expensive.
+     *
+     * The iterator operations are also counted as scans, as they need to be ordered with the range
+     * queries opening the iterators.
+     *
+     * @param opCode                        The op code of the request.
+     * @return                              True if the request should be executed as a scan.
+     */
+    public static boolean isScan(byte opCode) {
+        switch (opCode) {
+            case OpCode.GET_RANGE:
+            case OpCode.GET_RANGE_FILTER:
+            case OpCode.GET_KNN:
+            case OpCode.GET_BATCH:
+            case OpCode.CLOSE_ITERATOR:
+            case OpCode.STATS:
+            case OpCode.STATS_NO_NODE:
+            case OpCode.QUALITY:
+            case OpCode.NODE_COUNT:
+            case OpCode.TO_STRING:
+            case OpCode.PUT_BULK:
+            case OpCode.DELETE_RANGE:
+            case OpCode.AGGREGATE_RANGE:
+            case OpCode.SAMPLE_RANGE:
+            case OpCode.GET_STREAM:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * The executors serving a single connection.
+     */
+    public static class ConnectionExecutor {
+
+        private final Executor points;
+        private final Executor scans;
+
+        private ConnectionExecutor(Executor points, Executor scans) {
+            this.points = points;
+            this.scans = scans;
+        }
+
+        public void execute(byte opCode, Runnable task) {
+            if (isScan(opCode)) {
+                afterPoints(task);
+            } else {
+                points.execute(task);
+            }
+        }
+
+        /**
+         * Execute a task after all of the requests already received on the connection.
+         */
+        public void executeLast(Runnable task) {
+            afterPoints(task);
+        }
+
+        /**
+         * Queue a task as a scan once the point operations received before it are done. The scans go through
+         * the point queue, so they also stay in the order in which they were received.
+         */
+        private void afterPoints(final Runnable task) {
+            points.execute(new Runnable() {
+                @Override
+                public void run() {
+                    scans.execute(task);
+                }
+            });
+        }
+    }
+
+    /**
+     * Runs the submitted tasks one at a time, in submission order, on a shared thread pool.
+     */
+    private static class SerialExecutor implements Executor {
+
+        private final Queue<Runnable> tasks = new ArrayDeque<>();
+        private final Executor executor;
+        private Runnable active;
+
+        private SerialExecutor(Executor executor) {
+            this.executor = executor;
+        }
+
+        @Override
+        public synchronized void execute(final Runnable task) {
+            tasks.add(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        task.run();
+                    } finally {
+                        scheduleNext();
+                    }
+                }
+            });
+            if (active == null) {
+                scheduleNext();
+            }
+        }
+
+        private synchronized void scheduleNext() {
+            active = tasks.poll();
+            if (active != null) {
+                executor.execute(active);
+            }
+        }
+    }
+}
@@ -24,8 +24,10 @@ along with this program.  If not, see <http://www.gnu.org/licenses/>.
 */
 package ch.ethz.globis.distindex.middleware.net;
 
+import ch.ethz.globis.distindex.operation.request.AggregateRangeRequest;
 import ch.ethz.globis.distindex.operation.request.BaseRequest;
 import ch.ethz.globis.distindex.operation.request.ContainsRequest;
+import ch.ethz.globis.distindex.operation.request.DeleteRangeRequest;
 import ch.ethz.globis.distindex.operation.request.DeleteRequest;
 import ch.ethz.globis.distindex.operation.request.GetIteratorBatchRequest;
 import ch.ethz.globis.distindex.operation.request.GetKNNRequest;
@@ -33,7 +35,10 @@ import ch.ethz.globis.distindex.operation.request.GetRangeFilterMapperRequest;
 import ch.ethz.globis.distindex.operation.request.GetRangeRequest;
 import ch.ethz.globis.distindex.operation.request.GetRequest;
 import ch.ethz.globis.distindex.operation.request.MapRequest;
+import ch.ethz.globis.distindex.operation.request.MultiKeyRequest;
+import ch.ethz.globis.distindex.operation.request.PutManyRequest;
 import ch.ethz.globis.distindex.operation.request.PutRequest;
+import ch.ethz.globis.distindex.operation.request.SampleRangeRequest;
 import ch.ethz.globis.distindex.operation.request.UpdateKeyRequest;
 import ch.ethz.globis.distindex.operation.response.Response;
 
@@ -53,6 +58,22 @@ public interface RequestHandler<K, V> {
 
     public Response handleDelete(DeleteRequest<K> request);
 
+    public Response handleDeleteRange(DeleteRangeRequest<K> request);
+
+    public Response handleAggregateRange(AggregateRangeRequest<K> request);
+
+    public Response handleSampleRange(SampleRangeRequest<K> request);
+
+    public Response handlePutMany(PutManyRequest<K, V> request);
+
+    public Response handlePutBulk(PutManyRequest<K, V> request);
+
+    public Response handleGetMany(MultiKeyRequest<K> request);
+
+    public Response handleDeleteMany(MultiKeyRequest<K> request);
+
+    public Response handleContainsMany(MultiKeyRequest<K> request);
+
     public Response handleGetSize(BaseRequest request);
 
     public Response handleGetDim(BaseRequest request);
@@ -77,5 +98,11 @@ public interface RequestHandler<K, V> {
 
     public Response handleUpdateKey(UpdateKeyRequest<K> request);
 
-    public Response handleGetRangeFilter(GetRangeFilterMapperRequest<K> request);
+    public Response handleGetRangeFilter(String clientHost, GetRangeFilterMapperRequest<K> request);
+
+    /**
+     * Cancel a request of the client. A running query stops and responds with the results found so far,
+     * a query that did not start yet responds without results.
+     */
+    public void handleCancel(String clientHost, MapRequest request);
 }
\ No newline at end of file
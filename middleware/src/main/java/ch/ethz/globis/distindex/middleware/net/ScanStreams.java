@@ -0,0 +1,222 @@
+/*
+This file is part of PH-Tree:
+A multi-dimensional indexing and storage structure.
+
+Copyright (C) 2011-2015
+Eidgenössische Technische Hochschule Zürich (ETH Zurich)
+Institute for Information Systems
+GlobIS Group
+Bogdan Vancea, Tilmann Zaeschke
+zaeschke@inf.ethz.ch or zoodb@gmx.de
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package ch.ethz.globis.distindex.middleware.net;
+
+import ch.ethz.globis.distindex.middleware.IOHandler;
+import ch.ethz.globis.distindex.operation.OpCode;
+import ch.ethz.globis.distindex.operation.OpStatus;
+import ch.ethz.globis.distindex.operation.request.GetStreamRequest;
+import ch.ethz.globis.distindex.operation.request.MapRequest;
+import ch.ethz.globis.distindex.operation.response.Response;
+import ch.ethz.globis.distindex.operation.response.ResultResponse;
+import io.netty.channel.ChannelHandlerContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The streaming scans opened on a connection.
+ *
+ * A stream pushes one chunk of entries per task, as long as it has credit. The tasks run on the scan executor
+ * of the connection, so the chunks of a stream are read in order and the point operations of the client are
+ * not delayed by its scans. A stream ends after its last chunk, after a chunk that is not successful or when
+ * the client cancels it.
+ *
+ * @param <K>                               The type of the keys.
+ * @param <V>                               The type of the values.
+ */
+class ScanStreams<K, V> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ScanStreams.class);
+
+    private final ChannelHandlerContext ctx;
+
+    private final IOHandler<K, V> ioHandler;
+
+    /** Executes the chunks of the streams. If null, the chunks are read on the event loop. */
+    private final RequestExecutor.ConnectionExecutor executor;
+
+    /** The open streams, by the id of the request that opened them. */
+    private final Map<Integer, Stream> streams = new ConcurrentHashMap<>();
+
+    ScanStreams(ChannelHandlerContext ctx, IOHandler<K, V> ioHandler, RequestExecutor.ConnectionExecutor executor) {
+        this.ctx = ctx;
+        this.ioHandler = ioHandler;
+        this.executor = executor;
+    }
+
+    /**
+     * Open a stream and start pushing its chunks.
+     */
+    void open(GetStreamRequest<K> request) {
+        Stream stream = new Stream(request);
+        if (streams.putIfAbsent(request.getId(), stream) != null) {
+            LOG.warn("Stream {} is already open on {}", request.getId(), clientHost());
+            write(new ResultResponse<>(request.getOpCode(), request.getId(), OpStatus.FAILURE));
+            return;
+        }
+        stream.schedule();
+    }
+
+    /**
+     * Grant credit to a stream, or cancel it if the credit is 0. The credit can also change the size of the
+     * next chunks.
+     */
+    void credit(MapRequest request) {
+        int streamId = Integer.parseInt(request.getParameter("streamId"));
+        int credit = Integer.parseInt(request.getParameter("credit"));
+        String chunkSize = request.getParameter("chunkSize");
+        Stream stream = streams.get(streamId);
+        if (stream == null) {
+            //the stream already ended
+            return;
+        }
+        if (credit == 0) {
+            stream.cancel();
+        } else {
+            if (chunkSize != null) {
+                stream.chunkSize = Integer.parseInt(chunkSize);
+            }
+            stream.grant(credit);
+        }
+    }
+
+    /**
+     * Cancel all of the streams, once the connection is closed.
+     */
+    void cancelAll() {
+        for (Stream stream : streams.values()) {
+            stream.cancel();
+        }
+    }
+
+    private void execute(Runnable task) {
+        if (executor == null) {
+            ctx.executor().execute(task);
+        } else {
+            executor.execute(OpCode.GET_STREAM, task);
+        }
+    }
+
+    private void write(Response response) {
+        ctx.writeAndFlush(ioHandler.encode(response, ctx.alloc()));
+    }
+
+    private String clientHost() {
+        return ctx.channel().remoteAddress().toString();
+    }
+
+    private class Stream implements Runnable {
+
+        private final GetStreamRequest<K> request;
+
+        private final AtomicInteger credit;
+
+        /** Whether a chunk task is scheduled. At most one is scheduled at a time. */
+        private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+        private volatile boolean cancelled = false;
+
+        /** The number of entries in the next chunk. */
+        private volatile int chunkSize;
+
+        /** The iterator on the host, only accessed by the chunk tasks. Empty until the first chunk is read. */
+        private String iteratorId;
+
+        private Stream(GetStreamRequest<K> request) {
+            this.request = request;
+            this.credit = new AtomicInteger(request.getCredit());
+            this.iteratorId = request.getIteratorId();
+            this.chunkSize = request.getBatchSize();
+        }
+
+        private void grant(int chunks) {
+            credit.addAndGet(chunks);
+            schedule();
+        }
+
+        private void cancel() {
+            cancelled = true;
+            //runs after the chunk being read, if any, so it sees the last iterator
+            execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (streams.remove(request.getId(), Stream.this) && !"".equals(iteratorId)) {
+                        ioHandler.closeStream(clientHost(), request, iteratorId);
+                    }
+                }
+            });
+        }
+
+        private void schedule() {
+            if (!cancelled && credit.get() > 0 && scheduled.compareAndSet(false, true)) {
+                execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            if (cancelled) {
+                scheduled.set(false);
+                return;
+            }
+            GetStreamRequest<K> chunkRequest = nextChunkRequest();
+            Response response = ioHandler.handleStreamChunk(clientHost(), chunkRequest);
+            boolean last = true;
+            if (response.getStatus() == OpStatus.SUCCESS && response instanceof ResultResponse) {
+                iteratorId = ((ResultResponse<?, ?>) response).getIteratorId();
+                last = "".equals(iteratorId);
+            }
+            if (last) {
+                streams.remove(request.getId(), this);
+            }
+            write(response);
+            credit.decrementAndGet();
+            scheduled.set(false);
+            if (!last) {
+                schedule();
+            }
+        }
+
+        private GetStreamRequest<K> nextChunkRequest() {
+            int size = chunkSize;
+            if (iteratorId.equals(request.getIteratorId()) && size == request.getBatchSize()) {
+                return request;
+            }
+            GetStreamRequest<K> chunkRequest = request.isRanged() && "".equals(iteratorId)
+                    ? new GetStreamRequest<>(request.getId(), request.getOpCode(), request.getIndexId(),
+                            request.getMappingVersion(), iteratorId, size, request.getStart(), request.getEnd(),
+                            request.getCredit())
+                    : new GetStreamRequest<>(request.getId(), request.getOpCode(), request.getIndexId(),
+                            request.getMappingVersion(), iteratorId, size, request.getCredit());
+            chunkRequest.setCompactKeys(request.isCompactKeys());
+            return chunkRequest;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*
+This file is part of PH-Tree:
+A multi-dimensional indexing and storage structure.
+
+Copyright (C) 2011-2015
+Eidgenössische Technische Hochschule Zürich (ETH Zurich)
+Institute for Information Systems
+GlobIS Group
+Bogdan Vancea, Tilmann Zaeschke
+zaeschke@inf.ethz.ch or zoodb@gmx.de
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package ch.ethz.globis.distindex.middleware.net;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.TooLongFrameException;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class MiddlewareMessageDecoderTest {
+
+    @Test
+    public void testCoalescedAndPartialFrames() {
+        EmbeddedChannel channel = new EmbeddedChannel(new MiddlewareMessageDecoder());
+
+        ByteBuf first = Unpooled.buffer();
+        first.writeInt(3).writeBytes(new byte[] {1, 2, 3});
+        first.writeInt(2).writeBytes(new byte[] {4, 5});
+        first.writeInt(4).writeBytes(new byte[] {6});
+        channel.writeInbound(first);
+
+        assertFrame(channel.readInbound(), 1, 2, 3);
+        assertFrame(channel.readInbound(), 4, 5);
+        assertNull(channel.readInbound());
+
+        ByteBuf second = Unpooled.buffer();
+        second.writeBytes(new byte[] {7, 8, 9});
+        second.writeInt(0);
+        channel.writeInbound(second);
+
+        assertFrame(channel.readInbound(), 6, 7, 8, 9);
+        assertFrame(channel.readInbound());
+        assertNull(channel.readInbound());
+    }
+
+    @Test(expected = TooLongFrameException.class)
+    public void testFrameTooLong() {
+        EmbeddedChannel channel = new EmbeddedChannel(new MiddlewareMessageDecoder(4));
+
+        ByteBuf buf = Unpooled.buffer();
+        buf.writeInt(5).writeBytes(new byte[] {1, 2, 3, 4, 5});
+        try {
+            channel.writeInbound(buf);
+        } finally {
+            assertFalse(channel.isOpen());
+        }
+    }
+
+    private static void assertFrame(Object message, int... expected) {
+        ByteBuf frame = (ByteBuf) message;
+        assertNotNull(frame);
+        assertEquals(expected.length, frame.readableBytes());
+        for (int value : expected) {
+            assertEquals(value, frame.readByte());
+        }
+        frame.release();
+    }
+}
@@ -0,0 +1,180 @@
+/*
+This file is part of PH-Tree:
+A multi-dimensional indexing and storage structure.
+
+Copyright (C) 2011-2015
+Eidgenössische Technische Hochschule Zürich (ETH Zurich)
+Institute for Information Systems
+GlobIS Group
+Bogdan Vancea, Tilmann Zaeschke
+zaeschke@inf.ethz.ch or zoodb@gmx.de
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package ch.ethz.globis.distindex.middleware.net;
+
+import ch.ethz.globis.distindex.operation.OpCode;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class RequestExecutorTest {
+
+    private static final int NR_TASKS = 1000;
+
+    private RequestExecutor executor;
+
+    @Before
+    public void setUp() {
+        executor = new RequestExecutor(4, 4);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Test
+    public void testOrderWithinEachClass() throws InterruptedException {
+        RequestExecutor.ConnectionExecutor connection = executor.newConnection();
+        List<Integer> points = Collections.synchronizedList(new ArrayList<Integer>());
+        List<Integer> scans = Collections.synchronizedList(new ArrayList<Integer>());
+        CountDownLatch done = new CountDownLatch(2 * NR_TASKS);
+
+        for (int i = 0; i < NR_TASKS; i++) {
+            connection.execute(OpCode.PUT, append(points, i, done));
+            connection.execute(OpCode.GET_RANGE, append(scans, i, done));
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+
+        for (int i = 0; i < NR_TASKS; i++) {
+            assertEquals(i, (int) points.get(i));
+            assertEquals(i, (int) scans.get(i));
+        }
+    }
+
+    @Test
+    public void testPointsDoNotWaitForEarlierScans() throws InterruptedException {
+        RequestExecutor.ConnectionExecutor connection = executor.newConnection();
+        CountDownLatch scanStarted = new CountDownLatch(1);
+        CountDownLatch releaseScan = new CountDownLatch(1);
+        CountDownLatch pointDone = new CountDownLatch(1);
+
+        connection.execute(OpCode.GET_RANGE, block(scanStarted, releaseScan));
+        assertTrue(scanStarted.await(10, TimeUnit.SECONDS));
+        connection.execute(OpCode.PUT, countDown(pointDone));
+        try {
+            assertTrue(pointDone.await(10, TimeUnit.SECONDS));
+        } finally {
+            releaseScan.countDown();
+        }
+    }
+
+    @Test
+    public void testScansWaitForEarlierPoints() throws InterruptedException {
+        RequestExecutor.ConnectionExecutor connection = executor.newConnection();
+        CountDownLatch pointStarted = new CountDownLatch(1);
+        CountDownLatch releasePoint = new CountDownLatch(1);
+        CountDownLatch scanDone = new CountDownLatch(1);
+
+        connection.execute(OpCode.PUT, block(pointStarted, releasePoint));
+        assertTrue(pointStarted.await(10, TimeUnit.SECONDS));
+        connection.execute(OpCode.GET_RANGE, countDown(scanDone));
+        assertFalse(scanDone.await(200, TimeUnit.MILLISECONDS));
+
+        releasePoint.countDown();
+        assertTrue(scanDone.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testConnectionsAreIndependent() throws InterruptedException {
+        RequestExecutor.ConnectionExecutor first = executor.newConnection();
+        RequestExecutor.ConnectionExecutor second = executor.newConnection();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(2);
+
+        first.execute(OpCode.PUT, block(started, release));
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        second.execute(OpCode.PUT, countDown(done));
+        second.execute(OpCode.GET_RANGE, countDown(done));
+        try {
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void testExecuteLastWaitsForAllEarlierRequests() throws InterruptedException {
+        RequestExecutor.ConnectionExecutor connection = executor.newConnection();
+        CountDownLatch pointStarted = new CountDownLatch(1);
+        CountDownLatch releasePoint = new CountDownLatch(1);
+        CountDownLatch scanStarted = new CountDownLatch(1);
+        CountDownLatch releaseScan = new CountDownLatch(1);
+        CountDownLatch lastDone = new CountDownLatch(1);
+
+        connection.execute(OpCode.GET_RANGE, block(scanStarted, releaseScan));
+        assertTrue(scanStarted.await(10, TimeUnit.SECONDS));
+        connection.execute(OpCode.PUT, block(pointStarted, releasePoint));
+        assertTrue(pointStarted.await(10, TimeUnit.SECONDS));
+        connection.executeLast(countDown(lastDone));
+
+        releasePoint.countDown();
+        assertFalse(lastDone.await(200, TimeUnit.MILLISECONDS));
+        releaseScan.countDown();
+        assertTrue(lastDone.await(10, TimeUnit.SECONDS));
+    }
+
+    private static Runnable append(final List<Integer> list, final int value, final CountDownLatch done) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                list.add(value);
+                done.countDown();
+            }
+        };
+    }
+
+    private static Runnable countDown(final CountDownLatch latch) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                latch.countDown();
+            }
+        };
+    }
+
+    private static Runnable block(final CountDownLatch started, final CountDownLatch release) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,257 @@
+/*
+This file is part of PH-Tree:
+A multi-dimensional indexing and storage structure.
+
+Copyright (C) 2011-2015
+Eidgenössische Technische Hochschule Zürich (ETH Zurich)
+Institute for Information Systems
+GlobIS Group
+Bogdan Vancea, Tilmann Zaeschke
+zaeschke@inf.ethz.ch or zoodb@gmx.de
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package ch.ethz.globis.distindex.api;
+
+import java.util.Arrays;
+
+/**
+ * Aggregates computed over the keys of a range query, without returning the keys themselves.
+ *
+ * The count is always computed. The other aggregates are only computed if they were requested:
+ * the bounding box of the keys, the per-dimension sum of the coordinates and a histogram counting
+ * the keys in each cell of a regular grid laid over the query range.
+ *
+ * The cells of the histogram are numbered with dimension 0 varying fastest, so the cell with the
+ * coordinates (c0, c1, ..., cn) is found at the position c0 + c1 * cells + ... + cn * cells^n.
+ */
+public class RangeAggregate {
+
+    /** Only the number of keys in the range is computed. */
+    public static final int COUNT = 0;
+
+    /** The per-dimension minimum and maximum of the keys are computed. */
+    public static final int BOUNDS = 1;
+
+    /** The per-dimension sum of the keys is computed. */
+    public static final int SUM = 2;
+
+    /** A histogram of the keys over a regular grid is computed. */
+    public static final int HISTOGRAM = 4;
+
+    /** The maximum number of cells of a histogram. */
+    public static final int MAX_HISTOGRAM_CELLS = 1 << 20;
+
+    private int aggregates;
+    private long count;
+    private long[] min;
+    private long[] max;
+    private double[] sum;
+
+    /** The number of cells of the histogram grid in each dimension. */
+    private int cells;
+    private long[] histogram;
+
+    /** The range over which the histogram grid is laid, not sent over the network. */
+    private long[] start;
+    private long[] end;
+
+    /**
+     * Create an empty aggregate for a range query.
+     *
+     * @param aggregates                The aggregates to compute, a combination of the flags of this class.
+     * @param start                     The lower left corner of the query range.
+     * @param end                       The upper right corner of the query range.
+     * @param cells                     The number of histogram cells in each dimension, ignored if no
+     *                                  histogram is requested.
+     */
+    public RangeAggregate(int aggregates, long[] start, long[] end, int cells) {
+        this.aggregates = aggregates;
+        this.start = start;
+        this.end = end;
+        int dim = start.length;
+        if (has(BOUNDS)) {
+            min = new long[dim];
+            max = new long[dim];
+            Arrays.fill(min, Long.MAX_VALUE);
+            Arrays.fill(max, Long.MIN_VALUE);
+        }
+        if (has(SUM)) {
+            sum = new double[dim];
+        }
+        if (has(HISTOGRAM)) {
+            this.cells = cells;
+            this.histogram = new long[histogramSize(dim, cells)];
+        }
+    }
+
+    /**
+     * Create an aggregate from its computed values, as received from a host.
+     */
+    public RangeAggregate(int aggregates, long count, long[] min, long[] max, double[] sum,
+                          int cells, long[] histogram) {
+        this.aggregates = aggregates;
+        this.count = count;
+        this.min = min;
+        this.max = max;
+        this.sum = sum;
+        this.cells = cells;
+        this.histogram = histogram;
+    }
+
+    /**
+     * Compute the number of cells of a histogram and check that it does not exceed the maximum.
+     *
+     * @return                          The total number of cells of the histogram.
+     */
+    public static int histogramSize(int dim, int cells) {
+        if (cells < 1) {
+            throw new IllegalArgumentException("A histogram needs at least one cell per dimension.");
+        }
+        long size = 1;
+        for (int i = 0; i < dim; i++) {
+            size *= cells;
+            if (size > MAX_HISTOGRAM_CELLS) {
+                throw new IllegalArgumentException("A histogram can have at most " + MAX_HISTOGRAM_CELLS
+                        + " cells, " + cells + " cells in " + dim + " dimensions are too many.");
+            }
+        }
+        return (int) size;
+    }
+
+    /**
+     * Add a key found in the query range.
+     */
+    public void add(long[] key) {
+        count++;
+        if (min != null) {
+            for (int i = 0; i < key.length; i++) {
+                min[i] = Math.min(min[i], key[i]);
+                max[i] = Math.max(max[i], key[i]);
+            }
+        }
+        if (sum != null) {
+            for (int i = 0; i < key.length; i++) {
+                sum[i] += key[i];
+            }
+        }
+        if (histogram != null) {
+            histogram[cell(key)]++;
+        }
+    }
+
+    /**
+     * Add the aggregates computed over another part of the same query range.
+     */
+    public void merge(RangeAggregate other) {
+        if (other.aggregates != aggregates) {
+            throw new IllegalArgumentException("Only aggregates of the same kind can be merged.");
+        }
+        count += other.count;
+        if (min != null && other.count > 0) {
+            for (int i = 0; i < min.length; i++) {
+                min[i] = Math.min(min[i], other.min[i]);
+                max[i] = Math.max(max[i], other.max[i]);
+            }
+        }
+        if (sum != null) {
+            for (int i = 0; i < sum.length; i++) {
+                sum[i] += other.sum[i];
+            }
+        }
+        if (histogram != null) {
+            for (int i = 0; i < histogram.length; i++) {
+                histogram[i] += other.histogram[i];
+            }
+        }
+    }
+
+    private int cell(long[] key) {
+        int cell = 0;
+        for (int i = key.length - 1; i >= 0; i--) {
+            //the width of the range can exceed the long range, the cells are computed on doubles
+            double width = (double) end[i] - (double) start[i] + 1;
+            int c = (int) (((double) key[i] - (double) start[i]) / width * cells);
+            c = Math.max(0, Math.min(cells - 1, c));
+            cell = cell * cells + c;
+        }
+        return cell;
+    }
+
+    public boolean has(int aggregate) {
+        return (aggregates & aggregate) == aggregate;
+    }
+
+    public int getAggregates() {
+        return aggregates;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return                          The lower left corner of the bounding box of the keys, null if the
+     *                                  bounds were not requested or no key was found.
+     */
+    public long[] getMin() {
+        return (count == 0) ? null : min;
+    }
+
+    /**
+     * @return                          The upper right corner of the bounding box of the keys, null if the
+     *                                  bounds were not requested or no key was found.
+     */
+    public long[] getMax() {
+        return (count == 0) ? null : max;
+    }
+
+    public double[] getSum() {
+        return sum;
+    }
+
+    /**
+     * @return                          The per-dimension mean of the keys, null if the sum was not requested
+     *                                  or no key was found.
+     */
+    public double[] getMean() {
+        if (sum == null || count == 0) {
+            return null;
+        }
+        double[] mean = new double[sum.length];
+        for (int i = 0; i < sum.length; i++) {
+            mean[i] = sum[i] / count;
+        }
+        return mean;
+    }
+
+    public int getCells() {
+        return cells;
+    }
+
+    public long[] getHistogram() {
+        return histogram;
+    }
+
+    @Override
+    public String toString() {
+        return "RangeAggregate{" +
+                "count=" + count +
+                ", min=" + Arrays.toString(getMin()) +
+                ", max=" + Arrays.toString(getMax()) +
+                ", sum=" + Arrays.toString(sum) +
+                ", cells=" + cells +
+                '}';
+    }
+}
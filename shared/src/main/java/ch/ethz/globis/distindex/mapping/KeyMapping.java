@@ -51,6 +51,8 @@ public interface KeyMapping<K> {
     /**
      * Obtain all hostIds that store keys between the range determined by the start and end keys
      * received as arguments.
+     *
+     * The hosts are returned in the order of their key intervals, the same order as in {@link #get()}.
      * @param start
      * @param end
      * @return
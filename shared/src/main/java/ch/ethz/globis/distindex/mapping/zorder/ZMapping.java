@@ -27,12 +27,12 @@ package ch.ethz.globis.distindex.mapping.zorder;
 import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
-import java.util.TreeSet;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -267,10 +267,27 @@ public class ZMapping implements KeyMapping<long[]>{
         return host;
     }
 
+    /**
+     * Return the last key of the z-order interval mapped to a host. The intervals of the hosts follow
+     * each other in the order of the host list.
+     *
+     * @param hostId                            The id of the host.
+     * @return                                  The last key of the interval, or null if the host is not
+     *                                          in the mapping. The key should not be modified.
+     */
+    public long[] getEnd(String hostId) {
+        checkConsistency();
+
+        return endKeys.get(hostId);
+    }
+
     /**
      * Return the list of host id's whose zones intersect with the hyper-cubic range determined by the
      * parameters l and u.
      *
+     * The hosts are returned in the z-order of their intervals, so concatenating the z-ordered entries
+     * of each host gives the entries of the range in z-order.
+     *
      * @param l
      * @param u
      * @return
@@ -280,26 +297,19 @@ public class ZMapping implements KeyMapping<long[]>{
 
         PhTreeSolid.PhIteratorS<String> it = tree.queryIntersect(l, u);
 
-        TreeSet<String> unsortedHosts = new TreeSet<>();
-        String host;
-        PhTreeSolid.PhEntryS<String> e;
+        //a host can own several of the regions intersecting the range
+        Set<String> intersecting = new HashSet<>();
         while (it.hasNext()) {
-            e = it.nextEntry();
-            host = getValueFromTree(e.lower(), e.upper());
-            unsortedHosts.add(host);
+            intersecting.add(it.nextEntry().value());
         }
 
-        //ToDO sort the hosts according to the z-order
-        return new ArrayList<>(unsortedHosts);
-    }
-
-    private String getValueFromTree(long[] lower, long[] upper) {
-        String host = tree.put(lower, upper, null);
-        if (host != null) {
-            tree.put(lower, upper, host);
-            return host;
+        List<String> sortedHosts = new ArrayList<>(intersecting.size());
+        for (String host : hosts) {
+            if (intersecting.contains(host)) {
+                sortedHosts.add(host);
+            }
         }
-        return null;
+        return sortedHosts;
     }
 
     /**
@@ -29,6 +29,10 @@ public class OpCode {
     public static final byte CREATE_INDEX = 1;
     public static final byte PUT = 10;
     public static final byte DELETE = 11;
+    public static final byte PUT_MANY = 12;
+    public static final byte DELETE_MANY = 13;
+    public static final byte PUT_BULK = 14;
+    public static final byte DELETE_RANGE = 15;
     public static final byte GET = 20;
     public static final byte GET_RANGE = 21;
     public static final byte GET_KNN = 22;
@@ -38,6 +42,7 @@ public class OpCode {
     public static final byte GET_DEPTH = 26;
     public static final byte CLOSE_ITERATOR = 27;
     public static final byte CONTAINS = 28;
+    public static final byte AGGREGATE_RANGE = 29;
 
     public static final byte BALANCE_INIT = 30;
     public static final byte BALANCE_PUT = 31;
@@ -52,4 +57,10 @@ public class OpCode {
 
     public static final byte UPDATE_KEY = 46;
     public static final byte GET_RANGE_FILTER = 47;
+    public static final byte GET_MANY = 48;
+    public static final byte CONTAINS_MANY = 49;
+    public static final byte SAMPLE_RANGE = 50;
+    public static final byte GET_STREAM = 51;
+    public static final byte STREAM_CREDIT = 52;
+    public static final byte CANCEL = 53;
 }
\ No newline at end of file
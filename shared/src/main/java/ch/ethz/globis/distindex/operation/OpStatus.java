@@ -29,4 +29,6 @@ public class OpStatus {
     public static final byte SUCCESS = 0;
     public static final byte FAILURE = -1;
     public static final byte OUTDATED_VERSION = 1;
+    /** The request referenced a filter or mapper unknown to the server, it should be sent again inline. */
+    public static final byte UNKNOWN_FUNCTION = 2;
 }
\ No newline at end of file
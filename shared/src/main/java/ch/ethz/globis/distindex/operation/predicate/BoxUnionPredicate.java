@@ -0,0 +1,105 @@
+/*
+This file is part of PH-Tree:
+A multi-dimensional indexing and storage structure.
+
+Copyright (C) 2011-2015
+Eidgenössische Technische Hochschule Zürich (ETH Zurich)
+Institute for Information Systems
+GlobIS Group
+Bogdan Vancea, Tilmann Zaeschke
+zaeschke@inf.ethz.ch or zoodb@gmx.de
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package ch.ethz.globis.distindex.operation.predicate;
+
+/**
+ * Accepts the keys contained in at least one of a list of boxes. The bounds of the boxes are inclusive.
+ */
+public class BoxUnionPredicate extends BuiltinPredicate {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long[][] mins;
+    private final long[][] maxs;
+
+    /**
+     * @param mins                          The lower left corners of the boxes.
+     * @param maxs                          The upper right corners of the boxes, in the same order.
+     */
+    public BoxUnionPredicate(long[][] mins, long[][] maxs) {
+        if (mins.length != maxs.length) {
+            throw new IllegalArgumentException("Each box should have a lower and an upper corner.");
+        }
+        for (int i = 0; i < mins.length; i++) {
+            if (mins[i].length != mins[0].length || maxs[i].length != mins[0].length) {
+                throw new IllegalArgumentException("All the corners should have the same dimension.");
+            }
+        }
+        this.mins = mins;
+        this.maxs = maxs;
+    }
+
+    @Override
+    public byte getType() {
+        return BOX_UNION;
+    }
+
+    @Override
+    public boolean test(long[] key) {
+        for (int i = 0; i < mins.length; i++) {
+            if (contains(mins[i], maxs[i], key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean restrict(long[] min, long[] max) {
+        if (mins.length == 0) {
+            return false;
+        }
+        //the bounding box of the union
+        for (int dim = 0; dim < mins[0].length; dim++) {
+            long low = Long.MAX_VALUE;
+            long high = Long.MIN_VALUE;
+            for (int i = 0; i < mins.length; i++) {
+                low = Math.min(low, mins[i][dim]);
+                high = Math.max(high, maxs[i][dim]);
+            }
+            if (!restrict(min, max, dim, low, high)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean contains(long[] min, long[] max, long[] key) {
+        for (int dim = 0; dim < min.length; dim++) {
+            if (key[dim] < min[dim] || key[dim] > max[dim]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long[][] getMins() {
+        return mins;
+    }
+
+    public long[][] getMaxs() {
+        return maxs;
+    }
+}
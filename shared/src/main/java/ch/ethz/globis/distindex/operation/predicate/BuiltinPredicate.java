@@ -0,0 +1,73 @@
+/*
+This file is part of PH-Tree:
+A multi-dimensional indexing and storage structure.
+
+Copyright (C) 2011-2015
+Eidgenössische Technische Hochschule Zürich (ETH Zurich)
+Institute for Information Systems
+GlobIS Group
+Bogdan Vancea, Tilmann Zaeschke
+zaeschke@inf.ethz.ch or zoodb@gmx.de
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package ch.ethz.globis.distindex.operation.predicate;
+
+import ch.ethz.globis.pht.PhPredicate;
+
+/**
+ * A predicate known to the middleware. Unlike arbitrary predicates, which are shipped as serialized classes,
+ * the built-in predicates are sent in a compact binary form and evaluated without deserializing any class.
+ *
+ * Most built-in predicates only accept keys within a bounding box, which is used to narrow down the range
+ * of the query before walking the tree.
+ */
+public abstract class BuiltinPredicate implements PhPredicate {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final byte WITHIN_DISTANCE = 1;
+    public static final byte BOX_UNION = 2;
+    public static final byte POLYGON = 3;
+    public static final byte INTERVAL = 4;
+
+    /**
+     * @return                              The type of the predicate, used to encode it.
+     */
+    public abstract byte getType();
+
+    /**
+     * Narrow down the query range received as argument to the keys that might be accepted by this predicate.
+     * The arrays are modified in place.
+     *
+     * @param min                           The lower left corner of the query range.
+     * @param max                           The upper right corner of the query range.
+     * @return                              False if no key of the range can be accepted.
+     */
+    public boolean restrict(long[] min, long[] max) {
+        return true;
+    }
+
+    /**
+     * Intersect the interval of a single dimension of the query range with [low, high].
+     */
+    static boolean restrict(long[] min, long[] max, int dim, long low, long high) {
+        if (dim >= min.length) {
+            return true;
+        }
+        min[dim] = Math.max(min[dim], low);
+        max[dim] = Math.min(max[dim], high);
+        return min[dim] <= max[dim];
+    }
+}
@@ -0,0 +1,73 @@
+/*
+This file is part of PH-Tree:
+A multi-dimensional indexing and storage structure.
+
+Copyright (C) 2011-2015
+Eidgenössische Technische Hochschule Zürich (ETH Zurich)
+Institute for Information Systems
+GlobIS Group
+Bogdan Vancea, Tilmann Zaeschke
+zaeschke@inf.ethz.ch or zoodb@gmx.de
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package ch.ethz.globis.distindex.operation.predicate;
+
+/**
+ * Accepts the keys whose value in a single dimension lies within an inclusive interval.
+ */
+public class IntervalPredicate extends BuiltinPredicate {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int dim;
+    private final long min;
+    private final long max;
+
+    public IntervalPredicate(int dim, long min, long max) {
+        if (dim < 0) {
+            throw new IllegalArgumentException("The dimension should not be negative.");
+        }
+        this.dim = dim;
+        this.min = min;
+        this.max = max;
+    }
+
+    @Override
+    public byte getType() {
+        return INTERVAL;
+    }
+
+    @Override
+    public boolean test(long[] key) {
+        return key[dim] >= min && key[dim] <= max;
+    }
+
+    @Override
+    public boolean restrict(long[] min, long[] max) {
+        return restrict(min, max, dim, this.min, this.max);
+    }
+
+    public int getDim() {
+        return dim;
+    }
+
+    public long getMin() {
+        return min;
+    }
+
+    public long getMax() {
+        return max;
+    }
+}
@@ -0,0 +1,110 @@
+/*
+This file is part of PH-Tree:
+A multi-dimensional indexing and storage structure.
+
+Copyright (C) 2011-2015
+Eidgenössische Technische Hochschule Zürich (ETH Zurich)
+Institute for Information Systems
+GlobIS Group
+Bogdan Vancea, Tilmann Zaeschke
+zaeschke@inf.ethz.ch or zoodb@gmx.de
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package ch.ethz.globis.distindex.operation.predicate;
+
+/**
+ * Accepts the keys whose projection on two dimensions lies inside a simple polygon. The other dimensions
+ * are not constrained.
+ *
+ * Containment is decided with the even-odd rule, so the points on the left and bottom edges are inside,
+ * while the points on the right and top edges are outside.
+ */
+public class PolygonPredicate extends BuiltinPredicate {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int dimX;
+    private final int dimY;
+    private final long[] xs;
+    private final long[] ys;
+
+    /**
+     * @param dimX                          The dimension holding the x coordinate of the keys.
+     * @param dimY                          The dimension holding the y coordinate of the keys.
+     * @param xs                            The x coordinates of the vertices of the polygon.
+     * @param ys                            The y coordinates of the vertices of the polygon.
+     */
+    public PolygonPredicate(int dimX, int dimY, long[] xs, long[] ys) {
+        if (xs.length != ys.length || xs.length < 3) {
+            throw new IllegalArgumentException("A polygon needs at least 3 vertices, each with two coordinates.");
+        }
+        if (dimX < 0 || dimY < 0 || dimX == dimY) {
+            throw new IllegalArgumentException("The polygon should be defined over two different dimensions.");
+        }
+        this.dimX = dimX;
+        this.dimY = dimY;
+        this.xs = xs;
+        this.ys = ys;
+    }
+
+    @Override
+    public byte getType() {
+        return POLYGON;
+    }
+
+    @Override
+    public boolean test(long[] key) {
+        double x = key[dimX];
+        double y = key[dimY];
+        boolean inside = false;
+        for (int i = 0, j = xs.length - 1; i < xs.length; j = i++) {
+            double xi = xs[i], yi = ys[i];
+            double xj = xs[j], yj = ys[j];
+            if ((yi > y) != (yj > y) && x < (xj - xi) * (y - yi) / (yj - yi) + xi) {
+                inside = !inside;
+            }
+        }
+        return inside;
+    }
+
+    @Override
+    public boolean restrict(long[] min, long[] max) {
+        long minX = Long.MAX_VALUE, maxX = Long.MIN_VALUE;
+        long minY = Long.MAX_VALUE, maxY = Long.MIN_VALUE;
+        for (int i = 0; i < xs.length; i++) {
+            minX = Math.min(minX, xs[i]);
+            maxX = Math.max(maxX, xs[i]);
+            minY = Math.min(minY, ys[i]);
+            maxY = Math.max(maxY, ys[i]);
+        }
+        return restrict(min, max, dimX, minX, maxX) && restrict(min, max, dimY, minY, maxY);
+    }
+
+    public int getDimX() {
+        return dimX;
+    }
+
+    public int getDimY() {
+        return dimY;
+    }
+
+    public long[] getXs() {
+        return xs;
+    }
+
+    public long[] getYs() {
+        return ys;
+    }
+}
@@ -0,0 +1,54 @@
+/*
+This file is part of PH-Tree:
+A multi-dimensional indexing and storage structure.
+
+Copyright (C) 2011-2015
+Eidgenössische Technische Hochschule Zürich (ETH Zurich)
+Institute for Information Systems
+GlobIS Group
+Bogdan Vancea, Tilmann Zaeschke
+zaeschke@inf.ethz.ch or zoodb@gmx.de
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package ch.ethz.globis.distindex.operation.predicate;
+
+/**
+ * Factory methods for the built-in predicates.
+ */
+public class Predicates {
+
+    private Predicates() {
+    }
+
+    public static BuiltinPredicate withinDistance(long[] center, double distance) {
+        return new WithinDistancePredicate(center, distance);
+    }
+
+    public static BuiltinPredicate box(long[] min, long[] max) {
+        return new BoxUnionPredicate(new long[][] { min }, new long[][] { max });
+    }
+
+    public static BuiltinPredicate boxUnion(long[][] mins, long[][] maxs) {
+        return new BoxUnionPredicate(mins, maxs);
+    }
+
+    public static BuiltinPredicate polygon(int dimX, int dimY, long[] xs, long[] ys) {
+        return new PolygonPredicate(dimX, dimY, xs, ys);
+    }
+
+    public static BuiltinPredicate interval(int dim, long min, long max) {
+        return new IntervalPredicate(dim, min, max);
+    }
+}
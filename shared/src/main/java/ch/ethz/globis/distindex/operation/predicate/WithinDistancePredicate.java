@@ -0,0 +1,85 @@
+/*
+This file is part of PH-Tree:
+A multi-dimensional indexing and storage structure.
+
+Copyright (C) 2011-2015
+Eidgenössische Technische Hochschule Zürich (ETH Zurich)
+Institute for Information Systems
+GlobIS Group
+Bogdan Vancea, Tilmann Zaeschke
+zaeschke@inf.ethz.ch or zoodb@gmx.de
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package ch.ethz.globis.distindex.operation.predicate;
+
+/**
+ * Accepts the keys whose euclidean distance to a center point is at most the given distance.
+ */
+public class WithinDistancePredicate extends BuiltinPredicate {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long[] center;
+    private final double distance;
+
+    public WithinDistancePredicate(long[] center, double distance) {
+        if (distance < 0) {
+            throw new IllegalArgumentException("The distance should not be negative.");
+        }
+        this.center = center;
+        this.distance = distance;
+    }
+
+    @Override
+    public byte getType() {
+        return WITHIN_DISTANCE;
+    }
+
+    @Override
+    public boolean test(long[] key) {
+        double limit = distance * distance;
+        double sum = 0;
+        for (int i = 0; i < center.length; i++) {
+            double d = (double) key[i] - (double) center[i];
+            sum += d * d;
+            if (sum > limit) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean restrict(long[] min, long[] max) {
+        //the double to long conversion saturates for large distances
+        long radius = (long) Math.ceil(distance);
+        for (int i = 0; i < center.length; i++) {
+            long low = (center[i] < Long.MIN_VALUE + radius) ? Long.MIN_VALUE : center[i] - radius;
+            long high = (center[i] > Long.MAX_VALUE - radius) ? Long.MAX_VALUE : center[i] + radius;
+            if (!restrict(min, max, i, low, high)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long[] getCenter() {
+        return center;
+    }
+
+    public double getDistance() {
+        return distance;
+    }
+}
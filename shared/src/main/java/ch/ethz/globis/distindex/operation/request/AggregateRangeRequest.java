@@ -0,0 +1,78 @@
+/*
+This file is part of PH-Tree:
+A multi-dimensional indexing and storage structure.
+
+Copyright (C) 2011-2015
+Eidgenössische Technische Hochschule Zürich (ETH Zurich)
+Institute for Information Systems
+GlobIS Group
+Bogdan Vancea, Tilmann Zaeschke
+zaeschke@inf.ethz.ch or zoodb@gmx.de
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package ch.ethz.globis.distindex.operation.request;
+
+import ch.ethz.globis.distindex.operation.predicate.BuiltinPredicate;
+
+/**
+ * Request computing aggregates over the keys in a range, optionally only over the ones matching a
+ * built-in predicate. The hosts reply with the aggregates instead of the keys.
+ *
+ * @param <K>                               The type of the keys.
+ */
+public class AggregateRangeRequest<K> extends BaseRequest {
+
+    private K start;
+    private K end;
+
+    /** The predicate the aggregated keys should match, null if all the keys in the range are aggregated. */
+    private BuiltinPredicate filter;
+
+    /** The aggregates to compute, as defined by RangeAggregate. */
+    private int aggregates;
+
+    /** The number of histogram cells in each dimension. */
+    private int cells;
+
+    public AggregateRangeRequest(int id, byte opCode, String indexId, int mappingVersion, K start, K end,
+                                 BuiltinPredicate filter, int aggregates, int cells) {
+        super(id, opCode, indexId, mappingVersion);
+        this.start = start;
+        this.end = end;
+        this.filter = filter;
+        this.aggregates = aggregates;
+        this.cells = cells;
+    }
+
+    public K getStart() {
+        return start;
+    }
+
+    public K getEnd() {
+        return end;
+    }
+
+    public BuiltinPredicate getFilter() {
+        return filter;
+    }
+
+    public int getAggregates() {
+        return aggregates;
+    }
+
+    public int getCells() {
+        return cells;
+    }
+}
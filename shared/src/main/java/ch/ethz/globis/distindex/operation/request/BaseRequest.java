@@ -34,6 +34,9 @@ public class BaseRequest implements Request {
     private final String indexId;
     private final int mappingVersion;
 
+    /** Whether the client accepts the keys of result lists in the compact encoding. */
+    private boolean compactKeys;
+
     public BaseRequest(int id, byte opCode, String indexId, int mappingVersion) {
         this.id = id;
         this.opCode = opCode;
@@ -61,6 +64,14 @@ public class BaseRequest implements Request {
         return mappingVersion;
     }
 
+    public boolean isCompactKeys() {
+        return compactKeys;
+    }
+
+    public void setCompactKeys(boolean compactKeys) {
+        this.compactKeys = compactKeys;
+    }
+
     public int metadataSize() {
         return 4 + 1 + indexId.getBytes().length + 4 + 4;
     }
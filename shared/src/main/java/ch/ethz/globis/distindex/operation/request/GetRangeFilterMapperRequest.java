@@ -33,6 +33,12 @@ public class GetRangeFilterMapperRequest<K> extends GetRangeRequest<K> {
     private PhMapper mapper;
     private int maxResults;
 
+    /** Whether the serialized filter and mapper are sent even if the servers should already know them. */
+    private boolean inlineFunctions;
+
+    /** Whether the receiver knew the filter and mapper referenced by the request. */
+    private boolean resolved = true;
+
     public GetRangeFilterMapperRequest(int id, byte opCode, String indexId, int mappingVersion,
                                        K start, K end,
                                        int maxResults,
@@ -54,4 +60,20 @@ public class GetRangeFilterMapperRequest<K> extends GetRangeRequest<K> {
     public int getMaxResults() {
         return maxResults;
     }
+
+    public boolean isInlineFunctions() {
+        return inlineFunctions;
+    }
+
+    public void setInlineFunctions(boolean inlineFunctions) {
+        this.inlineFunctions = inlineFunctions;
+    }
+
+    public boolean isResolved() {
+        return resolved;
+    }
+
+    public void setResolved(boolean resolved) {
+        this.resolved = resolved;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,58 @@
+/*
+This file is part of PH-Tree:
+A multi-dimensional indexing and storage structure.
+
+Copyright (C) 2011-2015
+Eidgenössische Technische Hochschule Zürich (ETH Zurich)
+Institute for Information Systems
+GlobIS Group
+Bogdan Vancea, Tilmann Zaeschke
+zaeschke@inf.ethz.ch or zoodb@gmx.de
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package ch.ethz.globis.distindex.operation.request;
+
+/**
+ * Request opening a streaming scan. The host pushes the entries in chunks of batch size entries, without
+ * waiting for a request for each chunk, as long as the client granted it credit. Each chunk consumes one
+ * unit of credit. The client grants more credit with STREAM_CREDIT requests referencing the id of this
+ * request.
+ *
+ * The chunks are result responses with the id of this request. All of them except the last one carry the
+ * id of the iterator on the host, which can be used to open a new stream continuing the scan.
+ *
+ * @param <K>                               The type of the keys.
+ */
+public class GetStreamRequest<K> extends GetIteratorBatchRequest<K> {
+
+    /** The number of chunks the host can push before waiting for more credit. */
+    private int credit;
+
+    public GetStreamRequest(int id, byte opCode, String indexId, int mappingVersion, String iteratorId,
+                            int batchSize, int credit) {
+        super(id, opCode, indexId, mappingVersion, iteratorId, batchSize);
+        this.credit = credit;
+    }
+
+    public GetStreamRequest(int id, byte opCode, String indexId, int mappingVersion, String iteratorId,
+                            int batchSize, K start, K end, int credit) {
+        super(id, opCode, indexId, mappingVersion, iteratorId, batchSize, start, end);
+        this.credit = credit;
+    }
+
+    public int getCredit() {
+        return credit;
+    }
+}
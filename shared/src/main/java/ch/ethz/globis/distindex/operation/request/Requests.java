@@ -26,10 +26,12 @@ package ch.ethz.globis.distindex.operation.request;
 
 import ch.ethz.globis.distindex.mapping.KeyMapping;
 import ch.ethz.globis.distindex.operation.OpCode;
+import ch.ethz.globis.distindex.operation.predicate.BuiltinPredicate;
 import ch.ethz.globis.distindex.orchestration.ClusterService;
 import ch.ethz.globis.pht.PhPredicate;
 import ch.ethz.globis.pht.util.PhMapper;
 
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -41,10 +43,17 @@ public class Requests<K, V> {
 
     private ClusterService<K> clusterService;
 
+    /** Whether the requests returning lists of entries ask for the compact key encoding. */
+    private boolean compactKeys = false;
+
     public Requests(ClusterService<K> clusterService) {
         this.clusterService = clusterService;
     }
 
+    public void setCompactKeys(boolean compactKeys) {
+        this.compactKeys = compactKeys;
+    }
+
     public GetRequest<K> newGet(K key) {
         return new GetRequest<>(nextId(), OpCode.GET, PLACEHOLDER, mappingVersion(), key);
     }
@@ -54,29 +63,98 @@ public class Requests<K, V> {
     }
 
     public GetRangeRequest<K> newGetRange(K start, K end) {
-        return new GetRangeRequest<>(nextId(), OpCode.GET_RANGE, PLACEHOLDER, mappingVersion(), start, end);
+        return withResultOptions(new GetRangeRequest<>(nextId(), OpCode.GET_RANGE, PLACEHOLDER, mappingVersion(), start, end));
     }
 
     public GetRangeRequest<K> newGetRange(K start, K end, double distance) {
-        return new GetRangeRequest<>(nextId(), OpCode.GET_RANGE, PLACEHOLDER, mappingVersion(), start, end, distance);
+        return withResultOptions(new GetRangeRequest<>(nextId(), OpCode.GET_RANGE, PLACEHOLDER, mappingVersion(), start, end, distance));
     }
 
     public GetKNNRequest<K> newGetKNN(K key, int k) {
-        return new GetKNNRequest<>(nextId(), OpCode.GET_KNN, PLACEHOLDER, mappingVersion(), key, k);
+        return withResultOptions(new GetKNNRequest<>(nextId(), OpCode.GET_KNN, PLACEHOLDER, mappingVersion(), key, k));
     }
 
     public GetIteratorBatchRequest<K> newGetBatch(String iteratorId, int size) {
-        return new GetIteratorBatchRequest<>(nextId(), OpCode.GET_BATCH, PLACEHOLDER, mappingVersion(), iteratorId, size);
+        return withResultOptions(new GetIteratorBatchRequest<K>(nextId(), OpCode.GET_BATCH, PLACEHOLDER, mappingVersion(), iteratorId, size));
     }
 
     public GetIteratorBatchRequest<K> newGetBatch(String iteratorId, int size, K start, K end) {
-        return new GetIteratorBatchRequest<>(nextId(), OpCode.GET_BATCH, PLACEHOLDER, mappingVersion(), iteratorId, size, start, end);
+        return withResultOptions(new GetIteratorBatchRequest<>(nextId(), OpCode.GET_BATCH, PLACEHOLDER, mappingVersion(), iteratorId, size, start, end));
+    }
+
+    public GetStreamRequest<K> newGetStream(String iteratorId, int batchSize, int credit) {
+        return withResultOptions(new GetStreamRequest<K>(nextId(), OpCode.GET_STREAM, PLACEHOLDER, mappingVersion(), iteratorId, batchSize, credit));
+    }
+
+    public GetStreamRequest<K> newGetStream(String iteratorId, int batchSize, K start, K end, int credit) {
+        return withResultOptions(new GetStreamRequest<>(nextId(), OpCode.GET_STREAM, PLACEHOLDER, mappingVersion(), iteratorId, batchSize, start, end, credit));
+    }
+
+    /**
+     * Create a request granting credit to a streaming scan. The hosts do not reply to these requests.
+     *
+     * @param streamId                  The id of the request that opened the stream.
+     * @param credit                    The number of additional chunks the host can push, 0 to cancel the stream.
+     * @param chunkSize                 The number of entries in the next chunks.
+     */
+    public MapRequest newStreamCredit(int streamId, int credit, int chunkSize) {
+        MapRequest request = newMap(OpCode.STREAM_CREDIT);
+        request.addParamater("streamId", streamId);
+        request.addParamater("credit", credit);
+        request.addParamater("chunkSize", chunkSize);
+        return request;
+    }
+
+    /**
+     * Create a request cancelling a request that is still running on a host. The hosts do not reply to
+     * these requests. The cancelled request still receives a response.
+     *
+     * @param requestId                 The id of the request to cancel.
+     */
+    public MapRequest newCancel(int requestId) {
+        MapRequest request = newMap(OpCode.CANCEL);
+        request.addParamater("requestId", requestId);
+        return request;
+    }
+
+    public PutManyRequest<K, V> newPutMany(List<K> keys, List<V> values) {
+        return withResultOptions(new PutManyRequest<>(nextId(), OpCode.PUT_MANY, PLACEHOLDER, mappingVersion(), keys, values));
+    }
+
+    public PutManyRequest<K, V> newPutBulk(List<K> keys, List<V> values) {
+        return new PutManyRequest<>(nextId(), OpCode.PUT_BULK, PLACEHOLDER, mappingVersion(), keys, values);
+    }
+
+    public MultiKeyRequest<K> newGetMany(List<K> keys) {
+        return withResultOptions(new MultiKeyRequest<>(nextId(), OpCode.GET_MANY, PLACEHOLDER, mappingVersion(), keys));
+    }
+
+    public MultiKeyRequest<K> newDeleteMany(List<K> keys) {
+        return withResultOptions(new MultiKeyRequest<>(nextId(), OpCode.DELETE_MANY, PLACEHOLDER, mappingVersion(), keys));
+    }
+
+    public MultiKeyRequest<K> newContainsMany(List<K> keys) {
+        return new MultiKeyRequest<>(nextId(), OpCode.CONTAINS_MANY, PLACEHOLDER, mappingVersion(), keys);
     }
 
     public DeleteRequest<K> newDelete(K key) {
         return new DeleteRequest<>(nextId(), OpCode.DELETE, PLACEHOLDER, mappingVersion(), key);
     }
 
+    public DeleteRangeRequest<K> newDeleteRange(K start, K end, BuiltinPredicate filter) {
+        return new DeleteRangeRequest<>(nextId(), OpCode.DELETE_RANGE, PLACEHOLDER, mappingVersion(), start, end, filter);
+    }
+
+    public AggregateRangeRequest<K> newAggregateRange(K start, K end, BuiltinPredicate filter, int aggregates, int cells) {
+        return new AggregateRangeRequest<>(nextId(), OpCode.AGGREGATE_RANGE, PLACEHOLDER, mappingVersion(),
+                start, end, filter, aggregates, cells);
+    }
+
+    public SampleRangeRequest<K> newSampleRange(K start, K end, BuiltinPredicate filter, int size) {
+        return withResultOptions(new SampleRangeRequest<>(nextId(), OpCode.SAMPLE_RANGE, PLACEHOLDER, mappingVersion(),
+                start, end, filter, size));
+    }
+
     public CreateRequest newCreate(int dim, int depth) {
         return new CreateRequest(nextId(), OpCode.CREATE_INDEX, PLACEHOLDER, mappingVersion(), dim, depth);
     }
@@ -155,6 +233,11 @@ public class Requests<K, V> {
     }
 
     public <R> GetRangeFilterMapperRequest<K> newGetRangeFilterMaper(K min, K max, int maxResults, PhPredicate filter, PhMapper<V, R> mapper) {
-        return new GetRangeFilterMapperRequest<>(nextId(), OpCode.GET_RANGE_FILTER, PLACEHOLDER, mappingVersion(), min, max, maxResults, filter, mapper);
+        return withResultOptions(new GetRangeFilterMapperRequest<>(nextId(), OpCode.GET_RANGE_FILTER, PLACEHOLDER, mappingVersion(), min, max, maxResults, filter, mapper));
+    }
+
+    private <R extends BaseRequest> R withResultOptions(R request) {
+        request.setCompactKeys(compactKeys);
+        return request;
     }
 }
\ No newline at end of file
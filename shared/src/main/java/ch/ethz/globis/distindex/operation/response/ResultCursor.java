@@ -0,0 +1,57 @@
+/*
+This file is part of PH-Tree:
+A multi-dimensional indexing and storage structure.
+
+Copyright (C) 2011-2015
+Eidgenössische Technische Hochschule Zürich (ETH Zurich)
+Institute for Information Systems
+GlobIS Group
+Bogdan Vancea, Tilmann Zaeschke
+zaeschke@inf.ethz.ch or zoodb@gmx.de
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package ch.ethz.globis.distindex.operation.response;
+
+/**
+ * A forward-only cursor over the entries of a result that are produced on demand.
+ *
+ * @param <K>                       The type of the key.
+ * @param <V>                       The type of the value.
+ */
+public interface ResultCursor<K, V> {
+
+    /**
+     * Move to the next entry.
+     *
+     * @return                      True if the cursor points to an entry, false if there are no more entries.
+     */
+    public boolean advance();
+
+    /**
+     * @return                      The key of the current entry.
+     */
+    public K key();
+
+    /**
+     * @return                      The value of the current entry.
+     */
+    public V value();
+
+    /**
+     * Release the resources held by the cursor. Called once the cursor was consumed, even if consuming it failed.
+     */
+    public default void close() {
+    }
+}
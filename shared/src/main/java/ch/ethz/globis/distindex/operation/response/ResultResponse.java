@@ -34,6 +34,12 @@ public class ResultResponse<K, V> extends BaseResponse {
 
     private IndexEntryList<K, V> entries;
 
+    /** Whether the keys of the entries should be encoded compactly, relative to the previous key. */
+    private boolean compactKeys;
+
+    /** The number of entries the result was selected from, -1 if the result holds all of them. */
+    private long totalCount = -1;
+
     public ResultResponse() {}
 
     public ResultResponse(byte opCode, int requestId, byte status, IndexEntryList<K, V> entries) {
@@ -67,6 +73,22 @@ public class ResultResponse<K, V> extends BaseResponse {
         return entries;
     }
 
+    public boolean isCompactKeys() {
+        return compactKeys;
+    }
+
+    public void setCompactKeys(boolean compactKeys) {
+        this.compactKeys = compactKeys;
+    }
+
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    public void setTotalCount(long totalCount) {
+        this.totalCount = totalCount;
+    }
+
     public IndexEntry<K, V> singleEntry() {
         return (entries == null ) ? null : entries.get(0);
     }
@@ -80,6 +102,7 @@ public class ResultResponse<K, V> extends BaseResponse {
         ResultResponse<?,?> that = (ResultResponse<?,?>) o;
 
         if (nrEntries != that.nrEntries) return false;
+        if (totalCount != that.totalCount) return false;
         if (entries != null ? !entries.equals(that.entries) : that.entries != null) return false;
         if (iteratorId != null ? !iteratorId.equals(that.iteratorId) : that.iteratorId != null) return false;
 
@@ -90,6 +113,7 @@ public class ResultResponse<K, V> extends BaseResponse {
     public int hashCode() {
         int result = super.hashCode();
         result = 31 * result + nrEntries;
+        result = 31 * result + (int) (totalCount ^ (totalCount >>> 32));
         result = 31 * result + (iteratorId != null ? iteratorId.hashCode() : 0);
         result = 31 * result + (entries != null ? entries.hashCode() : 0);
         return result;
@@ -0,0 +1,48 @@
+/*
+This file is part of PH-Tree:
+A multi-dimensional indexing and storage structure.
+
+Copyright (C) 2011-2015
+Eidgenössische Technische Hochschule Zürich (ETH Zurich)
+Institute for Information Systems
+GlobIS Group
+Bogdan Vancea, Tilmann Zaeschke
+zaeschke@inf.ethz.ch or zoodb@gmx.de
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package ch.ethz.globis.distindex.operation.response;
+
+/**
+ * A result response whose entries are not held in memory, but read from a cursor when the response is encoded.
+ *
+ * On the wire, it is identical to a ResultResponse holding the same entries. The cursor can only be
+ * consumed once.
+ *
+ * @param <K>                       The type of the key.
+ * @param <V>                       The type of the value.
+ */
+public class StreamingResultResponse<K, V> extends ResultResponse<K, V> {
+
+    private final ResultCursor<K, V> cursor;
+
+    public StreamingResultResponse(byte opCode, int requestId, byte status, ResultCursor<K, V> cursor) {
+        super(opCode, requestId, status);
+        this.cursor = cursor;
+    }
+
+    public ResultCursor<K, V> getCursor() {
+        return cursor;
+    }
+}
@@ -141,6 +141,28 @@ public class MultidimUtil {
         return result;
     }
 
+    /**
+     * Compare two keys by their position on the z-order curve. The bits of the keys are interleaved from
+     * the most significant bit down, with the first dimension being the most significant at each bit
+     * position. The bits are compared as unsigned, the same way as the z-mapping orders the keys.
+     *
+     * @return                          A negative number, zero or a positive number if a is before, equal
+     *                                  to or after b on the z-order curve.
+     */
+    public static int compareZOrder(long[] a, long[] b) {
+        int dim = -1;
+        long highest = 0;
+        for (int i = 0; i < a.length; i++) {
+            long diff = a[i] ^ b[i];
+            //diff has a more significant highest bit than the highest difference so far
+            if (Long.compareUnsigned(highest, diff) < 0 && Long.compareUnsigned(highest, highest ^ diff) < 0) {
+                dim = i;
+                highest = diff;
+            }
+        }
+        return (dim < 0) ? 0 : Long.compareUnsigned(a[dim], b[dim]);
+    }
+
     public static long[] next(long[] key, int depth) {
         long[] nextKey = Arrays.copyOf(key, key.length);
         for (int bitPos = 0; bitPos < depth; bitPos++) {
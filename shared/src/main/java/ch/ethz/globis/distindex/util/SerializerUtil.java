@@ -25,12 +25,14 @@ along with this program.  If not, see <http://www.gnu.org/licenses/>.
 package ch.ethz.globis.distindex.util;
 
 import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.ByteBufferInput;
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
 
 import org.objenesis.strategy.StdInstantiatorStrategy;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 
 public class SerializerUtil {
 
@@ -76,6 +78,25 @@ public class SerializerUtil {
         return obj;
     }
 
+    /**
+     * Deserialize an object from the remaining bytes of the buffer, without copying them.
+     * The position of the buffer is moved to its limit.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T deserialize(ByteBuffer data) {
+        Kryo kryo = kryos.get();
+        Input input;
+        if (data.hasArray()) {
+            input = new Input(data.array(), data.arrayOffset() + data.position(), data.remaining());
+        } else {
+            input = new ByteBufferInput(data.slice());
+        }
+        T obj = (T) kryo.readClassAndObject(input);
+        input.close();
+        data.position(data.limit());
+        return obj;
+    }
+
     public byte[] serializeDefault(Serializable object) throws IOException {
         ByteArrayOutputStream buffer = new ByteArrayOutputStream();
         byte[] data;
@@ -0,0 +1,86 @@
+/*
+This file is part of PH-Tree:
+A multi-dimensional indexing and storage structure.
+
+Copyright (C) 2011-2015
+Eidgenössische Technische Hochschule Zürich (ETH Zurich)
+Institute for Information Systems
+GlobIS Group
+Bogdan Vancea, Tilmann Zaeschke
+zaeschke@inf.ethz.ch or zoodb@gmx.de
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package ch.ethz.globis.distindex.api;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class RangeAggregateTest {
+
+    private static final int ALL = RangeAggregate.BOUNDS | RangeAggregate.SUM | RangeAggregate.HISTOGRAM;
+
+    @Test
+    public void testAddAndMerge() {
+        long[] start = {0, 0};
+        long[] end = {9, 19};
+        RangeAggregate first = new RangeAggregate(ALL, start, end, 2);
+        first.add(new long[] {1, 1});
+        first.add(new long[] {9, 2});
+        RangeAggregate second = new RangeAggregate(ALL, start, end, 2);
+        second.add(new long[] {4, 19});
+        RangeAggregate empty = new RangeAggregate(ALL, start, end, 2);
+
+        RangeAggregate global = new RangeAggregate(ALL, start, end, 2);
+        global.merge(first);
+        global.merge(empty);
+        global.merge(second);
+        assertEquals(3, global.getCount());
+        assertArrayEquals(new long[] {1, 1}, global.getMin());
+        assertArrayEquals(new long[] {9, 19}, global.getMax());
+        assertArrayEquals(new double[] {14, 22}, global.getSum(), 0);
+        //dimension 0 varies fastest
+        assertArrayEquals(new long[] {1, 1, 1, 0}, global.getHistogram());
+    }
+
+    @Test
+    public void testEmpty() {
+        RangeAggregate aggregate = new RangeAggregate(ALL, new long[] {0}, new long[] {10}, 4);
+        assertEquals(0, aggregate.getCount());
+        assertNull(aggregate.getMin());
+        assertNull(aggregate.getMax());
+        assertNull(aggregate.getMean());
+        assertArrayEquals(new long[4], aggregate.getHistogram());
+    }
+
+    @Test
+    public void testHistogramOverWholeRange() {
+        long[] start = {Long.MIN_VALUE};
+        long[] end = {Long.MAX_VALUE};
+        RangeAggregate aggregate = new RangeAggregate(RangeAggregate.HISTOGRAM, start, end, 4);
+        aggregate.add(start);
+        aggregate.add(new long[] {-(1L << 62)});
+        aggregate.add(new long[] {1L << 60});
+        aggregate.add(end);
+        assertArrayEquals(new long[] {1, 1, 1, 1}, aggregate.getHistogram());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testHistogramTooLarge() {
+        RangeAggregate.histogramSize(8, 16);
+    }
+}
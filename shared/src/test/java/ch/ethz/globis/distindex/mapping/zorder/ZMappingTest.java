@@ -33,6 +33,7 @@ import java.util.*;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 public class ZMappingTest {
 
@@ -86,6 +87,23 @@ public class ZMappingTest {
         assertEquals(4, hosts.size());
     }
 
+    @Test
+    public void testRangeQuery_HostsInZOrder() {
+        ZMapping mapping = new ZMapping(2, 64);
+        //the host ids are not sorted alphabetically
+        List<String> hosts = Arrays.asList("d", "b", "e", "a", "c", "f", "h", "g");
+        mapping.add(hosts);
+
+        assertEquals(hosts, mapping.get(new long[] {Long.MIN_VALUE, Long.MIN_VALUE},
+                new long[] {Long.MAX_VALUE, Long.MAX_VALUE}));
+
+        List<String> intersecting = mapping.get(new long[] {-1L, -1L}, new long[] {1L, 1L});
+        List<String> expected = new ArrayList<>(hosts);
+        expected.retainAll(intersecting);
+        assertEquals(expected, intersecting);
+        assertEquals(new HashSet<>(intersecting).size(), intersecting.size());
+    }
+
     @Test
     public void testGet_2D_FewHosts() {
         int dim = 2;
@@ -222,4 +240,56 @@ public class ZMappingTest {
         Map<String, String> endKeys = mapping.constructMappingEqual(hosts);
         System.out.println(endKeys);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testIntervalsFollowZOrder() {
+        Random random = new Random(42);
+        List<long[]> keys = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            keys.add(new long[] { random.nextLong(), random.nextLong(), random.nextInt(5) - 2 });
+        }
+        assertIntervalsFollowZOrder(new ZMapping(3, 64), keys);
+
+        keys.clear();
+        for (int i = 0; i < 2000; i++) {
+            keys.add(new long[] { random.nextInt(1 << 16), random.nextInt(1 << 16), random.nextInt(1 << 16) });
+        }
+        assertIntervalsFollowZOrder(new ZMapping(3, 16), keys);
+    }
+
+    private void assertIntervalsFollowZOrder(ZMapping mapping, List<long[]> keys) {
+        mapping.add(Arrays.asList("one", "two", "three", "four", "five"));
+        Collections.sort(keys, new Comparator<long[]>() {
+            @Override
+            public int compare(long[] a, long[] b) {
+                return MultidimUtil.compareZOrder(a, b);
+            }
+        });
+
+        //the sorted keys visit the hosts in the order of the mapping, each host ending at its end key
+        List<String> hosts = mapping.get();
+        int hostIndex = 0;
+        for (long[] key : keys) {
+            while (MultidimUtil.compareZOrder(key, mapping.getEnd(hosts.get(hostIndex))) > 0) {
+                hostIndex++;
+            }
+            assertEquals(hosts.get(hostIndex), mapping.get(key));
+        }
+    }
+
+    @Test
+    public void testCompareZOrder() {
+        long[] key = { 5L, -3L };
+        assertEquals(0, MultidimUtil.compareZOrder(key, key.clone()));
+        for (int i = 0; i < 100; i++) {
+            long[] next = MultidimUtil.next(key, 64);
+            assertTrue(MultidimUtil.compareZOrder(key, next) < 0);
+            assertTrue(MultidimUtil.compareZOrder(next, key) > 0);
+            key = next;
+        }
+        //the first dimension is the most significant one
+        assertTrue(MultidimUtil.compareZOrder(new long[] { 1L, 0L }, new long[] { 0L, 1L }) > 0);
+        //the keys are compared as unsigned
+        assertTrue(MultidimUtil.compareZOrder(new long[] { -1L, 0L }, new long[] { 1L, 0L }) > 0);
+    }
+}
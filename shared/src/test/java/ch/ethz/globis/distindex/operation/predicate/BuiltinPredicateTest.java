@@ -0,0 +1,108 @@
+/*
+This file is part of PH-Tree:
+A multi-dimensional indexing and storage structure.
+
+Copyright (C) 2011-2015
+Eidgenössische Technische Hochschule Zürich (ETH Zurich)
+Institute for Information Systems
+GlobIS Group
+Bogdan Vancea, Tilmann Zaeschke
+zaeschke@inf.ethz.ch or zoodb@gmx.de
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package ch.ethz.globis.distindex.operation.predicate;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BuiltinPredicateTest {
+
+    @Test
+    public void testWithinDistance() {
+        BuiltinPredicate predicate = Predicates.withinDistance(new long[] {10, 10}, 5);
+        assertTrue(predicate.test(new long[] {10, 10}));
+        assertTrue(predicate.test(new long[] {13, 14}));
+        assertFalse(predicate.test(new long[] {14, 14}));
+
+        long[] min = {0, 12};
+        long[] max = {100, 100};
+        assertTrue(predicate.restrict(min, max));
+        assertArrayEquals(new long[] {5, 12}, min);
+        assertArrayEquals(new long[] {15, 15}, max);
+
+        //no overflow for large distances
+        min = new long[] {Long.MIN_VALUE, Long.MIN_VALUE};
+        max = new long[] {Long.MAX_VALUE, Long.MAX_VALUE};
+        assertTrue(Predicates.withinDistance(new long[] {10, -10}, 1e30).restrict(min, max));
+        assertArrayEquals(new long[] {10 - Long.MAX_VALUE, Long.MIN_VALUE}, min);
+        assertArrayEquals(new long[] {Long.MAX_VALUE, Long.MAX_VALUE - 10}, max);
+    }
+
+    @Test
+    public void testBoxUnion() {
+        BuiltinPredicate predicate = Predicates.boxUnion(
+                new long[][] {{0, 0}, {10, 10}},
+                new long[][] {{2, 2}, {12, 12}});
+        assertTrue(predicate.test(new long[] {2, 0}));
+        assertTrue(predicate.test(new long[] {11, 12}));
+        assertFalse(predicate.test(new long[] {5, 5}));
+
+        long[] min = {-100, 1};
+        long[] max = {100, 100};
+        assertTrue(predicate.restrict(min, max));
+        assertArrayEquals(new long[] {0, 1}, min);
+        assertArrayEquals(new long[] {12, 12}, max);
+
+        assertFalse(predicate.restrict(new long[] {20, 20}, new long[] {30, 30}));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBoxUnionWithDifferentDimensions() {
+        Predicates.boxUnion(new long[][] {{0, 0}, {10, 10, 10}}, new long[][] {{2, 2}, {12, 12, 12}});
+    }
+
+    @Test
+    public void testPolygon() {
+        //a triangle in the dimensions 0 and 2
+        BuiltinPredicate predicate = Predicates.polygon(0, 2, new long[] {0, 10, 0}, new long[] {0, 0, 10});
+        assertTrue(predicate.test(new long[] {1, 1000, 1}));
+        assertTrue(predicate.test(new long[] {4, -5, 4}));
+        assertFalse(predicate.test(new long[] {6, 0, 6}));
+        assertFalse(predicate.test(new long[] {-1, 0, 1}));
+
+        long[] min = {-100, -100, 5};
+        long[] max = {100, 100, 100};
+        assertTrue(predicate.restrict(min, max));
+        assertArrayEquals(new long[] {0, -100, 5}, min);
+        assertArrayEquals(new long[] {10, 100, 10}, max);
+    }
+
+    @Test
+    public void testInterval() {
+        BuiltinPredicate predicate = Predicates.interval(1, -5, 5);
+        assertTrue(predicate.test(new long[] {100, -5}));
+        assertFalse(predicate.test(new long[] {0, 6}));
+
+        long[] min = {0, 0};
+        long[] max = {10, 10};
+        assertTrue(predicate.restrict(min, max));
+        assertArrayEquals(new long[] {0, 0}, min);
+        assertArrayEquals(new long[] {10, 5}, max);
+        assertFalse(predicate.restrict(new long[] {0, 6}, new long[] {10, 10}));
+    }
+}
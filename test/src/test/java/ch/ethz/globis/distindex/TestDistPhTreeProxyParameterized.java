@@ -27,7 +27,10 @@ package ch.ethz.globis.distindex;
 import ch.ethz.globis.distindex.api.IndexEntry;
 import ch.ethz.globis.distindex.api.IndexEntryList;
 import ch.ethz.globis.distindex.api.IndexIterator;
+import ch.ethz.globis.distindex.api.RangeAggregate;
 import ch.ethz.globis.distindex.client.pht.PHTreeIndexProxy;
+import ch.ethz.globis.distindex.operation.predicate.BuiltinPredicate;
+import ch.ethz.globis.distindex.operation.predicate.Predicates;
 import ch.ethz.globis.distindex.test.BaseParameterizedTest;
 import ch.ethz.globis.distindex.util.MultidimUtil;
 import ch.ethz.globis.pht.*;
@@ -44,6 +47,9 @@ import org.junit.runners.Parameterized;
 import java.io.IOException;
 import java.math.BigInteger;
 import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import static org.junit.Assert.*;
 
@@ -274,6 +280,298 @@ public class TestDistPhTreeProxyParameterized extends BaseParameterizedTest {
         assertFalse(phTree.contains(key2));
     }
 
+    @Test
+    public void testBatchOperations() throws Exception {
+        phTree.create(2, 64);
+        //small batches, to also split the keys of a host over several requests
+        phTree.setMaxBatchSize(7);
+
+        Random random = new Random(42);
+        List<long[]> keys = new ArrayList<>();
+        List<String> values = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            keys.add(k(random.nextLong(), random.nextLong()));
+            values.add("value" + i);
+        }
+        phTree.put(keys.get(0), "old");
+
+        List<String> previous = phTree.putMany(keys, values);
+        assertEquals("old", previous.get(0));
+        for (int i = 1; i < keys.size(); i++) {
+            assertNull(previous.get(i));
+        }
+        assertEquals(keys.size(), phTree.size());
+        assertEquals(values, phTree.getMany(keys));
+
+        List<long[]> toRemove = new ArrayList<>();
+        for (int i = 0; i < keys.size(); i += 2) {
+            toRemove.add(keys.get(i));
+        }
+        toRemove.add(k(1, 1));
+        List<String> removed = phTree.removeMany(toRemove);
+        for (int i = 0; i < toRemove.size() - 1; i++) {
+            assertEquals(values.get(2 * i), removed.get(i));
+        }
+        assertNull(removed.get(toRemove.size() - 1));
+
+        BitSet contained = phTree.containsMany(keys);
+        for (int i = 0; i < keys.size(); i++) {
+            assertEquals(i % 2 == 1, contained.get(i));
+            assertEquals(i % 2 == 1, phTree.contains(keys.get(i)));
+        }
+    }
+
+    @Test
+    public void testBulkLoad() throws Exception {
+        phTree.create(2, 64);
+        phTree.setBulkChunkSize(100);
+
+        Random random = new Random(42);
+        List<long[]> keys = new ArrayList<>();
+        List<String> values = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            keys.add(k(random.nextLong(), random.nextLong()));
+            values.add("value" + i);
+        }
+        phTree.put(keys.get(0), "old");
+
+        assertEquals(keys.size() - 1, phTree.bulkLoad(keys, values));
+        assertEquals(keys.size(), phTree.size());
+        for (int i = 0; i < keys.size(); i++) {
+            assertEquals(values.get(i), phTree.get(keys.get(i)));
+        }
+    }
+
+    @Test
+    public void testDeleteRange() throws Exception {
+        phTree.create(2, 64);
+        for (long x = -10; x < 10; x++) {
+            for (long y = -10; y < 10; y++) {
+                phTree.put(k(x, y), x + "," + y);
+            }
+        }
+
+        assertEquals(25, phTree.deleteRange(k(0, 0), k(4, 4)));
+        assertEquals(400 - 25, phTree.size());
+        assertFalse(phTree.contains(k(2, 2)));
+        assertTrue(phTree.contains(k(5, 5)));
+        assertEquals(0, phTree.deleteRange(k(0, 0), k(4, 4)));
+
+        //only the keys within the distance of the center are removed
+        BuiltinPredicate filter = Predicates.withinDistance(k(-5, -5), 1.5);
+        assertEquals(9, phTree.deleteRange(k(-10, -10), k(10, 10), filter));
+        assertFalse(phTree.contains(k(-4, -4)));
+        assertTrue(phTree.contains(k(-3, -5)));
+
+        assertEquals(400 - 25 - 9, phTree.deleteRange(k(-10, -10), k(10, 10)));
+        assertEquals(0, phTree.size());
+    }
+
+    @Test
+    public void testAggregateRange() throws Exception {
+        phTree.create(2, 64);
+        for (long x = -10; x < 10; x++) {
+            for (long y = -10; y < 10; y++) {
+                phTree.put(k(x, y), x + "," + y);
+            }
+        }
+
+        assertEquals(25, phTree.countRange(k(0, 0), k(4, 4)));
+        assertEquals(400, phTree.countRange(k(-100, -100), k(100, 100)));
+        assertEquals(0, phTree.countRange(k(20, 20), k(30, 30)));
+
+        int aggregates = RangeAggregate.BOUNDS | RangeAggregate.SUM | RangeAggregate.HISTOGRAM;
+        RangeAggregate aggregate = phTree.aggregate(k(-5, -5), k(14, 4), aggregates, 2);
+        assertEquals(15 * 10, aggregate.getCount());
+        assertArrayEquals(k(-5, -5), aggregate.getMin());
+        assertArrayEquals(k(9, 4), aggregate.getMax());
+        assertArrayEquals(new double[] {2 * 10 * 15, -5 * 15}, aggregate.getSum(), 0);
+        //the cells are 10 wide in each dimension, the ones with x >= 5 only hold 5 columns of keys
+        assertArrayEquals(new long[] {50, 25, 50, 25}, aggregate.getHistogram());
+
+        BuiltinPredicate filter = Predicates.withinDistance(k(-5, -5), 1.5);
+        aggregate = phTree.aggregate(k(-10, -10), k(10, 10), RangeAggregate.BOUNDS, 0, filter);
+        assertEquals(9, aggregate.getCount());
+        assertArrayEquals(k(-6, -6), aggregate.getMin());
+        assertArrayEquals(k(-4, -4), aggregate.getMax());
+        //aggregating does not change the tree
+        assertEquals(400, phTree.size());
+    }
+
+    @Test
+    public void testStreamingIterator() throws Exception {
+        phTree.create(2, 64);
+        Random random = new Random(42);
+        for (int i = 0; i < 2000; i++) {
+            phTree.put(k(random.nextInt(1000) - 500, random.nextInt(1000) - 500), String.valueOf(i));
+        }
+
+        //polling iterators give the reference results
+        phTree.setStreamWindow(0);
+        List<IndexEntry<long[], String>> expected = drain(phTree.iterator());
+        List<IndexEntry<long[], String>> expectedRange = drain(phTree.query(k(-100, -200), k(300, 100)));
+        assertEquals(phTree.size(), expected.size());
+        IndexIterator<long[], String> prefetching = phTree.iterator();
+        prefetching.next();
+        prefetching.close();
+
+        phTree.setStreamWindow(1);
+        phTree.setStreamChunkSize(7);
+        assertEntriesEqual(expected, drain(phTree.iterator()));
+        assertEntriesEqual(expectedRange, drain(phTree.query(k(-100, -200), k(300, 100))));
+
+        phTree.setStreamWindow(3);
+        phTree.setStreamChunkSize(64);
+        assertEntriesEqual(expected, drain(phTree.iterator()));
+
+        //closing a stream early does not disturb the later requests
+        IndexIterator<long[], String> it = phTree.iterator();
+        for (int i = 0; i < 10 && it.hasNext(); i++) {
+            it.next();
+        }
+        it.close();
+        assertEquals(expected.size(), phTree.size());
+        assertEntriesEqual(expected, drain(phTree.iterator()));
+    }
+
+    @Test
+    public void testZOrderedResults() throws Exception {
+        phTree.create(2, 64);
+        Random random = new Random(11);
+        IndexEntryList<long[], String> entries = new IndexEntryList<>();
+        for (int i = 0; i < 1000; i++) {
+            long[] key = k(random.nextInt(1000) - 500, random.nextInt(1000) - 500);
+            if (!phTree.contains(key)) {
+                phTree.put(key, String.valueOf(i));
+                entries.add(key, String.valueOf(i));
+            }
+        }
+
+        //the results of the hosts are concatenated in z-order, without sorting on the client
+        IndexEntryList<long[], String> range = phTree.getRange(k(-300, -200), k(100, 400));
+        assertEqualsEntryLists(MultidimUtil.sort(range), range);
+
+        IndexEntryList<long[], String> all = phTree.getRange(k(-500, -500), k(500, 500));
+        assertEqualsEntryLists(MultidimUtil.sort(entries), all);
+
+        List<PhEntry<String>> queried = phTree.queryAll(k(-300, -200), k(100, 400));
+        assertEquals(range.size(), queried.size());
+        for (int i = 0; i < queried.size(); i++) {
+            assertArrayEquals(range.get(i).getKey(), queried.get(i).getKey());
+        }
+
+        IndexEntryList<long[], String> iterated = new IndexEntryList<>();
+        for (IndexEntry<long[], String> entry : drain(phTree.query(k(-300, -200), k(100, 400)))) {
+            iterated.add(entry);
+        }
+        assertEqualsEntryLists(range, iterated);
+    }
+
+    @Test
+    public void testUnorderedScan() throws Exception {
+        phTree.create(2, 64);
+        Random random = new Random(7);
+        for (int i = 0; i < 2000; i++) {
+            phTree.put(k(random.nextInt(1000) - 500, random.nextInt(1000) - 500), String.valueOf(i));
+        }
+        Set<String> expected = keySet(drain(phTree.iterator()));
+        Set<String> expectedRange = keySet(drain(phTree.query(k(-100, -200), k(300, 100))));
+
+        for (int window : new int[] {0, 2}) {
+            phTree.setStreamWindow(window);
+            phTree.setStreamChunkSize(50);
+            List<IndexEntry<long[], String>> unordered = drain(phTree.unorderedIterator());
+            assertEquals(expected.size(), unordered.size());
+            assertEquals(expected, keySet(unordered));
+            assertEquals(expectedRange, keySet(drain(phTree.unorderedQuery(k(-100, -200), k(300, 100)))));
+
+            List<IndexEntry<long[], String>> parallel = StreamSupport.stream(phTree.spliterator(), true)
+                    .collect(Collectors.toList());
+            assertEquals(expected.size(), parallel.size());
+            assertEquals(expected, keySet(parallel));
+            assertEquals(expectedRange.size(), StreamSupport.stream(phTree.spliterator(k(-100, -200), k(300, 100)), true)
+                    .count());
+            try (Stream<IndexEntry<long[], String>> stream = phTree.stream(k(-100, -200), k(300, 100))) {
+                assertEquals(expectedRange.size(), stream.count());
+            }
+            try (Stream<IndexEntry<long[], String>> stream = phTree.stream()) {
+                IndexEntry<long[], String> any = stream.findAny().get();
+                assertTrue(expected.contains(Arrays.toString(any.getKey()) + "=" + any.getValue()));
+            }
+
+            IndexIterator<long[], String> it = phTree.unorderedIterator();
+            it.next();
+            it.close();
+            assertEquals(expected.size(), phTree.size());
+        }
+    }
+
+    private static Set<String> keySet(List<IndexEntry<long[], String>> entries) {
+        Set<String> keys = new HashSet<>();
+        for (IndexEntry<long[], String> entry : entries) {
+            keys.add(Arrays.toString(entry.getKey()) + "=" + entry.getValue());
+        }
+        return keys;
+    }
+
+    private static List<IndexEntry<long[], String>> drain(IndexIterator<long[], String> it) throws IOException {
+        List<IndexEntry<long[], String>> entries = new ArrayList<>();
+        while (it.hasNext()) {
+            entries.add(it.next());
+        }
+        it.close();
+        return entries;
+    }
+
+    private static void assertEntriesEqual(List<IndexEntry<long[], String>> expected,
+                                           List<IndexEntry<long[], String>> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertArrayEquals(expected.get(i).getKey(), actual.get(i).getKey());
+            assertEquals(expected.get(i).getValue(), actual.get(i).getValue());
+        }
+    }
+
+    @Test
+    public void testSampleRange() throws Exception {
+        phTree.create(2, 64);
+        for (long x = -10; x < 10; x++) {
+            for (long y = -10; y < 10; y++) {
+                phTree.put(k(x, y), x + "," + y);
+            }
+        }
+
+        List<PhEntry<String>> sample = phTree.sample(k(-5, -5), k(4, 4), 30);
+        assertEquals(30, sample.size());
+        Set<String> seen = new HashSet<>();
+        for (PhEntry<String> entry : sample) {
+            long[] key = entry.getKey();
+            assertTrue(key[0] >= -5 && key[0] <= 4 && key[1] >= -5 && key[1] <= 4);
+            assertEquals(key[0] + "," + key[1], entry.getValue());
+            assertTrue(seen.add(entry.getValue()));
+        }
+
+        //all the entries are returned if the range holds fewer than requested
+        assertEquals(400, phTree.sample(k(-100, -100), k(100, 100), 1000).size());
+        assertEquals(0, phTree.sample(k(20, 20), k(30, 30), 10).size());
+
+        BuiltinPredicate filter = Predicates.withinDistance(k(-5, -5), 1.5);
+        sample = phTree.sample(k(-10, -10), k(10, 10), 5, filter);
+        assertEquals(5, sample.size());
+        for (PhEntry<String> entry : sample) {
+            assertTrue(filter.test(entry.getKey()));
+        }
+
+        //every entry of the range ends up in some sample
+        Set<String> sampled = new HashSet<>();
+        for (int i = 0; i < 500 && sampled.size() < 400; i++) {
+            for (PhEntry<String> entry : phTree.sample(k(-10, -10), k(10, 10), 20)) {
+                sampled.add(entry.getValue());
+            }
+        }
+        assertEquals(400, sampled.size());
+    }
+
     @Test
     public void testPutAndGetRandom2D() throws Exception {
         phTree.create(2, 64);
@@ -514,6 +812,74 @@ public class TestDistPhTreeProxyParameterized extends BaseParameterizedTest {
         assertEquals(expected, resultSet);
     }
 
+    @Test
+    public void testRangeListBuiltinFilter() {
+        phTree.create(2, 64);
+        for (long x = -10; x <= 10; x++) {
+            for (long y = -10; y <= 10; y++) {
+                phTree.put(new long[] {x, y}, x + "," + y);
+            }
+        }
+        long[] min = {-100, -100};
+        long[] max = {100, 100};
+        BuiltinPredicate[] filters = {
+                Predicates.withinDistance(new long[] {2, -3}, 4.5),
+                Predicates.boxUnion(new long[][] {{-10, -10}, {5, 5}}, new long[][] {{-8, -8}, {6, 7}}),
+                Predicates.polygon(0, 1, new long[] {-5, 5, 0}, new long[] {-5, -5, 8}),
+                Predicates.interval(0, 3, 4)
+        };
+        for (BuiltinPredicate filter : filters) {
+            List<long[]> results = phTree.queryAll(min, max, Integer.MAX_VALUE, filter, PhMapperK.LONG_ARRAY());
+            List<long[]> expected = new ArrayList<>();
+            for (long x = -10; x <= 10; x++) {
+                for (long y = -10; y <= 10; y++) {
+                    if (filter.test(new long[] {x, y})) {
+                        expected.add(new long[] {x, y});
+                    }
+                }
+            }
+            expected = MultidimUtil.sort(expected);
+            results = MultidimUtil.sort(results);
+            assertEquals(expected.size(), results.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertArrayEquals(expected.get(i), results.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void testRangeListLimit() {
+        phTree.create(2, 64);
+        Random random = new Random(5);
+        for (int i = 0; i < 2000; i++) {
+            phTree.put(k(random.nextInt(1000) - 500, random.nextInt(1000) - 500), String.valueOf(i));
+        }
+        long[] min = {-500, -500};
+        long[] max = {500, 500};
+        List<PhEntry<String>> all = phTree.queryAll(min, max);
+        BuiltinPredicate filter = Predicates.interval(0, 0, 500);
+        List<long[]> allFiltered = phTree.queryAll(min, max, Integer.MAX_VALUE, filter, PhMapperK.LONG_ARRAY());
+
+        //the limited queries return the first entries in z-order, whatever the number of hosts queried at once
+        for (int fanout : new int[] {1, 8}) {
+            phTree.setMaxLimitFanout(fanout);
+            for (int limit : new int[] {1, 100, 1500, 5000}) {
+                List<PhEntry<String>> results = phTree.queryAll(min, max, limit, PhPredicate.ACCEPT_ALL,
+                        PhMapper.<String>PVENTRY());
+                assertEquals(Math.min(limit, all.size()), results.size());
+                for (int i = 0; i < results.size(); i++) {
+                    assertArrayEquals(all.get(i).getKey(), results.get(i).getKey());
+                    assertEquals(all.get(i).getValue(), results.get(i).getValue());
+                }
+
+                List<long[]> filtered = phTree.queryAll(min, max, limit, filter, PhMapperK.LONG_ARRAY());
+                assertEquals(Math.min(limit, allFiltered.size()), filtered.size());
+                for (int i = 0; i < filtered.size(); i++) {
+                    assertArrayEquals(allFiltered.get(i), filtered.get(i));
+                }
+            }
+        }
+    }
 
     @Test
     public void testUpdateKey() {
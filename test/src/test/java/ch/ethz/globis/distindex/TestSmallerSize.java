@@ -24,6 +24,8 @@ along with this program.  If not, see <http://www.gnu.org/licenses/>.
 */
 package ch.ethz.globis.distindex;
 
+import ch.ethz.globis.disindex.codec.compression.FrameCompression;
+import ch.ethz.globis.disindex.codec.field.ByteArrayEncoderDecoder;
 import ch.ethz.globis.distindex.client.pht.PHTreeIndexProxy;
 import ch.ethz.globis.distindex.test.BaseParameterizedTest;
 import org.junit.After;
@@ -36,8 +38,10 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Random;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 public class TestSmallerSize extends BaseParameterizedTest {
@@ -97,4 +101,41 @@ public class TestSmallerSize extends BaseParameterizedTest {
             assertTrue(phTree.contains(key));
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testRawValues() throws IOException {
+        try (PHTreeIndexProxy<byte[]> rawTree = new PHTreeIndexProxy<>(HOST, ZK_PORT, new ByteArrayEncoderDecoder())) {
+            rawTree.create(2, 16);
+            Random random = new Random(42);
+            long[][] keys = new long[100][];
+            byte[][] values = new byte[keys.length][];
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = new long[] { i, i * 7 };
+                //empty values are stored as such, not as missing values
+                values[i] = new byte[(i % 10 == 0) ? 0 : random.nextInt(64) + 1];
+                random.nextBytes(values[i]);
+                rawTree.put(keys[i], values[i]);
+            }
+            for (int i = 0; i < keys.length; i++) {
+                assertArrayEquals(values[i], rawTree.get(keys[i]));
+            }
+            assertNull(rawTree.get(new long[] { -1, -1 }));
+        }
+    }
+
+    @Test
+    public void testCompressedChannels() throws IOException {
+        //a threshold of 0 compresses every frame
+        FrameCompression compression = new FrameCompression(FrameCompression.LZ4, 0);
+        try (PHTreeIndexProxy<byte[]> compressedTree =
+                     new PHTreeIndexProxy<>(HOST, ZK_PORT, new ByteArrayEncoderDecoder(), compression)) {
+            compressedTree.create(2, 16);
+            byte[] value = new byte[1024];
+            for (int i = 0; i < 200; i++) {
+                compressedTree.put(new long[] { i, i }, value);
+            }
+            assertEquals(200, compressedTree.getRange(new long[] { 0, 0 }, new long[] { 199, 199 }).size());
+            assertArrayEquals(value, compressedTree.get(new long[] { 7, 7 }));
+        }
+    }
+}